@@ -0,0 +1,43 @@
+package com.Benchmarks;
+
+import com.DataObjects.Approximations.ApproximationType;
+import com.DataObjects.Approximations.AveragesApproximation;
+import com.DataObjects.Approximations.LinearRegression;
+import com.DataObjects.Slice;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Тесты производительности вычисления функций приближения на всем разрезе. Скользящая средняя имеет сложность
+ * O(n * sqrt(n)), поэтому на 10 миллионах точек одно вычисление занимает десятки секунд.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class ApproximationBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private Slice slice;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        slice = new SeriesGenerator(42).generateSlice(size, ApproximationType.EMPTY).getAccumulation();
+    }
+
+    @Benchmark
+    public double linearRegression() {
+        return new LinearRegression(slice, 0, slice.size() - 1).getSigma();
+    }
+
+    @Benchmark
+    public double averagesApproximation() {
+        return new AveragesApproximation(slice).getSigma();
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.Benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Генератор файлов csv в формате исходных данных программы (столбцы first_date, category_*, value_* и amount,
+ * разделитель ";"). Значения категорий распределены неравномерно: первые значения встречаются намного чаще
+ * последних, как в настоящих данных. При одинаковом зерне файлы совпадают.
+ */
+public class CsvGenerator {
+
+    private final long startTime = 1_600_000_000_000L, rowInterval = 10_000L;
+
+    private final int categories, cardinality, values;
+    private final Random random;
+
+    /**
+     * @param categories  - количество столбцов категорий
+     * @param cardinality - количество различных значений в каждом столбце категорий
+     * @param values      - количество рядов данных (столбцов value_*)
+     * @param seed        - зерно генератора случайных чисел
+     */
+    public CsvGenerator(int categories, int cardinality, int values, long seed) {
+        this.categories = categories;
+        this.cardinality = cardinality;
+        this.values = values;
+        random = new Random(seed);
+    }
+
+    /**
+     * Записывает файл csv с заданным количеством строк, упорядоченных по дате.
+     *
+     * @param path - путь к файлу
+     * @param rows - количество строк данных
+     * @return размер файла в байтах
+     * @throws IOException при ошибке записи
+     */
+    public long generate(Path path, long rows) throws IOException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder("first_date");
+            for (int i = 1; i <= categories; i++) {
+                line.append(";category_").append(i);
+            }
+            for (int i = 1; i <= values; i++) {
+                line.append(";value_").append(i);
+            }
+            line.append(";amount");
+            writer.write(line.toString());
+            writer.newLine();
+            for (long row = 0; row < rows; row++) {
+                line.setLength(0);
+                line.append(dateFormat.format(new Date(startTime + row * rowInterval)));
+                for (int i = 1; i <= categories; i++) {
+                    double skewed = random.nextDouble() * random.nextDouble();
+                    line.append(";type_").append(i).append("_").append((int) (skewed * cardinality));
+                }
+                for (int i = 1; i <= values; i++) {
+                    line.append(";").append(Math.max(0, Math.round(100 + random.nextGaussian() * 30)));
+                }
+                line.append(";").append(1 + random.nextInt(4));
+                writer.write(line.toString());
+                writer.newLine();
+            }
+        }
+        return Files.size(path);
+    }
+
+}
@@ -0,0 +1,185 @@
+package com.Benchmarks;
+
+import com.Controler.DataController;
+import com.DataObjects.SuspiciousInterval;
+import com.Model.CategoryCombination;
+import com.Model.DatabaseService;
+import com.SupportClasses.Config;
+import com.SupportClasses.ConsoleLogger;
+import com.SupportClasses.Logger;
+import com.SupportClasses.MetricsRegistry;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Сквозной тест производительности: генерирует файл csv, загружает его в базу данных (parseCsv), ищет и записывает
+ * интервалы (exportDecreasesToDB, exportConstantsToDB) и получает их так же, как просмотрщик графиков. Для каждого
+ * этапа выводит время, количество строк в секунду, количество запросов, объем переданных по сети данных и
+ * наибольший размер кучи.
+ * <p>
+ * Параметры (все необязательные): -rows=100000 -categories=4 -cardinality=8 -values=1 -table=bench_e2e
+ * -embedded (запустить встроенный PostgreSQL вместо подключения по db_config.txt) -keep-csv -seed=42
+ */
+public class EndToEndBenchmark {
+
+    private final Logger logger = new ConsoleLogger();
+    private final List<String> report = new ArrayList<>();
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^-+", "").split("=", 2);
+            options.put(option[0], option.length == 2 ? option[1] : "true");
+        }
+        new EndToEndBenchmark().run(options);
+    }
+
+    private void run(Map<String, String> options) throws IOException {
+        final long rows = Long.parseLong(options.getOrDefault("rows", "100000"));
+        final int categories = Integer.parseInt(options.getOrDefault("categories", "4"));
+        final int cardinality = Integer.parseInt(options.getOrDefault("cardinality", "8"));
+        final int values = Integer.parseInt(options.getOrDefault("values", "1"));
+        final long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        final String tableName = options.getOrDefault("table", "bench_e2e");
+
+        Map<String, String> overrides = new HashMap<>();
+        overrides.put("table_name", tableName);
+        overrides.put("db_parameters", "socketFactory=" + CountingSocketFactory.class.getName());
+        overrides.put("metrics_file", "none");
+        EmbeddedPostgres embeddedPostgres = null;
+        if (options.containsKey("embedded")) {
+            embeddedPostgres = EmbeddedPostgres.builder().start();
+            overrides.put("db_address", "localhost:" + embeddedPostgres.getPort());
+            overrides.put("db_name", "postgres");
+            overrides.put("user_name", "postgres");
+            overrides.put("password", "postgres");
+            logger.logMessage("Запущен встроенный PostgreSQL на порту " + embeddedPostgres.getPort());
+        }
+
+        Path csvPath = Paths.get(tableName + ".csv");
+        try {
+            long csvBytes = measure("generate csv", rows, () -> {
+                try {
+                    return new CsvGenerator(categories, cardinality, values, seed).generate(csvPath, rows);
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+            logger.logMessage("Создан файл " + csvPath + " (" + csvBytes / 1024 + " КБ)");
+
+            Config config = new Config(overrides);
+            DataController dataController = new DataController(config);
+            DatabaseService dbService = dataController.getDbService();
+            measure("parseCsv", rows, () -> {
+                dataController.parseCsv();
+                return rows;
+            });
+            measure("exportDecreasesToDB", -1, () -> {
+                dataController.createDecreasesTable();
+                dataController.exportDecreasesToDB(0.05, 0.5, Integer.MAX_VALUE);
+                return -1L;
+            });
+            measure("exportConstantsToDB", -1, () -> {
+                dataController.createConstantsTable();
+                dataController.exportConstantsToDB(0.05, 1, Integer.MAX_VALUE);
+                return -1L;
+            });
+            measure("viewer getDecreases", -1, () -> {
+                List<String[]> categoryCombos = CategoryCombination.streamUpTo(dbService.getCategoryNames(tableName),
+                        config.getMaxCategoriesPerCombo()).collect(Collectors.toList());
+                long intervals = 0;
+                for (String valueName : dbService.getValueNames(tableName)) {
+                    List<SuspiciousInterval> decreases = dbService.getDecreases(tableName, valueName, categoryCombos,
+                            config.getApproximationType(), 0.05, 0.5, 64);
+                    intervals += decreases.size();
+                }
+                return intervals;
+            });
+            dataController.close();
+        } finally {
+            if (!options.containsKey("keep-csv")) {
+                Files.deleteIfExists(csvPath);
+            }
+            if (embeddedPostgres != null) {
+                embeddedPostgres.close();
+            }
+        }
+
+        logger.logMessage(String.format(Locale.US, "Параметры: rows=%d, categories=%d, cardinality=%d, values=%d",
+                rows, categories, cardinality, values));
+        logger.logMessage(String.format(Locale.US, "%-22s %10s %12s %10s %12s %12s %10s",
+                "stage", "time, s", "rows/s", "queries", "sent, KB", "recv, KB", "heap, MB"));
+        for (String line : report) {
+            logger.logMessage(line);
+        }
+    }
+
+    /**
+     * Выполняет этап и добавляет в отчет его время, скорость обработки строк, количество запросов, объем переданных
+     * данных и наибольший размер кучи во время этапа.
+     *
+     * @param stage - название этапа
+     * @param rows  - количество обработанных строк исходных данных, либо -1, если считаются строки, прочитанные и
+     *              записанные запросами
+     * @param task  - этап
+     * @return результат этапа
+     */
+    private long measure(String stage, long rows, StageTask task) {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+        final long queries = metrics.getTimerCount("db.");
+        final long rowsTransferred = getRowsTransferred(metrics);
+        final long bytesWritten = CountingSocketFactory.getBytesWritten();
+        final long bytesRead = CountingSocketFactory.getBytesRead();
+        logger.logMessage("Начинается этап " + stage + "...");
+        long startTime = System.nanoTime();
+        long res = task.run();
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+        long stageRows = rows >= 0 ? rows : getRowsTransferred(metrics) - rowsTransferred;
+        report.add(String.format(Locale.US, "%-22s %10.2f %12.0f %10d %12.1f %12.1f %10.1f", stage, seconds,
+                stageRows / seconds, metrics.getTimerCount("db.") - queries,
+                (CountingSocketFactory.getBytesWritten() - bytesWritten) / 1024.0,
+                (CountingSocketFactory.getBytesRead() - bytesRead) / 1024.0, peakHeap / 1048576.0));
+        logger.logMessage("Закончился этап " + stage + " за " + String.format(Locale.US, "%.2f", seconds) + " с.");
+        return res;
+    }
+
+    private long getRowsTransferred(MetricsRegistry metrics) {
+        long res = 0;
+        for (String name : new String[]{"db.rows_read", "db.rows_updated"}) {
+            MetricsRegistry.Histogram histogram = metrics.getHistogram(name);
+            if (histogram != null) {
+                res += histogram.getSum();
+            }
+        }
+        return res;
+    }
+
+    private interface StageTask {
+        long run();
+    }
+
+}
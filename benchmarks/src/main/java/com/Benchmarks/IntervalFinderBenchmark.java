@@ -0,0 +1,70 @@
+package com.Benchmarks;
+
+import com.DataObjects.Approximations.ApproximationType;
+import com.DataObjects.Slice;
+import com.DataObjects.SliceArena;
+import com.DataObjects.SuspiciousInterval;
+import com.Model.Intervals.IntervalFinder;
+import com.Model.Intervals.SimpleIntervalFinder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Тесты производительности поиска интервалов с уменьшением и без изменений на накопленном разрезе, а также оценки
+ * уменьшения отдельного интервала. Точки накопленного разреза размещаются в куче (heap) или в области памяти вне кучи
+ * (arena, SliceArena).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class IntervalFinderBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"heap", "arena"})
+    public String storage;
+
+    private List<Slice> slices;
+    private SliceArena arena;
+    private SuspiciousInterval interval;
+    private IntervalFinder intervalFinder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        arena = storage.equals("arena") ? SliceArena.open(64 << 20) : null;
+        Slice slice = new SeriesGenerator(42).generateSlice(size, ApproximationType.LINEAR).getAccumulation();
+        slices = Collections.singletonList(slice);
+        interval = new SuspiciousInterval(slice, slice.size() / 4, slice.size() / 2, 0.2);
+        intervalFinder = new SimpleIntervalFinder();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (arena != null) {
+            arena.close();
+        }
+    }
+
+    @Benchmark
+    public List<SuspiciousInterval> getDecreasingIntervals() {
+        return intervalFinder.getDecreasingIntervals(slices, 0.05, 0.5, Integer.MAX_VALUE, true);
+    }
+
+    @Benchmark
+    public List<SuspiciousInterval> getConstantIntervals() {
+        return intervalFinder.getConstantIntervals(slices, 0.05, 1, Integer.MAX_VALUE, true);
+    }
+
+    @Benchmark
+    public double getDecreaseScore() {
+        return interval.getDecreaseScore();
+    }
+
+}
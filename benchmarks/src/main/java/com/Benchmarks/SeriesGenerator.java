@@ -0,0 +1,69 @@
+package com.Benchmarks;
+
+import com.DataObjects.Approximations.ApproximationType;
+import com.DataObjects.Slice;
+import com.DataObjects.SlicePoint;
+
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * Генератор искусственных рядов данных для тестов производительности. Ряд состоит из растущего тренда, суточных
+ * колебаний и шума, а также содержит участки уменьшения и участки без изменений, чтобы поиск интервалов находил
+ * кандидатов так же, как на настоящих данных. При одинаковом зерне ряды совпадают.
+ */
+public class SeriesGenerator {
+
+    private final long startTime = 1_600_000_000_000L, pointInterval = 60_000L;
+    private final int anomalyCount = 8;
+
+    private final Random random;
+
+    public SeriesGenerator(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Генерирует точки ряда с интервалом в одну минуту; часть соседних точек имеет одинаковую дату, как в исходных
+     * таблицах, где несколько операций приходятся на одну и ту же минуту.
+     *
+     * @param size - количество точек
+     * @return массив точек
+     */
+    public SlicePoint[] generatePoints(int size) {
+        SlicePoint[] points = new SlicePoint[size];
+        int[] anomalyStarts = new int[anomalyCount];
+        int anomalyLength = Math.max(size / (anomalyCount * 8), 1);
+        for (int i = 0; i < anomalyCount; i++) {
+            anomalyStarts[i] = random.nextInt(Math.max(size - anomalyLength, 1));
+        }
+        long time = startTime;
+        for (int i = 0; i < size; i++) {
+            double value = 1000 + i * 0.05 + 200 * Math.sin(2 * Math.PI * i / 1440.0) + random.nextGaussian() * 50;
+            for (int j = 0; j < anomalyCount; j++) {
+                if (i >= anomalyStarts[j] && i < anomalyStarts[j] + anomalyLength) {
+                    double progress = (double) (i - anomalyStarts[j]) / anomalyLength;
+                    value = j % 2 == 0 ? value * (1 - 0.8 * progress) : 1000;
+                }
+            }
+            if (random.nextInt(8) != 0) {
+                time += pointInterval;
+            }
+            points[i] = new SlicePoint(Math.max(Math.round(value), 0), 1 + random.nextInt(4), new Date(time));
+        }
+        return points;
+    }
+
+    /**
+     * Генерирует разрез из искусственного ряда.
+     *
+     * @param size              - количество точек
+     * @param approximationType - тип функции приближения
+     * @return разрез
+     */
+    public Slice generateSlice(int size, ApproximationType approximationType) {
+        return new Slice("benchmark", "value_1", new String[]{"category_1"}, new String[]{"'synthetic'"},
+                generatePoints(size), approximationType);
+    }
+
+}
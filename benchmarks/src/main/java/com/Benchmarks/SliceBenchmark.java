@@ -0,0 +1,48 @@
+package com.Benchmarks;
+
+import com.DataObjects.Approximations.ApproximationType;
+import com.DataObjects.Slice;
+import com.DataObjects.SlicePoint;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Тесты производительности построения разреза (с вычислением функции приближения) и его накопления.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SliceBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"EMPTY", "LINEAR"})
+    public ApproximationType approximationType;
+
+    private SlicePoint[] points;
+    private Slice slice;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        points = new SeriesGenerator(42).generatePoints(size);
+        slice = new Slice("benchmark", "value_1", new String[]{"category_1"}, new String[]{"'synthetic'"}, points,
+                approximationType);
+    }
+
+    @Benchmark
+    public Slice construct() {
+        return new Slice("benchmark", "value_1", new String[]{"category_1"}, new String[]{"'synthetic'"}, points,
+                approximationType);
+    }
+
+    @Benchmark
+    public Slice getAccumulation() {
+        return slice.getAccumulation();
+    }
+
+}
@@ -0,0 +1,19 @@
+#!/bin/sh
+# Создает архив AppCDS для каждого jar точки входа. В архив попадают классы из списка классов JDK и все классы jar
+# (программа, JFreeChart, драйвер JDBC); при запуске через launch.sh они загружаются из архива, а не из jar. Архив не
+# требует базы данных при сборке; более точный архив по учебному запуску создает train-cds-archive.sh.
+DIR=$(cd "$(dirname "$0")/.." && pwd)
+JAVA_HOME_DIR=$(java -XshowSettings:properties -version 2>&1 | sed -n 's/^ *java.home = //p')
+for JAR in "$DIR"/*.jar; do
+    NAME=$(basename "$JAR" .jar)
+    case "$NAME" in
+        view-*) continue ;;
+    esac
+    CLASS_LIST="$DIR/$NAME.classlist"
+    cat "$JAVA_HOME_DIR/lib/classlist" > "$CLASS_LIST"
+    jar tf "$JAR" | grep '\.class$' | grep -v -e '^META-INF/' -e 'module-info' | sed 's/\.class$//' >> "$CLASS_LIST"
+    echo "Создается архив AppCDS $NAME.jsa..."
+    rm -f "$DIR/$NAME.jsa"
+    java -Xshare:dump -XX:SharedClassListFile="$CLASS_LIST" -XX:SharedArchiveFile="$DIR/$NAME.jsa" -cp "$JAR" \
+        > "$DIR/$NAME.cds.log" 2>&1 || echo "Не удалось создать архив $NAME.jsa, подробности в $NAME.cds.log" >&2
+done
@@ -0,0 +1,19 @@
+#!/bin/sh
+# Запускает точку входа с параметрами JVM из профиля сборки и архивом AppCDS, если он был создан:
+#     sh launch.sh exportDecreasesToDB [аргументы]
+# Названия точек входа: exportDecreasesToDB, exportGraphs, parseCsv, runJobs, streamIngest, viewGraphs, viewIntervalFinding.
+# Файл db_config.txt читается из текущей папки. Время от запуска JVM до подключения к базе данных и первого запроса
+# выводится в журнал и в сводку метрик (startup.*).
+DIR=$(cd "$(dirname "$0")/.." && pwd)
+NAME=$1
+shift
+JAR="$DIR/$NAME.jar"
+if [ ! -f "$JAR" ]; then
+    echo "Не найден файл $JAR" >&2
+    exit 1
+fi
+CDS=""
+if [ -f "$DIR/$NAME.jsa" ]; then
+    CDS="-XX:SharedArchiveFile=$DIR/$NAME.jsa -Xshare:auto"
+fi
+exec java ${jvm.gc} ${jvm.heap} ${jvm.options} $CDS -jar "$JAR" "$@"
@@ -0,0 +1,21 @@
+#!/bin/sh
+# Создает архив AppCDS по учебному запуску точки входа: задача выполняется один раз с записью списка загруженных
+# классов, затем JVM сохраняет эти классы в архив, который использует launch.sh. В отличие от create-cds-archive.sh в
+# архив попадают только действительно нужные классы (в том числе классы JDK), поэтому он меньше и быстрее загружается.
+# Запускается из папки с db_config.txt на небольшой таблице, например:
+#     sh train-cds-archive.sh exportDecreasesToDB
+DIR=$(cd "$(dirname "$0")/.." && pwd)
+NAME=$1
+shift
+JAR="$DIR/$NAME.jar"
+if [ ! -f "$JAR" ]; then
+    echo "Не найден файл $JAR" >&2
+    exit 1
+fi
+echo "Учебный запуск $NAME..."
+java ${jvm.gc} ${jvm.heap} -Xshare:off -XX:DumpLoadedClassList="$DIR/$NAME.classlist" -jar "$JAR" "$@" || exit 1
+echo "Создается архив AppCDS $NAME.jsa..."
+rm -f "$DIR/$NAME.jsa"
+java ${jvm.gc} -Xshare:dump -XX:SharedClassListFile="$DIR/$NAME.classlist" -XX:SharedArchiveFile="$DIR/$NAME.jsa" \
+    -cp "$JAR" > "$DIR/$NAME.cds.log" 2>&1 || { echo "Не удалось создать архив $NAME.jsa, подробности в $NAME.cds.log" >&2; exit 1; }
+echo "Запуск с архивом: sh $DIR/bin/launch.sh $NAME"
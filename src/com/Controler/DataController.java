@@ -1,19 +1,43 @@
 package com.Controler;
 
+import com.DataObjects.SliceState;
 import com.DataObjects.SuspiciousInterval;
+import com.Model.CategoryCombination;
 import com.Model.DataRetriever;
 import com.Model.DatabaseService;
 import com.DataObjects.Slice;
+import com.DataObjects.SliceArena;
 import com.Model.Intervals.IntervalFinder;
 import com.Model.Intervals.SimpleIntervalFinder;
+import com.Model.RowStream;
 import com.Model.SliceRetriever;
+import com.Model.SliceRetriever.ComboSlices;
+import com.Model.SliceRetriever.PruningStats;
+import com.Model.SliceStore;
+import com.SupportClasses.CancellationToken;
 import com.SupportClasses.Config;
 import com.SupportClasses.ConsoleLogger;
 import com.SupportClasses.Logger;
+import com.SupportClasses.MetricsRegistry;
+import com.SupportClasses.StartupTimer;
 import com.View.GraphExporter;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Класс, который имеет доступ к остальным элементам программы и может вызывать их методы.
@@ -24,33 +48,175 @@ public class DataController {
     private final Logger logger;
     private final DataRetriever dataRetriever;
     private final SliceRetriever sliceRetriever;
-    private final GraphExporter graphExporter;
     private final IntervalFinder intervalFinder;
 
     private final DatabaseService dbService;
 
     private String tableName;
     private int maxCategoriesPerCombo, maxSlicesPerCombo;
+    private double minComboSupport, incrementalLookback;
+    private CancellationToken cancellationToken = CancellationToken.NONE;
+    private GraphExporter graphExporter;
+    private volatile boolean sliceCaching = false;
+    private final Map<String, CompletableFuture<List<ComboSlices>>> sliceCache = new ConcurrentHashMap<>();
+    private final Map<String, Integer> sliceCacheReleases = new HashMap<>();
+    private volatile int sliceCacheUsers = 0;
+    private final int maxLoggedIntervals = 20;
+    private final String sliceStoreFile;
+    private SliceStore sliceStore;
+    private final int sliceArenaChunkBytes;
 
     public DataController() {
-        config = new Config();
+        this(new Config());
+    }
+
+    /**
+     * Конструктор с заранее подготовленной конфигурацией (например, с параметрами, заданными в тестах
+     * производительности).
+     *
+     * @param config - конфигурация
+     */
+    public DataController(Config config) {
+        this.config = config;
         logger = new ConsoleLogger();
+        StartupTimer.mark("controller", logger);
         tableName = config.getTableName();
         maxSlicesPerCombo = config.getMaxSlicesPerCombo();
         maxCategoriesPerCombo = config.getMaxCategoriesPerCombo();
-        dbService = new DatabaseService(config.getDbAddress(), config.getDbName(), config.getUserName(), config.getPassword());
-        dataRetriever = new DataRetriever(dbService);
+        minComboSupport = config.getMinComboSupport();
+        incrementalLookback = config.getIncrementalLookback();
+        dbService = new DatabaseService(config.getDbAddress(), config.getDbName(), config.getUserName(), config.getPassword(),
+                config.getDbParameters());
+        dataRetriever = new DataRetriever(dbService, config.getPartitionInterval(), config.getRollupBuckets());
         sliceRetriever = new SliceRetriever(dbService, config.getApproximationType());
-        graphExporter = new GraphExporter();
         intervalFinder = new SimpleIntervalFinder();
+        sliceStoreFile = config.getSliceStore();
+        sliceArenaChunkBytes = config.getSliceArenaChunkMb() << 20;
+        if (sliceStoreFile != null && new File(sliceStoreFile).exists()) {
+            openSliceStore();
+        }
     }
 
     public void setTableName(String tableName) {
         this.tableName = tableName;
     }
 
+    /**
+     * Задает признак отмены для последующих операций: после его отмены выполняющиеся запросы прерываются, а операции
+     * завершаются исключением CancellationException.
+     *
+     * @param cancellationToken - признак отмены процесса
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+        dbService.setCancellationToken(cancellationToken);
+    }
+
+    /**
+     * Убирает признак отмены после завершения процесса.
+     *
+     * @param cancellationToken - признак отмены завершившегося процесса
+     */
+    public void resetCancellationToken(CancellationToken cancellationToken) {
+        if (this.cancellationToken == cancellationToken) {
+            this.cancellationToken = CancellationToken.NONE;
+        }
+        dbService.resetCancellationToken(cancellationToken);
+    }
+
+    /**
+     * Включает или отключает сохранение полученных разрезов между операциями. Если сохранение включено, операции с
+     * одинаковой таблицей, рядом данных и промежутком дат (например, экспорт интервалов уменьшения и отсутствия роста)
+     * получают разрезы из базы данных один раз, в том числе если выполняются одновременно. При отключении сохраненные
+     * разрезы удаляются.
+     * <p>
+     * Разрезы ряда данных удаляются, как только его обработали все users операций, поэтому в памяти остаются только
+     * разрезы рядов, которые еще обрабатываются.
+     *
+     * @param sliceCaching - true, если разрезы сохраняются
+     * @param users        - количество операций, обрабатывающих каждый ряд данных (0 - разрезы хранятся до закрытия
+     *                     контроллера)
+     */
+    public void setSliceCaching(boolean sliceCaching, int users) {
+        this.sliceCaching = sliceCaching;
+        this.sliceCacheUsers = users;
+        if (!sliceCaching) {
+            synchronized (sliceCacheReleases) {
+                sliceCacheReleases.clear();
+                sliceCache.clear();
+            }
+        }
+    }
+
     public void parseCsv() {
+        closeSliceStore();
         dataRetriever.csvToDatabase(tableName);
+        if (sliceStoreFile != null) {
+            writeSliceStore();
+        }
+    }
+
+    /**
+     * Записывает снимок разрезов таблицы в файл из параметра slice_store, после чего разрезы получаются из снимка, пока
+     * данные таблицы не изменятся. Если база данных недоступна, названия рядов данных и даты таблицы тоже берутся из
+     * снимка.
+     */
+    public void writeSliceStore() {
+        if (sliceStoreFile == null) {
+            logger.logError("Не задан файл снимка разрезов (slice_store)");
+            return;
+        }
+        try {
+            sliceRetriever.writeSliceStore(new File(sliceStoreFile), tableName, maxCategoriesPerCombo, maxSlicesPerCombo);
+            openSliceStore();
+        } catch (IOException ex) {
+            logger.logError("Не удалось записать снимок разрезов в файл " + sliceStoreFile + ": " + ex);
+        }
+    }
+
+    private void openSliceStore() {
+        try {
+            sliceStore = new SliceStore(new File(sliceStoreFile));
+            sliceRetriever.setSliceStore(sliceStore);
+        } catch (IOException ex) {
+            logger.logError("Не удалось открыть снимок разрезов " + sliceStoreFile + ": " + ex);
+        }
+    }
+
+    /**
+     * Перестает использовать снимок разрезов перед изменением данных таблицы: после изменения снимок устаревает, пока
+     * не будет записан заново (writeSliceStore).
+     */
+    private void closeSliceStore() {
+        if (sliceStore != null) {
+            sliceStore = null;
+            sliceRetriever.setSliceStore(null);
+            logger.logMessage("Снимок разрезов " + sliceStoreFile + " больше не используется, так как данные таблицы изменяются");
+        }
+    }
+
+    /**
+     * Получает названия рядов данных таблицы; если база данных недоступна - из снимка разрезов этой таблицы.
+     *
+     * @return список названий рядов данных
+     */
+    private List<String> getValueNames() {
+        if (!dbService.isConnected() && sliceStore != null && sliceStore.tableName.equals(tableName)) {
+            return sliceStore.getValueNames();
+        }
+        return dbService.getValueNames(tableName);
+    }
+
+    /**
+     * Получает первую и последнюю даты таблицы; если база данных недоступна - из снимка разрезов этой таблицы.
+     *
+     * @return список с 2 датами
+     */
+    private List<Date> getBorderDates() {
+        if (!dbService.isConnected() && sliceStore != null && sliceStore.tableName.equals(tableName)) {
+            return sliceStore.getBorderDates();
+        }
+        return dbService.getBorderDates(tableName);
     }
 
     /**
@@ -59,21 +225,23 @@ public class DataController {
      */
     public void exportGraphsAccumulated() {
         logger.logMessage("Начинается экспорт графиков...");
-        List<Slice> slices;
-        List<String> valueNames = dbService.getValueNames(tableName);
-        List<Date> borderDates = dbService.getBorderDates(tableName);
+        List<String> valueNames = getValueNames();
+        List<Date> borderDates = getBorderDates();
         for (String valueName : valueNames) {
-            slices = sliceRetriever.getSlicesAccumulated(tableName, valueName, maxCategoriesPerCombo, maxSlicesPerCombo, borderDates.get(0), borderDates.get(1));
-            int graphsExported = 0;
-            for (Slice slice : slices) {
-                if (graphExporter.exportGraphToPng(slice)) {
-                    graphsExported++;
-                }
-                if (graphsExported % (slices.size() / 10) == 0) {
-                    logger.logMessage("Экспортировано " + graphsExported + " графиков");
+            runForValue(valueName, borderDates.get(0), borderDates.get(1), arena -> {
+                List<Slice> cachedSlices = getCachedSlices(valueName, borderDates.get(0), borderDates.get(1));
+                int graphsExported;
+                if (cachedSlices != null) {
+                    graphsExported = getGraphExporter().exportGraphsToPng(cachedSlices.stream());
+                } else {
+                    PruningStats pruning = new PruningStats();
+                    graphsExported = getGraphExporter().exportGraphsToPng(sliceRetriever.streamSlicesAccumulated(tableName,
+                            valueName, maxCategoriesPerCombo, maxSlicesPerCombo, borderDates.get(0), borderDates.get(1),
+                            minComboSupport, pruning, cancellationToken));
+                    sliceRetriever.logPruning(pruning);
                 }
-            }
-            logger.logMessage("Экспортировано " + graphsExported + " графиков");
+                logger.logMessage("Экспортировано " + graphsExported + " графиков");
+            });
         }
         logger.logMessage("Закончился экспорт графиков.");
     }
@@ -91,25 +259,16 @@ public class DataController {
      */
     public void exportDecreaseGraphs(double minIntervalMult, double thresholdMult, int maxIntervals) {
         logger.logMessage("Начинается экспорт графиков уменьшения...");
-        List<Slice> slices;
-        List<String> valueNames = dbService.getValueNames(tableName);
-        List<Date> borderDates = dbService.getBorderDates(tableName);
+        List<String> valueNames = getValueNames();
+        List<Date> borderDates = getBorderDates();
         for (String valueName : valueNames) {
-            slices = sliceRetriever.getSlicesAccumulated(tableName, valueName, maxCategoriesPerCombo, maxSlicesPerCombo, borderDates.get(0), borderDates.get(1));
-            int intervalsExported = 0;
-            List<SuspiciousInterval> intervals = intervalFinder.getDecreasingIntervals(slices, minIntervalMult, thresholdMult,
-                    maxIntervals, true);
-            int intervalId = 0;
-            for (SuspiciousInterval interval : intervals) {
-                if (graphExporter.exportDecreaseGraphToPng(interval, "decreases", intervalId)) {
-                    intervalsExported++;
-                }
-                intervalId++;
-                if (intervalsExported % (intervals.size() / 10) == 0) {
-                    logger.logMessage("Экспортировано " + intervalsExported + " графиков");
-                }
-            }
-            logger.logMessage("Экспортировано " + intervalsExported + " графиков");
+            runForValue(valueName, borderDates.get(0), borderDates.get(1), arena -> {
+                List<Slice> slices = getSlicesAccumulated(valueName, borderDates.get(0), borderDates.get(1));
+                List<SuspiciousInterval> intervals = intervalFinder.getDecreasingIntervals(slices, minIntervalMult, thresholdMult,
+                        maxIntervals, true, cancellationToken);
+                int intervalsExported = getGraphExporter().exportDecreaseGraphsToPng(intervals, "decreases");
+                logger.logMessage("Экспортировано " + intervalsExported + " графиков");
+            });
         }
         logger.logMessage("Закончился экспорт графиков уменьшения.");
     }
@@ -127,25 +286,16 @@ public class DataController {
      */
     public void exportConstantGraphs(double minIntervalMult, double thresholdMult, int maxIntervals) {
         logger.logMessage("Начинается экспорт графиков отсутствия роста...");
-        List<Slice> slices;
-        List<String> valueNames = dbService.getValueNames(tableName);
-        List<Date> borderDates = dbService.getBorderDates(tableName);
+        List<String> valueNames = getValueNames();
+        List<Date> borderDates = getBorderDates();
         for (String valueName : valueNames) {
-            slices = sliceRetriever.getSlicesAccumulated(tableName, valueName, maxCategoriesPerCombo, maxSlicesPerCombo, borderDates.get(0), borderDates.get(1));
-            int intervalsExported = 0;
-            List<SuspiciousInterval> intervals = intervalFinder.getConstantIntervals(slices, minIntervalMult, thresholdMult,
-                    maxIntervals, true);
-            int intervalId = 0;
-            for (SuspiciousInterval interval : intervals) {
-                if (graphExporter.exportDecreaseGraphToPng(interval, "constants", intervalId)) {
-                    intervalsExported++;
-                }
-                intervalId++;
-                if (intervalsExported % (intervals.size() / 10) == 0) {
-                    logger.logMessage("Экспортировано " + intervalsExported + " графиков");
-                }
-            }
-            logger.logMessage("Экспортировано " + intervalsExported + " графиков");
+            runForValue(valueName, borderDates.get(0), borderDates.get(1), arena -> {
+                List<Slice> slices = getSlicesAccumulated(valueName, borderDates.get(0), borderDates.get(1));
+                List<SuspiciousInterval> intervals = intervalFinder.getConstantIntervals(slices, minIntervalMult, thresholdMult,
+                        maxIntervals, true, cancellationToken);
+                int intervalsExported = getGraphExporter().exportDecreaseGraphsToPng(intervals, "constants");
+                logger.logMessage("Экспортировано " + intervalsExported + " графиков");
+            });
         }
         logger.logMessage("Закончился экспорт графиков отсутствия роста.");
     }
@@ -155,18 +305,22 @@ public class DataController {
      */
     public void createDecreasesTable() {
         List<String> categoryNames = dbService.getCategoryNames(tableName);
-        final String[] colNames = new String[categoryNames.size() + 8];
-        final String[] colTypes = new String[categoryNames.size() + 8];
+        final String[] colNames = new String[categoryNames.size() + 10];
+        final String[] colTypes = new String[categoryNames.size() + 10];
         for (int i = 0; i < categoryNames.size(); i++) {
             colNames[i] = categoryNames.get(i);
             colTypes[i] = "varchar(255)";
         }
-        colNames[colNames.length - 8] = "value_name";
-        colTypes[colNames.length - 8] = "varchar(255)";
-        colNames[colNames.length - 7] = "pos1";
-        colTypes[colNames.length - 7] = "int8";
-        colNames[colNames.length - 6] = "pos2";
-        colTypes[colNames.length - 6] = "int8";
+        colNames[colNames.length - 10] = "value_name";
+        colTypes[colNames.length - 10] = "varchar(255)";
+        colNames[colNames.length - 9] = "pos1";
+        colTypes[colNames.length - 9] = "int8";
+        colNames[colNames.length - 8] = "pos2";
+        colTypes[colNames.length - 8] = "int8";
+        colNames[colNames.length - 7] = "interval_start";
+        colTypes[colNames.length - 7] = "timestamptz";
+        colNames[colNames.length - 6] = "interval_end";
+        colTypes[colNames.length - 6] = "timestamptz";
         colNames[colNames.length - 5] = "min_date";
         colTypes[colNames.length - 5] = "timestamptz";
         colNames[colNames.length - 4] = "max_date";
@@ -178,6 +332,7 @@ public class DataController {
         colNames[colNames.length - 1] = "relative_diff";
         colTypes[colNames.length - 1] = "float";
         dbService.createTable(tableName + "_decreases", colNames, colTypes);
+        dbService.createSliceStateTable(tableName + "_decreases_state");
     }
 
     /**
@@ -194,16 +349,20 @@ public class DataController {
     public void exportDecreasesToDB(double minIntervalMult, double thresholdMult, int maxIntervals) {
         logger.logMessage("Начинается экспорт интервалов уменьшения...");
         String[] colNames = dbService.getCategoryNames(tableName).toArray(new String[0]);
-        List<Slice> slices;
-        List<String> valueNames = dbService.getValueNames(tableName);
-        List<Date> borderDates = dbService.getBorderDates(tableName);
+        List<String> valueNames = getValueNames();
+        List<Date> borderDates = getBorderDates();
         for (String valueName : valueNames) {
-            slices = sliceRetriever.getSlicesAccumulated(tableName, valueName, maxCategoriesPerCombo, maxSlicesPerCombo, borderDates.get(0), borderDates.get(1));
-            List<SuspiciousInterval> intervals = intervalFinder.getDecreasingIntervals(slices, minIntervalMult, thresholdMult,
-                    maxIntervals, false);
-            dbService.insertDecrease(tableName + "_decreases", colNames, intervals, borderDates.get(0), borderDates.get(1));
-            logger.logMessage("Экспортировано " + intervals.size() + " интервалов");
+            runForValue(valueName, borderDates.get(0), borderDates.get(1), arena -> {
+                List<Slice> slices = getSlicesAccumulated(valueName, borderDates.get(0), borderDates.get(1));
+                List<SuspiciousInterval> intervals = intervalFinder.getDecreasingIntervals(slices, minIntervalMult, thresholdMult,
+                        maxIntervals, false, cancellationToken);
+                dbService.insertDecrease(tableName + "_decreases", colNames, intervals, borderDates.get(0), borderDates.get(1));
+                saveSliceStates(tableName + "_decreases_state", slices, borderDates);
+                logger.logMessage("Экспортировано " + intervals.size() + " интервалов");
+            });
         }
+        dbService.createResultIndexes(tableName + "_decreases", "decrease_score", "relative_diff");
+        dbService.analyzeTable(tableName + "_decreases");
         logger.logMessage("Закончился экспорт интервалов уменьшения.");
     }
 
@@ -223,15 +382,18 @@ public class DataController {
     public void exportDecreasesToDB(double minIntervalMult, double thresholdMult, int maxIntervals, Date minDate, Date maxDate) {
         logger.logMessage("Начинается экспорт интервалов уменьшения...");
         String[] colNames = dbService.getCategoryNames(tableName).toArray(new String[0]);
-        List<Slice> slices;
-        List<String> valueNames = dbService.getValueNames(tableName);
+        List<String> valueNames = getValueNames();
         for (String valueName : valueNames) {
-            slices = sliceRetriever.getSlicesAccumulated(tableName, valueName, maxCategoriesPerCombo, maxSlicesPerCombo, minDate, maxDate);
-            List<SuspiciousInterval> intervals = intervalFinder.getDecreasingIntervals(slices, minIntervalMult, thresholdMult,
-                    maxIntervals, false);
-            dbService.insertDecrease(tableName + "_decreases", colNames, intervals, minDate, maxDate);
-            logger.logMessage("Экспортировано " + intervals.size() + " интервалов");
+            runForValue(valueName, minDate, maxDate, arena -> {
+                List<Slice> slices = getSlicesAccumulated(valueName, minDate, maxDate);
+                List<SuspiciousInterval> intervals = intervalFinder.getDecreasingIntervals(slices, minIntervalMult, thresholdMult,
+                        maxIntervals, false, cancellationToken);
+                dbService.insertDecrease(tableName + "_decreases", colNames, intervals, minDate, maxDate);
+                logger.logMessage("Экспортировано " + intervals.size() + " интервалов");
+            });
         }
+        dbService.createResultIndexes(tableName + "_decreases", "decrease_score", "relative_diff");
+        dbService.analyzeTable(tableName + "_decreases");
         logger.logMessage("Закончился экспорт интервалов уменьшения.");
     }
 
@@ -240,18 +402,22 @@ public class DataController {
      */
     public void createConstantsTable() {
         List<String> categoryNames = dbService.getCategoryNames(tableName);
-        final String[] colNames = new String[categoryNames.size() + 8];
-        final String[] colTypes = new String[categoryNames.size() + 8];
+        final String[] colNames = new String[categoryNames.size() + 10];
+        final String[] colTypes = new String[categoryNames.size() + 10];
         for (int i = 0; i < categoryNames.size(); i++) {
             colNames[i] = categoryNames.get(i);
             colTypes[i] = "varchar(255)";
         }
-        colNames[colNames.length - 8] = "value_name";
-        colTypes[colNames.length - 8] = "varchar(255)";
-        colNames[colNames.length - 7] = "pos1";
-        colTypes[colNames.length - 7] = "int8";
-        colNames[colNames.length - 6] = "pos2";
-        colTypes[colNames.length - 6] = "int8";
+        colNames[colNames.length - 10] = "value_name";
+        colTypes[colNames.length - 10] = "varchar(255)";
+        colNames[colNames.length - 9] = "pos1";
+        colTypes[colNames.length - 9] = "int8";
+        colNames[colNames.length - 8] = "pos2";
+        colTypes[colNames.length - 8] = "int8";
+        colNames[colNames.length - 7] = "interval_start";
+        colTypes[colNames.length - 7] = "timestamptz";
+        colNames[colNames.length - 6] = "interval_end";
+        colTypes[colNames.length - 6] = "timestamptz";
         colNames[colNames.length - 5] = "min_date";
         colTypes[colNames.length - 5] = "timestamptz";
         colNames[colNames.length - 4] = "max_date";
@@ -263,6 +429,7 @@ public class DataController {
         colNames[colNames.length - 1] = "relative_value_range";
         colTypes[colNames.length - 1] = "float";
         dbService.createTable(tableName + "_constants", colNames, colTypes);
+        dbService.createSliceStateTable(tableName + "_constants_state");
     }
 
     /**
@@ -279,16 +446,20 @@ public class DataController {
     public void exportConstantsToDB(double minIntervalMult, double thresholdMult, int maxIntervals) {
         logger.logMessage("Начинается экспорт интервалов отсутствия роста...");
         String[] colNames = dbService.getCategoryNames(tableName).toArray(new String[0]);
-        List<Slice> slices;
-        List<String> valueNames = dbService.getValueNames(tableName);
-        List<Date> borderDates = dbService.getBorderDates(tableName);
+        List<String> valueNames = getValueNames();
+        List<Date> borderDates = getBorderDates();
         for (String valueName : valueNames) {
-            slices = sliceRetriever.getSlicesAccumulated(tableName, valueName, maxCategoriesPerCombo, maxSlicesPerCombo, borderDates.get(0), borderDates.get(1));
-            List<SuspiciousInterval> intervals = intervalFinder.getConstantIntervals(slices, minIntervalMult, thresholdMult,
-                    maxIntervals, false);
-            dbService.insertConstant(tableName + "_constants", colNames, intervals, borderDates.get(0), borderDates.get(1));
-            logger.logMessage("Экспортировано " + intervals.size() + " интервалов");
+            runForValue(valueName, borderDates.get(0), borderDates.get(1), arena -> {
+                List<Slice> slices = getSlicesAccumulated(valueName, borderDates.get(0), borderDates.get(1));
+                List<SuspiciousInterval> intervals = intervalFinder.getConstantIntervals(slices, minIntervalMult, thresholdMult,
+                        maxIntervals, false, cancellationToken);
+                dbService.insertConstant(tableName + "_constants", colNames, intervals, borderDates.get(0), borderDates.get(1));
+                saveSliceStates(tableName + "_constants_state", slices, borderDates);
+                logger.logMessage("Экспортировано " + intervals.size() + " интервалов");
+            });
         }
+        dbService.createResultIndexes(tableName + "_constants", "flatness_score", "relative_value_range");
+        dbService.analyzeTable(tableName + "_constants");
         logger.logMessage("Закончился экспорт интервалов отсутствия роста.");
     }
 
@@ -308,23 +479,647 @@ public class DataController {
     public void exportConstantsToDB(double minIntervalMult, double thresholdMult, int maxIntervals, Date minDate, Date maxDate) {
         logger.logMessage("Начинается экспорт интервалов отсутствия роста...");
         String[] colNames = dbService.getCategoryNames(tableName).toArray(new String[0]);
-        List<Slice> slices;
-        List<String> valueNames = dbService.getValueNames(tableName);
+        List<String> valueNames = getValueNames();
         for (String valueName : valueNames) {
-            slices = sliceRetriever.getSlicesAccumulated(tableName, valueName, maxCategoriesPerCombo, maxSlicesPerCombo, minDate, maxDate);
-            List<SuspiciousInterval> intervals = intervalFinder.getConstantIntervals(slices, minIntervalMult, thresholdMult,
-                    maxIntervals, false);
-            dbService.insertConstant(tableName + "_constants", colNames, intervals, minDate, maxDate);
-            logger.logMessage("Экспортировано " + intervals.size() + " интервалов");
+            runForValue(valueName, minDate, maxDate, arena -> {
+                List<Slice> slices = getSlicesAccumulated(valueName, minDate, maxDate);
+                List<SuspiciousInterval> intervals = intervalFinder.getConstantIntervals(slices, minIntervalMult, thresholdMult,
+                        maxIntervals, false, cancellationToken);
+                dbService.insertConstant(tableName + "_constants", colNames, intervals, minDate, maxDate);
+                logger.logMessage("Экспортировано " + intervals.size() + " интервалов");
+            });
         }
+        dbService.createResultIndexes(tableName + "_constants", "flatness_score", "relative_value_range");
+        dbService.analyzeTable(tableName + "_constants");
         logger.logMessage("Закончился экспорт интервалов отсутствия роста.");
     }
 
+    /**
+     * Записывает в базу данных интервалы уменьшения так же, как createDecreasesTable и exportDecreasesToDB, но с
+     * сохранением хода выполнения: интервалы и состояния разрезов каждого сочетания ряда данных и категорий
+     * записываются одной транзакцией вместе с отметкой в таблице <таблица>_decreases_progress. Если предыдущий запуск
+     * с теми же параметрами и данными был прерван, таблицы не пересоздаются, а завершенные сочетания пропускаются.
+     *
+     * @param minIntervalMult - минимальная длина интервалов, которые будут рассматриваться (измеряется как доля длины
+     *                        временного промежутка всего разреза, от 0 до 1)
+     * @param thresholdMult   - минимальная разность между первой и последней величиной для интервалов, которые будут
+     *                        рассматриваться (измеряется как доля среднеквадратического отклонения)
+     * @param maxIntervals    - ограничение на количество интервалов для каждого сочетания категорий
+     */
+    public void exportDecreasesResumable(double minIntervalMult, double thresholdMult, int maxIntervals) {
+        exportIntervalsResumable(true, minIntervalMult, thresholdMult, maxIntervals);
+    }
+
+    /**
+     * Записывает в базу данных интервалы отсутствия роста так же, как createConstantsTable и exportConstantsToDB, с
+     * сохранением хода выполнения в таблице <таблица>_constants_progress (так же, как exportDecreasesResumable).
+     *
+     * @param minIntervalMult - минимальная длина интервалов, которые будут рассматриваться (измеряется как доля длины
+     *                        временного промежутка всего разреза, от 0 до 1)
+     * @param thresholdMult   - максимальная разность между максимальной и минимальной величиной для интервалов, которые будут
+     *                        рассматриваться (измеряется как доля среднеквадратического отклонения)
+     * @param maxIntervals    - ограничение на количество интервалов для каждого сочетания категорий
+     */
+    public void exportConstantsResumable(double minIntervalMult, double thresholdMult, int maxIntervals) {
+        exportIntervalsResumable(false, minIntervalMult, thresholdMult, maxIntervals);
+    }
+
+    /**
+     * Записывает в базу данных интервалы уменьшения, найденные только в новых данных, добавленных после предыдущего
+     * экспорта. Для каждого разреза по сохраненному состоянию из исходной таблицы получаются новые точки и последняя
+     * часть уже обработанных (доля incremental_lookback длины разреза), накопление и линейная регрессия продолжаются по
+     * состоянию, а записываются только интервалы, которые заканчиваются на новых точках. Если таблицы интервалов или
+     * состояний нет, выполняется полный экспорт (createDecreasesTable и exportDecreasesToDB).
+     *
+     * @param minIntervalMult - минимальная длина интервалов, которые будут рассматриваться (измеряется как доля длины
+     *                        временного промежутка всего разреза, от 0 до 1)
+     * @param thresholdMult   - минимальная разность между первой и последней величиной для интервалов, которые будут
+     *                        рассматриваться (измеряется как доля среднеквадратического отклонения)
+     * @param maxIntervals    - ограничение на количество новых интервалов для каждого ряда данных
+     */
+    public void exportDecreasesIncremental(double minIntervalMult, double thresholdMult, int maxIntervals) {
+        exportIntervalsIncremental(true, minIntervalMult, thresholdMult, maxIntervals);
+    }
+
+    /**
+     * Записывает в базу данных интервалы отсутствия роста, найденные только в новых данных, добавленных после
+     * предыдущего экспорта (так же, как exportDecreasesIncremental). Если таблицы интервалов или состояний нет,
+     * выполняется полный экспорт (createConstantsTable и exportConstantsToDB).
+     *
+     * @param minIntervalMult - минимальная длина интервалов, которые будут рассматриваться (измеряется как доля длины
+     *                        временного промежутка всего разреза, от 0 до 1)
+     * @param thresholdMult   - максимальная разность между максимальной и минимальной величиной для интервалов, которые будут
+     *                        рассматриваться (измеряется как доля среднеквадратического отклонения)
+     * @param maxIntervals    - ограничение на количество новых интервалов для каждого ряда данных
+     */
+    public void exportConstantsIncremental(double minIntervalMult, double thresholdMult, int maxIntervals) {
+        exportIntervalsIncremental(false, minIntervalMult, thresholdMult, maxIntervals);
+    }
+
     /**
      * Метод, завершающий работу компонентов.
      */
     public void close() {
+        synchronized (sliceCacheReleases) {
+            sliceCacheReleases.clear();
+            sliceCache.clear();
+        }
         dbService.closeConnection();
+        logger.logMetrics();
+        String metricsFile = config.getMetricsFile();
+        if (metricsFile != null) {
+            try {
+                MetricsRegistry.getInstance().writeJson(metricsFile);
+                logger.logMessage("Сводка метрик записана в файл " + metricsFile);
+            } catch (IOException ex) {
+                logger.logError("Не удалось записать сводку метрик в файл " + metricsFile);
+            }
+        }
+    }
+
+    /**
+     * Выполняет действие (обычно обработку одного ряда данных) в области памяти вне кучи, открытой в текущем потоке на
+     * время действия: разрезы с накоплением, созданные внутри действия, размещаются в ней и освобождаются после его
+     * завершения, а действие может освобождать их раньше (SliceArena.reset, например после каждой единицы экспорта).
+     * Если область отключена (slice_arena_chunk_mb=0) или включено сохранение разрезов (они используются и после
+     * действия), разрезы размещаются в куче, а действие получает null.
+     *
+     * @param action - действие, получающее открытую область, либо null
+     */
+    private void runInSliceArena(Consumer<SliceArena> action) {
+        if (sliceArenaChunkBytes <= 0 || sliceCaching) {
+            action.accept(null);
+            return;
+        }
+        try (SliceArena arena = SliceArena.open(sliceArenaChunkBytes)) {
+            action.accept(arena);
+        }
+    }
+
+    /**
+     * Обрабатывает один ряд данных (см. runInSliceArena) и после этого отмечает, что операция закончила работу с его
+     * сохраненными разрезами, даже если не использовала их.
+     *
+     * @param valueName - название ряда данных
+     * @param minDate   - первая дата срезов
+     * @param maxDate   - последняя дата срезов
+     * @param action    - действие, получающее открытую область, либо null
+     */
+    private void runForValue(String valueName, Date minDate, Date maxDate, Consumer<SliceArena> action) {
+        try {
+            runInSliceArena(action);
+        } finally {
+            releaseCachedSlices(valueName, minDate, maxDate);
+        }
+    }
+
+    /**
+     * Отмечает, что одна из операций закончила работу с сохраненными разрезами ряда данных; после того как это сделали
+     * все операции, разрезы удаляются.
+     *
+     * @param valueName - название ряда данных
+     * @param minDate   - первая дата срезов
+     * @param maxDate   - последняя дата срезов
+     */
+    private void releaseCachedSlices(String valueName, Date minDate, Date maxDate) {
+        if (!sliceCaching || sliceCacheUsers <= 0) {
+            return;
+        }
+        String key = getSliceCacheKey(valueName, minDate, maxDate);
+        synchronized (sliceCacheReleases) {
+            int releases = sliceCacheReleases.merge(key, 1, Integer::sum);
+            if (releases >= sliceCacheUsers) {
+                sliceCacheReleases.remove(key);
+                if (sliceCache.remove(key) != null) {
+                    logger.incrementCounter("slice.cache_evictions");
+                }
+            }
+        }
+    }
+
+    /**
+     * Получает разрезы с накоплением по всем сочетаниям категорий; если включено сохранение разрезов, повторные вызовы
+     * с теми же параметрами (и одновременные вызовы из других потоков) используют уже полученный результат.
+     *
+     * @param valueName - название ряда данных
+     * @param minDate   - первая дата срезов
+     * @param maxDate   - последняя дата срезов
+     * @return список разрезов с накоплением
+     */
+    private List<Slice> getSlicesAccumulated(String valueName, Date minDate, Date maxDate) {
+        if (!sliceCaching) {
+            return sliceRetriever.getSlicesAccumulated(tableName, valueName, maxCategoriesPerCombo, maxSlicesPerCombo,
+                    minDate, maxDate, minComboSupport, cancellationToken);
+        }
+        return getSlices(getComboSlicesAccumulated(valueName, minDate, maxDate));
+    }
+
+    /**
+     * Получает разрезы с накоплением, сгруппированные по сочетаниям категорий, сохраняя их для повторных вызовов с
+     * теми же параметрами (используется только при включенном сохранении разрезов).
+     *
+     * @param valueName - название ряда данных
+     * @param minDate   - первая дата срезов
+     * @param maxDate   - последняя дата срезов
+     * @return список сочетаний категорий с разрезами
+     */
+    private List<ComboSlices> getComboSlicesAccumulated(String valueName, Date minDate, Date maxDate) {
+        CompletableFuture<List<ComboSlices>> future = new CompletableFuture<>();
+        CompletableFuture<List<ComboSlices>> cached = sliceCache.putIfAbsent(getSliceCacheKey(valueName, minDate, maxDate), future);
+        if (cached != null) {
+            logger.incrementCounter("slice.cache_hits");
+            return joinSlices(cached);
+        }
+        try {
+            List<ComboSlices> comboSlices = new ArrayList<>();
+            PruningStats pruning = new PruningStats();
+            sliceRetriever.streamComboSlicesAccumulated(tableName, valueName, maxCategoriesPerCombo, maxSlicesPerCombo,
+                    minDate, maxDate, minComboSupport, new HashMap<>(), pruning, cancellationToken).forEachOrdered(comboSlices::add);
+            sliceRetriever.logPruning(pruning);
+            future.complete(comboSlices);
+            return comboSlices;
+        } catch (RuntimeException ex) {
+            sliceCache.remove(getSliceCacheKey(valueName, minDate, maxDate));
+            future.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Записывает в базу данных интервалы уменьшения или отсутствия роста по сочетаниям ряда данных и категорий, пропуская
+     * сочетания, завершенные предыдущим запуском с теми же параметрами и данными. Данные сравниваются по границам дат,
+     * количеству строк и общему количеству операций таблицы, поэтому после изменения данных экспорт выполняется заново.
+     *
+     * @param decreases       - true для интервалов уменьшения, false для интервалов отсутствия роста
+     * @param minIntervalMult - минимальная длина интервалов
+     * @param thresholdMult   - порог изменения значения
+     * @param maxIntervals    - ограничение на количество интервалов для каждого сочетания категорий
+     */
+    private void exportIntervalsResumable(boolean decreases, double minIntervalMult, double thresholdMult, int maxIntervals) {
+        String intervalTableName = tableName + (decreases ? "_decreases" : "_constants");
+        String stateTableName = intervalTableName + "_state";
+        String progressTableName = intervalTableName + "_progress";
+        List<Date> borderDates = getBorderDates();
+        String runKey = minIntervalMult + ";" + thresholdMult + ";" + maxIntervals + ";" + borderDates.get(0).getTime() + ";" +
+                borderDates.get(1).getTime() + ";" + maxCategoriesPerCombo + ";" + maxSlicesPerCombo + ";" + minComboSupport +
+                ";" + dbService.getRowCount(tableName) + ";" + dbService.getTotalAmount(tableName, borderDates.get(0), borderDates.get(1));
+        Map<String, Long> completedUnits = dbService.tableExists(progressTableName) ?
+                dbService.getCompletedUnits(progressTableName, runKey) : new HashMap<>();
+        if (completedUnits.isEmpty()) {
+            if (decreases) {
+                createDecreasesTable();
+            } else {
+                createConstantsTable();
+            }
+            dbService.createProgressTable(progressTableName);
+        } else {
+            logger.logMessage("Продолжается прерванный экспорт, пропускается " + completedUnits.size() + " завершенных сочетаний.");
+        }
+        logger.logMessage("Начинается экспорт интервалов " + (decreases ? "уменьшения" : "отсутствия роста") + "...");
+        boolean saveStates = dbService.tableExists(stateTableName) &&
+                !dbService.usesRollups(tableName, borderDates.get(0), borderDates.get(1));
+        String[] colNames = dbService.getCategoryNames(tableName).toArray(new String[0]);
+        List<String> valueNames = getValueNames();
+        for (String valueName : valueNames) {
+            Map<String, Long> completedCombos = new HashMap<>();
+            for (Map.Entry<String, Long> unit : completedUnits.entrySet()) {
+                if (unit.getKey().startsWith(valueName + "|")) {
+                    completedCombos.put(unit.getKey().substring(valueName.length() + 1), unit.getValue());
+                }
+            }
+            final int[] exported = new int[2];
+            PruningStats pruning = new PruningStats();
+            runForValue(valueName, borderDates.get(0), borderDates.get(1), arena -> {
+                Stream<ComboSlices> combos = sliceCaching && completedCombos.isEmpty() ?
+                        getComboSlicesAccumulated(valueName, borderDates.get(0), borderDates.get(1)).stream() :
+                        sliceRetriever.streamComboSlicesAccumulated(tableName, valueName, maxCategoriesPerCombo, maxSlicesPerCombo,
+                                borderDates.get(0), borderDates.get(1), minComboSupport, completedCombos, pruning, cancellationToken);
+                combos.forEachOrdered(comboSlices -> {
+                    List<SuspiciousInterval> intervals = decreases ?
+                            intervalFinder.getDecreasingIntervals(comboSlices.slices, minIntervalMult, thresholdMult,
+                                    maxIntervals, false, cancellationToken) :
+                            intervalFinder.getConstantIntervals(comboSlices.slices, minIntervalMult, thresholdMult,
+                                    maxIntervals, false, cancellationToken);
+                    try {
+                        if (!dbService.beginUnit()) {
+                            exported[1]++;
+                            return;
+                        }
+                        if (decreases) {
+                            dbService.insertDecrease(intervalTableName, colNames, intervals, borderDates.get(0), borderDates.get(1));
+                        } else {
+                            dbService.insertConstant(intervalTableName, colNames, intervals, borderDates.get(0), borderDates.get(1));
+                        }
+                        if (saveStates) {
+                            dbService.saveSliceStates(stateTableName, getSliceStates(comboSlices.slices, borderDates.get(1)));
+                        }
+                        if (dbService.commitUnit(progressTableName, runKey, valueName, comboSlices.getName(),
+                                comboSlices.totalAmount, intervals.size())) {
+                            exported[0] += intervals.size();
+                        } else {
+                            exported[1]++;
+                        }
+                    } finally {
+                        dbService.endUnit();
+                        if (arena != null) {
+                            arena.reset();
+                        }
+                    }
+                });
+                if (!sliceCaching || !completedCombos.isEmpty()) {
+                    sliceRetriever.logPruning(pruning);
+                }
+            });
+            logger.logMessage("Экспортировано " + exported[0] + " интервалов");
+            if (exported[1] > 0) {
+                logger.logError("Не удалось сохранить " + exported[1] + " сочетаний категорий, они будут обработаны при следующем запуске");
+            }
+        }
+        dbService.createResultIndexes(intervalTableName, decreases ? "decrease_score" : "flatness_score",
+                decreases ? "relative_diff" : "relative_value_range");
+        dbService.analyzeTable(intervalTableName);
+        logger.logMessage("Закончился экспорт интервалов " + (decreases ? "уменьшения." : "отсутствия роста."));
+    }
+
+    /**
+     * Записывает в базу данных интервалы уменьшения или отсутствия роста, найденные в новых данных. Если для ряда
+     * данных нет сохраненных состояний (например, полный экспорт использовал таблицы агрегатов), его интервалы
+     * удаляются и находятся заново по полным разрезам из исходной таблицы. Прежние интервалы разреза с той же
+     * начальной датой, что и найденные заново (например, интервал продолжился в новых данных), заменяются. Интервалы и состояния
+     * разрезов каждого ряда данных записываются одной транзакцией.
+     *
+     * @param decreases       - true для интервалов уменьшения, false для интервалов отсутствия роста
+     * @param minIntervalMult - минимальная длина интервалов
+     * @param thresholdMult   - порог изменения значения
+     * @param maxIntervals    - ограничение на количество новых интервалов для каждого ряда данных
+     */
+    private void exportIntervalsIncremental(boolean decreases, double minIntervalMult, double thresholdMult, int maxIntervals) {
+        String intervalTableName = tableName + (decreases ? "_decreases" : "_constants");
+        String stateTableName = intervalTableName + "_state";
+        if (!dbService.tableExists(intervalTableName) || !dbService.tableExists(stateTableName)) {
+            logger.logMessage("Не найдена таблица " + stateTableName + ", выполняется полный экспорт интервалов.");
+            if (decreases) {
+                createDecreasesTable();
+                exportDecreasesToDB(minIntervalMult, thresholdMult, maxIntervals);
+            } else {
+                createConstantsTable();
+                exportConstantsToDB(minIntervalMult, thresholdMult, maxIntervals);
+            }
+            return;
+        }
+        logger.logMessage("Начинается экспорт новых интервалов " + (decreases ? "уменьшения" : "отсутствия роста") + "...");
+        String[] colNames = dbService.getCategoryNames(tableName).toArray(new String[0]);
+        List<String> valueNames = getValueNames();
+        List<Date> borderDates = getBorderDates();
+        for (String valueName : valueNames) {
+            runInSliceArena(arena -> {
+                Map<String, SliceState> states = dbService.getSliceStates(stateTableName, valueName);
+                boolean rebuild = states.isEmpty();
+                if (rebuild) {
+                    logger.logMessage("Нет сохраненных состояний разрезов для " + valueName + ", интервалы находятся заново.");
+                }
+                List<Slice> slices = sliceRetriever.getSliceTailsAccumulated(tableName, valueName, maxCategoriesPerCombo,
+                        maxSlicesPerCombo, borderDates.get(0), borderDates.get(1), states, incrementalLookback, cancellationToken);
+                List<SuspiciousInterval> intervals = decreases ?
+                        intervalFinder.getDecreasingIntervals(slices, minIntervalMult, thresholdMult, Integer.MAX_VALUE, false, cancellationToken) :
+                        intervalFinder.getConstantIntervals(slices, minIntervalMult, thresholdMult, Integer.MAX_VALUE, false, cancellationToken);
+                List<SuspiciousInterval> newIntervals = getNewIntervals(intervals, states, maxIntervals);
+                boolean committed = false;
+                try {
+                    if (dbService.beginUnit()) {
+                        if (rebuild) {
+                            dbService.deleteIntervals(intervalTableName, valueName);
+                        } else {
+                            dbService.deleteSupersededIntervals(intervalTableName, colNames, newIntervals);
+                        }
+                        if (decreases) {
+                            dbService.insertDecrease(intervalTableName, colNames, newIntervals, borderDates.get(0), borderDates.get(1));
+                        } else {
+                            dbService.insertConstant(intervalTableName, colNames, newIntervals, borderDates.get(0), borderDates.get(1));
+                        }
+                        dbService.saveSliceStates(stateTableName, states.values());
+                        committed = dbService.commitUnit();
+                    }
+                } finally {
+                    dbService.endUnit();
+                }
+                if (committed) {
+                    logger.logMessage("Экспортировано " + newIntervals.size() + " новых интервалов");
+                } else {
+                    logger.logError("Не удалось сохранить новые интервалы " + valueName + ", они будут найдены при следующем запуске");
+                }
+            });
+        }
+        dbService.analyzeTable(intervalTableName);
+        dbService.analyzeTable(stateTableName);
+        logger.logMessage("Закончился экспорт новых интервалов " + (decreases ? "уменьшения." : "отсутствия роста."));
+    }
+
+    /**
+     * Потоковая загрузка данных: новые строки из каталога (или из стандартного ввода, если каталог не задан)
+     * добавляются в таблицу пакетами. После каждого пакета продолжаются только те разрезы, в которые попали его строки,
+     * а новые интервалы уменьшения сразу записываются в базу данных (в журнал выводятся maxLoggedIntervals интервалов
+     * с наибольшей оценкой). Перед началом загрузки выполняется exportDecreasesIncremental, чтобы учесть данные,
+     * добавленные после предыдущего экспорта.
+     * <p>
+     * Каждый пакет (строки, новые интервалы и состояния разрезов) записывается одной транзакцией; файлы пакета
+     * отмечаются как загруженные только после ее сохранения, а если пакет записать не удалось, они переименовываются в
+     * .csv.error, а состояния разрезов перечитываются из базы данных.
+     * <p>
+     * Строки должны поступать в порядке дат. Разрезы, которых не было при последнем экспорте (новые значения
+     * категорий), добавляются при следующем вызове exportDecreasesIncremental. Загрузка продолжается до окончания
+     * стандартного ввода или до отмены.
+     *
+     * @param spoolDirectory  - каталог, в который добавляются файлы csv с новыми строками, либо null для чтения из
+     *                        стандартного ввода
+     * @param minIntervalMult - минимальная длина интервалов, которые будут рассматриваться (измеряется как доля длины
+     *                        всего ряда)
+     * @param thresholdMult   - минимальный порог изменения значения, начиная с которого интервал будет
+     *                        рассматриваться (измеряется как доля среднеквадратического отклонения)
+     */
+    public void streamDecreases(File spoolDirectory, double minIntervalMult, double thresholdMult) {
+        exportDecreasesIncremental(minIntervalMult, thresholdMult, Integer.MAX_VALUE);
+        String intervalTableName = tableName + "_decreases";
+        String stateTableName = intervalTableName + "_state";
+        Map<String, String> columnTypes = dbService.getColumnTypes(tableName);
+        String[] colNames = columnTypes.keySet().toArray(new String[0]);
+        String[] colTypes = columnTypes.values().toArray(new String[0]);
+        List<String> categoryNames = dbService.getCategoryNames(tableName);
+        List<String> valueNames = getValueNames();
+        Map<String, SliceState> states = new HashMap<>();
+        for (String valueName : valueNames) {
+            states.putAll(dbService.getSliceStates(stateTableName, valueName));
+        }
+        List<String[]> categoryCombos = CategoryCombination.streamUpTo(categoryNames, maxCategoriesPerCombo)
+                .collect(Collectors.toList());
+        logger.logMessage("Начинается потоковая загрузка данных в таблицу " + tableName + " из " +
+                (spoolDirectory != null ? "каталога " + spoolDirectory.getPath() : "стандартного ввода") + "...");
+        runInSliceArena(arena -> {
+            try (RowStream rowStream = spoolDirectory != null ?
+                    new RowStream(spoolDirectory, colNames, config.getStreamPollMillis()) : new RowStream(System.in, colNames)) {
+                List<String[]> rows;
+                while ((rows = rowStream.nextBatch(config.getStreamBatchRows(), config.getStreamBatchMillis())) != null) {
+                    cancellationToken.throwIfCancelled();
+                    if (rows.isEmpty()) {
+                        continue;
+                    }
+                    long startTime = System.nanoTime();
+                    List<Slice> fragments = new ArrayList<>();
+                    List<SuspiciousInterval> newIntervals = new ArrayList<>();
+                    boolean committed = false;
+                    try {
+                        if (dbService.beginUnit()) {
+                            closeSliceStore();
+                            dataRetriever.appendRows(tableName, colNames, colTypes, rows);
+                        }
+                        if (!dbService.isUnitFailed()) {
+                            Collection<SliceState> affectedStates = getAffectedStates(colNames, rows, valueNames, categoryCombos, states);
+                            List<Date> borderDates = getBorderDates();
+                            fragments = sliceRetriever.getSliceFragments(tableName, affectedStates, borderDates.get(1),
+                                    incrementalLookback, cancellationToken);
+                            newIntervals = getNewIntervals(intervalFinder.getDecreasingIntervals(fragments, minIntervalMult,
+                                    thresholdMult, Integer.MAX_VALUE, false, cancellationToken), states, Integer.MAX_VALUE);
+                            dbService.deleteSupersededIntervals(intervalTableName, categoryNames.toArray(new String[0]), newIntervals);
+                            dbService.insertDecrease(intervalTableName, categoryNames.toArray(new String[0]), newIntervals,
+                                    borderDates.get(0), borderDates.get(1));
+                            dbService.saveSliceStates(stateTableName, affectedStates);
+                            committed = dbService.commitUnit();
+                        }
+                    } finally {
+                        dbService.endUnit();
+                    }
+                    if (!committed) {
+                        int rejectedRows = rowStream.reject();
+                        logger.logError("Не удалось записать пакет из " + rejectedRows + " строк, изменения пакета отменены");
+                        logger.incrementCounter("stream.failed_rows", rejectedRows);
+                        for (String valueName : valueNames) {
+                            states.putAll(dbService.getSliceStates(stateTableName, valueName));
+                        }
+                        if (arena != null) {
+                            arena.reset();
+                        }
+                        continue;
+                    }
+                    rowStream.commit();
+                    for (SuspiciousInterval interval : newIntervals.subList(0, Math.min(newIntervals.size(), maxLoggedIntervals))) {
+                        logger.logMessage("Новый интервал уменьшения: " + interval.slice.valueName + " " +
+                                getSliceName(interval.slice) + " с " + interval.getFirstPoint().date + " по " +
+                                interval.getLastPoint().date + ", оценка " + interval.getDecreaseScore());
+                    }
+                    logger.incrementCounter("stream.rows", rows.size());
+                    logger.incrementCounter("stream.intervals", newIntervals.size());
+                    logger.recordTime("stream.batch", startTime);
+                    logger.logMessage("Загружено " + rows.size() + " строк, обновлено " + fragments.size() + " разрезов, найдено " +
+                            newIntervals.size() + " новых интервалов уменьшения");
+                    if (arena != null) {
+                        arena.reset();
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        dbService.analyzeTable(tableName);
+        dbService.analyzeTable(intervalTableName);
+        logger.logMessage("Закончилась потоковая загрузка данных.");
+    }
+
+    /**
+     * Находит состояния разрезов, в которые попадают новые строки: для каждого сочетания категорий разрез строки
+     * определяется значениями этих категорий в строке.
+     *
+     * @param colNames       - названия столбцов таблицы
+     * @param rows           - новые строки
+     * @param valueNames     - названия рядов данных
+     * @param categoryCombos - сочетания категорий, по которым создаются разрезы
+     * @param states         - состояния всех разрезов
+     * @return состояния разрезов с новыми строками (разрезы без сохраненного состояния пропускаются)
+     */
+    private Collection<SliceState> getAffectedStates(String[] colNames, List<String[]> rows, List<String> valueNames,
+                                                     List<String[]> categoryCombos, Map<String, SliceState> states) {
+        List<String> colList = Arrays.asList(colNames);
+        Map<String, SliceState> affectedStates = new LinkedHashMap<>();
+        for (String[] categories : categoryCombos) {
+            int[] positions = new int[categories.length];
+            for (int i = 0; i < categories.length; i++) {
+                positions[i] = colList.indexOf(categories[i]);
+            }
+            for (String[] row : rows) {
+                String[] labels = new String[categories.length];
+                for (int i = 0; i < categories.length; i++) {
+                    labels[i] = "'" + row[positions[i]] + "'";
+                }
+                for (String valueName : valueNames) {
+                    String key = SliceState.getKey(valueName, categories, labels);
+                    SliceState state = states.get(key);
+                    if (state != null) {
+                        affectedStates.put(key, state);
+                    }
+                }
+            }
+        }
+        return affectedStates.values();
+    }
+
+    /**
+     * Отбирает интервалы фрагментов, которые заканчиваются после последней точки, обработанной ранее (остальные
+     * интервалы уже были найдены). Интервалы полностью полученных разрезов (без сохраненного состояния) отбираются все.
+     *
+     * @param intervals    - интервалы, найденные во фрагментах разрезов
+     * @param states       - состояния разрезов
+     * @param maxIntervals - ограничение на количество интервалов
+     * @return список новых интервалов
+     */
+    private List<SuspiciousInterval> getNewIntervals(List<SuspiciousInterval> intervals, Map<String, SliceState> states,
+                                                     int maxIntervals) {
+        List<SuspiciousInterval> newIntervals = new ArrayList<>();
+        for (SuspiciousInterval interval : intervals) {
+            if (newIntervals.size() >= maxIntervals) {
+                break;
+            }
+            SliceState state = states.get(SliceState.getKey(interval.slice.valueName, interval.slice.colNames,
+                    interval.slice.labels));
+            if (state == null || interval.getLastPoint().date.getTime() > state.getTailStartTime()) {
+                newIntervals.add(interval);
+            }
+        }
+        return newIntervals;
+    }
+
+    private String getSliceName(Slice slice) {
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < slice.colNames.length; i++) {
+            parts.add(slice.colNames[i] + "=" + slice.labels[i]);
+        }
+        return String.join(", ", parts);
+    }
+
+    /**
+     * Сохраняет состояния полностью полученных разрезов, чтобы следующий экспорт мог обработать только новые данные.
+     * Состояния не сохраняются, если таблицы состояний нет или разрезы получены из таблиц агрегатов (точки агрегатов
+     * нельзя продолжить точками исходной таблицы).
+     *
+     * @param stateTableName - название таблицы состояний
+     * @param slices         - разрезы с накоплением
+     * @param borderDates    - первая и последняя даты разрезов
+     */
+    private void saveSliceStates(String stateTableName, List<Slice> slices, List<Date> borderDates) {
+        if (!dbService.tableExists(stateTableName) || dbService.usesRollups(tableName, borderDates.get(0), borderDates.get(1))) {
+            return;
+        }
+        dbService.saveSliceStates(stateTableName, getSliceStates(slices, borderDates.get(1)));
+    }
+
+    /**
+     * Получает состояния полностью полученных разрезов.
+     *
+     * @param slices  - разрезы с накоплением
+     * @param maxDate - последняя дата, по которую получены разрезы
+     * @return список состояний (без пустых разрезов)
+     */
+    private List<SliceState> getSliceStates(List<Slice> slices, Date maxDate) {
+        List<SliceState> states = new ArrayList<>();
+        for (Slice slice : slices) {
+            SliceState state = SliceState.fromSlice(slice);
+            if (state != null) {
+                state.setProcessedTime(maxDate.getTime());
+                states.add(state);
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Получает сохраненные разрезы (дожидаясь их, если они получаются в другом потоке).
+     *
+     * @return список разрезов, либо null, если сохранение отключено или разрезы с такими параметрами не получались
+     */
+    private List<Slice> getCachedSlices(String valueName, Date minDate, Date maxDate) {
+        CompletableFuture<List<ComboSlices>> cached = sliceCaching ?
+                sliceCache.get(getSliceCacheKey(valueName, minDate, maxDate)) : null;
+        if (cached == null) {
+            return null;
+        }
+        logger.incrementCounter("slice.cache_hits");
+        return getSlices(joinSlices(cached));
+    }
+
+    private List<Slice> getSlices(List<ComboSlices> comboSlices) {
+        List<Slice> res = new ArrayList<>();
+        for (ComboSlices combo : comboSlices) {
+            res.addAll(combo.slices);
+        }
+        return res;
+    }
+
+    private List<ComboSlices> joinSlices(CompletableFuture<List<ComboSlices>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    private String getSliceCacheKey(String valueName, Date minDate, Date maxDate) {
+        return tableName + ";" + valueName + ";" + minDate.getTime() + ";" + maxDate.getTime() + ";" +
+                maxCategoriesPerCombo + ";" + maxSlicesPerCombo + ";" + minComboSupport;
+    }
+
+    /**
+     * Получает экспортер графиков, создавая его при первом обращении: задачи, которые не экспортируют изображения
+     * (загрузка csv, запись интервалов в базу данных), не загружают классы JFreeChart и AWT.
+     *
+     * @return экспортер графиков
+     */
+    private synchronized GraphExporter getGraphExporter() {
+        if (graphExporter == null) {
+            graphExporter = new GraphExporter(config.getExportThreads(), config.getDirectRendering(),
+                    config.getPngCompressionLevel());
+        }
+        return graphExporter;
     }
 
     public DatabaseService getDbService() {
@@ -0,0 +1,118 @@
+package com.Controler;
+
+import com.SupportClasses.ConsoleLogger;
+import com.SupportClasses.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Выполняет набор задач с зависимостями: задача запускается после завершения всех задач, от которых она зависит, а
+ * независимые задачи выполняются одновременно. Если задача завершилась с ошибкой, зависящие от нее задачи
+ * пропускаются.
+ */
+public class JobRunner {
+
+    private final Logger logger;
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+
+    public JobRunner() {
+        logger = new ConsoleLogger();
+    }
+
+    /**
+     * Добавляет задачу. Задачи, от которых она зависит, должны быть добавлены раньше, поэтому зависимости не могут
+     * образовать цикл.
+     *
+     * @param name         - уникальное название задачи
+     * @param action       - действие задачи
+     * @param dependencies - названия задач, которые должны завершиться до ее начала
+     * @throws IllegalArgumentException если задача с таким названием уже есть или зависимость не добавлена
+     */
+    public void addJob(String name, Runnable action, String... dependencies) {
+        if (jobs.containsKey(name)) {
+            throw new IllegalArgumentException("Задача " + name + " уже добавлена");
+        }
+        for (String dependency : dependencies) {
+            if (!jobs.containsKey(dependency)) {
+                throw new IllegalArgumentException("Задача " + name + " зависит от неизвестной задачи " + dependency);
+            }
+        }
+        jobs.put(name, new Job(action, dependencies));
+    }
+
+    public boolean hasJob(String name) {
+        return jobs.containsKey(name);
+    }
+
+    /**
+     * Выполняет все добавленные задачи и дожидается их завершения.
+     *
+     * @param threads - наибольшее количество одновременно выполняющихся задач
+     * @return названия задач, которые завершились с ошибкой или были пропущены (пустой список, если все выполнены)
+     */
+    public List<String> run(int threads) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+        try {
+            Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+            for (Map.Entry<String, Job> entry : jobs.entrySet()) {
+                final String name = entry.getKey();
+                final Job job = entry.getValue();
+                CompletableFuture<?>[] dependencies = Arrays.stream(job.dependencies).map(futures::get)
+                        .toArray(CompletableFuture[]::new);
+                futures.put(name, CompletableFuture.allOf(dependencies)
+                        .whenComplete((result, ex) -> {
+                            if (ex != null) {
+                                logger.logError("Задача " + name + " пропущена, так как не выполнены задачи, от которых она зависит");
+                            }
+                        })
+                        .thenRunAsync(() -> runJob(name, job.action), executor));
+            }
+            List<String> failedJobs = new ArrayList<>();
+            for (Map.Entry<String, CompletableFuture<Void>> future : futures.entrySet()) {
+                try {
+                    future.getValue().join();
+                } catch (CompletionException ex) {
+                    failedJobs.add(future.getKey());
+                }
+            }
+            return failedJobs;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void runJob(String name, Runnable action) {
+        logger.logMessage("Начинается задача " + name + "...");
+        long startTime = System.nanoTime();
+        try {
+            action.run();
+        } catch (RuntimeException ex) {
+            logger.logError("Задача " + name + " завершилась с ошибкой: " + ex);
+            throw ex;
+        } finally {
+            logger.recordTime("job." + name, startTime);
+        }
+        logger.logMessage("Закончилась задача " + name + ".");
+    }
+
+    private static class Job {
+
+        private final Runnable action;
+        private final String[] dependencies;
+
+        private Job(Runnable action, String[] dependencies) {
+            this.action = action;
+            this.dependencies = dependencies;
+        }
+
+    }
+
+}
@@ -34,13 +34,13 @@ public class AveragesApproximation implements Approximation {
      * Получает скользящую среднюю на срезе в виде массива значений.
      */
     private void calculateApproximation(Slice slice) {
-        int averageWindow = Math.max(8, (int) Math.sqrt(slice.points.length));
-        approximateValues = new long[slice.points.length];
-        for (int i = 0; i < slice.points.length; i++) {
+        int averageWindow = Math.max(8, (int) Math.sqrt(slice.size()));
+        approximateValues = new long[slice.size()];
+        for (int i = 0; i < slice.size(); i++) {
             long avg = 0;
             int pointCount = 0;
-            for (int j = Math.max(i - averageWindow, 0); j < Math.min(i + averageWindow, slice.points.length); j++) {
-                avg += slice.points[j].value;
+            for (int j = Math.max(i - averageWindow, 0); j < Math.min(i + averageWindow, slice.size()); j++) {
+                avg += slice.getValue(j);
                 pointCount++;
             }
             if (pointCount > 0) {
@@ -56,16 +56,16 @@ public class AveragesApproximation implements Approximation {
      */
     private void calculateSigma(Slice slice) {
         double varianceSum = 0;
-        for (int i = 0; i < slice.points.length; i++) {
-            varianceSum = varianceSum + Math.pow(slice.points[i].value - getApproximate(slice, i), 2);
+        for (int i = 0; i < slice.size(); i++) {
+            varianceSum = varianceSum + Math.pow(slice.getValue(i) - getApproximate(slice, i), 2);
         }
-        varianceSum = Math.sqrt(varianceSum / slice.points.length);
+        varianceSum = Math.sqrt(varianceSum / slice.size());
         sigma = varianceSum;
     }
 
     @Override
     public double getAngleMultiplier(Slice slice) {
-        return (double) (slice.points[slice.points.length - 1].value - slice.points[0].value) / slice.dateRange;
+        return (double) (slice.getValue(slice.size() - 1) - slice.getValue(0)) / slice.dateRange;
     }
 
 }
@@ -12,7 +12,7 @@ public class EmptyApproximation implements Approximation {
 
     @Override
     public long getApproximate(Slice slice, int pos) {
-        return slice.points[pos].value;
+        return slice.getValue(pos);
     }
 
     @Override
@@ -27,7 +27,7 @@ public class EmptyApproximation implements Approximation {
 
     @Override
     public double getAngleMultiplier(Slice slice) {
-        return (double) (slice.points[slice.points.length - 1].value - slice.points[0].value) / slice.dateRange;
+        return (double) (slice.getValue(slice.size() - 1) - slice.getValue(0)) / slice.dateRange;
     }
 
 
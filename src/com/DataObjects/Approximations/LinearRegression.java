@@ -14,9 +14,23 @@ public class LinearRegression implements Approximation {
         calculateApproximation(slice, start, end);
     }
 
+    /**
+     * Конструктор регрессии с заранее вычисленными коэффициентами (например, по накопленным суммам более длинного
+     * разреза, чем тот, к которому она применяется).
+     *
+     * @param approximationAngle  - наклон (изменение значения за единицу времени)
+     * @param approximationOffset - значение регрессии в момент первой точки разреза
+     * @param sigma               - среднеквадратичное отклонение
+     */
+    public LinearRegression(double approximationAngle, double approximationOffset, double sigma) {
+        this.approximationAngle = approximationAngle;
+        this.approximationOffset = approximationOffset;
+        this.sigma = sigma;
+    }
+
     @Override
     public long getApproximate(Slice slice, int pos) {
-        return (long) ((slice.points[pos].date.getTime() - slice.points[0].date.getTime()) * approximationAngle + approximationOffset);
+        return (long) ((slice.getTime(pos) - slice.getTime(0)) * approximationAngle + approximationOffset);
     }
 
     @Override
@@ -37,20 +51,20 @@ public class LinearRegression implements Approximation {
      * @param end   - индекс последней точки регрессии
      */
     private void calculateApproximation(Slice slice, int start, int end) {
-        long firstTime = slice.points[0].date.getTime();
+        long firstTime = slice.getTime(0);
         double sumX = 0;
         double sumY = 0;
         double sumXsq = 0;
         double sumXY = 0;
-        for (int i = Math.max(0, start); i < slice.points.length && i <= end; i++) {
-            long elapsedTime = slice.points[i].date.getTime() - firstTime;
+        for (int i = Math.max(0, start); i < slice.size() && i <= end; i++) {
+            long elapsedTime = slice.getTime(i) - firstTime;
             sumX += elapsedTime;
-            sumY += slice.points[i].value;
+            sumY += slice.getValue(i);
             sumXsq += Math.pow(elapsedTime, 2);
-            sumXY += elapsedTime * slice.points[i].value;
+            sumXY += elapsedTime * slice.getValue(i);
         }
-        approximationAngle = (sumXY * slice.points.length - sumX * sumY) / (sumXsq * slice.points.length - sumX * sumX);
-        approximationOffset = (sumY * sumXsq - sumX * sumXY) / (sumXsq * slice.points.length - sumX * sumX);
+        approximationAngle = (sumXY * slice.size() - sumX * sumY) / (sumXsq * slice.size() - sumX * sumX);
+        approximationOffset = (sumY * sumXsq - sumX * sumXY) / (sumXsq * slice.size() - sumX * sumX);
         calculateSigma(slice, start, end);
     }
 
@@ -63,10 +77,10 @@ public class LinearRegression implements Approximation {
      */
     private void calculateSigma(Slice slice, int start, int end) {
         double varianceSum = 0;
-        for (int i = Math.max(0, start); i < slice.points.length && i <= end; i++) {
-            varianceSum = varianceSum + Math.pow(slice.points[i].value - getApproximate(slice, i), 2);
+        for (int i = Math.max(0, start); i < slice.size() && i <= end; i++) {
+            varianceSum = varianceSum + Math.pow(slice.getValue(i) - getApproximate(slice, i), 2);
         }
-        varianceSum = Math.sqrt(varianceSum / slice.points.length);
+        varianceSum = Math.sqrt(varianceSum / slice.size());
         sigma = varianceSum;
     }
 
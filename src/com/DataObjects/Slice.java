@@ -1,24 +1,38 @@
 package com.DataObjects;
 
 import com.DataObjects.Approximations.*;
+import com.SupportClasses.Profiling.AccumulationEvent;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
 
 /**
  * Объект, содержащий в себе данные о разрезе - список точек с датами и соответствующими значениями, а также названия и
  * значения столбцов, по которым сделан разрез.
+ * <p>
+ * Если в потоке открыта область SliceArena, разрезы с накоплением и фрагменты хранят точки в ней, вне кучи, подряд в
+ * буфере (время, значение и количество операций каждой точки), а поле points у них равно null. Такие разрезы можно
+ * использовать только до освобождения области. Методы size, getTime, getValue, getAmount и getPoint работают с
+ * разрезами обоих видов.
  */
 public class Slice {
 
+    private static final int pointBytes = 3 * Long.BYTES;
+    private static final int valueOffset = Long.BYTES;
+    private static final int amountOffset = 2 * Long.BYTES;
+
     public final String tableName;
     public final String valueName;
     public final String[] colNames;
     public final String[] labels;
     public final SlicePoint[] points;
     public final long valueRange, dateRange, totalAmount;
+    public final int firstPosition;
     private final Approximation approximation;
+    private final ByteBuffer pointData;
+    private final int pointCount;
+    private final SliceArena arena;
+    private final int arenaGeneration;
 
     /**
      * Конструктор пустого разреза, для которого не найдено подходящих точек.
@@ -33,9 +47,14 @@ public class Slice {
         this.colNames = colNames;
         this.labels = labels;
         this.points = new SlicePoint[0];
+        this.pointData = null;
+        this.pointCount = 0;
+        this.arena = null;
+        this.arenaGeneration = 0;
         this.valueRange = 0;
         this.dateRange = 0;
         this.totalAmount = 0;
+        this.firstPosition = 0;
         this.approximation = new EmptyApproximation();
     }
 
@@ -49,12 +68,22 @@ public class Slice {
      * @param approximationType - тип функции приближения
      */
     public Slice(String tableName, String valueName, String[] colNames, String[] labels, SlicePoint[] points, ApproximationType approximationType) {
+        this(tableName, valueName, colNames, labels, points, null, null, approximationType);
+    }
+
+    private Slice(String tableName, String valueName, String[] colNames, String[] labels, SlicePoint[] points,
+                  ByteBuffer pointData, SliceArena arena, ApproximationType approximationType) {
         this.tableName = tableName;
         this.valueName = valueName;
         this.colNames = colNames;
         this.labels = labels;
         this.points = points;
-        if (points.length > 0) {
+        this.pointData = pointData;
+        this.pointCount = points != null ? points.length : pointData.capacity() / pointBytes;
+        this.arena = arena;
+        this.arenaGeneration = arena != null ? arena.getGeneration() : 0;
+        this.firstPosition = 0;
+        if (pointCount > 0) {
             this.valueRange = getValueRange();
             this.dateRange = getDateRange();
             this.totalAmount = getTotalAmount();
@@ -63,7 +92,7 @@ public class Slice {
                     this.approximation = new EmptyApproximation();
                     break;
                 case LINEAR:
-                    this.approximation = new LinearRegression(this, 0, points.length - 1);
+                    this.approximation = new LinearRegression(this, 0, pointCount - 1);
                     break;
                 case AVERAGES:
                     this.approximation = new AveragesApproximation(this);
@@ -79,6 +108,39 @@ public class Slice {
         }
     }
 
+    /**
+     * Конструктор фрагмента разреза - последних точек более длинного разреза, для которого функция приближения, разность
+     * значений и длина временного промежутка уже известны. Поиск интервалов во фрагменте использует пороги всего
+     * разреза, а номера точек фрагмента в полном разрезе начинаются с firstPosition. Если в потоке открыта область
+     * SliceArena, точки фрагмента размещаются в ней.
+     *
+     * @param tableName     - таблица, из которой получен разрез
+     * @param colNames      - названия столбцов, по которым создается разрез
+     * @param labels        - значения соответствующих столбцов
+     * @param points        - точки фрагмента
+     * @param approximation - функция приближения (относительно первой точки фрагмента)
+     * @param valueRange    - разность между максимальным и минимальным значениями всего разреза
+     * @param dateRange     - расстояние во времени между первой и последней точками всего разреза
+     * @param firstPosition - номер первой точки фрагмента в полном разрезе
+     */
+    public Slice(String tableName, String valueName, String[] colNames, String[] labels, SlicePoint[] points,
+                 Approximation approximation, long valueRange, long dateRange, int firstPosition) {
+        this.tableName = tableName;
+        this.valueName = valueName;
+        this.colNames = colNames;
+        this.labels = labels;
+        this.arena = SliceArena.current();
+        this.arenaGeneration = arena != null ? arena.getGeneration() : 0;
+        this.points = arena != null ? null : points;
+        this.pointData = arena != null ? toPointData(points, arena) : null;
+        this.pointCount = points.length;
+        this.valueRange = valueRange;
+        this.dateRange = dateRange;
+        this.totalAmount = getTotalAmount();
+        this.firstPosition = firstPosition;
+        this.approximation = approximation;
+    }
+
     /**
      * Генерирует версию данного разреза с накоплением, т. е. значение i-й точки в новом разрезе равно сумме значений
      * точек с 0 по i в текущем разрезе.
@@ -86,18 +148,59 @@ public class Slice {
      * @return новый разрез с накоплением
      */
     public Slice getAccumulation() {
-        if (points.length > 0) {
-            List<SlicePoint> pointsTruncated = new ArrayList<>();
-            pointsTruncated.add(new SlicePoint(points[0].value, 1, points[0].date));
-            for (int i = 1; i < points.length; i++) {
-                SlicePoint newPoint = new SlicePoint(pointsTruncated.get(pointsTruncated.size() - 1).value + points[i].value,
-                        1, points[i].date);
-                if (points[i].date.getTime() == pointsTruncated.get(pointsTruncated.size() - 1).date.getTime()) {
-                    pointsTruncated.remove(pointsTruncated.size() - 1);
+        AccumulationEvent event = new AccumulationEvent();
+        event.begin();
+        Slice accumulation = getAccumulationPoints();
+        if (event.shouldCommit()) {
+            event.tableName = tableName;
+            event.setLabels(colNames, labels);
+            event.points = pointCount;
+            event.accumulatedPoints = accumulation.pointCount;
+            event.commit();
+        }
+        return accumulation;
+    }
+
+    /**
+     * Строит разрез с накоплением: точки с одинаковой датой объединяются в одну. Если в потоке открыта область
+     * SliceArena, точки нового разреза размещаются в ней.
+     *
+     * @return новый разрез с накоплением
+     */
+    private Slice getAccumulationPoints() {
+        if (pointCount > 0) {
+            int accumulatedCount = 1;
+            for (int i = 1; i < pointCount; i++) {
+                if (getTime(i) != getTime(i - 1)) {
+                    accumulatedCount++;
                 }
-                pointsTruncated.add(newPoint);
             }
-            return new Slice(tableName, valueName, colNames, labels, pointsTruncated.toArray(new SlicePoint[0]), approximation.getType());
+            SliceArena currentArena = SliceArena.current();
+            if (currentArena == null) {
+                SlicePoint[] accumulatedPoints = new SlicePoint[accumulatedCount];
+                long value = 0;
+                int pos = -1;
+                for (int i = 0; i < pointCount; i++) {
+                    value += points[i].value;
+                    if (i == 0 || points[i].date.getTime() != points[i - 1].date.getTime()) {
+                        pos++;
+                    }
+                    accumulatedPoints[pos] = new SlicePoint(value, 1, points[i].date);
+                }
+                return new Slice(tableName, valueName, colNames, labels, accumulatedPoints, approximation.getType());
+            }
+            ByteBuffer accumulatedData = currentArena.allocate(Math.multiplyExact(accumulatedCount, pointBytes));
+            long value = 0;
+            int pos = -1;
+            for (int i = 0; i < pointCount; i++) {
+                value += getValue(i);
+                if (i == 0 || getTime(i) != getTime(i - 1)) {
+                    pos++;
+                }
+                putPoint(accumulatedData, pos, getTime(i), value, 1);
+            }
+            return new Slice(tableName, valueName, colNames, labels, null, accumulatedData, currentArena,
+                    approximation.getType());
         } else {
             return this;
         }
@@ -112,7 +215,7 @@ public class Slice {
      * @return true, если уменьшение достаточно велико, иначе false
      */
     public boolean isIntervalDecreasing(int pos1, int pos2, long threshold) {
-        double decrease = points[pos2].value - points[pos1].value -
+        double decrease = getValue(pos2) - getValue(pos1) -
                 getApproximate(pos2) + getApproximate(pos1);
         return decrease < -threshold;
     }
@@ -137,14 +240,15 @@ public class Slice {
      * @return значение разности
      */
     public long getLocalValueRange(int pos1, int pos2) {
-        long min = points[pos1].value;
-        long max = points[pos1].value;
+        long min = getValue(pos1);
+        long max = getValue(pos1);
         for (int i = pos1; i <= pos2; i++) {
-            if (points[i].value < min) {
-                min = points[i].value;
+            long value = getValue(i);
+            if (value < min) {
+                min = value;
             }
-            if (points[i].value > max) {
-                max = points[i].value;
+            if (value > max) {
+                max = value;
             }
         }
         return Math.abs(max - min);
@@ -158,7 +262,7 @@ public class Slice {
      * @return количество единиц времени между двумя точками
      */
     public long getDateDistance(int pos1, int pos2) {
-        return points[pos2].date.getTime() - points[pos1].date.getTime();
+        return getTime(pos2) - getTime(pos1);
     }
 
     /**
@@ -198,8 +302,8 @@ public class Slice {
      */
     private long getTotalAmount() {
         long res = 0;
-        for (SlicePoint point : points) {
-            res += point.amount;
+        for (int i = 0; i < pointCount; i++) {
+            res += getAmount(i);
         }
         return res;
     }
@@ -214,11 +318,92 @@ public class Slice {
     }
 
     public SlicePoint getFirstPoint() {
-        return points[0];
+        return getPoint(0);
     }
 
     public SlicePoint getLastPoint() {
-        return points[points.length - 1];
+        return getPoint(pointCount - 1);
+    }
+
+    /**
+     * Получает количество точек разреза.
+     *
+     * @return количество точек
+     */
+    public int size() {
+        return pointCount;
+    }
+
+    /**
+     * Получает значение точки разреза.
+     *
+     * @param pos - номер точки
+     * @return значение
+     */
+    public long getValue(int pos) {
+        if (points != null) {
+            return points[pos].value;
+        }
+        return getPointData().getLong(pos * pointBytes + valueOffset);
+    }
+
+    /**
+     * Получает время точки разреза.
+     *
+     * @param pos - номер точки
+     * @return время в миллисекундах
+     */
+    public long getTime(int pos) {
+        if (points != null) {
+            return points[pos].date.getTime();
+        }
+        return getPointData().getLong(pos * pointBytes);
+    }
+
+    /**
+     * Получает количество операций в точке разреза.
+     *
+     * @param pos - номер точки
+     * @return количество операций
+     */
+    public long getAmount(int pos) {
+        if (points != null) {
+            return points[pos].amount;
+        }
+        return getPointData().getLong(pos * pointBytes + amountOffset);
+    }
+
+    /**
+     * Получает точку разреза (для кода, которому нужны отдельные точки, например при выводе графиков). Для разреза
+     * в области SliceArena создается новый объект.
+     *
+     * @param pos - номер точки
+     * @return точка разреза
+     */
+    public SlicePoint getPoint(int pos) {
+        if (points != null) {
+            return points[pos];
+        }
+        if (pos < 0 || pos >= pointCount) {
+            throw new ArrayIndexOutOfBoundsException(pos);
+        }
+        return new SlicePoint(getValue(pos), getAmount(pos), new Timestamp(getTime(pos)));
+    }
+
+    /**
+     * Создает массив всех точек разреза в куче.
+     *
+     * @return точки разреза
+     */
+    public SlicePoint[] getPoints() {
+        if (points != null) {
+            return points.clone();
+        }
+        SlicePoint[] res = new SlicePoint[pointCount];
+        for (int i = 0; i < pointCount; i++) {
+            res[i] = getPoint(i);
+        }
+        return res;
     }
 
     /**
@@ -227,20 +412,10 @@ public class Slice {
      * @return значение разности
      */
     private long getValueRange() {
-        if (points.length == 0) {
+        if (pointCount == 0) {
             return 0;
         }
-        long min = points[0].value;
-        long max = points[0].value;
-        for (SlicePoint point : points) {
-            if (point.value < min) {
-                min = point.value;
-            }
-            if (point.value > max) {
-                max = point.value;
-            }
-        }
-        return max - min;
+        return getLocalValueRange(0, pointCount - 1);
     }
 
     /**
@@ -249,7 +424,28 @@ public class Slice {
      * @return количество единиц времени между первой и последней точками
      */
     private long getDateRange() {
-        return points[points.length - 1].date.getTime() - points[0].date.getTime();
+        return getTime(pointCount - 1) - getTime(0);
+    }
+
+    private ByteBuffer getPointData() {
+        if (arena != null) {
+            arena.checkGeneration(arenaGeneration);
+        }
+        return pointData;
+    }
+
+    private static ByteBuffer toPointData(SlicePoint[] points, SliceArena arena) {
+        ByteBuffer res = arena.allocate(Math.multiplyExact(points.length, pointBytes));
+        for (int i = 0; i < points.length; i++) {
+            putPoint(res, i, points[i].date.getTime(), points[i].value, points[i].amount);
+        }
+        return res;
+    }
+
+    private static void putPoint(ByteBuffer pointData, int pos, long time, long value, long amount) {
+        pointData.putLong(pos * pointBytes, time);
+        pointData.putLong(pos * pointBytes + valueOffset, value);
+        pointData.putLong(pos * pointBytes + amountOffset, amount);
     }
 
     @Override
@@ -257,12 +453,26 @@ public class Slice {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Slice slice = (Slice) o;
-        return Arrays.equals(points, slice.points);
+        if (pointCount != slice.pointCount) {
+            return false;
+        }
+        for (int i = 0; i < pointCount; i++) {
+            if (getTime(i) != slice.getTime(i) || getValue(i) != slice.getValue(i) || getAmount(i) != slice.getAmount(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(points);
+        int res = 1;
+        for (int i = 0; i < pointCount; i++) {
+            res = 31 * res + Long.hashCode(getValue(i));
+            res = 31 * res + Long.hashCode(getAmount(i));
+            res = 31 * res + Long.hashCode(getTime(i));
+        }
+        return res;
     }
 
 }
@@ -0,0 +1,168 @@
+package com.DataObjects;
+
+import com.SupportClasses.MetricsRegistry;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Область памяти вне кучи, в которой размещаются точки разрезов с накоплением. Пока область открыта в потоке,
+ * разрезы с накоплением, создаваемые в этом потоке, хранят точки в ее блоках (ByteBuffer.allocateDirect), поэтому
+ * размер кучи и паузы сборщика мусора не зависят от количества точек.
+ * <p>
+ * Время жизни разрезов задается явно: reset освобождает область для следующей единицы экспорта (например, ряда
+ * данных или сочетания категорий), а close - закрывает ее. Блоки переиспользуются после reset, поэтому память вне
+ * кучи ограничена наибольшим объемом точек одной единицы. Разрезы из области нельзя использовать после reset или
+ * close: обращение к их точкам завершается исключением IllegalStateException.
+ * <p>
+ * Область используется потоком, который ее открыл: reset и close вызываются только из него, поэтому поколение
+ * области - обычное поле, и проверка при каждом обращении к точкам не требует синхронизации. Разрезы можно читать и
+ * из других потоков, пока область открыта (например, после передачи через ExecutorService).
+ */
+public class SliceArena implements AutoCloseable {
+
+    private static final ThreadLocal<SliceArena> currentArena = new ThreadLocal<>();
+
+    private final int chunkBytes;
+    private final SliceArena previousArena;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private final List<ByteBuffer> largeBuffers = new ArrayList<>();
+    private int chunkIndex = 0;
+    private int chunkOffset = 0;
+    private long usedBytes = 0;
+    private int generation = 0;
+    private boolean closed = false;
+
+    private SliceArena(int chunkBytes, SliceArena previousArena) {
+        this.chunkBytes = chunkBytes;
+        this.previousArena = previousArena;
+    }
+
+    /**
+     * Открывает область в текущем потоке. Если в потоке уже открыта другая область, она снова становится текущей
+     * после закрытия новой.
+     *
+     * @param chunkBytes - размер одного блока памяти (точки, которые в него не помещаются, получают отдельный блок)
+     * @return открытая область
+     */
+    public static SliceArena open(int chunkBytes) {
+        SliceArena arena = new SliceArena(chunkBytes, currentArena.get());
+        currentArena.set(arena);
+        return arena;
+    }
+
+    /**
+     * Получает область, открытую в текущем потоке.
+     *
+     * @return область, либо null, если точки размещаются в куче
+     */
+    static SliceArena current() {
+        return currentArena.get();
+    }
+
+    /**
+     * Выделяет участок памяти для точек разреза.
+     *
+     * @param bytes - размер участка
+     * @return участок с порядком байтов платформы
+     */
+    ByteBuffer allocate(int bytes) {
+        if (closed) {
+            throw new IllegalStateException("Область памяти разрезов закрыта");
+        }
+        usedBytes += bytes;
+        if (bytes > chunkBytes) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+            largeBuffers.add(buffer);
+            return buffer;
+        }
+        if (chunkIndex < chunks.size() && chunkOffset + bytes > chunkBytes) {
+            chunkIndex++;
+            chunkOffset = 0;
+        }
+        if (chunkIndex == chunks.size()) {
+            chunks.add(ByteBuffer.allocateDirect(chunkBytes));
+        }
+        ByteBuffer chunk = chunks.get(chunkIndex).duplicate();
+        chunk.position(chunkOffset).limit(chunkOffset + bytes);
+        chunkOffset += bytes;
+        return chunk.slice().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Получает номер текущего поколения области, которое меняется при каждом reset.
+     *
+     * @return номер поколения
+     */
+    int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Проверяет, что участки, выделенные в определенном поколении, еще не освобождены (close тоже меняет поколение).
+     *
+     * @param generation - номер поколения участка
+     */
+    void checkGeneration(int generation) {
+        if (this.generation != generation) {
+            throw new IllegalStateException("Разрез использован после освобождения области памяти");
+        }
+    }
+
+    /**
+     * Получает объем памяти, занятый точками с последнего reset.
+     *
+     * @return количество байтов
+     */
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Получает объем памяти вне кучи, который удерживает область.
+     *
+     * @return количество байтов
+     */
+    public long getReservedBytes() {
+        long res = (long) chunks.size() * chunkBytes;
+        for (ByteBuffer buffer : largeBuffers) {
+            res += buffer.capacity();
+        }
+        return res;
+    }
+
+    /**
+     * Освобождает все разрезы области для следующей единицы экспорта. Блоки памяти остаются за областью, отдельные
+     * блоки для больших разрезов освобождаются.
+     */
+    public void reset() {
+        if (usedBytes > 0) {
+            MetricsRegistry.getInstance().recordValue("slice.arena_bytes", usedBytes);
+        }
+        generation++;
+        chunkIndex = 0;
+        chunkOffset = 0;
+        usedBytes = 0;
+        largeBuffers.clear();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        reset();
+        closed = true;
+        chunks.clear();
+        if (currentArena.get() == this) {
+            if (previousArena != null) {
+                currentArena.set(previousArena);
+            } else {
+                currentArena.remove();
+            }
+        }
+    }
+
+}
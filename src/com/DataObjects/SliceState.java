@@ -0,0 +1,318 @@
+package com.DataObjects;
+
+import com.DataObjects.Approximations.Approximation;
+import com.DataObjects.Approximations.ApproximationType;
+import com.DataObjects.Approximations.AveragesApproximation;
+import com.DataObjects.Approximations.EmptyApproximation;
+import com.DataObjects.Approximations.LinearRegression;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Сохраненное состояние разреза с накоплением, по которому можно продолжить накопление и пересчитать линейную регрессию
+ * после добавления новых данных, не получая весь разрез заново: последнее накопленное значение и дата последней
+ * обработанной точки, минимум и максимум значений, а также суммы для метода наименьших квадратов (время отсчитывается
+ * от первой точки разреза).
+ * <p>
+ * Исходные строки с датой последней точки могут поступить частями (например, в разных пакетах потоковой загрузки),
+ * поэтому состояние хранит сумму исходных значений в последней точке, а минимум и максимум - без учета последней
+ * точки: если в нее добавлены новые строки, она заменяется, а не добавляется.
+ */
+public class SliceState {
+
+    public final String valueName;
+    public final String[] colNames;
+    public final String[] labels;
+    public final long firstTime;
+    private long lastTime, lastValue, lastTimeSum, processedTime, tailStartTime;
+    private int pointCount;
+    private long previousMinValue, previousMaxValue;
+    private double sumX, sumY, sumXX, sumXY, sumYY;
+
+    /**
+     * Конструктор состояния, сохраненного в базе данных.
+     *
+     * @param valueName        - название ряда данных
+     * @param colNames         - названия столбцов, по которым создается разрез
+     * @param labels           - значения соответствующих столбцов
+     * @param firstTime        - дата первой точки разреза (в миллисекундах)
+     * @param lastTime         - дата последней точки разреза (в миллисекундах)
+     * @param processedTime    - дата, до которой обработаны исходные данные (в миллисекундах)
+     * @param lastValue        - накопленное значение в последней точке
+     * @param lastTimeSum      - сумма исходных значений с датой последней точки
+     * @param pointCount       - количество точек разреза с накоплением
+     * @param previousMinValue - минимальное накопленное значение без учета последней точки
+     * @param previousMaxValue - максимальное накопленное значение без учета последней точки
+     * @param sums             - суммы x, y, x^2, xy и y^2 по всем точкам
+     */
+    public SliceState(String valueName, String[] colNames, String[] labels, long firstTime, long lastTime, long processedTime,
+                      long lastValue, long lastTimeSum, int pointCount, long previousMinValue, long previousMaxValue, double[] sums) {
+        this.valueName = valueName;
+        this.colNames = colNames;
+        this.labels = labels;
+        this.firstTime = firstTime;
+        this.lastTime = lastTime;
+        this.processedTime = processedTime;
+        this.lastValue = lastValue;
+        this.lastTimeSum = lastTimeSum;
+        this.tailStartTime = lastTime;
+        this.pointCount = pointCount;
+        this.previousMinValue = previousMinValue;
+        this.previousMaxValue = previousMaxValue;
+        this.sumX = sums[0];
+        this.sumY = sums[1];
+        this.sumXX = sums[2];
+        this.sumXY = sums[3];
+        this.sumYY = sums[4];
+    }
+
+    /**
+     * Создает состояние по полностью полученному разрезу с накоплением.
+     *
+     * @param slice - разрез с накоплением
+     * @return состояние разреза, либо null, если в разрезе нет точек
+     */
+    public static SliceState fromSlice(Slice slice) {
+        if (slice.size() == 0) {
+            return null;
+        }
+        long firstTime = slice.getTime(0);
+        SliceState state = new SliceState(slice.valueName, slice.colNames, slice.labels, firstTime, firstTime, firstTime,
+                0, 0, 0, Long.MAX_VALUE, Long.MIN_VALUE, new double[5]);
+        for (int i = 0; i < slice.size(); i++) {
+            state.addPoint(slice.getTime(i), slice.getValue(i));
+        }
+        int last = slice.size() - 1;
+        state.lastTimeSum = last > 0 ? slice.getValue(last) - slice.getValue(last - 1) : slice.getValue(0);
+        state.processedTime = state.lastTime;
+        state.tailStartTime = Long.MIN_VALUE;
+        return state;
+    }
+
+    /**
+     * Получает ключ состояния, по которому его можно найти среди состояний других разрезов.
+     *
+     * @param valueName - название ряда данных
+     * @param colNames  - названия столбцов разреза
+     * @param labels    - значения соответствующих столбцов
+     * @return ключ состояния
+     */
+    public static String getKey(String valueName, String[] colNames, String[] labels) {
+        return valueName + "|" + String.join(";", colNames) + "|" + String.join(";", labels);
+    }
+
+    public String getKey() {
+        return getKey(valueName, colNames, labels);
+    }
+
+    /**
+     * Получает дату, с которой нужно получить исходные данные для продолжения разреза: кроме новых точек, во фрагмент
+     * входит последняя часть уже обработанных точек, чтобы найти интервалы, которые начинаются до новых данных.
+     *
+     * @param lookbackMult - длина уже обработанной части фрагмента (доля длины временного промежутка разреза, от 0 до 1)
+     * @return дата начала фрагмента
+     */
+    public Date getLookbackStart(double lookbackMult) {
+        return new Date(lastTime - (long) ((lastTime - firstTime) * Math.max(0, Math.min(lookbackMult, 1))));
+    }
+
+    /**
+     * Добавляет к состоянию новые точки и получает фрагмент разреза с накоплением, начинающийся с даты getLookbackStart.
+     * Исходные точки с датой раньше последней обработанной считаются уже учтенными: по ним восстанавливается
+     * накопленное значение перед началом фрагмента. Если сумма исходных точек с датой последней обработанной
+     * изменилась (строки этой даты поступили частями), последняя точка пересчитывается, а интервалы, которые на ней
+     * заканчиваются, считаются новыми. Функция приближения фрагмента вычисляется по всему разрезу
+     * (для линейной регрессии - по сохраненным суммам), поэтому пороги поиска интервалов те же, что и при полном
+     * получении разреза.
+     *
+     * @param tableName         - таблица, из которой получен разрез
+     * @param points            - исходные (без накопления) точки разреза с начала фрагмента, упорядоченные по дате
+     * @param approximationType - тип функции приближения
+     * @return фрагмент разреза, либо null, если новых точек нет
+     */
+    public Slice append(String tableName, SlicePoint[] points, ApproximationType approximationType) {
+        if (points.length == 0) {
+            return null;
+        }
+        long processedSum = 0;
+        long lastTimeSourceSum = 0;
+        long pointTime = points[0].date.getTime();
+        long pointTimeSum = 0;
+        boolean hasNewPoints = false;
+        for (SlicePoint point : points) {
+            if (point.date.getTime() < lastTime) {
+                processedSum += point.value;
+            } else if (point.date.getTime() == lastTime) {
+                lastTimeSourceSum += point.value;
+            } else {
+                hasNewPoints = true;
+            }
+            if (point.date.getTime() != pointTime) {
+                pointTime = point.date.getTime();
+                pointTimeSum = 0;
+            }
+            pointTimeSum += point.value;
+        }
+        boolean lastTimeChanged = lastTimeSourceSum != lastTimeSum;
+        if (!hasNewPoints && !lastTimeChanged) {
+            return null;
+        }
+        List<SlicePoint> accumulated = new ArrayList<>();
+        int processedPoints = 0;
+        long value = lastValue - lastTimeSum - processedSum;
+        for (SlicePoint point : points) {
+            value += point.value;
+            SlicePoint previous = accumulated.isEmpty() ? null : accumulated.get(accumulated.size() - 1);
+            if (previous != null && previous.date.getTime() == point.date.getTime()) {
+                accumulated.set(accumulated.size() - 1, new SlicePoint(value, 1, point.date));
+            } else {
+                accumulated.add(new SlicePoint(value, 1, point.date));
+                if (point.date.getTime() <= lastTime) {
+                    processedPoints++;
+                }
+            }
+        }
+        int firstPosition = pointCount - processedPoints;
+        long previousLastTime = lastTime;
+        tailStartTime = lastTimeChanged ? lastTime - 1 : lastTime;
+        for (SlicePoint point : accumulated) {
+            if (point.date.getTime() == previousLastTime && lastTimeChanged) {
+                replaceLastPoint(point.value);
+            } else if (point.date.getTime() > previousLastTime) {
+                addPoint(point.date.getTime(), point.value);
+            }
+        }
+        lastTimeSum = pointTimeSum;
+        SlicePoint[] fragmentPoints = accumulated.toArray(new SlicePoint[0]);
+        Slice fragment = new Slice(tableName, valueName, colNames, labels, fragmentPoints, ApproximationType.EMPTY);
+        return new Slice(tableName, valueName, colNames, labels, fragmentPoints, getApproximation(fragment, approximationType),
+                getMaxValue() - getMinValue(), lastTime - firstTime, firstPosition);
+    }
+
+    /**
+     * Получает дату последней точки, обработанной до последнего вызова append: интервалы фрагмента, которые
+     * заканчиваются не позже нее, уже были найдены ранее.
+     *
+     * @return дата в миллисекундах
+     */
+    public long getTailStartTime() {
+        return tailStartTime;
+    }
+
+    public long getLastTime() {
+        return lastTime;
+    }
+
+    /**
+     * Получает дату, до которой обработаны исходные данные (последнюю дату таблицы при последнем обновлении): если
+     * она не меньше последней даты таблицы, новых данных для разреза нет и получать его точки не нужно.
+     *
+     * @return дата в миллисекундах
+     */
+    public long getProcessedTime() {
+        return processedTime;
+    }
+
+    public void setProcessedTime(long processedTime) {
+        this.processedTime = Math.max(processedTime, lastTime);
+    }
+
+    public long getLastValue() {
+        return lastValue;
+    }
+
+    /**
+     * Получает сумму исходных значений с датой последней точки: по ней append определяет, что строки этой даты
+     * поступили не все сразу.
+     *
+     * @return сумма значений
+     */
+    public long getLastTimeSum() {
+        return lastTimeSum;
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    public long getMinValue() {
+        return Math.min(previousMinValue, lastValue);
+    }
+
+    public long getMaxValue() {
+        return Math.max(previousMaxValue, lastValue);
+    }
+
+    public long getPreviousMinValue() {
+        return previousMinValue;
+    }
+
+    public long getPreviousMaxValue() {
+        return previousMaxValue;
+    }
+
+    /**
+     * Получает суммы для метода наименьших квадратов.
+     *
+     * @return массив сумм x, y, x^2, xy и y^2
+     */
+    public double[] getSums() {
+        return new double[]{sumX, sumY, sumXX, sumXY, sumYY};
+    }
+
+    private void addPoint(long time, long value) {
+        if (pointCount > 0) {
+            previousMinValue = Math.min(previousMinValue, lastValue);
+            previousMaxValue = Math.max(previousMaxValue, lastValue);
+        }
+        double x = time - firstTime;
+        sumX += x;
+        sumY += value;
+        sumXX += x * x;
+        sumXY += x * value;
+        sumYY += (double) value * value;
+        pointCount++;
+        lastTime = time;
+        lastValue = value;
+    }
+
+    private void replaceLastPoint(long value) {
+        double x = lastTime - firstTime;
+        sumY += value - lastValue;
+        sumXY += x * (value - lastValue);
+        sumYY += (double) value * value - (double) lastValue * lastValue;
+        lastValue = value;
+    }
+
+    /**
+     * Получает функцию приближения фрагмента. Линейная регрессия вычисляется по суммам всего разреза и сдвигается к
+     * первой точке фрагмента; скользящая средняя зависит только от соседних точек и вычисляется по самому фрагменту.
+     *
+     * @param fragment          - фрагмент разреза
+     * @param approximationType - тип функции приближения
+     * @return функция приближения
+     */
+    private Approximation getApproximation(Slice fragment, ApproximationType approximationType) {
+        switch (approximationType) {
+            case LINEAR:
+                double denominator = pointCount * sumXX - sumX * sumX;
+                if (denominator == 0) {
+                    return new LinearRegression(0, sumY / pointCount, 0);
+                }
+                double angle = (pointCount * sumXY - sumX * sumY) / denominator;
+                double offset = (sumY * sumXX - sumX * sumXY) / denominator;
+                double squaredErrors = sumYY - 2 * angle * sumXY - 2 * offset * sumY + angle * angle * sumXX +
+                        2 * angle * offset * sumX + pointCount * offset * offset;
+                double sigma = Math.sqrt(Math.max(squaredErrors, 0) / pointCount);
+                long fragmentStart = fragment.getFirstPoint().date.getTime() - firstTime;
+                return new LinearRegression(angle, offset + angle * fragmentStart, sigma);
+            case AVERAGES:
+                return new AveragesApproximation(fragment);
+            default:
+                return new EmptyApproximation();
+        }
+    }
+
+}
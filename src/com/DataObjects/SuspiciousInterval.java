@@ -35,7 +35,7 @@ public class SuspiciousInterval {
      * @return меру уменьшения значения
      */
     public double getDecreaseScore() {
-        if (pos1 < 0 || pos1 >= slice.points.length || pos2 < 0 || pos2 >= slice.points.length) {
+        if (pos1 < 0 || pos1 >= slice.size() || pos2 < 0 || pos2 >= slice.size()) {
             return -1;
         }
         double res = Math.sqrt(slice.dateRange) * Math.pow(getRelativeDiff(), 2);
@@ -76,15 +76,15 @@ public class SuspiciousInterval {
     private double getComparisonToApproximation(double res) {
         if (partialApproximation != null) {
             if (partialApproximation.getSigma() != 0) {
-                double diffWithExpectation = (slice.points[pos2].value - partialApproximation.getApproximate(slice, pos2));
+                double diffWithExpectation = (slice.getValue(pos2) - partialApproximation.getApproximate(slice, pos2));
                 if (-diffWithExpectation >= partialApproximation.getSigma()) {
                     res *= (Math.abs(diffWithExpectation) / partialApproximation.getSigma());
                 } else {
                     res /= ((diffWithExpectation / partialApproximation.getSigma()) + 1);
                     res /= 10;
                 }
-                double diffAtTheEnd = (slice.getApproximate(slice.points.length - 1) -
-                        partialApproximation.getApproximate(slice, slice.points.length - 1));
+                double diffAtTheEnd = (slice.getApproximate(slice.size() - 1) -
+                        partialApproximation.getApproximate(slice, slice.size() - 1));
                 if (-diffAtTheEnd >= partialApproximation.getSigma()) {
                     res *= (Math.abs(diffAtTheEnd) / partialApproximation.getSigma());
                 } else {
@@ -150,7 +150,7 @@ public class SuspiciousInterval {
      * @return отношение разностей значений (ожидаемые значения - между -1 и 1)
      */
     public double getRelativeDiff() {
-        return (double) (slice.points[pos2].value - slice.points[pos1].value - slice.getApproximate(pos2) + slice.getApproximate(pos1)) / (slice.valueRange);
+        return (double) (slice.getValue(pos2) - slice.getValue(pos1) - slice.getApproximate(pos2) + slice.getApproximate(pos1)) / (slice.valueRange);
     }
 
     /**
@@ -187,11 +187,11 @@ public class SuspiciousInterval {
     }
 
     public SlicePoint getFirstPoint() {
-        return slice.points[pos1];
+        return slice.getPoint(pos1);
     }
 
     public SlicePoint getLastPoint() {
-        return slice.points[pos2];
+        return slice.getPoint(pos2);
     }
 
     /**
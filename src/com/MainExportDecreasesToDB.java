@@ -2,19 +2,27 @@ package com;
 
 import com.Controler.DataController;
 
+import java.util.Arrays;
+
 public class MainExportDecreasesToDB {
 
     public static void main(String[] args) {
 
         DataController dataController = new DataController();
 
-        dataController.createDecreasesTable();
+        if (Arrays.asList(args).contains("-incremental")) {
+
+            dataController.exportDecreasesIncremental(0.05, 0.5, Integer.MAX_VALUE);
+
+            dataController.exportConstantsIncremental(0.05, 1, Integer.MAX_VALUE);
+
+        } else {
 
-        dataController.exportDecreasesToDB(0.05, 0.5, Integer.MAX_VALUE);
+            dataController.exportDecreasesResumable(0.05, 0.5, Integer.MAX_VALUE);
 
-        dataController.createConstantsTable();
+            dataController.exportConstantsResumable(0.05, 1, Integer.MAX_VALUE);
 
-        dataController.exportConstantsToDB(0.05, 1, Integer.MAX_VALUE);
+        }
 
         dataController.close();
 
@@ -6,6 +6,8 @@ public class MainExportGraphs {
 
     public static void main(String[] args) {
 
+        System.setProperty("java.awt.headless", "true");
+
         DataController dataController = new DataController();
 
         dataController.exportGraphsAccumulated();
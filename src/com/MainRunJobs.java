@@ -0,0 +1,145 @@
+package com;
+
+import com.Controler.DataController;
+import com.Controler.JobRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Выполняет несколько задач с общим контроллером, соединением с базой данных и сохраненными разрезами. Задачи
+ * перечисляются в аргументах в виде название[:minIntervalMult,thresholdMult,maxIntervals], например
+ * parse decreases constants:0.05,1,1000 graphs. Задачи после parse ждут загрузки данных, остальные выполняются
+ * одновременно (не больше -threads=N задач сразу, по умолчанию все). Задачи decreases-incremental и
+ * constants-incremental записывают только интервалы в данных, добавленных после предыдущего экспорта; задачи decreases
+ * и constants после прерывания продолжаются с первого незавершенного сочетания категорий. Сохраненные разрезы ряда
+ * данных удаляются из памяти, как только его обработали все задачи, которые получают разрезы.
+ */
+public class MainRunJobs {
+
+    private static final String[] jobNames = {"parse", "decreases", "constants", "decreases-incremental",
+            "constants-incremental", "graphs", "decrease-graphs", "constant-graphs"};
+    private static final List<String> sliceCacheJobNames = Arrays.asList("decreases", "constants", "graphs",
+            "decrease-graphs", "constant-graphs");
+
+    public static void main(String[] args) {
+
+        System.setProperty("java.awt.headless", "true");
+
+        int threads = 0;
+        List<String> jobSpecs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("-threads=")) {
+                threads = Integer.parseInt(arg.substring("-threads=".length()));
+            } else {
+                jobSpecs.add(arg);
+            }
+        }
+        if (jobSpecs.isEmpty()) {
+            System.err.println("Задачи: " + String.join(", ", jobNames) +
+                    ". Пример: parse decreases:0.05,0.5,1000 constants graphs -threads=2");
+            System.exit(2);
+        }
+
+        int sliceCacheUsers = 0;
+        for (String jobSpec : jobSpecs) {
+            if (sliceCacheJobNames.contains(jobSpec.split(":", 2)[0])) {
+                sliceCacheUsers++;
+            }
+        }
+
+        DataController dataController = new DataController();
+        dataController.setSliceCaching(true, sliceCacheUsers);
+        JobRunner jobRunner = new JobRunner();
+        if (jobSpecs.contains("parse")) {
+            jobRunner.addJob("parse", dataController::parseCsv);
+        }
+        String[] dependencies = jobRunner.hasJob("parse") ? new String[]{"parse"} : new String[0];
+        for (String jobSpec : jobSpecs) {
+            String[] spec = jobSpec.split(":", 2);
+            String name = spec[0];
+            if (!name.equals("parse") && jobRunner.hasJob(name)) {
+                System.err.println("Задача " + name + " указана несколько раз, каждая задача выполняется один раз");
+                dataController.close();
+                System.exit(2);
+            }
+            switch (name) {
+                case "parse":
+                    break;
+                case "decreases": {
+                    double[] params = getParams(spec, 0.05, 0.5, Integer.MAX_VALUE);
+                    jobRunner.addJob(name, () -> dataController.exportDecreasesResumable(params[0], params[1], (int) params[2]),
+                            dependencies);
+                    break;
+                }
+                case "constants": {
+                    double[] params = getParams(spec, 0.05, 1, Integer.MAX_VALUE);
+                    jobRunner.addJob(name, () -> dataController.exportConstantsResumable(params[0], params[1], (int) params[2]),
+                            dependencies);
+                    break;
+                }
+                case "decreases-incremental": {
+                    double[] params = getParams(spec, 0.05, 0.5, Integer.MAX_VALUE);
+                    jobRunner.addJob(name, () -> dataController.exportDecreasesIncremental(params[0], params[1], (int) params[2]),
+                            dependencies);
+                    break;
+                }
+                case "constants-incremental": {
+                    double[] params = getParams(spec, 0.05, 1, Integer.MAX_VALUE);
+                    jobRunner.addJob(name, () -> dataController.exportConstantsIncremental(params[0], params[1], (int) params[2]),
+                            dependencies);
+                    break;
+                }
+                case "graphs":
+                    jobRunner.addJob(name, dataController::exportGraphsAccumulated, dependencies);
+                    break;
+                case "decrease-graphs": {
+                    double[] params = getParams(spec, 0.1, 1, 32);
+                    jobRunner.addJob(name, () -> dataController.exportDecreaseGraphs(params[0], params[1], (int) params[2]),
+                            dependencies);
+                    break;
+                }
+                case "constant-graphs": {
+                    double[] params = getParams(spec, 0.1, 0.2, 32);
+                    jobRunner.addJob(name, () -> dataController.exportConstantGraphs(params[0], params[1], (int) params[2]),
+                            dependencies);
+                    break;
+                }
+                default:
+                    System.err.println("Неизвестная задача " + name + ", возможные задачи: " + String.join(", ", jobNames));
+                    dataController.close();
+                    System.exit(2);
+            }
+        }
+
+        List<String> failedJobs = jobRunner.run(threads > 0 ? threads : jobSpecs.size());
+
+        dataController.close();
+
+        if (!failedJobs.isEmpty()) {
+            System.err.println("Не выполнены задачи: " + String.join(", ", failedJobs));
+            System.exit(1);
+        }
+
+    }
+
+    /**
+     * Получает параметры задачи из ее описания; не указанные параметры берутся по умолчанию.
+     *
+     * @param spec     - название задачи и, если указаны, параметры через запятую
+     * @param defaults - параметры по умолчанию
+     * @return параметры задачи
+     */
+    private static double[] getParams(String[] spec, double... defaults) {
+        double[] res = defaults.clone();
+        if (spec.length > 1) {
+            String[] values = spec[1].split(",");
+            for (int i = 0; i < values.length && i < res.length; i++) {
+                res[i] = Double.parseDouble(values[i]);
+            }
+        }
+        return res;
+    }
+
+}
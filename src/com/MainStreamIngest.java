@@ -0,0 +1,25 @@
+package com;
+
+import com.Controler.DataController;
+
+import java.io.File;
+
+/**
+ * Потоковая загрузка данных в таблицу из db_config.txt с поиском новых интервалов уменьшения после каждого пакета
+ * строк. Если в аргументах указан каталог, загружаются файлы csv, которые в нем появляются (до завершения программы),
+ * иначе - строки из стандартного ввода (первая строка - заголовок), например
+ * tail -n +1 -F data.csv | java com.MainStreamIngest
+ */
+public class MainStreamIngest {
+
+    public static void main(String[] args) {
+
+        DataController dataController = new DataController();
+
+        dataController.streamDecreases(args.length > 0 ? new File(args[0]) : null, 0.05, 0.5);
+
+        dataController.close();
+
+    }
+
+}
@@ -1,7 +1,13 @@
 package com.Model;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Вспомогательный класс, позволяющий находить все уникальные неповторяющиеся сочетания категорий из определенного списка.
@@ -14,6 +20,58 @@ public class CategoryCombination {
         combos = getInitialCategories(categoryNames);
     }
 
+    /**
+     * Получает ленивый поток всех сочетаний из определенного количества категорий. Категории внутри сочетания
+     * расположены в алфавитном порядке, а сами сочетания - в лексикографическом порядке, как и в списках, получаемых
+     * через addCategory. Сочетания создаются по мере чтения потока, поэтому одновременно в памяти хранится только
+     * текущее сочетание; поток можно разделять для параллельной обработки.
+     *
+     * @param categoryNames - список категорий
+     * @param size          - количество категорий в каждом сочетании
+     * @return поток сочетаний
+     */
+    public static Stream<String[]> stream(List<String> categoryNames, int size) {
+        List<String> sortedNames = new ArrayList<>(categoryNames);
+        Collections.sort(sortedNames);
+        String[] names = sortedNames.toArray(new String[0]);
+        if (size <= 0 || size > names.length) {
+            return Stream.empty();
+        }
+        return StreamSupport.stream(new CombinationSpliterator(names, size, 0, binomial(names.length, size)), false);
+    }
+
+    /**
+     * Получает ленивый поток всех сочетаний из 1, 2, ..., maxSize категорий (сначала все сочетания из 1 категории,
+     * затем из 2 и т. д.).
+     *
+     * @param categoryNames - список категорий
+     * @param maxSize       - максимальное количество категорий в сочетании
+     * @return поток сочетаний
+     */
+    public static Stream<String[]> streamUpTo(List<String> categoryNames, int maxSize) {
+        return IntStream.rangeClosed(1, maxSize).boxed().flatMap(size -> stream(categoryNames, size));
+    }
+
+    /**
+     * Получает количество сочетаний из n элементов по k.
+     *
+     * @param n - количество элементов
+     * @param k - количество элементов в сочетании
+     * @return количество сочетаний
+     * @throws ArithmeticException если количество сочетаний не помещается в long
+     */
+    static long binomial(int n, int k) {
+        if (k < 0 || k > n) {
+            return 0;
+        }
+        k = Math.min(k, n - k);
+        long res = 1;
+        for (int i = 1; i <= k; i++) {
+            res = Math.multiplyExact(res, n - k + i) / i;
+        }
+        return res;
+    }
+
     /**
      * Получает список массивов, каждый из которых содержит название одной из категорий.
      *
@@ -52,4 +110,111 @@ public class CategoryCombination {
         combos = newCombos;
     }
 
+    /**
+     * Итератор сочетаний, который обходит диапазон номеров сочетаний в лексикографическом порядке. Хранит только
+     * индексы текущего сочетания; при разделении первая половина диапазона отдается новому итератору, а начало второй
+     * половины восстанавливается по ее номеру.
+     */
+    private static class CombinationSpliterator implements Spliterator<String[]> {
+
+        private final String[] names;
+        private final int[] indices;
+        private long position;
+        private long end;
+
+        /**
+         * @param names - отсортированные названия категорий
+         * @param size  - количество категорий в сочетании
+         * @param start - номер первого сочетания диапазона
+         * @param end   - номер, следующий за последним сочетанием диапазона
+         */
+        CombinationSpliterator(String[] names, int size, long start, long end) {
+            this(names, new int[size], start, end);
+            if (start < end) {
+                unrank(start);
+            }
+        }
+
+        private CombinationSpliterator(String[] names, int[] indices, long start, long end) {
+            this.names = names;
+            this.indices = indices;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super String[]> action) {
+            if (position >= end) {
+                return false;
+            }
+            String[] combo = new String[indices.length];
+            for (int i = 0; i < indices.length; i++) {
+                combo[i] = names[indices[i]];
+            }
+            position++;
+            if (position < end) {
+                moveToNext();
+            }
+            action.accept(combo);
+            return true;
+        }
+
+        @Override
+        public Spliterator<String[]> trySplit() {
+            long remaining = end - position;
+            if (remaining < 2) {
+                return null;
+            }
+            long middle = position + remaining / 2;
+            CombinationSpliterator prefix = new CombinationSpliterator(names, indices.clone(), position, middle);
+            position = middle;
+            unrank(middle);
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - position;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+
+        /**
+         * Переводит индексы в следующее сочетание в лексикографическом порядке.
+         */
+        private void moveToNext() {
+            int i = indices.length - 1;
+            while (i >= 0 && indices[i] == names.length - indices.length + i) {
+                i--;
+            }
+            indices[i]++;
+            for (int j = i + 1; j < indices.length; j++) {
+                indices[j] = indices[j - 1] + 1;
+            }
+        }
+
+        /**
+         * Заполняет индексы сочетанием с определенным номером в лексикографическом порядке.
+         *
+         * @param rank - номер сочетания
+         */
+        private void unrank(long rank) {
+            int next = 0;
+            for (int i = 0; i < indices.length; i++) {
+                long count = binomial(names.length - next - 1, indices.length - i - 1);
+                while (rank >= count) {
+                    rank -= count;
+                    next++;
+                    count = binomial(names.length - next - 1, indices.length - i - 1);
+                }
+                indices[i] = next;
+                next++;
+            }
+        }
+
+    }
+
 }
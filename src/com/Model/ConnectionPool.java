@@ -0,0 +1,92 @@
+package com.Model;
+
+import com.SupportClasses.ConsoleLogger;
+import com.SupportClasses.Logger;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Пул соединений с базой данных, позволяющий выполнять несколько запросов одновременно из разных потоков. Соединения
+ * открываются по мере необходимости, но не больше заданного количества; если все соединения заняты, поток ожидает
+ * освобождения одного из них.
+ */
+public class ConnectionPool {
+
+    private final String url;
+    private final int maxConnections;
+    private final BlockingQueue<Connection> freeConnections;
+    private final List<Connection> connections = new ArrayList<>();
+    private final Logger logger;
+
+    /**
+     * @param url            - адрес базы данных для DriverManager (включая имя пользователя и пароль)
+     * @param maxConnections - наибольшее количество одновременно открытых соединений
+     */
+    public ConnectionPool(String url, int maxConnections) {
+        this.url = url;
+        this.maxConnections = maxConnections;
+        freeConnections = new ArrayBlockingQueue<>(maxConnections);
+        logger = new ConsoleLogger();
+    }
+
+    /**
+     * Получает свободное соединение из пула (открывает новое, если свободных нет и их количество не превышает
+     * ограничение, иначе ожидает освобождения). Соединение необходимо вернуть методом release.
+     *
+     * @return соединение с базой данных
+     * @throws SQLException         если не удалось открыть соединение
+     * @throws InterruptedException если ожидание было прервано
+     */
+    public Connection acquire() throws SQLException, InterruptedException {
+        Connection connection = freeConnections.poll();
+        if (connection != null) {
+            return connection;
+        }
+        synchronized (connections) {
+            if (connections.size() < maxConnections) {
+                connection = DriverManager.getConnection(url);
+                connections.add(connection);
+                return connection;
+            }
+        }
+        return freeConnections.take();
+    }
+
+    /**
+     * Возвращает соединение в пул.
+     *
+     * @param connection - соединение, полученное методом acquire
+     */
+    public void release(Connection connection) {
+        freeConnections.offer(connection);
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Закрывает все соединения пула.
+     */
+    public void close() {
+        synchronized (connections) {
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (SQLException ex) {
+                    logger.logError("Не удалось закрыть соединение с базой данных");
+                    ex.printStackTrace();
+                }
+            }
+            connections.clear();
+            freeConnections.clear();
+        }
+    }
+
+}
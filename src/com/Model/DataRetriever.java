@@ -8,6 +8,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.sql.Date;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -19,9 +20,23 @@ public class DataRetriever {
 
     private final DatabaseService dbService;
     private final Logger logger;
+    private final String partitionInterval;
+    private final List<String> rollupBuckets;
 
     public DataRetriever(DatabaseService dbService) {
+        this(dbService, "none", new ArrayList<>());
+    }
+
+    /**
+     * @param dbService         - сервис базы данных
+     * @param partitionInterval - длина периода одной секции таблицы (day, week, month или year), либо none, если
+     *                          таблица не секционируется
+     * @param rollupBuckets     - промежутки времени (minute, hour, day), для которых создаются таблицы агрегатов
+     */
+    public DataRetriever(DatabaseService dbService, String partitionInterval, List<String> rollupBuckets) {
         this.dbService = dbService;
+        this.partitionInterval = partitionInterval;
+        this.rollupBuckets = rollupBuckets;
         logger = new ConsoleLogger();
     }
 
@@ -33,15 +48,20 @@ public class DataRetriever {
      */
     public void csvToDatabase(String tableName) {
         logger.logMessage("Начинается экспорт файла " + tableName + ".csv в таблицу...");
-        try {
-            BufferedReader lineReader = new BufferedReader(new FileReader(tableName + ".csv"));
+        try (BufferedReader lineReader = new BufferedReader(new FileReader(tableName + ".csv"))) {
 
             String[] colNames = lineReader.readLine().split(";", -1);
             String rowLine = lineReader.readLine();
             String[] row = rowLine.split(";", -1);
             String[] colTypes = getColTypes(colNames, row);
 
-            dbService.createTable(tableName, colNames, colTypes);
+            int datePos = Arrays.asList(colNames).indexOf("first_date");
+            boolean partitioned = !partitionInterval.equals("none") && datePos >= 0;
+            if (partitioned) {
+                dbService.createPartitionedTable(tableName, colNames, colTypes);
+            } else {
+                dbService.createTable(tableName, colNames, colTypes);
+            }
 
             int rowsExported = 0;
             List<String[]> rows = new ArrayList<>();
@@ -51,18 +71,22 @@ public class DataRetriever {
                 rowLine = lineReader.readLine();
                 rowsExported++;
                 if (rowsExported % 1000 == 0) {
-                    dbService.insertData(tableName, colNames, colTypes, rows);
+                    insertRows(tableName, colNames, colTypes, rows, partitioned ? datePos : -1);
                     rows = new ArrayList<>();
                     logger.logMessage("Экспортировано " + rowsExported + " строк");
                 }
             }
-            dbService.insertData(tableName, colNames, colTypes, rows);
+            insertRows(tableName, colNames, colTypes, rows, partitioned ? datePos : -1);
             logger.logMessage("Экспортировано " + rowsExported + " строк");
+            dbService.createSourceIndexes(tableName);
+            dbService.analyzeTable(tableName);
+            dbService.createRollups(tableName, rollupBuckets);
 
             String[] colNamesLabels = {"category", "label"};
             String[] colTypesLabels = {"varchar(255)", "varchar(255)"};
             dbService.createTable(tableName + "_labels", colNamesLabels, colTypesLabels);
             dbService.insertLabelList(tableName);
+            dbService.analyzeTable(tableName + "_labels");
             logger.logMessage("Закончен экспорт файла " + tableName + ".csv в таблицу.");
         } catch (IOException ex) {
             System.err.println(ex);
@@ -70,6 +94,59 @@ public class DataRetriever {
         }
     }
 
+    /**
+     * Добавляет строки в существующую таблицу (используется при потоковой загрузке данных). Таблицы агрегатов и
+     * список значений категорий обновляются в той же транзакции, индексы не пересоздаются.
+     *
+     * @param tableName - название таблицы
+     * @param colNames  - названия столбцов таблицы
+     * @param colTypes  - типы данных в соответствующих столбцах
+     * @param rows      - строки для записи
+     */
+    public void appendRows(String tableName, String[] colNames, String[] colTypes, List<String[]> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        int datePos = Arrays.asList(colNames).indexOf("first_date");
+        insertRows(tableName, colNames, colTypes, rows, !partitionInterval.equals("none") ? datePos : -1);
+        if (datePos >= 0) {
+            dbService.updateAppendedRows(tableName, getDates(rows, datePos));
+        }
+    }
+
+    /**
+     * Записывает строки в таблицу; если таблица секционирована, перед этим создает секции для дат этих строк.
+     *
+     * @param tableName - название таблицы
+     * @param colNames  - названия столбцов таблицы
+     * @param colTypes  - типы данных в соответствующих столбцах
+     * @param rows      - строки для записи
+     * @param datePos   - номер столбца first_date, либо -1, если таблица не секционирована
+     */
+    private void insertRows(String tableName, String[] colNames, String[] colTypes, List<String[]> rows, int datePos) {
+        if (datePos >= 0) {
+            dbService.createPartitions(tableName, getDates(rows, datePos), partitionInterval);
+        }
+        dbService.insertData(tableName, colNames, colTypes, rows);
+    }
+
+    /**
+     * Получает непустые значения столбца first_date из строк.
+     *
+     * @param rows    - строки данных
+     * @param datePos - номер столбца first_date
+     * @return список дат в строковом виде
+     */
+    private List<String> getDates(List<String[]> rows, int datePos) {
+        List<String> dates = new ArrayList<>();
+        for (String[] row : rows) {
+            if (datePos < row.length && !row[datePos].isEmpty()) {
+                dates.add(row[datePos]);
+            }
+        }
+        return dates;
+    }
+
     /**
      * Определяет типы столбцов новой таблицы по формату данных в первой строке файла. Возможные типы - целое число
      * (int8), десятичное число (float), дата/время (timestamptz) и строка (varchar).
@@ -3,17 +3,39 @@ package com.Model;
 import com.DataObjects.Approximations.ApproximationType;
 import com.DataObjects.Slice;
 import com.DataObjects.SlicePoint;
+import com.DataObjects.SliceState;
 import com.DataObjects.SuspiciousInterval;
+import com.SupportClasses.CancellationToken;
 import com.SupportClasses.ConsoleLogger;
 import com.SupportClasses.Logger;
+import com.SupportClasses.Profiling.SliceFetchEvent;
+import com.SupportClasses.StartupTimer;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 /**
@@ -24,9 +46,30 @@ public class DatabaseService {
     private final String labelNotPresent = "NOT_APPLICABLE";
 
     private Connection connection = null;
+    private String url;
+    private ConnectionPool connectionPool;
+    private ExecutorService sliceExecutor;
+    private final int maxPoolConnections = 4;
+    private final int maxRowsPerCombo = 1024;
+    private final int pointBytes = 3 * Long.BYTES;
 
     private final Logger logger;
 
+    private final Set<String> createdPartitions = ConcurrentHashMap.newKeySet();
+
+    private final String[] rollupBuckets = {"day", "hour", "minute"};
+    private final Map<String, List<String>> rollupTables = new ConcurrentHashMap<>();
+    private int rollupTargetPoints = 0;
+
+    // Очищается целиком при создании любой таблицы: вместе с исходной таблицей меняются и производные от нее
+    // (таблицы интервалов, агрегатов и значений категорий).
+    private final Map<String, List<String>> categoryNamesCache = new ConcurrentHashMap<>();
+
+    private volatile CancellationToken cancellationToken = CancellationToken.NONE;
+
+    private final ThreadLocal<Connection> unitConnection = new ThreadLocal<>();
+    private final ThreadLocal<Boolean> unitFailed = ThreadLocal.withInitial(() -> false);
+
     /**
      * Конструктор, устанавливающий соединение с базой данных с указанным названием, именем пользователя и паролем.
      *
@@ -35,14 +78,30 @@ public class DatabaseService {
      * @param password - пароль
      */
     public DatabaseService(String address, String db, String user, String password) {
+        this(address, db, user, password, "");
+    }
+
+    /**
+     * Конструктор, устанавливающий соединение с базой данных с дополнительными параметрами подключения.
+     *
+     * @param db         - название базы данных
+     * @param user       - имя пользователя
+     * @param password   - пароль
+     * @param parameters - параметры подключения JDBC вида ключ=значение через &amp; (пустая строка - без параметров)
+     */
+    public DatabaseService(String address, String db, String user, String password, String parameters) {
         logger = new ConsoleLogger();
-        openConnection(address, db, user, password);
+        openConnection(address, db, user, password, parameters);
     }
 
-    private void openConnection(String address, String db, String user, String password) {
-        final String url = "jdbc:postgresql://" + address + "/" + db + "?user=" + user + "&password=" + password;
+    private void openConnection(String address, String db, String user, String password, String parameters) {
+        url = "jdbc:postgresql://" + address + "/" + db + "?user=" + user + "&password=" + password;
+        if (!parameters.isEmpty()) {
+            url += "&" + parameters;
+        }
         try {
             connection = DriverManager.getConnection(url);
+            StartupTimer.mark("connection", logger);
             logger.logMessage("Установлено подключение к базе данных " + db);
         } catch (SQLException ex) {
             logger.logError("Не удалось подключиться к базе данных " + db);
@@ -64,7 +123,8 @@ public class DatabaseService {
         }
         StringBuilder query = new StringBuilder();
         try {
-            connection.createStatement().executeUpdate("DROP TABLE IF EXISTS " + tableName + ";");
+            categoryNamesCache.clear();
+            executeUpdate(connection, "DROP TABLE IF EXISTS " + tableName + ";");
             query.append("CREATE TABLE ").append(tableName).append(" (");
             for (int i = 0; i < colNames.length; i++) {
                 query.append(colNames[i]).append(" ").append(colTypes[i]);
@@ -73,7 +133,7 @@ public class DatabaseService {
                 }
             }
             query.append(");");
-            connection.createStatement().executeUpdate(query.toString());
+            executeUpdate(connection, query.toString());
             logger.logMessage("Создана таблица: " + tableName);
         } catch (SQLException ex) {
             logger.logError("Не удалось создать таблицу по запросу: " + query);
@@ -81,13 +141,167 @@ public class DatabaseService {
         }
     }
 
+    /**
+     * Создает таблицу исходных данных, секционированную по диапазонам first_date, с секцией по умолчанию. Также
+     * удаляет существующую таблицу с таким же названием, если она существует. Секции для конкретных периодов
+     * создаются методом createPartitions перед вставкой данных.
+     *
+     * @param tableName - название таблицы
+     * @param colNames  - названия столбцов таблицы
+     * @param colTypes  - типы данных в соответствующих столбцах
+     */
+    public void createPartitionedTable(String tableName, String[] colNames, String[] colTypes) {
+        if(connection == null) {
+            return;
+        }
+        StringBuilder query = new StringBuilder();
+        try {
+            categoryNamesCache.clear();
+            executeUpdate(connection, "DROP TABLE IF EXISTS " + tableName + ";");
+            query.append("CREATE TABLE ").append(tableName).append(" (");
+            for (int i = 0; i < colNames.length; i++) {
+                query.append(colNames[i]).append(" ").append(colTypes[i]);
+                if (i < colNames.length - 1) {
+                    query.append(", ");
+                }
+            }
+            query.append(") PARTITION BY RANGE (first_date);");
+            executeUpdate(connection, query.toString());
+            query = new StringBuilder("CREATE TABLE " + tableName + "_default PARTITION OF " + tableName + " DEFAULT;");
+            executeUpdate(connection, query.toString());
+            createdPartitions.removeIf(partition -> partition.startsWith(tableName + "_p"));
+            logger.logMessage("Создана секционированная таблица: " + tableName);
+        } catch (SQLException ex) {
+            logger.logError("Не удалось создать таблицу по запросу: " + query);
+            handleSQLException(ex);
+        }
+    }
+
+    /**
+     * Создает секции таблицы исходных данных для всех периодов, в которые попадают указанные даты (если эти секции
+     * еще не созданы). Периоды вычисляются на сервере, чтобы границы секций совпадали с его часовым поясом. Секция
+     * запоминается как созданная только после успешного запроса, поэтому после ошибки она создается повторно.
+     *
+     * @param tableName          - название секционированной таблицы
+     * @param dates              - даты в строковом виде
+     * @param partitionInterval  - длина периода одной секции (day, week, month или year)
+     */
+    public void createPartitions(String tableName, List<String> dates, String partitionInterval) {
+        if(connection == null || dates.isEmpty()) {
+            return;
+        }
+        StringBuilder query = new StringBuilder();
+        try {
+            query.append("WITH batch AS (SELECT unnest(ARRAY[");
+            for (int i = 0; i < dates.size(); i++) {
+                query.append("'").append(dates.get(i)).append("'");
+                if (i < dates.size() - 1) {
+                    query.append(", ");
+                }
+            }
+            query.append("]::timestamptz[]) AS first_date) SELECT to_char(period_start, 'YYYYMMDD') AS suffix, period_start, ");
+            query.append("period_start + interval '1 ").append(partitionInterval).append("' AS period_end FROM generate_series(");
+            query.append("(SELECT date_trunc('").append(partitionInterval).append("', min(first_date)) FROM batch), ");
+            query.append("(SELECT max(first_date) FROM batch), interval '1 ").append(partitionInterval).append("') AS period_start;");
+            ResultSet res = executeQuery(connection, query.toString());
+            Map<String, String> partitionQueries = new LinkedHashMap<>();
+            while (res.next()) {
+                String partitionName = tableName + "_p" + res.getString("suffix");
+                if (!createdPartitions.contains(partitionName)) {
+                    partitionQueries.put(partitionName, "CREATE TABLE IF NOT EXISTS " + partitionName + " PARTITION OF " + tableName +
+                            " FOR VALUES FROM ('" + res.getString("period_start") + "') TO ('" + res.getString("period_end") + "');");
+                }
+            }
+            for (Map.Entry<String, String> partitionQuery : partitionQueries.entrySet()) {
+                query = new StringBuilder(partitionQuery.getValue());
+                executeUpdate(connection, partitionQuery.getValue());
+                createdPartitions.add(partitionQuery.getKey());
+            }
+        } catch (SQLException ex) {
+            logger.logError("Не удалось создать секции таблицы по запросу: " + query);
+            handleSQLException(ex);
+        }
+    }
+
+    /**
+     * Создает индексы таблицы исходных данных, используемые при получении разрезов: по каждой категории вместе с
+     * first_date, а также по first_date.
+     *
+     * @param tableName - название таблицы
+     */
+    public void createSourceIndexes(String tableName) {
+        if(connection == null) {
+            return;
+        }
+        String query = "";
+        try {
+            for (String category : getCategoryNames(tableName)) {
+                query = "CREATE INDEX IF NOT EXISTS " + tableName + "_" + category + "_idx ON " + tableName +
+                        " (" + category + ", first_date);";
+                executeUpdate(connection, query);
+            }
+            query = "CREATE INDEX IF NOT EXISTS " + tableName + "_first_date_idx ON " + tableName + " (first_date);";
+            executeUpdate(connection, query);
+            logger.logMessage("Созданы индексы таблицы: " + tableName);
+        } catch (SQLException ex) {
+            logger.logError("Не удалось создать индекс по запросу: " + query);
+            handleSQLException(ex);
+        }
+    }
+
+    /**
+     * Создает индексы таблицы интервалов, используемые при получении интервалов: по названию ряда данных вместе с
+     * мерой значимости, а также по названию ряда данных вместе с относительной шириной и разностью значений.
+     *
+     * @param tableName   - название таблицы интервалов
+     * @param scoreColumn - столбец с мерой значимости интервала
+     * @param diffColumn  - столбец с относительной разностью значений интервала
+     */
+    public void createResultIndexes(String tableName, String scoreColumn, String diffColumn) {
+        if(connection == null) {
+            return;
+        }
+        String query = "";
+        try {
+            query = "CREATE INDEX IF NOT EXISTS " + tableName + "_score_idx ON " + tableName +
+                    " (value_name, " + scoreColumn + " DESC);";
+            executeUpdate(connection, query);
+            query = "CREATE INDEX IF NOT EXISTS " + tableName + "_width_idx ON " + tableName +
+                    " (value_name, relative_width, " + diffColumn + ");";
+            executeUpdate(connection, query);
+            logger.logMessage("Созданы индексы таблицы: " + tableName);
+        } catch (SQLException ex) {
+            logger.logError("Не удалось создать индекс по запросу: " + query);
+            handleSQLException(ex);
+        }
+    }
+
+    /**
+     * Обновляет статистику планировщика запросов для таблицы (следует вызывать после массовой вставки данных).
+     *
+     * @param tableName - название таблицы
+     */
+    public void analyzeTable(String tableName) {
+        if(connection == null) {
+            return;
+        }
+        String query = "ANALYZE " + tableName + ";";
+        try {
+            executeUpdate(connection, query);
+        } catch (SQLException ex) {
+            logger.logError("Не удалось обновить статистику по запросу: " + query);
+            handleSQLException(ex);
+        }
+    }
+
     /**
      * Вставляет в таблицу новуые строки с указанными значениями данных.
      *
      * @param tableName - название таблицы
      * @param colNames  - названия столбцов таблицы
      * @param colTypes  - типы данных в соответствующих столбцах
-     * @param rows      - значения в новоых строках в строковом виде
+     * @param rows      - значения в новоых строках в строковом виде (если начата единица работы, строки
+     *                  записываются в ее транзакции)
      */
     public void insertData(String tableName, String[] colNames, String[] colTypes, List<String[]> rows) {
         if(connection == null) {
@@ -128,7 +342,7 @@ public class DatabaseService {
         }
         query.append(");");
         try {
-            connection.createStatement().executeUpdate(query.toString());
+            executeUpdate(getUpdateConnection(), query.toString());
         } catch (SQLException ex) {
             logger.logError("Не удалось вставить строку данных по запросу: " + query);
             handleSQLException(ex);
@@ -147,174 +361,666 @@ public class DatabaseService {
      */
     public Slice getSlice(String tableName, String valueName, String[] colNames, String[] labels, ApproximationType approximationType,
                           Date minDate, Date maxDate) {
+        return getSlice(tableName, valueName, colNames, labels, approximationType, minDate, maxDate,
+                getRollupBucket(tableName, minDate, maxDate));
+    }
+
+    /**
+     * Получает разрез из исходной таблицы или из таблицы агрегатов по определенным промежуткам времени (в этом случае
+     * каждая точка разреза содержит сумму значений за промежуток).
+     *
+     * @param tableName         - название таблицы
+     * @param valueName         - название ряда данных
+     * @param colNames          - названия столбцов, по которым отбираются данные
+     * @param labels            - значения в соответствующих столбцах в строковом виде
+     * @param approximationType - тип функции приближения
+     * @param rollupBucket      - промежуток времени таблицы агрегатов, либо null для исходной таблицы
+     * @return объект-разрез
+     */
+    private Slice getSlice(String tableName, String valueName, String[] colNames, String[] labels, ApproximationType approximationType,
+                           Date minDate, Date maxDate, String rollupBucket) {
+        return getSlice(getUpdateConnection(), tableName, valueName, colNames, labels, approximationType, minDate, maxDate,
+                rollupBucket);
+    }
+
+    /**
+     * Получает разрез только из исходной таблицы (без таблиц агрегатов), так как по его точкам строится состояние
+     * разреза или продолжается накопление сохраненного состояния.
+     *
+     * @param tableName         - название таблицы
+     * @param valueName         - название ряда данных
+     * @param colNames          - названия столбцов, по которым отбираются данные
+     * @param labels            - значения в соответствующих столбцах в строковом виде
+     * @param approximationType - тип функции приближения
+     * @param minDate           - первая дата разреза
+     * @param maxDate           - последняя дата разреза
+     * @return объект-разрез
+     */
+    public Slice getSourceSlice(String tableName, String valueName, String[] colNames, String[] labels,
+                                ApproximationType approximationType, Date minDate, Date maxDate) {
+        return getSlice(tableName, valueName, colNames, labels, approximationType, minDate, maxDate, null);
+    }
+
+    /**
+     * Получает разрезы всех рядов данных с одинаковыми значениями категорий одним запросом к исходной таблице, поэтому
+     * точки разрезов разных рядов совпадают по датам и количествам (используется при записи снимка разрезов).
+     *
+     * @param tableName         - название таблицы
+     * @param valueNames        - названия рядов данных
+     * @param colNames          - названия столбцов, по которым отбираются данные
+     * @param labels            - значения в соответствующих столбцах в строковом виде
+     * @param approximationType - тип функции приближения
+     * @param minDate           - первая дата разрезов
+     * @param maxDate           - последняя дата разрезов
+     * @return список разрезов в порядке valueNames
+     */
+    public List<Slice> getSourceSlices(String tableName, List<String> valueNames, String[] colNames, String[] labels,
+                                       ApproximationType approximationType, Date minDate, Date maxDate) {
+        List<Slice> slices = new ArrayList<>();
         if(connection == null) {
-            return new Slice(tableName, valueName, colNames, labels);
+            for (String valueName : valueNames) {
+                slices.add(new Slice(tableName, valueName, colNames, labels));
+            }
+            return slices;
         }
         StringBuilder query = new StringBuilder();
         try {
             query.append("SELECT * FROM ").append(tableName).append(" WHERE ");
             for (int i = 0; i < colNames.length; i++) {
-                query.append(colNames[i]).append("=");
-                query.append(labels[i]);
-                if (i < colNames.length - 1) {
-                    query.append(" AND ");
-                }
+                query.append(colNames[i]).append("=").append(labels[i]).append(" AND ");
             }
-            query.append(" AND first_date >= '").append(minDate).append("' AND first_date <= '").append(maxDate).append("'");
+            query.append("first_date >= '").append(minDate).append("'");
+            query.append(" AND first_date <= '").append(maxDate).append("'");
             query.append(" ORDER BY first_date;");
-            ResultSet res = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).executeQuery(query.toString());
+            ResultSet res = executeScrollableQuery(connection, query.toString());
             res.last();
             int length = res.getRow();
-            SlicePoint[] points = new SlicePoint[length];
+            SlicePoint[][] points = new SlicePoint[valueNames.size()][length];
             res.beforeFirst();
             int i = 0;
             while (res.next()) {
-                points[i] = new SlicePoint(res.getLong(valueName), res.getLong("amount"), res.getTimestamp("first_date"));
+                for (int k = 0; k < valueNames.size(); k++) {
+                    points[k][i] = new SlicePoint(res.getLong(valueNames.get(k)), res.getLong("amount"), res.getTimestamp("first_date"));
+                }
                 i++;
             }
-            return new Slice(tableName, valueName, colNames, labels, points, approximationType);
+            for (int k = 0; k < valueNames.size(); k++) {
+                slices.add(new Slice(tableName, valueNames.get(k), colNames, labels, points[k], approximationType));
+            }
+            logger.recordValue("slice.points", length);
+            return slices;
         } catch (SQLException ex) {
             logger.logError("Не удалось получить разрез по запросу: " + query);
             handleSQLException(ex);
         }
-        return new Slice(tableName, valueName, colNames, labels);
-    }
-
-    /**
-     * Возвращает наименьшую и наибольшую даты исходных данных из определенной таблицы.
-     *
-     * @param tableName - название таблицы
-     * @return список с 2 датами - наименьшей и наибольшей
-     */
-    public List<Date> getBorderDates(String tableName) {
-        if(connection == null) {
-            List<Date> dates = new ArrayList<>();
-            dates.add(new Date());
-            dates.add(new Date());
-            return dates;
-        }
-        String query = "";
-        try {
-            query = "SELECT MIN(first_date) AS min_date, MAX(first_date) AS max_date FROM " + tableName + ";";
-            ResultSet res = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).executeQuery(query);
-            List<Date> dates = new ArrayList<>();
-            res.next();
-            dates.add(res.getTimestamp("min_date"));
-            dates.add(res.getTimestamp("max_date"));
-            return dates;
-        } catch (SQLException ex) {
-            logger.logError("Не удалось получить список столбцов по запросу: " + query);
-            handleSQLException(ex);
+        slices.clear();
+        for (String valueName : valueNames) {
+            slices.add(new Slice(tableName, valueName, colNames, labels));
         }
-        return new ArrayList<>();
+        return slices;
     }
 
-    /**
-     * Получает список уникальных значений, которые принимают данные в указанных столбцах.
-     *
-     * @param tableName - название таблицы
-     * @param colNames  - названия столбцов
-     * @return список значений в строковом виде
-     */
-    public List<String[]> getLabelCombinations(String tableName, String[] colNames, int maxCount) {
+    private Slice getSlice(Connection connection, String tableName, String valueName, String[] colNames, String[] labels,
+                           ApproximationType approximationType, Date minDate, Date maxDate, String rollupBucket) {
         if(connection == null) {
-            return new ArrayList<>();
+            return new Slice(tableName, valueName, colNames, labels);
         }
         StringBuilder query = new StringBuilder();
+        long startTime = System.nanoTime();
+        SliceFetchEvent event = new SliceFetchEvent();
+        event.begin();
         try {
-            query.append("SELECT ");
-            for (int i = 0; i < colNames.length; i++) {
-                query.append(colNames[i]);
-                if (i < colNames.length - 1) {
-                    query.append(", ");
-                }
+            String sourceTableName = rollupBucket == null ? tableName : tableName + "_rollup_" + rollupBucket;
+            if (rollupBucket == null) {
+                query.append("SELECT * FROM ");
+            } else {
+                // Таблица агрегатов сгруппирована по всем категориям, а разрез отбирается по части из них, поэтому
+                // строки остальных категорий за один промежуток суммируются в одну точку.
+                query.append("SELECT first_date, CAST(sum(").append(valueName).append(") AS int8) AS ").append(valueName);
+                query.append(", CAST(sum(amount) AS int8) AS amount FROM ");
             }
-            query.append(" FROM ").append(tableName).append(" GROUP BY ");
+            query.append(sourceTableName).append(" WHERE ");
             for (int i = 0; i < colNames.length; i++) {
-                query.append(colNames[i]);
+                query.append(colNames[i]).append("=");
+                query.append(labels[i]);
                 if (i < colNames.length - 1) {
-                    query.append(", ");
+                    query.append(" AND ");
                 }
             }
-            query.append(" ORDER BY sum(amount) DESC LIMIT ").append(maxCount).append(";");
-            ResultSet res = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).executeQuery(query.toString());
+            if (rollupBucket == null) {
+                query.append(" AND first_date >= '").append(minDate).append("'");
+            } else {
+                query.append(" AND first_date >= date_trunc('").append(rollupBucket).append("', '").append(minDate).append("'::timestamptz)");
+            }
+            query.append(" AND first_date <= '").append(maxDate).append("'");
+            if (rollupBucket != null) {
+                query.append(" GROUP BY first_date");
+            }
+            query.append(" ORDER BY first_date;");
+            ResultSet res = executeScrollableQuery(connection, query.toString());
+            res.last();
+            int length = res.getRow();
+            SlicePoint[] points = new SlicePoint[length];
             res.beforeFirst();
-            List<String[]> labelCombinations = new ArrayList<>();
+            int i = 0;
             while (res.next()) {
-                String[] combination = new String[colNames.length];
-                for (int i = 0; i < colNames.length; i++) {
-                    combination[i] = "'" + res.getString(colNames[i]) + "'";
-                }
-                labelCombinations.add(combination);
+                points[i] = new SlicePoint(res.getLong(valueName), res.getLong("amount"), res.getTimestamp("first_date"));
+                i++;
             }
-            return labelCombinations;
+            Slice slice = new Slice(tableName, valueName, colNames, labels, points, approximationType);
+            logger.recordTime("slice.build", startTime);
+            logger.recordValue("slice.points", length);
+            if (event.shouldCommit()) {
+                event.tableName = tableName;
+                event.sourceTableName = sourceTableName;
+                event.valueName = valueName;
+                event.setLabels(colNames, labels);
+                event.rows = length;
+                event.bytes = (long) length * pointBytes;
+                event.commit();
+            }
+            return slice;
         } catch (SQLException ex) {
             logger.logError("Не удалось получить разрез по запросу: " + query);
             handleSQLException(ex);
         }
-        return new ArrayList<>();
+        return new Slice(tableName, valueName, colNames, labels);
     }
 
     /**
-     * Получает список значений категорий из таблицы исходных данных и записывает их в новую таблицу.
+     * Создает таблицы агрегатов исходной таблицы по промежуткам времени: для каждого сочетания значений всех категорий
+     * и каждого промежутка значения и количества суммируются. Таблицы агрегатов для промежутков, не входящих в список,
+     * удаляются, чтобы не использовать устаревшие данные.
      *
-     * @param tableName - название таблицы
+     * @param tableName - название исходной таблицы
+     * @param buckets   - промежутки времени (minute, hour или day)
      */
-    public void insertLabelList(String tableName) {
+    public void createRollups(String tableName, List<String> buckets) {
         if(connection == null) {
             return;
         }
+        rollupTables.remove(tableName);
+        List<String> categoryNames = getCategoryNames(tableName);
+        List<String> valueNames = getValueNames(tableName);
         StringBuilder query = new StringBuilder();
         try {
-            List<String> categories = getCategoryNames(tableName);
-            for (String category : categories) {
-                query = new StringBuilder();
-                query.append("SELECT ").append(category).append(" FROM ").append(tableName).append(" GROUP BY ").
-                        append(category).append(" ORDER BY sum(amount) DESC;");
-                ResultSet res = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).executeQuery(query.toString());
-                res.beforeFirst();
-                List<String> labels = new ArrayList<>();
-                while (res.next()) {
-                    String colName = res.getString(category);
-                    labels.add(colName);
-                }
-                query = new StringBuilder();
-                query.append("INSERT INTO ").append(tableName).append("_labels(category, label) VALUES(");
-                for (int i = 0; i < labels.size(); i++) {
-                    query.append("'").append(category).append("','").append(labels.get(i)).append("'");
-                    if (i < labels.size() - 1) {
-                        query.append("),(");
-                    }
+            for (String bucket : rollupBuckets) {
+                String rollupTableName = tableName + "_rollup_" + bucket;
+                categoryNamesCache.remove(rollupTableName);
+                query = new StringBuilder("DROP TABLE IF EXISTS " + rollupTableName + ";");
+                executeUpdate(connection, query.toString());
+                if (!buckets.contains(bucket)) {
+                    continue;
                 }
-                query.append(");");
-                connection.createStatement().executeUpdate(query.toString());
+                query = new StringBuilder("CREATE TABLE ").append(rollupTableName).append(" AS ");
+                appendRollupSelect(query, tableName, bucket, categoryNames, valueNames, null);
+                query.append(";");
+                executeUpdate(connection, query.toString());
+                logger.logMessage("Создана таблица агрегатов: " + rollupTableName);
+                createSourceIndexes(rollupTableName);
+                analyzeTable(rollupTableName);
             }
         } catch (SQLException ex) {
-            logger.logError("Не удалось получить разрез по запросу: " + query);
+            logger.logError("Не удалось создать таблицу агрегатов по запросу: " + query);
             handleSQLException(ex);
         }
     }
 
-    public List<String> getLabelList(String tableName, String category, int maxCount) {
-        if(connection == null) {
-            return new ArrayList<>();
+    /**
+     * Обновляет таблицы агрегатов и список значений категорий после добавления строк в исходную таблицу (используется
+     * при потоковой загрузке данных, внутри единицы работы). Строки поступают в порядке дат, поэтому агрегаты
+     * пересчитываются, начиная с промежутка, в который попадает наименьшая дата добавленных строк, а в список
+     * значений добавляются значения категорий, которых в нем еще нет.
+     *
+     * @param tableName - название исходной таблицы
+     * @param dates     - даты добавленных строк в строковом виде
+     */
+    public void updateAppendedRows(String tableName, List<String> dates) {
+        if(connection == null || dates.isEmpty()) {
+            return;
         }
-        String query = "";
+        List<String> categoryNames = getCategoryNames(tableName);
+        StringBuilder fromDate = new StringBuilder("(SELECT min(appended_date) FROM unnest(ARRAY[");
+        for (int i = 0; i < dates.size(); i++) {
+            fromDate.append("'").append(dates.get(i)).append("'");
+            if (i < dates.size() - 1) {
+                fromDate.append(", ");
+            }
+        }
+        fromDate.append("]::timestamptz[]) AS appended_date)");
+        StringBuilder query = new StringBuilder();
         try {
-            query = "SELECT label FROM " + tableName + "_labels WHERE category = '" + category + "' LIMIT " + maxCount + ";";
-            ResultSet res = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).executeQuery(query);
-            res.last();
-            List<String> labels = new ArrayList<>();
-            res.beforeFirst();
-            while (res.next()) {
-                labels.add(res.getString("label"));
+            List<String> buckets = getRollupTables(tableName);
+            List<String> valueNames = buckets.isEmpty() ? new ArrayList<>() : getValueNames(tableName);
+            for (String bucket : buckets) {
+                String rollupTableName = tableName + "_rollup_" + bucket;
+                String condition = "first_date >= date_trunc('" + bucket + "', " + fromDate + ")";
+                query = new StringBuilder("DELETE FROM ").append(rollupTableName).append(" WHERE ").append(condition).append(";");
+                executeUpdate(getUpdateConnection(), query.toString());
+                query = new StringBuilder("INSERT INTO ").append(rollupTableName).append("(");
+                for (String categoryName : categoryNames) {
+                    query.append(categoryName).append(", ");
+                }
+                query.append("first_date, ");
+                for (String valueName : valueNames) {
+                    query.append(valueName).append(", ");
+                }
+                query.append("amount) ");
+                appendRollupSelect(query, tableName, bucket, categoryNames, valueNames, condition);
+                query.append(";");
+                executeUpdate(getUpdateConnection(), query.toString());
+            }
+            if (tableExists(tableName + "_labels")) {
+                for (String category : categoryNames) {
+                    query = new StringBuilder("INSERT INTO ").append(tableName).append("_labels(category, label) ");
+                    query.append("SELECT DISTINCT '").append(category).append("', ").append(category).append(" FROM ").append(tableName);
+                    query.append(" AS source WHERE first_date >= ").append(fromDate).append(" AND NOT EXISTS (SELECT 1 FROM ");
+                    query.append(tableName).append("_labels AS labels WHERE labels.category = '").append(category);
+                    query.append("' AND labels.label = source.").append(category).append(");");
+                    executeUpdate(getUpdateConnection(), query.toString());
+                }
             }
-            return labels;
         } catch (SQLException ex) {
-            logger.logError("Не удалось получить список столбцов по запросу: " + query);
+            logger.logError("Не удалось обновить таблицы агрегатов по запросу: " + query);
             handleSQLException(ex);
         }
-        return new ArrayList<>();
+    }
+
+    /**
+     * Дописывает в запрос выборку агрегатов исходной таблицы по определенному промежутку времени.
+     *
+     * @param query         - строка запроса
+     * @param tableName     - название исходной таблицы
+     * @param bucket        - промежуток времени
+     * @param categoryNames - названия столбцов с категориями
+     * @param valueNames    - названия рядов данных
+     * @param condition     - условие на строки исходной таблицы, либо null, если агрегируются все строки
+     */
+    private void appendRollupSelect(StringBuilder query, String tableName, String bucket, List<String> categoryNames,
+                                    List<String> valueNames, String condition) {
+        query.append("SELECT ");
+        for (String categoryName : categoryNames) {
+            query.append(categoryName).append(", ");
+        }
+        query.append("date_trunc('").append(bucket).append("', first_date) AS first_date, ");
+        for (String valueName : valueNames) {
+            query.append("CAST(sum(").append(valueName).append(") AS int8) AS ").append(valueName).append(", ");
+        }
+        query.append("CAST(sum(amount) AS int8) AS amount FROM ").append(tableName);
+        if (condition != null) {
+            query.append(" WHERE ").append(condition);
+        }
+        query.append(" GROUP BY ");
+        for (String categoryName : categoryNames) {
+            query.append(categoryName).append(", ");
+        }
+        query.append("date_trunc('").append(bucket).append("', first_date)");
+    }
+
+    /**
+     * Устанавливает количество точек, которого достаточно для отображения разреза (например, ширину графика в
+     * пикселях). Если это количество больше 0, разрезы получаются из таблицы агрегатов с наибольшим промежутком
+     * времени, который дает не меньше точек на запрошенном отрезке времени.
+     *
+     * @param rollupTargetPoints - количество точек, либо 0, чтобы всегда использовать исходную таблицу
+     */
+    public void setRollupTargetPoints(int rollupTargetPoints) {
+        this.rollupTargetPoints = rollupTargetPoints;
+    }
+
+    /**
+     * Проверяет, будут ли разрезы на определенном отрезке времени получаться из таблицы агрегатов.
+     *
+     * @param tableName - название исходной таблицы
+     * @param minDate   - первая дата разрезов
+     * @param maxDate   - последняя дата разрезов
+     * @return true, если используется таблица агрегатов, иначе false
+     */
+    public boolean usesRollups(String tableName, Date minDate, Date maxDate) {
+        return getRollupBucket(tableName, minDate, maxDate) != null;
+    }
+
+    /**
+     * Выбирает промежуток времени таблицы агрегатов для получения разреза на определенном отрезке времени.
+     *
+     * @param tableName - название исходной таблицы
+     * @param minDate   - первая дата разреза
+     * @param maxDate   - последняя дата разреза
+     * @return промежуток времени, либо null, если нужно использовать исходную таблицу
+     */
+    private String getRollupBucket(String tableName, Date minDate, Date maxDate) {
+        if (rollupTargetPoints <= 0 || minDate == null || maxDate == null) {
+            return null;
+        }
+        return chooseRollupBucket(getRollupTables(tableName), maxDate.getTime() - minDate.getTime(), rollupTargetPoints);
+    }
+
+    /**
+     * Выбирает наибольший промежуток времени, который дает не меньше заданного количества точек на отрезке времени.
+     *
+     * @param buckets      - промежутки времени существующих таблиц агрегатов (от наибольшего к наименьшему)
+     * @param dateRange    - длина отрезка времени в миллисекундах
+     * @param targetPoints - количество точек, достаточное для отображения разреза
+     * @return промежуток времени, либо null, если ни один промежуток не дает достаточно точек
+     */
+    static String chooseRollupBucket(List<String> buckets, long dateRange, int targetPoints) {
+        for (String bucket : buckets) {
+            if (dateRange / getBucketLength(bucket) >= targetPoints) {
+                return bucket;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Получает промежутки времени, для которых существуют таблицы агрегатов исходной таблицы (от наибольшего к
+     * наименьшему).
+     *
+     * @param tableName - название исходной таблицы
+     * @return список промежутков времени
+     */
+    private List<String> getRollupTables(String tableName) {
+        List<String> buckets = rollupTables.get(tableName);
+        if (buckets != null) {
+            return buckets;
+        }
+        buckets = new ArrayList<>();
+        String query = "SELECT table_name FROM information_schema.tables WHERE table_name LIKE '" + tableName + "\\_rollup\\_%';";
+        try {
+            ResultSet res = executeQuery(connection, query);
+            Set<String> existingTables = new HashSet<>();
+            while (res.next()) {
+                existingTables.add(res.getString("table_name"));
+            }
+            for (String bucket : rollupBuckets) {
+                if (existingTables.contains(tableName + "_rollup_" + bucket)) {
+                    buckets.add(bucket);
+                }
+            }
+        } catch (SQLException ex) {
+            logger.logError("Не удалось получить список таблиц агрегатов по запросу: " + query);
+            handleSQLException(ex);
+        }
+        rollupTables.put(tableName, buckets);
+        return buckets;
+    }
+
+    private static long getBucketLength(String bucket) {
+        switch (bucket) {
+            case "day":
+                return 24 * 60 * 60 * 1000L;
+            case "hour":
+                return 60 * 60 * 1000L;
+            default:
+                return 60 * 1000L;
+        }
+    }
+
+    /**
+     * Возвращает наименьшую и наибольшую даты исходных данных из определенной таблицы (если начата единица работы -
+     * с учетом строк, записанных в ее транзакции).
+     *
+     * @param tableName - название таблицы
+     * @return список с 2 датами - наименьшей и наибольшей
+     */
+    public List<Date> getBorderDates(String tableName) {
+        if(connection == null) {
+            List<Date> dates = new ArrayList<>();
+            dates.add(new Date());
+            dates.add(new Date());
+            return dates;
+        }
+        String query = "";
+        try {
+            query = "SELECT MIN(first_date) AS min_date, MAX(first_date) AS max_date FROM " + tableName + ";";
+            ResultSet res = executeScrollableQuery(getUpdateConnection(), query);
+            List<Date> dates = new ArrayList<>();
+            res.next();
+            dates.add(res.getTimestamp("min_date"));
+            dates.add(res.getTimestamp("max_date"));
+            return dates;
+        } catch (SQLException ex) {
+            logger.logError("Не удалось получить список столбцов по запросу: " + query);
+            handleSQLException(ex);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Возвращает общее количество операций в таблице исходных данных между двумя датами.
+     *
+     * @param tableName - название таблицы
+     * @param minDate   - первая дата
+     * @param maxDate   - последняя дата
+     * @return общее количество операций
+     */
+    public long getTotalAmount(String tableName, Date minDate, Date maxDate) {
+        if(connection == null) {
+            return 0;
+        }
+        String query = "";
+        try {
+            query = "SELECT sum(amount) AS total_amount FROM " + tableName + " WHERE first_date >= '" + minDate +
+                    "' AND first_date <= '" + maxDate + "';";
+            ResultSet res = executeScrollableQuery(connection, query);
+            res.next();
+            return res.getLong("total_amount");
+        } catch (SQLException ex) {
+            logger.logError("Не удалось получить количество операций по запросу: " + query);
+            handleSQLException(ex);
+        }
+        return 0;
+    }
+
+    /**
+     * Возвращает количество строк в таблице исходных данных.
+     *
+     * @param tableName - название таблицы
+     * @return количество строк
+     */
+    public long getRowCount(String tableName) {
+        if(connection == null) {
+            return 0;
+        }
+        String query = "";
+        try {
+            query = "SELECT count(*) AS row_count FROM " + tableName + ";";
+            ResultSet res = executeQuery(connection, query);
+            res.next();
+            return res.getLong("row_count");
+        } catch (SQLException ex) {
+            logger.logError("Не удалось получить количество строк по запросу: " + query);
+            handleSQLException(ex);
+        }
+        return 0;
+    }
+
+    /**
+     * Получает список уникальных значений, которые принимают данные в указанных столбцах.
+     *
+     * @param tableName - название таблицы
+     * @param colNames  - названия столбцов
+     * @return список значений в строковом виде
+     */
+    public List<String[]> getLabelCombinations(String tableName, String[] colNames, int maxCount) {
+        if(connection == null) {
+            return new ArrayList<>();
+        }
+        StringBuilder query = new StringBuilder();
+        try {
+            query.append("SELECT ");
+            for (int i = 0; i < colNames.length; i++) {
+                query.append(colNames[i]);
+                if (i < colNames.length - 1) {
+                    query.append(", ");
+                }
+            }
+            query.append(" FROM ").append(tableName).append(" GROUP BY ");
+            for (int i = 0; i < colNames.length; i++) {
+                query.append(colNames[i]);
+                if (i < colNames.length - 1) {
+                    query.append(", ");
+                }
+            }
+            query.append(" ORDER BY sum(amount) DESC LIMIT ").append(maxCount).append(";");
+            ResultSet res = executeScrollableQuery(connection, query.toString());
+            res.beforeFirst();
+            List<String[]> labelCombinations = new ArrayList<>();
+            while (res.next()) {
+                String[] combination = new String[colNames.length];
+                for (int i = 0; i < colNames.length; i++) {
+                    combination[i] = "'" + res.getString(colNames[i]) + "'";
+                }
+                labelCombinations.add(combination);
+            }
+            return labelCombinations;
+        } catch (SQLException ex) {
+            logger.logError("Не удалось получить разрез по запросу: " + query);
+            handleSQLException(ex);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Получает для каждого из нескольких сочетаний столбцов список наиболее частых сочетаний значений одним запросом
+     * с GROUPING SETS вместо отдельного запроса на каждое сочетание столбцов. Сочетания значений каждого сочетания
+     * столбцов упорядочены так же, как в getLabelCombinations (по убыванию суммарного количества операций).
+     *
+     * @param tableName      - название таблицы
+     * @param categoryCombos - сочетания названий столбцов (в сумме не более 31 различного столбца)
+     * @param maxCount       - максимальное количество сочетаний значений для одного сочетания столбцов
+     * @return карта (ключи - названия столбцов сочетания через запятую, значения - списки значений в строковом виде)
+     * или null, если запрос не удался
+     */
+    public Map<String, List<String[]>> getLabelCombinationsPlan(String tableName, List<String[]> categoryCombos, int maxCount) {
+        if(connection == null) {
+            return new LinkedHashMap<>();
+        }
+        List<String> planColumns = new ArrayList<>();
+        for (String[] combo : categoryCombos) {
+            for (String colName : combo) {
+                if (!planColumns.contains(colName)) {
+                    planColumns.add(colName);
+                }
+            }
+        }
+        Map<Integer, String[]> combosByGroupingId = new HashMap<>();
+        Map<String, List<String[]>> plan = new LinkedHashMap<>();
+        for (String[] combo : categoryCombos) {
+            combosByGroupingId.put(getGroupingId(planColumns, combo), combo);
+            plan.put(String.join(",", combo), new ArrayList<>());
+        }
+        String columnList = String.join(", ", planColumns);
+        StringBuilder query = new StringBuilder();
+        try {
+            query.append("SELECT * FROM (SELECT grouped.*, row_number() OVER (PARTITION BY grouping_id ORDER BY total_amount DESC) AS combo_rank FROM (");
+            query.append("SELECT ").append(columnList).append(", GROUPING(").append(columnList).append(") AS grouping_id, sum(amount) AS total_amount");
+            query.append(" FROM ").append(tableName).append(" GROUP BY GROUPING SETS (");
+            for (int k = 0; k < categoryCombos.size(); k++) {
+                query.append("(").append(String.join(", ", categoryCombos.get(k))).append(")");
+                if (k < categoryCombos.size() - 1) {
+                    query.append(", ");
+                }
+            }
+            query.append(")) grouped) ranked WHERE combo_rank <= ").append(maxCount).append(" ORDER BY grouping_id, combo_rank;");
+            ResultSet res = executeQuery(connection, query.toString());
+            while (res.next()) {
+                String[] colNames = combosByGroupingId.get(res.getInt("grouping_id"));
+                if (colNames == null) {
+                    continue;
+                }
+                String[] combination = new String[colNames.length];
+                for (int i = 0; i < colNames.length; i++) {
+                    combination[i] = "'" + res.getString(colNames[i]) + "'";
+                }
+                plan.get(String.join(",", colNames)).add(combination);
+            }
+            return plan;
+        } catch (SQLException ex) {
+            logger.logError("Не удалось получить сочетания значений по запросу: " + query);
+            handleSQLException(ex);
+        }
+        return null;
+    }
+
+    /**
+     * Вычисляет значение функции GROUPING для набора группировки: бит столбца равен 1, если столбец не входит в набор
+     * (старший бит соответствует первому столбцу).
+     *
+     * @param planColumns - все столбцы, перечисленные в функции GROUPING
+     * @param colNames    - столбцы набора группировки
+     * @return значение GROUPING
+     */
+    private int getGroupingId(List<String> planColumns, String[] colNames) {
+        int groupingId = 0;
+        for (int i = 0; i < planColumns.size(); i++) {
+            if (!Arrays.asList(colNames).contains(planColumns.get(i))) {
+                groupingId |= 1 << (planColumns.size() - 1 - i);
+            }
+        }
+        return groupingId;
+    }
+
+    /**
+     * Получает список значений категорий из таблицы исходных данных и записывает их в новую таблицу.
+     *
+     * @param tableName - название таблицы
+     */
+    public void insertLabelList(String tableName) {
+        if(connection == null) {
+            return;
+        }
+        StringBuilder query = new StringBuilder();
+        try {
+            List<String> categories = getCategoryNames(tableName);
+            for (String category : categories) {
+                query = new StringBuilder();
+                query.append("SELECT ").append(category).append(" FROM ").append(tableName).append(" GROUP BY ").
+                        append(category).append(" ORDER BY sum(amount) DESC;");
+                ResultSet res = executeScrollableQuery(connection, query.toString());
+                res.beforeFirst();
+                List<String> labels = new ArrayList<>();
+                while (res.next()) {
+                    String colName = res.getString(category);
+                    labels.add(colName);
+                }
+                query = new StringBuilder();
+                query.append("INSERT INTO ").append(tableName).append("_labels(category, label) VALUES(");
+                for (int i = 0; i < labels.size(); i++) {
+                    query.append("'").append(category).append("','").append(labels.get(i)).append("'");
+                    if (i < labels.size() - 1) {
+                        query.append("),(");
+                    }
+                }
+                query.append(");");
+                executeUpdate(connection, query.toString());
+            }
+        } catch (SQLException ex) {
+            logger.logError("Не удалось получить разрез по запросу: " + query);
+            handleSQLException(ex);
+        }
+    }
+
+    public List<String> getLabelList(String tableName, String category, int maxCount) {
+        if(connection == null) {
+            return new ArrayList<>();
+        }
+        String query = "";
+        try {
+            query = "SELECT label FROM " + tableName + "_labels WHERE category = '" + category + "' LIMIT " + maxCount + ";";
+            ResultSet res = executeScrollableQuery(connection, query);
+            res.last();
+            List<String> labels = new ArrayList<>();
+            res.beforeFirst();
+            while (res.next()) {
+                labels.add(res.getString("label"));
+            }
+            return labels;
+        } catch (SQLException ex) {
+            logger.logError("Не удалось получить список столбцов по запросу: " + query);
+            handleSQLException(ex);
+        }
+        return new ArrayList<>();
     }
 
     /**
@@ -327,10 +1033,14 @@ public class DatabaseService {
         if(connection == null) {
             return new ArrayList<>();
         }
+        List<String> cachedNames = categoryNamesCache.get(tableName);
+        if (cachedNames != null) {
+            return new ArrayList<>(cachedNames);
+        }
         String query = "";
         try {
             query = "SELECT column_name FROM information_schema.columns WHERE table_name = '" + tableName + "' ORDER BY column_name;";
-            ResultSet res = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).executeQuery(query);
+            ResultSet res = executeScrollableQuery(connection, query);
             res.last();
             List<String> categoryNames = new ArrayList<>();
             res.beforeFirst();
@@ -340,6 +1050,9 @@ public class DatabaseService {
                     categoryNames.add(colName);
                 }
             }
+            if (!categoryNames.isEmpty()) {
+                categoryNamesCache.put(tableName, new ArrayList<>(categoryNames));
+            }
             return categoryNames;
         } catch (SQLException ex) {
             logger.logError("Не удалось получить список столбцов по запросу: " + query);
@@ -361,7 +1074,7 @@ public class DatabaseService {
         String query = "";
         try {
             query = "SELECT column_name FROM information_schema.columns WHERE table_name = '" + tableName + "' ORDER BY column_name;";
-            ResultSet res = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).executeQuery(query);
+            ResultSet res = executeScrollableQuery(connection, query);
             res.last();
             List<String> categoryNames = new ArrayList<>();
             res.beforeFirst();
@@ -379,46 +1092,298 @@ public class DatabaseService {
         return new ArrayList<>();
     }
 
+    /**
+     * Проверяет, установлено ли подключение к базе данных.
+     *
+     * @return true, если подключение установлено
+     */
+    public boolean isConnected() {
+        return connection != null;
+    }
+
+    /**
+     * Получает столбцы таблицы в порядке их создания вместе с типами в том виде, в каком они задаются при создании
+     * таблицы из файла csv (int8, float, timestamptz или varchar(255)).
+     *
+     * @param tableName - название таблицы
+     * @return карта (ключи - названия столбцов, значения - типы данных), пустая, если таблицы нет
+     */
+    public Map<String, String> getColumnTypes(String tableName) {
+        if(connection == null) {
+            return new LinkedHashMap<>();
+        }
+        String query = "";
+        try {
+            query = "SELECT column_name, data_type FROM information_schema.columns WHERE table_name = '" + tableName +
+                    "' ORDER BY ordinal_position;";
+            ResultSet res = executeScrollableQuery(connection, query);
+            Map<String, String> colTypes = new LinkedHashMap<>();
+            res.beforeFirst();
+            while (res.next()) {
+                String dataType = res.getString("data_type");
+                String colType;
+                switch (dataType) {
+                    case "bigint":
+                        colType = "int8";
+                        break;
+                    case "double precision":
+                        colType = "float";
+                        break;
+                    case "timestamp with time zone":
+                        colType = "timestamptz";
+                        break;
+                    default:
+                        colType = "varchar(255)";
+                }
+                colTypes.put(res.getString("column_name"), colType);
+            }
+            return colTypes;
+        } catch (SQLException ex) {
+            logger.logError("Не удалось получить список столбцов по запросу: " + query);
+            handleSQLException(ex);
+        }
+        return new LinkedHashMap<>();
+    }
+
     /**
      * Получает список названий таблиц с исходными данными.
      *
      * @return список столбцов в строковом виде
      */
-    public List<String> getTableNames() {
+    public List<String> getTableNames() {
+        if(connection == null) {
+            return new ArrayList<>();
+        }
+        String query = "";
+        try {
+            query = "SELECT table_name FROM information_schema.tables WHERE table_type = 'BASE TABLE' " +
+                    "AND table_schema NOT IN ('pg_catalog', 'information_schema') " +
+                    "AND table_name NOT IN (SELECT relname FROM pg_class WHERE relispartition) ORDER BY table_name;";
+            ResultSet res = executeScrollableQuery(connection, query);
+            res.last();
+            List<String> allTableNames = new ArrayList<>();
+            res.beforeFirst();
+            while (res.next()) {
+                allTableNames.add(res.getString("table_name"));
+            }
+            Set<String> existingTables = new HashSet<>(allTableNames);
+            List<String> tableNames = new ArrayList<>();
+            for (String tableName : allTableNames) {
+                if (!tableName.endsWith("_decreases") && !tableName.endsWith("_constants") && !tableName.endsWith("_labels") &&
+                        !tableName.endsWith("_state") && !tableName.endsWith("_progress") &&
+                        !isRollupTable(tableName, existingTables)) {
+                    tableNames.add(tableName);
+                }
+            }
+            return tableNames;
+        } catch (SQLException ex) {
+            logger.logError("Не удалось получить список столбцов по запросу: " + query);
+            handleSQLException(ex);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Проверяет, является ли таблица таблицей агрегатов, то есть называется ли она
+     * [исходная таблица]_rollup_[период] для одного из периодов агрегатов и существующей исходной таблицы.
+     *
+     * @param tableName      - название таблицы
+     * @param existingTables - названия всех таблиц базы данных
+     * @return true, если таблица содержит агрегаты другой таблицы
+     */
+    private boolean isRollupTable(String tableName, Set<String> existingTables) {
+        for (String bucket : rollupBuckets) {
+            String suffix = "_rollup_" + bucket;
+            if (tableName.endsWith(suffix) &&
+                    existingTables.contains(tableName.substring(0, tableName.length() - suffix.length()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Вставляет в таблицу интервалов с уменьшениями новые строки с указанными значениями данных. Внутри единицы работы
+     * (beginUnit) записывает в ее транзакции.
+     *
+     * @param tableName - название таблицы
+     * @param colNames  - названия столбцов таблицы
+     * @param intervals - вставляемые интервалы
+     */
+    public void insertDecrease(String tableName, String[] colNames, List<SuspiciousInterval> intervals, Date minDate, Date maxDate) {
+        if(connection == null || intervals.isEmpty()) {
+            return;
+        }
+        StringBuilder query = new StringBuilder();
+        try {
+            query.append("INSERT INTO ").append(tableName).append("(");
+            for (int i = 0; i < colNames.length; i++) {
+                query.append(colNames[i]);
+                if (i < colNames.length - 1) {
+                    query.append(", ");
+                }
+            }
+            query.append(", pos1, pos2, interval_start, interval_end, min_date, max_date, decrease_score, relative_width, relative_diff, value_name");
+            query.append(") VALUES (");
+            for (int k = 0; k < intervals.size(); k++) {
+                SuspiciousInterval interval = intervals.get(k);
+                Slice slice = interval.slice;
+                String[] labels = new String[colNames.length];
+                for (int i = 0; i < colNames.length; i++) {
+                    boolean columnIsPresent = false;
+                    for (int j = 0; j < slice.colNames.length; j++) {
+                        if (colNames[i].equals(slice.colNames[j])) {
+                            columnIsPresent = true;
+                            labels[i] = slice.labels[j];
+                        }
+                    }
+                    if (!columnIsPresent) {
+                        labels[i] = labelNotPresent;
+                    }
+                }
+                for (int i = 0; i < labels.length; i++) {
+                    if (labels[i].startsWith("'")) {
+                        query.append(labels[i]);
+                    } else {
+                        query.append("'").append(labels[i]).append("'");
+                    }
+                    if (i < labels.length - 1) {
+                        query.append(", ");
+                    }
+                }
+                query.append(", ").append(slice.firstPosition + interval.pos1);
+                query.append(", ").append(slice.firstPosition + interval.pos2);
+                query.append(", '").append(new Timestamp(interval.getFirstPoint().date.getTime())).append("'");
+                query.append(", '").append(new Timestamp(interval.getLastPoint().date.getTime())).append("'");
+                query.append(", '").append(minDate).append("'");
+                query.append(", '").append(maxDate).append("'");
+                query.append(", ").append(interval.getDecreaseScore());
+                query.append(", ").append(interval.getRelativeWidth());
+                query.append(", ").append(interval.getRelativeDiff() / interval.slice.getRelativeSigma());
+                query.append(", ").append("'").append(interval.slice.valueName).append("'");
+                if (k < intervals.size() - 1) {
+                    query.append("),(");
+                }
+            }
+            query.append(");");
+            executeUpdate(getUpdateConnection(), query.toString());
+        } catch (SQLException ex) {
+            logger.logError("Не удалось вставить интервалы с уменьшением по запросу: " + query);
+            handleSQLException(ex);
+        }
+    }
+
+    /**
+     * Получает из таблицы интервалов с уменьшениями список интервалов, сгруппированных по определенным столбцам и
+     * отвечающих определенным требованиям.
+     *
+     * @param tableName         - название таблицы
+     * @param valueName         - название ряда данных
+     * @param categoryCombos    - сочетания названий столбцов таблицы
+     * @param approximationType - тип приближения срезов
+     * @param minIntervalMult   - минимальная длина интервалов, которые будут рассматриваться (измеряется как доля длины
+     *                          временного промежутка всего разреза, от 0 до 1)
+     * @param thresholdMult     - минимальная разность между первой и последней величиной для интервалов, которые будут
+     *                          рассматриваться (измеряется как доля разности между максимальным и минимальным значением
+     *                          на всем разрезе, от 0 до 1)
+     * @return список интервалов
+     */
+    public List<SuspiciousInterval> getDecreases(String tableName, String valueName, List<String[]> categoryCombos,
+                                                 ApproximationType approximationType, double minIntervalMult,
+                                                 double thresholdMult, int maxIntervals) {
+        return getDecreases(tableName, valueName, categoryCombos, approximationType, minIntervalMult,
+                thresholdMult, maxIntervals, interval -> {
+        });
+    }
+
+    /**
+     * То же, что getDecreases, но передает каждый интервал в intervalConsumer сразу после того, как получен его разрез, не
+     * дожидаясь остальных интервалов.
+     *
+     * @param intervalConsumer - получатель интервалов
+     * @return список интервалов
+     */
+    public List<SuspiciousInterval> getDecreases(String tableName, String valueName, List<String[]> categoryCombos,
+                                                 ApproximationType approximationType, double minIntervalMult,
+                                                 double thresholdMult, int maxIntervals,
+                                                 Consumer<SuspiciousInterval> intervalConsumer) {
         if(connection == null) {
             return new ArrayList<>();
         }
-        String query = "";
+        StringBuilder query = new StringBuilder();
         try {
-            query = "SELECT table_name FROM information_schema.tables WHERE table_type = 'BASE TABLE' " +
-                    "AND table_schema NOT IN ('pg_catalog', 'information_schema') ORDER BY table_name;";
-            ResultSet res = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).executeQuery(query);
+            String tableDecName = tableName + "_decreases";
+            query.append("SELECT * FROM ").append(tableDecName).append(" WHERE (");
+            List<String> categoryNames = getCategoryNames(tableDecName);
+            appendCategories(categoryCombos, query, categoryNames);
+            query.append(") AND relative_width > ").append(minIntervalMult);
+            query.append(" AND -relative_diff > ").append(thresholdMult);
+            query.append(" AND value_name = '").append(valueName).append("'");
+            query.append(" LIMIT 1024;");
+            ResultSet res = executeScrollableQuery(connection, query.toString());
             res.last();
-            List<String> tableNames = new ArrayList<>();
+            List<SuspiciousInterval> intervals = new ArrayList<>();
             res.beforeFirst();
-            while (res.next()) {
-                String tableName = res.getString("table_name");
-                if (!tableName.endsWith("_decreases") && !tableName.endsWith("_constants") && !tableName.endsWith("_labels")) {
-                    tableNames.add(tableName);
+            List<Slice> slices = new ArrayList<>();
+            boolean hasIntervalDates = hasColumn(res, "interval_start");
+            while (res.next() && intervals.size() <= maxIntervals * categoryNames.size()) {
+                Date minDate = res.getTimestamp("min_date");
+                Date maxDate = res.getTimestamp("max_date");
+                Slice slice = matchSlice(tableName, valueName, approximationType, categoryNames, res, slices, minDate, maxDate,
+                        hasIntervalDates);
+                int pos1 = getIntervalPosition(slice, res, "pos1", "interval_start", hasIntervalDates);
+                int pos2 = getIntervalPosition(slice, res, "pos2", "interval_end", hasIntervalDates);
+                if (!intervalIntersects(intervals, categoryNames, res, pos1, pos2)) {
+                    SuspiciousInterval interval = new SuspiciousInterval(slice, pos1, pos2, 0.2);
+                    intervals.add(interval);
+                    intervalConsumer.accept(interval);
                 }
             }
-            return tableNames;
+            return intervals;
         } catch (SQLException ex) {
-            logger.logError("Не удалось получить список столбцов по запросу: " + query);
+            logger.logError("Не удалось получить интервалы с уменьшением по запросу: " + query);
             handleSQLException(ex);
         }
         return new ArrayList<>();
     }
 
     /**
-     * Вставляет в таблицу интервалов с уменьшениями новые строки с указанными значениями данных.
+     * Получает из таблицы интервалов с уменьшениями интервалы сразу для нескольких сочетаний значений одних и тех же
+     * столбцов одним запросом; разрезы интервалов получаются параллельно через пул соединений. Интервалы передаются
+     * в intervalConsumer в том же порядке, что и в списке, как только получен разрез очередного интервала.
+     *
+     * @param tableName         - название таблицы
+     * @param valueName         - название ряда данных
+     * @param colNames          - названия столбцов таблицы
+     * @param labelCombos       - сочетания значений столбцов таблицы
+     * @param approximationType - тип приближения срезов
+     * @param minIntervalMult   - минимальная длина интервалов, которые будут рассматриваться (измеряется как доля длины
+     *                          временного промежутка всего разреза, от 0 до 1)
+     * @param thresholdMult     - минимальная разность между первой и последней величиной для интервалов, которые будут
+     *                          рассматриваться (измеряется как доля разности между максимальным и минимальным значением
+     *                          на всем разрезе, от 0 до 1)
+     * @param intervalConsumer  - получатель интервалов
+     * @return список интервалов
+     */
+    public List<SuspiciousInterval> getDecreasesSimple(String tableName, String valueName, String[] colNames, List<String[]> labelCombos,
+                                                       ApproximationType approximationType, double minIntervalMult,
+                                                       double thresholdMult, int maxIntervals,
+                                                       Consumer<SuspiciousInterval> intervalConsumer) {
+        return getIntervalsSimple(tableName + "_decreases", " AND -relative_diff > " + thresholdMult, "decrease_score",
+                tableName, valueName,
+                colNames, labelCombos, approximationType, minIntervalMult, maxIntervals, intervalConsumer);
+    }
+
+    /**
+     * Вставляет в таблицу интервалов с отсутствием изменений новые строки с указанными значениями данных. Внутри
+     * единицы работы (beginUnit) записывает в ее транзакции.
      *
      * @param tableName - название таблицы
      * @param colNames  - названия столбцов таблицы
      * @param intervals - вставляемые интервалы
      */
-    public void insertDecrease(String tableName, String[] colNames, List<SuspiciousInterval> intervals, Date minDate, Date maxDate) {
-        if(connection == null) {
+    public void insertConstant(String tableName, String[] colNames, List<SuspiciousInterval> intervals, Date minDate, Date maxDate) {
+        if(connection == null || intervals.isEmpty()) {
             return;
         }
         StringBuilder query = new StringBuilder();
@@ -430,7 +1395,7 @@ public class DatabaseService {
                     query.append(", ");
                 }
             }
-            query.append(", pos1, pos2, min_date, max_date, decrease_score, relative_width, relative_diff, value_name");
+            query.append(", pos1, pos2, interval_start, interval_end, min_date, max_date, flatness_score, relative_width, relative_value_range, value_name");
             query.append(") VALUES (");
             for (int k = 0; k < intervals.size(); k++) {
                 SuspiciousInterval interval = intervals.get(k);
@@ -458,28 +1423,30 @@ public class DatabaseService {
                         query.append(", ");
                     }
                 }
-                query.append(", ").append(interval.pos1);
-                query.append(", ").append(interval.pos2);
+                query.append(", ").append(slice.firstPosition + interval.pos1);
+                query.append(", ").append(slice.firstPosition + interval.pos2);
+                query.append(", '").append(new Timestamp(interval.getFirstPoint().date.getTime())).append("'");
+                query.append(", '").append(new Timestamp(interval.getLastPoint().date.getTime())).append("'");
                 query.append(", '").append(minDate).append("'");
                 query.append(", '").append(maxDate).append("'");
-                query.append(", ").append(interval.getDecreaseScore());
+                query.append(", ").append(interval.getFlatnessScore());
                 query.append(", ").append(interval.getRelativeWidth());
-                query.append(", ").append(interval.getRelativeDiff() / interval.slice.getRelativeSigma());
+                query.append(", ").append(interval.getRelativeValueRange() / interval.slice.getRelativeSigma());
                 query.append(", ").append("'").append(interval.slice.valueName).append("'");
                 if (k < intervals.size() - 1) {
                     query.append("),(");
                 }
             }
             query.append(");");
-            connection.createStatement().executeUpdate(query.toString());
+            executeUpdate(getUpdateConnection(), query.toString());
         } catch (SQLException ex) {
-            logger.logError("Не удалось вставить интервалы с уменьшением по запросу: " + query);
+            logger.logError("Не удалось вставить интервалы с отсутствием роста по запросу: " + query);
             handleSQLException(ex);
         }
     }
 
     /**
-     * Получает из таблицы интервалов с уменьшениями список интервалов, сгруппированных по определенным столбцам и
+     * Получает из таблицы интервалов с отсутствием изменений список интервалов, сгруппированных по определенным столбцам и
      * отвечающих определенным требованиям.
      *
      * @param tableName         - название таблицы
@@ -488,281 +1455,633 @@ public class DatabaseService {
      * @param approximationType - тип приближения срезов
      * @param minIntervalMult   - минимальная длина интервалов, которые будут рассматриваться (измеряется как доля длины
      *                          временного промежутка всего разреза, от 0 до 1)
-     * @param thresholdMult     - минимальная разность между первой и последней величиной для интервалов, которые будут
+     * @param thresholdMult     - максимальная разность между максимальной и минимальной величиной для интервалов, которые будут
      *                          рассматриваться (измеряется как доля разности между максимальным и минимальным значением
      *                          на всем разрезе, от 0 до 1)
      * @return список интервалов
      */
-    public List<SuspiciousInterval> getDecreases(String tableName, String valueName, List<String[]> categoryCombos,
+    public List<SuspiciousInterval> getConstants(String tableName, String valueName, List<String[]> categoryCombos,
                                                  ApproximationType approximationType, double minIntervalMult,
                                                  double thresholdMult, int maxIntervals) {
+        return getConstants(tableName, valueName, categoryCombos, approximationType, minIntervalMult,
+                thresholdMult, maxIntervals, interval -> {
+        });
+    }
+
+    /**
+     * То же, что getConstants, но передает каждый интервал в intervalConsumer сразу после того, как получен его разрез, не
+     * дожидаясь остальных интервалов.
+     *
+     * @param intervalConsumer - получатель интервалов
+     * @return список интервалов
+     */
+    public List<SuspiciousInterval> getConstants(String tableName, String valueName, List<String[]> categoryCombos,
+                                                 ApproximationType approximationType, double minIntervalMult,
+                                                 double thresholdMult, int maxIntervals,
+                                                 Consumer<SuspiciousInterval> intervalConsumer) {
         if(connection == null) {
             return new ArrayList<>();
         }
         StringBuilder query = new StringBuilder();
         try {
-            String tableDecName = tableName + "_decreases";
+            String tableDecName = tableName + "_constants";
             query.append("SELECT * FROM ").append(tableDecName).append(" WHERE (");
             List<String> categoryNames = getCategoryNames(tableDecName);
             appendCategories(categoryCombos, query, categoryNames);
             query.append(") AND relative_width > ").append(minIntervalMult);
-            query.append(" AND -relative_diff > ").append(thresholdMult);
+            query.append(" AND relative_value_range < ").append(thresholdMult);
             query.append(" AND value_name = '").append(valueName).append("'");
             query.append(" LIMIT 1024;");
-            ResultSet res = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).executeQuery(query.toString());
+            ResultSet res = executeScrollableQuery(connection, query.toString());
             res.last();
             List<SuspiciousInterval> intervals = new ArrayList<>();
             res.beforeFirst();
             List<Slice> slices = new ArrayList<>();
+            boolean hasIntervalDates = hasColumn(res, "interval_start");
             while (res.next() && intervals.size() <= maxIntervals * categoryNames.size()) {
-                int pos1 = res.getInt("pos1");
-                int pos2 = res.getInt("pos2");
                 Date minDate = res.getTimestamp("min_date");
                 Date maxDate = res.getTimestamp("max_date");
+                Slice slice = matchSlice(tableName, valueName, approximationType, categoryNames, res, slices, minDate, maxDate,
+                        hasIntervalDates);
+                int pos1 = getIntervalPosition(slice, res, "pos1", "interval_start", hasIntervalDates);
+                int pos2 = getIntervalPosition(slice, res, "pos2", "interval_end", hasIntervalDates);
                 if (!intervalIntersects(intervals, categoryNames, res, pos1, pos2)) {
-                    Slice slice = matchSlice(tableName, valueName, approximationType, categoryNames, res, slices, minDate, maxDate);
-                    intervals.add(new SuspiciousInterval(slice, pos1, pos2, 0.2));
+                    SuspiciousInterval interval = new SuspiciousInterval(slice, pos1, pos2, 0.2);
+                    intervals.add(interval);
+                    intervalConsumer.accept(interval);
                 }
             }
             return intervals;
         } catch (SQLException ex) {
-            logger.logError("Не удалось получить интервалы с уменьшением по запросу: " + query);
+            logger.logError("Не удалось получить интервалы с отсутствием роста по запросу: " + query);
+            handleSQLException(ex);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Получает из таблицы интервалов с отсутствием изменений интервалы сразу для нескольких сочетаний значений одних и
+     * тех же столбцов одним запросом; разрезы интервалов получаются параллельно через пул соединений.
+     *
+     * @param tableName         - название таблицы
+     * @param valueName         - название ряда данных
+     * @param colNames          - названия столбцов таблицы
+     * @param labelCombos       - сочетания значений столбцов таблицы
+     * @param approximationType - тип приближения срезов
+     * @param minIntervalMult   - минимальная длина интервалов, которые будут рассматриваться (измеряется как доля длины
+     *                          временного промежутка всего разреза, от 0 до 1)
+     * @param thresholdMult     - максимальная разность между максимальным и минимальным значением на интервале
+     *                          (измеряется как доля разности между максимальным и минимальным значением на всем разрезе)
+     * @param intervalConsumer  - получатель интервалов
+     * @return список интервалов
+     */
+    public List<SuspiciousInterval> getConstantsSimple(String tableName, String valueName, String[] colNames, List<String[]> labelCombos,
+                                                       ApproximationType approximationType, double minIntervalMult,
+                                                       double thresholdMult, int maxIntervals,
+                                                       Consumer<SuspiciousInterval> intervalConsumer) {
+        return getIntervalsSimple(tableName + "_constants", " AND relative_value_range < " + thresholdMult, "flatness_score",
+                tableName, valueName,
+                colNames, labelCombos, approximationType, minIntervalMult, maxIntervals, intervalConsumer);
+    }
+
+    /**
+     * Получает интервалы для нескольких сочетаний значений столбцов одним запросом к таблице интервалов. Каждый
+     * уникальный разрез получается один раз, в отдельном потоке через пул соединений; строки обрабатываются в порядке
+     * ответа, ожидая разрез очередной строки. Разрезы запрашиваются не более чем на размер пула вперед, и после
+     * получения maxIntervals интервалов новые разрезы не запрашиваются.
+     * <p>
+     * Для каждого сочетания значений берется не более maxRowsPerCombo строк с наибольшей оценкой, поэтому сочетание с
+     * большим количеством интервалов не вытесняет остальные; строки обрабатываются в порядке убывания оценки.
+     *
+     * @param intervalTableName  - название таблицы интервалов
+     * @param thresholdCondition - условие на разность значений интервала
+     * @param scoreColumn        - столбец с оценкой интервала
+     * @param tableName          - название таблицы с данными
+     * @return список интервалов
+     */
+    private List<SuspiciousInterval> getIntervalsSimple(String intervalTableName, String thresholdCondition, String scoreColumn,
+                                                        String tableName, String valueName, String[] colNames, List<String[]> labelCombos,
+                                                        ApproximationType approximationType, double minIntervalMult,
+                                                        int maxIntervals, Consumer<SuspiciousInterval> intervalConsumer) {
+        if(connection == null || labelCombos.isEmpty()) {
+            return new ArrayList<>();
+        }
+        StringBuilder query = new StringBuilder();
+        Map<String, Future<Slice>> slices = new HashMap<>();
+        try {
+            List<String> categoryNames = getCategoryNames(intervalTableName);
+            query.append("SELECT * FROM (SELECT intervals.*, row_number() OVER (PARTITION BY value_name");
+            for (String categoryName : categoryNames) {
+                query.append(", ").append(categoryName);
+            }
+            query.append(" ORDER BY ").append(scoreColumn).append(" DESC) AS combo_rank FROM ").append(intervalTableName);
+            query.append(" AS intervals WHERE (");
+            for (int i = 0; i < labelCombos.size(); i++) {
+                query.append("(");
+                appendCategoriesSimple(colNames, labelCombos.get(i), query, categoryNames);
+                query.append(")");
+                if (i < labelCombos.size() - 1) {
+                    query.append(" OR ");
+                }
+            }
+            query.append(") AND relative_width > ").append(minIntervalMult);
+            query.append(thresholdCondition);
+            query.append(" AND value_name = '").append(valueName).append("'");
+            query.append(") ranked WHERE combo_rank <= ").append(maxRowsPerCombo);
+            query.append(" ORDER BY ").append(scoreColumn).append(" DESC, combo_rank;");
+            ResultSet res = executeQuery(connection, query.toString());
+            boolean hasIntervalDates = hasColumn(res, "interval_start");
+            List<IntervalRow> rows = new ArrayList<>();
+            while (res.next()) {
+                rows.add(new IntervalRow(res, categoryNames, hasIntervalDates));
+            }
+
+            ConnectionPool pool = getConnectionPool();
+            ExecutorService sliceExecutor = getSliceExecutor();
+            int lookahead = pool.getMaxConnections();
+            ArrayDeque<Integer> pendingRows = new ArrayDeque<>();
+            int nextRow = 0;
+            List<SuspiciousInterval> intervals = new ArrayList<>();
+            for (int i = 0; i < rows.size() && intervals.size() < maxIntervals; i++) {
+                while (!pendingRows.isEmpty() && pendingRows.peekFirst() <= i) {
+                    pendingRows.pollFirst();
+                }
+                while (nextRow < rows.size() && (nextRow <= i || pendingRows.size() < lookahead)) {
+                    IntervalRow nextIntervalRow = rows.get(nextRow);
+                    if (!slices.containsKey(nextIntervalRow.getSliceKey())) {
+                        slices.put(nextIntervalRow.getSliceKey(), submitIntervalSlice(sliceExecutor, pool, tableName,
+                                valueName, approximationType, nextIntervalRow, hasIntervalDates));
+                        pendingRows.addLast(nextRow);
+                    }
+                    nextRow++;
+                }
+                IntervalRow row = rows.get(i);
+                Slice slice = slices.get(row.getSliceKey()).get();
+                int pos1 = getIntervalPosition(slice, row.pos1, row.intervalStart);
+                int pos2 = getIntervalPosition(slice, row.pos2, row.intervalEnd);
+                if (!intervalIntersects(intervals, Arrays.asList(row.labels), pos1, pos2)) {
+                    SuspiciousInterval interval = new SuspiciousInterval(slice, pos1, pos2, 0.2);
+                    intervals.add(interval);
+                    intervalConsumer.accept(interval);
+                }
+            }
+            return intervals;
+        } catch (SQLException ex) {
+            logger.logError("Не удалось получить интервалы по запросу: " + query);
             handleSQLException(ex);
+        } catch (ExecutionException ex) {
+            cancellationToken.throwIfCancelled();
+            logger.logError("Не удалось получить разрез интервала: " + ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Future<Slice> slice : slices.values()) {
+                slice.cancel(true);
+            }
         }
         return new ArrayList<>();
     }
 
     /**
-     * Получает из таблицы интервалов с уменьшениями список интервалов, сгруппированных по определенным столбцам и
-     * отвечающих определенным требованиям. Работает при выборе интервалов из одного среза.
+     * Запускает получение разреза строки таблицы интервалов в отдельном потоке через пул соединений.
+     *
+     * @param sliceExecutor    - потоки получения разрезов
+     * @param pool             - пул соединений
+     * @param tableName        - название таблицы с данными
+     * @param row              - строка таблицы интервалов
+     * @param hasIntervalDates - есть ли в таблице интервалов даты точек (только тогда срез можно получить из таблицы
+     *                         агрегатов)
+     * @return разрез с накоплением
+     */
+    private Future<Slice> submitIntervalSlice(ExecutorService sliceExecutor, ConnectionPool pool, String tableName,
+                                              String valueName, ApproximationType approximationType, IntervalRow row,
+                                              boolean hasIntervalDates) {
+        String rollupBucket = hasIntervalDates ? getRollupBucket(tableName, row.minDate, row.maxDate) : null;
+        return sliceExecutor.submit(() -> {
+            Connection pooledConnection = pool.acquire();
+            try {
+                return getSlice(pooledConnection, tableName, valueName, row.colNames, row.labels, approximationType,
+                        row.minDate, row.maxDate, rollupBucket).getAccumulation();
+            } finally {
+                pool.release(pooledConnection);
+            }
+        });
+    }
+
+    /**
+     * Создает таблицу состояний разрезов, по которым продолжается поиск интервалов после добавления новых данных. Также
+     * удаляет существующую таблицу с таким же названием, если она существует.
+     *
+     * @param tableName - название таблицы состояний
+     */
+    public void createSliceStateTable(String tableName) {
+        if(connection == null) {
+            return;
+        }
+        String query = "";
+        try {
+            executeUpdate(connection, "DROP TABLE IF EXISTS " + tableName + ";");
+            query = "CREATE TABLE " + tableName + " (value_name varchar(255), col_names text[], labels text[], " +
+                    "first_date timestamptz, last_date timestamptz, processed_date timestamptz, last_value int8, last_time_sum int8, " +
+                    "point_count int8, previous_min_value int8, previous_max_value int8, sum_x float8, sum_y float8, sum_xx float8, sum_xy float8, sum_yy float8);";
+            executeUpdate(connection, query);
+            query = "CREATE UNIQUE INDEX " + tableName + "_slice_idx ON " + tableName + " (value_name, col_names, labels);";
+            executeUpdate(connection, query);
+            logger.logMessage("Создана таблица: " + tableName);
+        } catch (SQLException ex) {
+            logger.logError("Не удалось создать таблицу состояний по запросу: " + query);
+            handleSQLException(ex);
+        }
+    }
+
+    /**
+     * Удаляет из таблицы интервалов все интервалы определенного ряда данных. Внутри единицы работы (beginUnit)
+     * удаляет в ее транзакции.
+     *
+     * @param tableName - название таблицы интервалов
+     * @param valueName - название ряда данных
+     */
+    public void deleteIntervals(String tableName, String valueName) {
+        if(connection == null) {
+            return;
+        }
+        String query = "";
+        try {
+            query = "DELETE FROM " + tableName + " WHERE value_name = '" + valueName + "';";
+            executeUpdate(getUpdateConnection(), query);
+        } catch (SQLException ex) {
+            logger.logError("Не удалось удалить интервалы по запросу: " + query);
+            handleSQLException(ex);
+        }
+    }
+
+    /**
+     * Удаляет ранее записанные интервалы тех же разрезов, которые начинаются в ту же дату, что и новые интервалы: для
+     * каждой начальной точки разреза находится не более одного интервала, поэтому после добавления данных интервал,
+     * найденный заново (например, продолжившийся в новых данных), заменяет прежний. Внутри единицы работы
+     * (beginUnit) удаляет в ее транзакции.
+     *
+     * @param tableName - название таблицы интервалов
+     * @param colNames  - названия столбцов категорий таблицы интервалов
+     * @param intervals - новые интервалы
+     */
+    public void deleteSupersededIntervals(String tableName, String[] colNames, List<SuspiciousInterval> intervals) {
+        if(connection == null || intervals.isEmpty()) {
+            return;
+        }
+        StringBuilder query = new StringBuilder();
+        try {
+            query.append("DELETE FROM ").append(tableName).append(" WHERE ");
+            for (int k = 0; k < intervals.size(); k++) {
+                SuspiciousInterval interval = intervals.get(k);
+                query.append("(value_name = '").append(interval.slice.valueName).append("'");
+                for (int i = 0; i < colNames.length; i++) {
+                    String label = labelNotPresent;
+                    for (int j = 0; j < interval.slice.colNames.length; j++) {
+                        if (colNames[i].equals(interval.slice.colNames[j])) {
+                            label = interval.slice.labels[j];
+                        }
+                    }
+                    query.append(" AND ").append(colNames[i]).append(" = ");
+                    query.append(label.startsWith("'") ? label : "'" + label + "'");
+                }
+                query.append(" AND interval_start = '").append(new Timestamp(interval.getFirstPoint().date.getTime())).append("')");
+                if (k < intervals.size() - 1) {
+                    query.append(" OR ");
+                }
+            }
+            query.append(";");
+            executeUpdate(getUpdateConnection(), query.toString());
+        } catch (SQLException ex) {
+            logger.logError("Не удалось удалить замененные интервалы по запросу: " + query);
+            handleSQLException(ex);
+        }
+    }
+
+    /**
+     * Проверяет, существует ли таблица с указанным названием.
+     *
+     * @param tableName - название таблицы
+     * @return true, если таблица существует, иначе false
+     */
+    public boolean tableExists(String tableName) {
+        if(connection == null) {
+            return false;
+        }
+        String query = "";
+        try {
+            query = "SELECT to_regclass('" + tableName + "') IS NOT NULL AS table_exists;";
+            ResultSet res = executeQuery(connection, query);
+            return res.next() && res.getBoolean("table_exists");
+        } catch (SQLException ex) {
+            logger.logError("Не удалось проверить наличие таблицы по запросу: " + query);
+            handleSQLException(ex);
+        }
+        return false;
+    }
+
+    /**
+     * Получает сохраненные состояния разрезов определенного ряда данных. Таблица состояний прежнего формата (без суммы
+     * значений последней точки) создается заново, и состояния из нее не получаются.
+     *
+     * @param tableName - название таблицы состояний
+     * @param valueName - название ряда данных
+     * @return карта (ключи - результат SliceState.getKey, значения - состояния)
+     */
+    public Map<String, SliceState> getSliceStates(String tableName, String valueName) {
+        Map<String, SliceState> states = new HashMap<>();
+        if(connection == null) {
+            return states;
+        }
+        String query = "";
+        try {
+            query = "SELECT * FROM " + tableName + " WHERE value_name = '" + valueName + "';";
+            ResultSet res = executeQuery(connection, query);
+            if (!hasColumn(res, "last_time_sum")) {
+                logger.logMessage("Таблица состояний " + tableName + " создана предыдущей версией и будет создана заново");
+                createSliceStateTable(tableName);
+                return states;
+            }
+            while (res.next()) {
+                double[] sums = {res.getDouble("sum_x"), res.getDouble("sum_y"), res.getDouble("sum_xx"),
+                        res.getDouble("sum_xy"), res.getDouble("sum_yy")};
+                SliceState state = new SliceState(valueName, (String[]) res.getArray("col_names").getArray(),
+                        (String[]) res.getArray("labels").getArray(), res.getTimestamp("first_date").getTime(),
+                        res.getTimestamp("last_date").getTime(), res.getTimestamp("processed_date").getTime(), res.getLong("last_value"),
+                        res.getLong("last_time_sum"), res.getInt("point_count"), res.getLong("previous_min_value"),
+                        res.getLong("previous_max_value"), sums);
+                states.put(state.getKey(), state);
+            }
+        } catch (SQLException ex) {
+            logger.logError("Не удалось получить состояния разрезов по запросу: " + query);
+            handleSQLException(ex);
+        }
+        return states;
+    }
+
+    /**
+     * Записывает состояния разрезов в таблицу состояний, заменяя ранее сохраненные состояния тех же разрезов. Внутри
+     * единицы работы (beginUnit) записывает в ее транзакции.
+     *
+     * @param tableName - название таблицы состояний
+     * @param states    - состояния разрезов
+     */
+    public void saveSliceStates(String tableName, Collection<SliceState> states) {
+        if(connection == null || states.isEmpty()) {
+            return;
+        }
+        final int batchSize = 1000;
+        List<SliceState> stateList = new ArrayList<>(states);
+        StringBuilder query = new StringBuilder();
+        try {
+            for (int start = 0; start < stateList.size(); start += batchSize) {
+                query.setLength(0);
+                query.append("INSERT INTO ").append(tableName).append(" (value_name, col_names, labels, first_date, ");
+                query.append("last_date, processed_date, last_value, last_time_sum, point_count, previous_min_value, previous_max_value, ");
+                query.append("sum_x, sum_y, sum_xx, sum_xy, sum_yy) VALUES ");
+                for (int k = start; k < Math.min(start + batchSize, stateList.size()); k++) {
+                    SliceState state = stateList.get(k);
+                    double[] sums = state.getSums();
+                    if (k > start) {
+                        query.append(", ");
+                    }
+                    query.append("('").append(state.valueName).append("', ");
+                    query.append(getArrayLiteral(state.colNames)).append(", ");
+                    query.append(getArrayLiteral(state.labels)).append(", ");
+                    query.append("'").append(new Timestamp(state.firstTime)).append("', ");
+                    query.append("'").append(new Timestamp(state.getLastTime())).append("', ");
+                    query.append("'").append(new Timestamp(state.getProcessedTime())).append("', ");
+                    query.append(state.getLastValue()).append(", ").append(state.getLastTimeSum()).append(", ");
+                    query.append(state.getPointCount()).append(", ");
+                    query.append(state.getPreviousMinValue()).append(", ").append(state.getPreviousMaxValue());
+                    for (double sum : sums) {
+                        query.append(", ").append(sum);
+                    }
+                    query.append(")");
+                }
+                query.append(" ON CONFLICT (value_name, col_names, labels) DO UPDATE SET first_date = EXCLUDED.first_date, ");
+                query.append("last_date = EXCLUDED.last_date, processed_date = EXCLUDED.processed_date, last_value = EXCLUDED.last_value, last_time_sum = EXCLUDED.last_time_sum, ");
+                query.append("point_count = EXCLUDED.point_count, previous_min_value = EXCLUDED.previous_min_value, ");
+                query.append("previous_max_value = EXCLUDED.previous_max_value, sum_x = EXCLUDED.sum_x, ");
+                query.append("sum_y = EXCLUDED.sum_y, sum_xx = EXCLUDED.sum_xx, sum_xy = EXCLUDED.sum_xy, sum_yy = EXCLUDED.sum_yy;");
+                executeUpdate(getUpdateConnection(), query.toString());
+            }
+            logger.logMessage("Сохранено " + stateList.size() + " состояний разрезов в таблицу " + tableName);
+        } catch (SQLException ex) {
+            logger.logError("Не удалось сохранить состояния разрезов по запросу: " + query);
+            handleSQLException(ex);
+        }
+    }
+
+    /**
+     * Создает таблицу хода выполнения экспорта, в которую записываются завершенные единицы работы (сочетания ряда
+     * данных и категорий). Также удаляет существующую таблицу с таким же названием, если она существует.
+     *
+     * @param tableName - название таблицы хода выполнения
+     */
+    public void createProgressTable(String tableName) {
+        if(connection == null) {
+            return;
+        }
+        String query = "";
+        try {
+            executeUpdate(connection, "DROP TABLE IF EXISTS " + tableName + ";");
+            query = "CREATE TABLE " + tableName + " (run_key text, value_name varchar(255), unit varchar(255), " +
+                    "total_amount int8, intervals int8, completed_at timestamptz DEFAULT now(), " +
+                    "PRIMARY KEY (run_key, value_name, unit));";
+            executeUpdate(connection, query);
+            logger.logMessage("Создана таблица: " + tableName);
+        } catch (SQLException ex) {
+            logger.logError("Не удалось создать таблицу хода выполнения по запросу: " + query);
+            handleSQLException(ex);
+        }
+    }
+
+    /**
+     * Получает единицы работы, завершенные при экспорте с определенными параметрами.
+     *
+     * @param tableName - название таблицы хода выполнения
+     * @param runKey    - параметры экспорта в строковом виде
+     * @return карта (ключи - название ряда данных и единицы работы через "|", значения - общее количество операций в
+     * разрезах единицы работы)
+     */
+    public Map<String, Long> getCompletedUnits(String tableName, String runKey) {
+        Map<String, Long> units = new HashMap<>();
+        if(connection == null) {
+            return units;
+        }
+        String query = "";
+        try {
+            query = "SELECT value_name, unit, total_amount FROM " + tableName + " WHERE run_key = '" +
+                    runKey.replace("'", "''") + "';";
+            ResultSet res = executeQuery(connection, query);
+            while (res.next()) {
+                units.put(res.getString("value_name") + "|" + res.getString("unit"), res.getLong("total_amount"));
+            }
+        } catch (SQLException ex) {
+            logger.logError("Не удалось получить ход выполнения по запросу: " + query);
+            handleSQLException(ex);
+        }
+        return units;
+    }
+
+    /**
+     * Начинает единицу работы: до вызова endUnit интервалы и состояния разрезов, записываемые из текущего потока,
+     * записываются в отдельной транзакции, которая сохраняется только вместе с отметкой о завершении (commitUnit).
+     * Если транзакцию начать не удалось, записи единицы работы выполнять нельзя: они попали бы в основное соединение
+     * и сохранились бы по частям.
+     *
+     * @return true, если транзакция начата, иначе false
+     */
+    public boolean beginUnit() {
+        if(connection == null || unitConnection.get() != null) {
+            return false;
+        }
+        Connection pooledConnection = null;
+        try {
+            pooledConnection = getConnectionPool().acquire();
+            pooledConnection.setAutoCommit(false);
+            unitConnection.set(pooledConnection);
+            unitFailed.set(false);
+            return true;
+        } catch (SQLException ex) {
+            logger.logError("Не удалось начать транзакцию единицы работы");
+            handleSQLException(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (pooledConnection != null) {
+            getConnectionPool().release(pooledConnection);
+        }
+        return false;
+    }
+
+    /**
+     * Записывает отметку о завершении единицы работы и сохраняет транзакцию. Если какая-либо запись единицы работы не
+     * удалась, транзакция отменяется, и единица работы будет выполнена заново при следующем запуске.
      *
-     * @param tableName         - название таблицы
-     * @param valueName         - название ряда данных
-     * @param colNames          - названия столбцов таблицы
-     * @param labels            - значения столбцов таблицы
-     * @param approximationType - тип приближения срезов
-     * @param minIntervalMult   - минимальная длина интервалов, которые будут рассматриваться (измеряется как доля длины
-     *                          временного промежутка всего разреза, от 0 до 1)
-     * @param thresholdMult     - минимальная разность между первой и последней величиной для интервалов, которые будут
-     *                          рассматриваться (измеряется как доля разности между максимальным и минимальным значением
-     *                          на всем разрезе, от 0 до 1)
-     * @return список интервалов
+     * @param tableName    - название таблицы хода выполнения
+     * @param runKey       - параметры экспорта в строковом виде
+     * @param valueName    - название ряда данных
+     * @param unit         - название единицы работы
+     * @param totalAmount  - общее количество операций в разрезах единицы работы
+     * @param intervals    - количество записанных интервалов
+     * @return true, если единица работы сохранена, иначе false
      */
-    public List<SuspiciousInterval> getDecreasesSimple(String tableName, String valueName, String[] colNames, String[] labels,
-                                                       ApproximationType approximationType, double minIntervalMult,
-                                                       double thresholdMult, int maxIntervals) {
-        if(connection == null) {
-            return new ArrayList<>();
+    public boolean commitUnit(String tableName, String runKey, String valueName, String unit, long totalAmount, int intervals) {
+        Connection pooledConnection = unitConnection.get();
+        if(pooledConnection == null || unitFailed.get()) {
+            return false;
         }
-        StringBuilder query = new StringBuilder();
+        String query = "";
         try {
-            String tableDecName = tableName + "_decreases";
-            query.append("SELECT * FROM ").append(tableDecName).append(" WHERE (");
-            List<String> categoryNames = getCategoryNames(tableDecName);
-            appendCategoriesSimple(colNames, labels, query, categoryNames);
-            query.append(") AND relative_width > ").append(minIntervalMult);
-            query.append(" AND -relative_diff > ").append(thresholdMult);
-            query.append(" AND value_name = '").append(valueName).append("'");
-            query.append(" LIMIT 1024;");
-            ResultSet res = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).executeQuery(query.toString());
-            res.last();
-            List<SuspiciousInterval> intervals = new ArrayList<>();
-            res.beforeFirst();
-            List<Slice> slices = new ArrayList<>();
-            while (res.next() && intervals.size() <= maxIntervals * categoryNames.size()) {
-                int pos1 = res.getInt("pos1");
-                int pos2 = res.getInt("pos2");
-                Date minDate = res.getTimestamp("min_date");
-                Date maxDate = res.getTimestamp("max_date");
-                if (!intervalIntersects(intervals, categoryNames, res, pos1, pos2)) {
-                    Slice slice = matchSlice(tableName, valueName, approximationType, categoryNames, res, slices, minDate, maxDate);
-                    intervals.add(new SuspiciousInterval(slice, pos1, pos2, 0.2));
-                }
-            }
-            return intervals;
+            query = "INSERT INTO " + tableName + " (run_key, value_name, unit, total_amount, intervals) VALUES ('" +
+                    runKey.replace("'", "''") + "', '" + valueName + "', '" + unit + "', " + totalAmount + ", " + intervals + ");";
+            executeUpdate(pooledConnection, query);
         } catch (SQLException ex) {
-            logger.logError("Не удалось получить интервалы с уменьшением по запросу: " + query);
+            logger.logError("Не удалось сохранить единицу работы " + valueName + " " + unit + " по запросу: " + query);
             handleSQLException(ex);
+            return false;
         }
-        return new ArrayList<>();
+        return commitUnit();
     }
 
+    /**
+     * Проверяет, завершился ли ошибкой какой-либо запрос начатой единицы работы (после этого ее транзакция будет
+     * отменена, поэтому продолжать ее нет смысла).
+     *
+     * @return true, если единица работы не начата или не может быть сохранена
+     */
+    public boolean isUnitFailed() {
+        return unitConnection.get() == null || unitFailed.get();
+    }
 
     /**
-     * Вставляет в таблицу интервалов с отсутствием изменений новые строки с указанными значениями данных.
+     * Сохраняет транзакцию единицы работы без отметки о завершении. Если какой-либо запрос единицы работы (в том числе
+     * чтение) завершился ошибкой, транзакция не сохраняется.
      *
-     * @param tableName - название таблицы
-     * @param colNames  - названия столбцов таблицы
-     * @param intervals - вставляемые интервалы
+     * @return true, если единица работы сохранена, иначе false
      */
-    public void insertConstant(String tableName, String[] colNames, List<SuspiciousInterval> intervals, Date minDate, Date maxDate) {
-        if(connection == null) {
-            return;
+    public boolean commitUnit() {
+        Connection pooledConnection = unitConnection.get();
+        if(pooledConnection == null || unitFailed.get()) {
+            return false;
         }
-        StringBuilder query = new StringBuilder();
         try {
-            query.append("INSERT INTO ").append(tableName).append("(");
-            for (int i = 0; i < colNames.length; i++) {
-                query.append(colNames[i]);
-                if (i < colNames.length - 1) {
-                    query.append(", ");
-                }
-            }
-            query.append(", pos1, pos2, min_date, max_date, flatness_score, relative_width, relative_value_range, value_name");
-            query.append(") VALUES (");
-            for (int k = 0; k < intervals.size(); k++) {
-                SuspiciousInterval interval = intervals.get(k);
-                Slice slice = interval.slice;
-                String[] labels = new String[colNames.length];
-                for (int i = 0; i < colNames.length; i++) {
-                    boolean columnIsPresent = false;
-                    for (int j = 0; j < slice.colNames.length; j++) {
-                        if (colNames[i].equals(slice.colNames[j])) {
-                            columnIsPresent = true;
-                            labels[i] = slice.labels[j];
-                        }
-                    }
-                    if (!columnIsPresent) {
-                        labels[i] = labelNotPresent;
-                    }
-                }
-                for (int i = 0; i < labels.length; i++) {
-                    if (labels[i].startsWith("'")) {
-                        query.append(labels[i]);
-                    } else {
-                        query.append("'").append(labels[i]).append("'");
-                    }
-                    if (i < labels.length - 1) {
-                        query.append(", ");
-                    }
-                }
-                query.append(", ").append(interval.pos1);
-                query.append(", ").append(interval.pos2);
-                query.append(", '").append(minDate).append("'");
-                query.append(", '").append(maxDate).append("'");
-                query.append(", ").append(interval.getFlatnessScore());
-                query.append(", ").append(interval.getRelativeWidth());
-                query.append(", ").append(interval.getRelativeValueRange() / interval.slice.getRelativeSigma());
-                query.append(", ").append("'").append(interval.slice.valueName).append("'");
-                if (k < intervals.size() - 1) {
-                    query.append("),(");
-                }
-            }
-            query.append(");");
-            connection.createStatement().executeUpdate(query.toString());
+            pooledConnection.commit();
+            return true;
         } catch (SQLException ex) {
-            logger.logError("Не удалось вставить интервалы с отсутствием роста по запросу: " + query);
+            logger.logError("Не удалось сохранить транзакцию единицы работы");
             handleSQLException(ex);
         }
+        return false;
     }
 
     /**
-     * Получает из таблицы интервалов с отсутствием изменений список интервалов, сгруппированных по определенным столбцам и
-     * отвечающих определенным требованиям.
-     *
-     * @param tableName         - название таблицы
-     * @param valueName         - название ряда данных
-     * @param categoryCombos    - сочетания названий столбцов таблицы
-     * @param approximationType - тип приближения срезов
-     * @param minIntervalMult   - минимальная длина интервалов, которые будут рассматриваться (измеряется как доля длины
-     *                          временного промежутка всего разреза, от 0 до 1)
-     * @param thresholdMult     - максимальная разность между максимальной и минимальной величиной для интервалов, которые будут
-     *                          рассматриваться (измеряется как доля разности между максимальным и минимальным значением
-     *                          на всем разрезе, от 0 до 1)
-     * @return список интервалов
+     * Завершает единицу работы: несохраненные записи отменяются, а соединение возвращается в пул.
      */
-    public List<SuspiciousInterval> getConstants(String tableName, String valueName, List<String[]> categoryCombos,
-                                                 ApproximationType approximationType, double minIntervalMult,
-                                                 double thresholdMult, int maxIntervals) {
-        if(connection == null) {
-            return new ArrayList<>();
+    public void endUnit() {
+        Connection pooledConnection = unitConnection.get();
+        if(pooledConnection == null) {
+            return;
         }
-        StringBuilder query = new StringBuilder();
+        unitConnection.remove();
+        unitFailed.remove();
         try {
-            String tableDecName = tableName + "_constants";
-            query.append("SELECT * FROM ").append(tableDecName).append(" WHERE (");
-            List<String> categoryNames = getCategoryNames(tableDecName);
-            appendCategories(categoryCombos, query, categoryNames);
-            query.append(") AND relative_width > ").append(minIntervalMult);
-            query.append(" AND relative_value_range < ").append(thresholdMult);
-            query.append(" AND value_name = '").append(valueName).append("'");
-            query.append(" LIMIT 1024;");
-            ResultSet res = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).executeQuery(query.toString());
-            res.last();
-            List<SuspiciousInterval> intervals = new ArrayList<>();
-            res.beforeFirst();
-            List<Slice> slices = new ArrayList<>();
-            while (res.next() && intervals.size() <= maxIntervals * categoryNames.size()) {
-                int pos1 = res.getInt("pos1");
-                int pos2 = res.getInt("pos2");
-                Date minDate = res.getTimestamp("min_date");
-                Date maxDate = res.getTimestamp("max_date");
-                if (!intervalIntersects(intervals, categoryNames, res, pos1, pos2)) {
-                    Slice slice = matchSlice(tableName, valueName, approximationType, categoryNames, res, slices, minDate, maxDate);
-                    intervals.add(new SuspiciousInterval(slice, pos1, pos2, 0.2));
-                }
-            }
-            return intervals;
+            pooledConnection.rollback();
+            pooledConnection.setAutoCommit(true);
         } catch (SQLException ex) {
-            logger.logError("Не удалось получить интервалы с отсутствием роста по запросу: " + query);
+            logger.logError("Не удалось завершить транзакцию единицы работы");
             handleSQLException(ex);
+        } finally {
+            getConnectionPool().release(pooledConnection);
         }
-        return new ArrayList<>();
     }
 
     /**
-     * Получает из таблицы интервалов с отсутствием изменений список интервалов, сгруппированных по определенным столбцам и
-     * отвечающих определенным требованиям. Работает при выборе интервалов из одного среза.
+     * Получает соединение для записи результатов (и для чтения данных, которые могли быть записаны в единице работы):
+     * соединение единицы работы текущего потока, если она начата, иначе основное соединение.
      *
-     * @param tableName         - название таблицы
-     * @param valueName         - название ряда данных
-     * @param colNames          - названия столбцов таблицы
-     * @param labels            - значения столбцов таблицы
-     * @param approximationType - тип приближения срезов
-     * @param minIntervalMult   - минимальная длина интервалов, которые будут рассматриваться (измеряется как доля длины
-     *                          временного промежутка всего разреза, от 0 до 1)
-     * @param thresholdMult     - минимальная разность между первой и последней величиной для интервалов, которые будут
-     *                          рассматриваться (измеряется как доля разности между максимальным и минимальным значением
-     *                          на всем разрезе, от 0 до 1)
-     * @return список интервалов
+     * @return соединение с базой данных
      */
-    public List<SuspiciousInterval> getConstantsSimple(String tableName, String valueName, String[] colNames, String[] labels,
-                                                       ApproximationType approximationType, double minIntervalMult,
-                                                       double thresholdMult, int maxIntervals) {
-        if(connection == null) {
-            return new ArrayList<>();
-        }
-        StringBuilder query = new StringBuilder();
-        try {
-            String tableDecName = tableName + "_constants";
-            query.append("SELECT * FROM ").append(tableDecName).append(" WHERE (");
-            List<String> categoryNames = getCategoryNames(tableDecName);
-            appendCategoriesSimple(colNames, labels, query, categoryNames);
-            query.append(") AND relative_width > ").append(minIntervalMult);
-            query.append(" AND relative_value_range < ").append(thresholdMult);
-            query.append(" AND value_name = '").append(valueName).append("'");
-            query.append(" LIMIT 1024;");
-            ResultSet res = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).executeQuery(query.toString());
-            res.last();
-            List<SuspiciousInterval> intervals = new ArrayList<>();
-            res.beforeFirst();
-            List<Slice> slices = new ArrayList<>();
-            while (res.next() && intervals.size() <= maxIntervals * categoryNames.size()) {
-                int pos1 = res.getInt("pos1");
-                int pos2 = res.getInt("pos2");
-                Date minDate = res.getTimestamp("min_date");
-                Date maxDate = res.getTimestamp("max_date");
-                if (!intervalIntersects(intervals, categoryNames, res, pos1, pos2)) {
-                    Slice slice = matchSlice(tableName, valueName, approximationType, categoryNames, res, slices, minDate, maxDate);
-                    intervals.add(new SuspiciousInterval(slice, pos1, pos2, 0.2));
-                }
+    private Connection getUpdateConnection() {
+        Connection pooledConnection = unitConnection.get();
+        return pooledConnection != null ? pooledConnection : connection;
+    }
+
+    private String getArrayLiteral(String[] values) {
+        StringBuilder literal = new StringBuilder("ARRAY[");
+        for (int i = 0; i < values.length; i++) {
+            literal.append("'").append(values[i].replace("'", "''")).append("'");
+            if (i < values.length - 1) {
+                literal.append(", ");
             }
-            return intervals;
-        } catch (SQLException ex) {
-            logger.logError("Не удалось получить интервалы с отсутствием роста по запросу: " + query);
-            handleSQLException(ex);
         }
-        return new ArrayList<>();
+        return literal.append("]::text[]").toString();
+    }
+
+    private synchronized ConnectionPool getConnectionPool() {
+        if (connectionPool == null) {
+            connectionPool = new ConnectionPool(url, maxPoolConnections);
+        }
+        return connectionPool;
+    }
+
+    /**
+     * Получает потоки, в которых разрезы получаются через пул соединений (по одному потоку на соединение). Потоки
+     * создаются при первом обращении и используются всеми последующими запросами.
+     *
+     * @return потоки получения разрезов
+     */
+    private synchronized ExecutorService getSliceExecutor() {
+        if (sliceExecutor == null) {
+            sliceExecutor = Executors.newFixedThreadPool(maxPoolConnections, runnable -> {
+                Thread thread = new Thread(runnable, "slice-fetcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sliceExecutor;
     }
 
     /**
@@ -772,6 +2091,14 @@ public class DatabaseService {
         if(connection == null) {
             return;
         }
+        synchronized (this) {
+            if (sliceExecutor != null) {
+                sliceExecutor.shutdownNow();
+            }
+            if (connectionPool != null) {
+                connectionPool.close();
+            }
+        }
         try {
             connection.close();
         } catch (SQLException ex) {
@@ -780,9 +2107,107 @@ public class DatabaseService {
     }
 
     private void handleSQLException(SQLException ex) {
+        if (unitConnection.get() != null) {
+            unitFailed.set(true);
+        }
+        cancellationToken.throwIfCancelled();
         ex.printStackTrace();
     }
 
+    /**
+     * Задает признак отмены для последующих запросов: при отмене выполняющиеся запросы прерываются на стороне сервера,
+     * а новые запросы не выполняются (выбрасывается CancellationException).
+     *
+     * @param cancellationToken - признак отмены процесса
+     */
+    public synchronized void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    /**
+     * Убирает признак отмены после завершения процесса, если за это время не был задан признак другого процесса.
+     *
+     * @param cancellationToken - признак отмены завершившегося процесса
+     */
+    public synchronized void resetCancellationToken(CancellationToken cancellationToken) {
+        if (this.cancellationToken == cancellationToken) {
+            this.cancellationToken = CancellationToken.NONE;
+        }
+    }
+
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    private ResultSet executeQuery(Connection connection, String query) throws SQLException {
+        return executeQuery(connection, query, ResultSet.TYPE_FORWARD_ONLY);
+    }
+
+    private ResultSet executeScrollableQuery(Connection connection, String query) throws SQLException {
+        return executeQuery(connection, query, ResultSet.TYPE_SCROLL_INSENSITIVE);
+    }
+
+    /**
+     * Выполняет запрос, регистрируя его в текущем признаке отмены, чтобы его можно было прервать на стороне сервера.
+     *
+     * @param connection    - соединение, через которое выполняется запрос
+     * @param query         - запрос
+     * @param resultSetType - тип результата (ResultSet.TYPE_FORWARD_ONLY или ResultSet.TYPE_SCROLL_INSENSITIVE)
+     * @return результат запроса
+     * @throws SQLException если запрос не удалось выполнить или он был прерван
+     */
+    private ResultSet executeQuery(Connection connection, String query, int resultSetType) throws SQLException {
+        CancellationToken token = cancellationToken;
+        token.throwIfCancelled();
+        Statement statement = connection.createStatement(resultSetType, ResultSet.CONCUR_READ_ONLY);
+        token.register(statement);
+        long startTime = System.nanoTime();
+        try {
+            ResultSet res = statement.executeQuery(query);
+            if (resultSetType == ResultSet.TYPE_SCROLL_INSENSITIVE) {
+                res.last();
+                logger.recordValue("db.rows_read", res.getRow());
+                res.beforeFirst();
+            }
+            return res;
+        } finally {
+            token.unregister(statement);
+            logger.recordTime("db." + getQueryKind(query), startTime);
+            StartupTimer.mark("first_query", logger);
+        }
+    }
+
+    private int executeUpdate(Connection connection, String query) throws SQLException {
+        CancellationToken token = cancellationToken;
+        token.throwIfCancelled();
+        Statement statement = connection.createStatement();
+        token.register(statement);
+        long startTime = System.nanoTime();
+        try {
+            int rows = statement.executeUpdate(query);
+            logger.recordValue("db.rows_updated", rows);
+            return rows;
+        } finally {
+            token.unregister(statement);
+            logger.recordTime("db." + getQueryKind(query), startTime);
+            StartupTimer.mark("first_query", logger);
+        }
+    }
+
+    /**
+     * Получает вид запроса (первое слово в нижнем регистре) для названия метрики его длительности.
+     *
+     * @param query - запрос
+     * @return вид запроса, например select или insert
+     */
+    private String getQueryKind(String query) {
+        int end = 0;
+        while (end < query.length() && Character.isLetter(query.charAt(end))) {
+            end++;
+        }
+        return end == 0 ? "other" : query.substring(0, end).toLowerCase(Locale.ROOT);
+    }
+
     /**
      * Добавляет к запросу получения интервалов список комбинаций категорий в виде логического выражения.
      *
@@ -851,10 +2276,13 @@ public class DatabaseService {
      * @param categoryNames     - названия столбцов
      * @param res               - ответ на запрос к базе данных, содержащий список интервалов
      * @param slices            - раннее найденные столбцы
+     * @param allowRollups      - можно ли получать срез из таблицы агрегатов (только если в таблице интервалов
+     *                          записаны даты начала и конца интервалов)
      * @return новый или найденный срез
      */
     private Slice matchSlice(String tableName, String valueName, ApproximationType approximationType,
-                             List<String> categoryNames, ResultSet res, List<Slice> slices, Date minDate, Date maxDate) throws SQLException {
+                             List<String> categoryNames, ResultSet res, List<Slice> slices, Date minDate, Date maxDate,
+                             boolean allowRollups) throws SQLException {
         List<String> labelsList = new ArrayList<>();
         List<String> colNamesList = new ArrayList<>();
         for (String categoryName : categoryNames) {
@@ -882,12 +2310,56 @@ public class DatabaseService {
             }
         }
         if (slice == null) {
-            slice = getSlice(tableName, valueName, colNames, labels, approximationType, minDate, maxDate).getAccumulation();
+            slice = getSlice(tableName, valueName, colNames, labels, approximationType, minDate, maxDate,
+                    allowRollups ? getRollupBucket(tableName, minDate, maxDate) : null).getAccumulation();
             slices.add(slice);
         }
         return slice;
     }
 
+    /**
+     * Получает номер точки среза, соответствующей началу или концу интервала из таблицы интервалов. Если в таблице
+     * записаны даты интервала, номер находится по дате (срез мог быть получен из таблицы агрегатов, и номера точек в
+     * нем отличаются от исходных), иначе используется записанный номер.
+     *
+     * @param slice            - срез интервала
+     * @param res              - ответ на запрос к базе данных, содержащий список интервалов
+     * @param posColumn        - столбец с номером точки
+     * @param dateColumn       - столбец с датой точки
+     * @param hasIntervalDates - есть ли в таблице интервалов даты точек
+     * @return номер точки среза
+     */
+    private int getIntervalPosition(Slice slice, ResultSet res, String posColumn, String dateColumn,
+                                    boolean hasIntervalDates) throws SQLException {
+        return getIntervalPosition(slice, res.getInt(posColumn), hasIntervalDates ? res.getTimestamp(dateColumn) : null);
+    }
+
+    private int getIntervalPosition(Slice slice, int pos, Date date) {
+        if (date == null) {
+            return pos;
+        }
+        int low = 0, high = slice.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) / 2;
+            if (slice.getTime(middle) <= date.getTime()) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private boolean hasColumn(ResultSet res, String colName) throws SQLException {
+        ResultSetMetaData metaData = res.getMetaData();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (metaData.getColumnName(i).equals(colName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private boolean intervalIntersects(List<SuspiciousInterval> intervals, List<String> categoryNames, ResultSet res,
                                        int pos1, int pos2) throws SQLException {
         List<String> labelsList = new ArrayList<>();
@@ -896,6 +2368,10 @@ public class DatabaseService {
                 labelsList.add("'" + res.getString(categoryName) + "'");
             }
         }
+        return intervalIntersects(intervals, labelsList, pos1, pos2);
+    }
+
+    private boolean intervalIntersects(List<SuspiciousInterval> intervals, List<String> labelsList, int pos1, int pos2) {
         for (SuspiciousInterval interval : intervals) {
             if (interval.slice.labels.length != labelsList.size()) {
                 continue;
@@ -919,4 +2395,38 @@ public class DatabaseService {
         return false;
     }
 
+    /**
+     * Строка таблицы интервалов, прочитанная из ответа на запрос: значения категорий разреза и положение интервала.
+     */
+    private class IntervalRow {
+
+        final String[] colNames, labels;
+        final int pos1, pos2;
+        final Date minDate, maxDate, intervalStart, intervalEnd;
+
+        IntervalRow(ResultSet res, List<String> categoryNames, boolean hasIntervalDates) throws SQLException {
+            List<String> colNamesList = new ArrayList<>();
+            List<String> labelsList = new ArrayList<>();
+            for (String categoryName : categoryNames) {
+                if (!res.getString(categoryName).equals(labelNotPresent)) {
+                    labelsList.add("'" + res.getString(categoryName) + "'");
+                    colNamesList.add(categoryName);
+                }
+            }
+            colNames = colNamesList.toArray(new String[0]);
+            labels = labelsList.toArray(new String[0]);
+            pos1 = res.getInt("pos1");
+            pos2 = res.getInt("pos2");
+            minDate = res.getTimestamp("min_date");
+            maxDate = res.getTimestamp("max_date");
+            intervalStart = hasIntervalDates ? res.getTimestamp("interval_start") : null;
+            intervalEnd = hasIntervalDates ? res.getTimestamp("interval_end") : null;
+        }
+
+        String getSliceKey() {
+            return String.join(",", colNames) + "=" + String.join(",", labels);
+        }
+
+    }
+
 }
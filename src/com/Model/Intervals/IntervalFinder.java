@@ -2,6 +2,7 @@ package com.Model.Intervals;
 
 import com.DataObjects.Slice;
 import com.DataObjects.SuspiciousInterval;
+import com.SupportClasses.CancellationToken;
 
 import java.util.List;
 
@@ -24,8 +25,28 @@ public interface IntervalFinder {
      * @param removeIntersections - если true, то из списка будут убраны интервалы, которые пересекаются с другими
      * @return список интервалов
      */
+    default List<SuspiciousInterval> getDecreasingIntervals(List<Slice> slices, double minIntervalMult, double thresholdMult,
+                                                            int maxIntervals, boolean removeIntersections) {
+        return getDecreasingIntervals(slices, minIntervalMult, thresholdMult, maxIntervals, removeIntersections,
+                CancellationToken.NONE);
+    }
+
+    /**
+     * Получает из списка разрезов данных список интервалов, на которых наблюдается убывание значение; поиск
+     * прерывается, если процесс отменен.
+     *
+     * @param slices              - список разрезов, на которых ведется поиск
+     * @param minIntervalMult     - минимальная длина интервалов, которые будут рассматриваться
+     * @param thresholdMult       - минимальная разность между первой и последней величиной для интервалов
+     * @param maxIntervals        - максимальное количество интервалов, которые вернет метод
+     * @param removeIntersections - если true, то из списка будут убраны интервалы, которые пересекаются с другими
+     * @param cancellationToken   - признак отмены процесса
+     * @return список интервалов
+     * @throws java.util.concurrent.CancellationException если процесс был отменен
+     */
     List<SuspiciousInterval> getDecreasingIntervals(List<Slice> slices, double minIntervalMult, double thresholdMult,
-                                                    int maxIntervals, boolean removeIntersections);
+                                                    int maxIntervals, boolean removeIntersections,
+                                                    CancellationToken cancellationToken);
 
     /**
      * Получает из списка разрезов данных список интервалов, на которых не наблюдается значительного изменения значения, с минимальным
@@ -41,8 +62,28 @@ public interface IntervalFinder {
      * @param removeIntersections - если true, то из списка будут убраны интервалы, которые пересекаются с другими
      * @return список интервалов
      */
+    default List<SuspiciousInterval> getConstantIntervals(List<Slice> slices, double minIntervalMult, double thresholdMult,
+                                                          int maxIntervals, boolean removeIntersections) {
+        return getConstantIntervals(slices, minIntervalMult, thresholdMult, maxIntervals, removeIntersections,
+                CancellationToken.NONE);
+    }
+
+    /**
+     * Получает из списка разрезов данных список интервалов, на которых не наблюдается значительного изменения
+     * значения; поиск прерывается, если процесс отменен.
+     *
+     * @param slices              - список разрезов, на которых ведется поиск
+     * @param minIntervalMult     - минимальная длина интервалов, которые будут рассматриваться
+     * @param thresholdMult       - максимальная разность между максимальной и минимальной величиной для интервалов
+     * @param maxIntervals        - максимальное количество интервалов, которые вернет метод
+     * @param removeIntersections - если true, то из списка будут убраны интервалы, которые пересекаются с другими
+     * @param cancellationToken   - признак отмены процесса
+     * @return список интервалов
+     * @throws java.util.concurrent.CancellationException если процесс был отменен
+     */
     List<SuspiciousInterval> getConstantIntervals(List<Slice> slices, double minIntervalMult, double thresholdMult,
-                                                  int maxIntervals, boolean removeIntersections);
+                                                  int maxIntervals, boolean removeIntersections,
+                                                  CancellationToken cancellationToken);
 
     /**
      * Убирает из отсортированного списка интервалы, которые пересекаются друг с другом (в списке остаются интеравлы
@@ -2,6 +2,10 @@ package com.Model.Intervals;
 
 import com.DataObjects.Slice;
 import com.DataObjects.SuspiciousInterval;
+import com.SupportClasses.CancellationToken;
+import com.SupportClasses.ConsoleLogger;
+import com.SupportClasses.Logger;
+import com.SupportClasses.Profiling.IntervalFinderEvent;
 
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -13,7 +17,10 @@ import java.util.List;
  */
 public class SimpleIntervalFinder implements IntervalFinder {
 
+    private final Logger logger;
+
     public SimpleIntervalFinder() {
+        logger = new ConsoleLogger();
     }
 
     /**
@@ -27,19 +34,28 @@ public class SimpleIntervalFinder implements IntervalFinder {
      *                            рассматриваться (измеряется как доля среднеквадратического отклонения)
      * @param maxIntervals        - максимальное количество интервалов, которые вернет метод
      * @param removeIntersections - если true, то из списка будут убраны интервалы, которые пересекаются с другими
+     * @param cancellationToken   - признак отмены процесса (проверяется перед каждым началом интервала)
      * @return список интервалов
      */
     @Override
     public List<SuspiciousInterval> getDecreasingIntervals(List<Slice> slices, double minIntervalMult, double thresholdMult,
-                                                           int maxIntervals, boolean removeIntersections) {
+                                                           int maxIntervals, boolean removeIntersections,
+                                                           CancellationToken cancellationToken) {
+        long startTime = System.nanoTime();
+        IntervalFinderEvent event = new IntervalFinderEvent();
+        event.begin();
+        long candidates = 0, totalPoints = 0;
         List<SuspiciousInterval> res = new ArrayList<>();
         for (Slice slice : slices) {
-            final int chunkLength = Integer.max(slice.points.length / 128, 1);
+            final int chunkLength = Integer.max(slice.size() / 128, 1);
             final int minIntervalLength = Integer.max((int) Math.floor(slice.dateRange * minIntervalMult), 1);
             final long threshold = (long) Math.floor(slice.getSigma() * thresholdMult);
-            for (int pos1 = 0; pos1 < slice.points.length - 1; pos1 += chunkLength) {
+            totalPoints += slice.size();
+            for (int pos1 = 0; pos1 < slice.size() - 1; pos1 += chunkLength) {
+                cancellationToken.throwIfCancelled();
                 SuspiciousInterval newInterval = null;
-                for (int pos2 = pos1 + chunkLength; pos2 < slice.points.length; pos2 += chunkLength) {
+                for (int pos2 = pos1 + chunkLength; pos2 < slice.size(); pos2 += chunkLength) {
+                    candidates++;
                     if (slice.isIntervalDecreasing(pos1, pos2, threshold) && slice.getDateDistance(pos1, pos2) >= minIntervalLength) {
                         if (newInterval == null) {
                             newInterval = new SuspiciousInterval(slice, pos1, pos2, 0.2);
@@ -60,6 +76,18 @@ public class SimpleIntervalFinder implements IntervalFinder {
         if (removeIntersections) {
             removeIntersectingIntervals(res);
         }
+        logger.recordTime("finder.decreases", startTime);
+        logger.incrementCounter("finder.slices", slices.size());
+        logger.incrementCounter("finder.decreases_found", res.size());
+        if (event.shouldCommit()) {
+            event.finder = getClass().getSimpleName();
+            event.intervalType = "decreases";
+            event.slices = slices.size();
+            event.points = totalPoints;
+            event.candidates = candidates;
+            event.intervals = res.size();
+            event.commit();
+        }
         return res.size() >= maxIntervals ? res.subList(0, maxIntervals) : res;
     }
 
@@ -74,19 +102,28 @@ public class SimpleIntervalFinder implements IntervalFinder {
      *                            рассматриваться (измеряется как доля среднеквадратического отклонения)
      * @param maxIntervals        - максимальное количество интервалов, которые вернет метод
      * @param removeIntersections - если true, то из списка будут убраны интервалы, которые пересекаются с другими
+     * @param cancellationToken   - признак отмены процесса (проверяется перед каждым началом интервала)
      * @return список интервалов
      */
     @Override
     public List<SuspiciousInterval> getConstantIntervals(List<Slice> slices, double minIntervalMult, double thresholdMult,
-                                                         int maxIntervals, boolean removeIntersections) {
+                                                         int maxIntervals, boolean removeIntersections,
+                                                         CancellationToken cancellationToken) {
+        long startTime = System.nanoTime();
+        IntervalFinderEvent event = new IntervalFinderEvent();
+        event.begin();
+        long candidates = 0, totalPoints = 0;
         List<SuspiciousInterval> res = new ArrayList<>();
         for (Slice slice : slices) {
-            final int chunkLength = Integer.max(slice.points.length / 128, 1);
+            final int chunkLength = Integer.max(slice.size() / 128, 1);
             final int minIntervalLength = Integer.max((int) Math.floor(slice.dateRange * minIntervalMult), 1);
             final long threshold = (long) Math.floor(slice.getSigma() * thresholdMult);
-            for (int pos1 = 0; pos1 < slice.points.length - 1; pos1 += chunkLength) {
+            totalPoints += slice.size();
+            for (int pos1 = 0; pos1 < slice.size() - 1; pos1 += chunkLength) {
+                cancellationToken.throwIfCancelled();
                 SuspiciousInterval newInterval = null;
-                for (int pos2 = pos1 + chunkLength; pos2 < slice.points.length; pos2 += chunkLength) {
+                for (int pos2 = pos1 + chunkLength; pos2 < slice.size(); pos2 += chunkLength) {
+                    candidates++;
                     if (slice.isIntervalConstant(pos1, pos2, threshold) && slice.getDateDistance(pos1, pos2) >= minIntervalLength) {
                         if (newInterval == null) {
                             newInterval = new SuspiciousInterval(slice, pos1, pos2, 0.2);
@@ -107,6 +144,18 @@ public class SimpleIntervalFinder implements IntervalFinder {
         if (removeIntersections) {
             removeIntersectingIntervals(res);
         }
+        logger.recordTime("finder.constants", startTime);
+        logger.incrementCounter("finder.slices", slices.size());
+        logger.incrementCounter("finder.constants_found", res.size());
+        if (event.shouldCommit()) {
+            event.finder = getClass().getSimpleName();
+            event.intervalType = "constants";
+            event.slices = slices.size();
+            event.points = totalPoints;
+            event.candidates = candidates;
+            event.intervals = res.size();
+            event.commit();
+        }
         return res.size() >= maxIntervals ? res.subList(0, maxIntervals) : res;
     }
 
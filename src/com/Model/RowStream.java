@@ -0,0 +1,299 @@
+package com.Model;
+
+import com.SupportClasses.ConsoleLogger;
+import com.SupportClasses.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Источник строк для потоковой загрузки данных. Строки читаются в отдельном потоке либо из каталога, в который
+ * добавляются файлы .csv, либо из потока ввода, и выдаются пакетами: пакет заканчивается, когда в нем набралось
+ * заданное количество строк или истекло время ожидания новых строк.
+ * <p>
+ * Каждый файл каталога начинается с заголовка, как и файл, из которого создана таблица, и читается целиком (файлы
+ * должны появляться в каталоге сразу полностью, например переименованием из временного файла); файлы обрабатываются
+ * в порядке названий. Файл переименовывается в .csv.done только после вызова commit для пакета с его строками,
+ * поэтому если программа завершится раньше, файл будет прочитан повторно; если пакет не удалось записать (reject),
+ * файл переименовывается в .csv.error. В потоке ввода заголовок - первая строка.
+ * Столбцы строк переставляются в порядок столбцов таблицы.
+ */
+public class RowStream implements AutoCloseable {
+
+    private final int queueCapacity = 10000;
+    private final Chunk endOfStream = new Chunk(new ArrayList<>(), null, null);
+
+    private final String[] colNames;
+    private final Logger logger;
+    private final BlockingQueue<Chunk> chunks = new LinkedBlockingQueue<>(queueCapacity);
+    private final List<Chunk> uncommittedChunks = new ArrayList<>();
+    private final Set<String> queuedFiles = ConcurrentHashMap.newKeySet();
+    private final Thread readerThread;
+    private volatile boolean closed = false;
+    private boolean finished = false;
+
+    /**
+     * Создает источник, который проверяет каталог на наличие новых файлов .csv до вызова close.
+     *
+     * @param directory  - каталог с новыми файлами
+     * @param colNames   - названия столбцов таблицы
+     * @param pollMillis - период проверки каталога (в миллисекундах)
+     */
+    public RowStream(File directory, String[] colNames, long pollMillis) {
+        this.colNames = colNames;
+        logger = new ConsoleLogger();
+        readerThread = new Thread(() -> readDirectory(directory, pollMillis), "row-stream-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Создает источник, который читает строки из потока ввода до его окончания.
+     *
+     * @param input    - поток ввода (например, System.in)
+     * @param colNames - названия столбцов таблицы
+     */
+    public RowStream(InputStream input, String[] colNames) {
+        this.colNames = colNames;
+        logger = new ConsoleLogger();
+        readerThread = new Thread(() -> readInput(input), "row-stream-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Ожидает следующий пакет строк. Если за время ожидания не появилось ни одной строки, возвращается пустой пакет,
+     * чтобы вызывающий код мог проверить признак отмены.
+     *
+     * @param maxRows       - наибольшее количество строк в пакете (файл каталога не разделяется между пакетами,
+     *                      поэтому пакет может оказаться больше)
+     * @param maxWaitMillis - наибольшее время ожидания первой строки пакета и остальных строк после нее
+     * @return строки пакета в порядке столбцов таблицы, либо null, если поток ввода закончился
+     * @throws InterruptedException если ожидание прервано
+     */
+    public List<String[]> nextBatch(int maxRows, long maxWaitMillis) throws InterruptedException {
+        if (finished) {
+            return null;
+        }
+        List<String[]> rows = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + maxWaitMillis;
+        while (rows.size() < maxRows) {
+            long wait = deadline - System.currentTimeMillis();
+            Chunk chunk = wait > 0 ? chunks.poll(wait, TimeUnit.MILLISECONDS) : chunks.poll();
+            if (chunk == null) {
+                break;
+            }
+            if (chunk == endOfStream) {
+                finished = true;
+                break;
+            }
+            if (rows.isEmpty()) {
+                deadline = System.currentTimeMillis() + maxWaitMillis;
+            }
+            rows.addAll(chunk.rows);
+            uncommittedChunks.add(chunk);
+        }
+        return rows.isEmpty() && finished ? null : rows;
+    }
+
+    /**
+     * Отмечает строки последнего пакета как записанные: прочитанные файлы переименовываются в .csv.done.
+     */
+    public void commit() {
+        for (Chunk chunk : uncommittedChunks) {
+            if (chunk.onCommit != null) {
+                chunk.onCommit.run();
+            }
+        }
+        uncommittedChunks.clear();
+    }
+
+    /**
+     * Отмечает строки последнего пакета как не записанные: прочитанные файлы переименовываются в .csv.error и больше
+     * не читаются (строки потока ввода прочитать повторно нельзя).
+     *
+     * @return количество строк пакета, которые не удалось записать
+     */
+    public int reject() {
+        int rows = 0;
+        for (Chunk chunk : uncommittedChunks) {
+            rows += chunk.rows.size();
+            if (chunk.onReject != null) {
+                chunk.onReject.run();
+            }
+        }
+        uncommittedChunks.clear();
+        return rows;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        readerThread.interrupt();
+    }
+
+    private void readDirectory(File directory, long pollMillis) {
+        try {
+            while (!closed) {
+                File[] files = directory.listFiles((dir, name) -> name.endsWith(".csv"));
+                if (files != null) {
+                    Arrays.sort(files);
+                    for (File file : files) {
+                        if (closed) {
+                            return;
+                        }
+                        if (queuedFiles.add(file.getName())) {
+                            Chunk chunk = readFile(file);
+                            if (chunk != null) {
+                                chunks.put(chunk);
+                            }
+                        }
+                    }
+                }
+                Thread.sleep(pollMillis);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Читает файл каталога целиком. Файл, в заголовке которого нет какого-либо столбца таблицы, переименовывается в
+     * .csv.error и пропускается.
+     *
+     * @param file - файл csv с заголовком
+     * @return строки файла, либо null, если файл не удалось прочитать
+     */
+    private Chunk readFile(File file) {
+        try (BufferedReader lineReader = new BufferedReader(new FileReader(file))) {
+            int[] positions = getPositions(lineReader.readLine());
+            if (positions == null) {
+                logger.logError("В файле " + file.getName() + " нет заголовка или столбцов таблицы, файл пропускается");
+                renameFile(file, ".error");
+                return null;
+            }
+            List<String[]> rows = new ArrayList<>();
+            String rowLine;
+            while ((rowLine = lineReader.readLine()) != null) {
+                String[] row = getRow(rowLine, positions);
+                if (row != null) {
+                    rows.add(row);
+                }
+            }
+            return new Chunk(rows, () -> {
+                if (renameFile(file, ".done")) {
+                    queuedFiles.remove(file.getName());
+                }
+            }, () -> {
+                logger.logError("Строки файла " + file.getName() + " не записаны, файл переименовывается в .csv.error");
+                if (renameFile(file, ".error")) {
+                    queuedFiles.remove(file.getName());
+                }
+            });
+        } catch (IOException ex) {
+            logger.logError("Не удалось прочитать файл " + file.getName() + ": " + ex);
+            queuedFiles.remove(file.getName());
+            return null;
+        }
+    }
+
+    private void readInput(InputStream input) {
+        try {
+            BufferedReader lineReader = new BufferedReader(new InputStreamReader(input));
+            int[] positions = getPositions(lineReader.readLine());
+            if (positions == null) {
+                logger.logError("В первой строке ввода нет заголовка или столбцов таблицы");
+            } else {
+                String rowLine;
+                while (!closed && (rowLine = lineReader.readLine()) != null) {
+                    String[] row = getRow(rowLine, positions);
+                    if (row != null) {
+                        chunks.put(new Chunk(Collections.singletonList(row), null, null));
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            logger.logError("Не удалось прочитать строки ввода: " + ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            chunks.put(endOfStream);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Находит по заголовку, в каких полях строк находятся столбцы таблицы.
+     *
+     * @param headerLine - заголовок (названия столбцов через ;)
+     * @return номера полей для каждого столбца таблицы, либо null, если какого-либо столбца нет
+     */
+    private int[] getPositions(String headerLine) {
+        if (headerLine == null) {
+            return null;
+        }
+        List<String> header = Arrays.asList(headerLine.split(";", -1));
+        int[] positions = new int[colNames.length];
+        for (int i = 0; i < colNames.length; i++) {
+            positions[i] = header.indexOf(colNames[i]);
+            if (positions[i] < 0) {
+                return null;
+            }
+        }
+        return positions;
+    }
+
+    private String[] getRow(String rowLine, int[] positions) {
+        if (rowLine.isEmpty()) {
+            return null;
+        }
+        String[] fields = rowLine.split(";", -1);
+        String[] row = new String[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            if (positions[i] >= fields.length) {
+                logger.incrementCounter("stream.rejected_rows");
+                return null;
+            }
+            row[i] = fields[positions[i]];
+        }
+        return row;
+    }
+
+    private boolean renameFile(File file, String suffix) {
+        if (!file.renameTo(new File(file.getPath() + suffix))) {
+            logger.logError("Не удалось переименовать файл " + file.getName() + ", он больше не будет прочитан");
+            return false;
+        }
+        return true;
+    }
+
+    private static class Chunk {
+
+        private final List<String[]> rows;
+        private final Runnable onCommit, onReject;
+
+        private Chunk(List<String[]> rows, Runnable onCommit, Runnable onReject) {
+            this.rows = rows;
+            this.onCommit = onCommit;
+            this.onReject = onReject;
+        }
+
+    }
+
+}
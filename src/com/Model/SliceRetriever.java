@@ -2,10 +2,18 @@ package com.Model;
 
 import com.DataObjects.Approximations.ApproximationType;
 import com.DataObjects.Slice;
+import com.DataObjects.SliceState;
+import com.SupportClasses.CancellationToken;
 import com.SupportClasses.ConsoleLogger;
 import com.SupportClasses.Logger;
 
+import java.io.File;
+import java.io.IOException;
+import java.sql.Timestamp;
 import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Класс, который получает разрезы данных.
@@ -16,12 +24,29 @@ public class SliceRetriever {
     private final Logger logger;
     private final ApproximationType approximationType;
 
+    private final int planBatchSize = 256, maxPlanColumns = 31;
+
+    private volatile SliceStore sliceStore, verifiedStore;
+
     public SliceRetriever(DatabaseService dbService, ApproximationType approximationType) {
         this.dbService = dbService;
         this.approximationType = approximationType;
         logger = new ConsoleLogger();
     }
 
+    /**
+     * Задает снимок разрезов, из которого получаются разрезы вместо запросов к базе данных, если снимок создан для той
+     * же таблицы и того же промежутка дат (см. SliceStore.covers). Разрезы снимка получены из исходной таблицы, без
+     * таблиц агрегатов. Если база данных доступна, при первом использовании снимка количество строк и операций в нем
+     * сравнивается с таблицей: устаревший снимок больше не используется. После изменения данных таблицы снимок нужно
+     * убрать (задать null).
+     *
+     * @param sliceStore - снимок разрезов, либо null, чтобы получать разрезы только из базы данных
+     */
+    public void setSliceStore(SliceStore sliceStore) {
+        this.sliceStore = sliceStore;
+    }
+
     /**
      * Получает разрезы данных, сгруппированных по ряду категорий.
      *
@@ -34,11 +59,52 @@ public class SliceRetriever {
      * @return список разрезов
      */
     public List<Slice> getCategorySlices(String tableName, String valueName, String[] categories, int maxSlices, Date minDate, Date maxDate) {
+        SliceStore store = getCoveringStore(tableName, minDate, maxDate, categories.length, maxSlices);
+        List<String[]> labelCombinations = store != null ? store.getLabelCombinations(categories, maxSlices) :
+                dbService.getLabelCombinations(tableName, categories, maxSlices);
+        return getCategorySlices(tableName, valueName, categories, labelCombinations, minDate, maxDate);
+    }
+
+    /**
+     * Получает разрезы данных, сгруппированных по ряду категорий, для заранее полученных сочетаний значений.
+     *
+     * @param tableName         - название таблицы, из которой необходимо получать данные
+     * @param valueName         - название ряда данных
+     * @param categories        - названия категорий
+     * @param labelCombinations - сочетания значений категорий в строковом виде
+     * @param minDate           - первая дата срезов
+     * @param maxDate           - последняя дата срезов
+     * @return список разрезов
+     */
+    public List<Slice> getCategorySlices(String tableName, String valueName, String[] categories, List<String[]> labelCombinations,
+                                         Date minDate, Date maxDate) {
+        return getCategorySlices(tableName, valueName, categories, labelCombinations, minDate, maxDate, CancellationToken.NONE);
+    }
+
+    /**
+     * Получает разрезы данных для заранее полученных сочетаний значений, прерываясь при отмене процесса.
+     *
+     * @param tableName         - название таблицы, из которой необходимо получать данные
+     * @param valueName         - название ряда данных
+     * @param categories        - названия категорий
+     * @param labelCombinations - сочетания значений категорий в строковом виде
+     * @param minDate           - первая дата срезов
+     * @param maxDate           - последняя дата срезов
+     * @param cancellationToken - признак отмены процесса
+     * @return список разрезов
+     */
+    public List<Slice> getCategorySlices(String tableName, String valueName, String[] categories, List<String[]> labelCombinations,
+                                         Date minDate, Date maxDate, CancellationToken cancellationToken) {
         logger.logMessage("Начинается получение разрезов по категориям " + Arrays.toString(categories) + "...");
+        SliceStore store = getCoveringStore(tableName, minDate, maxDate, categories.length, labelCombinations.size());
         List<Slice> res = new ArrayList<>();
-        List<String[]> labelCombinations = dbService.getLabelCombinations(tableName, categories, maxSlices);
         for (String[] combination : labelCombinations) {
-            res.add(dbService.getSlice(tableName, valueName, categories, combination, approximationType, minDate, maxDate));
+            cancellationToken.throwIfCancelled();
+            res.add(store != null ? store.getSlice(valueName, categories, combination, approximationType) :
+                    dbService.getSlice(tableName, valueName, categories, combination, approximationType, minDate, maxDate));
+        }
+        if (store != null) {
+            logger.incrementCounter("slice.store_hits", res.size());
         }
         res.sort(Comparator.comparingLong(o -> -o.totalAmount));
         logger.logMessage("Закончилось получение разрезов по категории " + Arrays.toString(categories) + ", получено " + res.size() + " разрезов.");
@@ -78,16 +144,525 @@ public class SliceRetriever {
      * @return список разрезов с накоплением
      */
     public List<Slice> getSlicesAccumulated(String tableName, String valueName, int maxCategories, int maxSlices, Date minDate, Date maxDate) {
+        return getSlicesAccumulated(tableName, valueName, maxCategories, maxSlices, minDate, maxDate, 0);
+    }
+
+    /**
+     * Получает разрезы данных, сгруппированных по всем сочетаниям одной или более категорий, и делает накопление для
+     * каждого разреза. Сочетания категорий, у которых хотя бы одно родительское сочетание (без одной из категорий)
+     * имеет слишком малую долю операций, пропускаются без запросов к базе данных.
+     *
+     * @param tableName     - название таблицы, из которой необходимо получать данные
+     * @param valueName     - название ряда данных
+     * @param maxSlices     - максимальное количество разрезов с одной комбинацией ярлыков, возвращаемое методом
+     * @param maxCategories - максимальное количество категорий, по которым группируется каждый разрез.
+     * @param minDate       - первая дата срезов
+     * @param maxDate       - последняя дата срезов
+     * @param minSupport    - минимальная доля операций (от 0 до 1) среди полученных разрезов сочетания, при которой
+     *                      рассматриваются дочерние сочетания; 0 - сочетания не пропускаются
+     * @return список разрезов с накоплением
+     */
+    public List<Slice> getSlicesAccumulated(String tableName, String valueName, int maxCategories, int maxSlices, Date minDate, Date maxDate,
+                                            double minSupport) {
+        return getSlicesAccumulated(tableName, valueName, maxCategories, maxSlices, minDate, maxDate, minSupport,
+                CancellationToken.NONE);
+    }
+
+    /**
+     * Получает разрезы данных, сгруппированных по всем сочетаниям одной или более категорий, с накоплением, прерываясь
+     * при отмене процесса.
+     *
+     * @param tableName         - название таблицы, из которой необходимо получать данные
+     * @param valueName         - название ряда данных
+     * @param maxSlices         - максимальное количество разрезов с одной комбинацией ярлыков, возвращаемое методом
+     * @param maxCategories     - максимальное количество категорий, по которым группируется каждый разрез.
+     * @param minDate           - первая дата срезов
+     * @param maxDate           - последняя дата срезов
+     * @param minSupport        - минимальная доля операций, при которой рассматриваются дочерние сочетания
+     * @param cancellationToken - признак отмены процесса
+     * @return список разрезов с накоплением
+     */
+    public List<Slice> getSlicesAccumulated(String tableName, String valueName, int maxCategories, int maxSlices, Date minDate, Date maxDate,
+                                            double minSupport, CancellationToken cancellationToken) {
+        List<Slice> res = new ArrayList<>();
+        PruningStats pruning = new PruningStats();
+        streamSlicesAccumulated(tableName, valueName, maxCategories, maxSlices, minDate, maxDate, minSupport, pruning,
+                cancellationToken).forEachOrdered(res::add);
+        logPruning(pruning);
+        return res;
+    }
+
+    /**
+     * Получает ленивый поток разрезов данных, сгруппированных по всем сочетаниям одной или более категорий, с
+     * накоплением. Сочетания категорий и разрезы получаются по мере чтения потока, поэтому их можно обрабатывать, не
+     * дожидаясь получения остальных.
+     *
+     * @param tableName     - название таблицы, из которой необходимо получать данные
+     * @param valueName     - название ряда данных
+     * @param maxSlices     - максимальное количество разрезов с одной комбинацией ярлыков, возвращаемое методом
+     * @param maxCategories - максимальное количество категорий, по которым группируется каждый разрез.
+     * @param minDate - первая дата срезов
+     * @param maxDate - последняя дата срезов
+     * @return поток разрезов с накоплением
+     */
+    public Stream<Slice> streamSlicesAccumulated(String tableName, String valueName, int maxCategories, int maxSlices, Date minDate, Date maxDate) {
+        return streamSlicesAccumulated(tableName, valueName, maxCategories, maxSlices, minDate, maxDate, 0);
+    }
+
+    /**
+     * Получает ленивый поток разрезов данных с накоплением, пропуская сочетания категорий, родительские сочетания
+     * которых имеют слишком малую долю операций. Сочетания значений для сочетаний категорий одного уровня получаются
+     * пакетами, одним запросом с GROUPING SETS на пакет. Поток должен читаться последовательно (через forEach, а не
+     * iterator, чтобы разрезы не накапливались в буфере), так как решение о пропуске сочетания зависит от уже
+     * полученных разрезов.
+     *
+     * @param tableName     - название таблицы, из которой необходимо получать данные
+     * @param valueName     - название ряда данных
+     * @param maxSlices     - максимальное количество разрезов с одной комбинацией ярлыков, возвращаемое методом
+     * @param maxCategories - максимальное количество категорий, по которым группируется каждый разрез.
+     * @param minDate       - первая дата срезов
+     * @param maxDate       - последняя дата срезов
+     * @param minSupport    - минимальная доля операций (от 0 до 1) среди полученных разрезов сочетания, при которой
+     *                      рассматриваются дочерние сочетания; 0 - сочетания не пропускаются
+     * @return поток разрезов с накоплением
+     */
+    public Stream<Slice> streamSlicesAccumulated(String tableName, String valueName, int maxCategories, int maxSlices, Date minDate, Date maxDate,
+                                                 double minSupport) {
+        return streamSlicesAccumulated(tableName, valueName, maxCategories, maxSlices, minDate, maxDate, minSupport,
+                CancellationToken.NONE);
+    }
+
+    /**
+     * Получает ленивый поток разрезов данных с накоплением, пропуская сочетания категорий с малой долей операций.
+     * Признак отмены проверяется перед каждым пакетом сочетаний и каждым разрезом; после отмены чтение потока
+     * прерывается исключением CancellationException.
+     *
+     * @param tableName         - название таблицы, из которой необходимо получать данные
+     * @param valueName         - название ряда данных
+     * @param maxSlices         - максимальное количество разрезов с одной комбинацией ярлыков, возвращаемое методом
+     * @param maxCategories     - максимальное количество категорий, по которым группируется каждый разрез.
+     * @param minDate           - первая дата срезов
+     * @param maxDate           - последняя дата срезов
+     * @param minSupport        - минимальная доля операций, при которой рассматриваются дочерние сочетания
+     * @param cancellationToken - признак отмены процесса
+     * @return поток разрезов с накоплением
+     */
+    public Stream<Slice> streamSlicesAccumulated(String tableName, String valueName, int maxCategories, int maxSlices, Date minDate, Date maxDate,
+                                                 double minSupport, CancellationToken cancellationToken) {
+        return streamSlicesAccumulated(tableName, valueName, maxCategories, maxSlices, minDate, maxDate, minSupport,
+                new PruningStats(), cancellationToken);
+    }
+
+    /**
+     * Получает ленивый поток разрезов данных с накоплением так же, как streamSlicesAccumulated, и подсчитывает
+     * пропущенные сочетания категорий по мере чтения потока.
+     *
+     * @param tableName         - название таблицы, из которой необходимо получать данные
+     * @param valueName         - название ряда данных
+     * @param maxSlices         - максимальное количество разрезов с одной комбинацией ярлыков, возвращаемое методом
+     * @param maxCategories     - максимальное количество категорий, по которым группируется каждый разрез.
+     * @param minDate           - первая дата срезов
+     * @param maxDate           - последняя дата срезов
+     * @param minSupport        - минимальная доля операций, при которой рассматриваются дочерние сочетания
+     * @param pruning           - счетчики пропущенных сочетаний этого вызова (см. logPruning)
+     * @param cancellationToken - признак отмены процесса
+     * @return поток разрезов с накоплением
+     */
+    public Stream<Slice> streamSlicesAccumulated(String tableName, String valueName, int maxCategories, int maxSlices, Date minDate, Date maxDate,
+                                                 double minSupport, PruningStats pruning, CancellationToken cancellationToken) {
+        return streamComboSlicesAccumulated(tableName, valueName, maxCategories, maxSlices, minDate, maxDate, minSupport,
+                new HashMap<>(), pruning, cancellationToken).flatMap(comboSlices -> comboSlices.slices.stream());
+    }
+
+    /**
+     * Получает ленивый поток разрезов с накоплением, сгруппированных по сочетаниям категорий (так же, как
+     * streamSlicesAccumulated). Сочетания из completedCombos (например, уже обработанные до прерывания процесса) не
+     * запрашиваются и в поток не попадают, а их сохраненное количество операций используется при пропуске дочерних
+     * сочетаний; сочетания без разрезов попадают в поток с пустым списком разрезов.
+     *
+     * @param tableName         - название таблицы, из которой необходимо получать данные
+     * @param valueName         - название ряда данных
+     * @param maxSlices         - максимальное количество разрезов с одной комбинацией ярлыков, возвращаемое методом
+     * @param maxCategories     - максимальное количество категорий, по которым группируется каждый разрез.
+     * @param minDate           - первая дата срезов
+     * @param maxDate           - последняя дата срезов
+     * @param minSupport        - минимальная доля операций, при которой рассматриваются дочерние сочетания
+     * @param completedCombos   - пропускаемые сочетания (ключи - названия категорий через запятую, значения - общее
+     *                          количество операций в разрезах сочетания)
+     * @param pruning           - счетчики пропущенных сочетаний этого вызова (см. logPruning)
+     * @param cancellationToken - признак отмены процесса
+     * @return поток сочетаний категорий с разрезами
+     */
+    public Stream<ComboSlices> streamComboSlicesAccumulated(String tableName, String valueName, int maxCategories, int maxSlices,
+                                                            Date minDate, Date maxDate, double minSupport,
+                                                            Map<String, Long> completedCombos, PruningStats pruning,
+                                                            CancellationToken cancellationToken) {
+        final SliceStore store = getCoveringStore(tableName, minDate, maxDate, maxCategories, maxSlices);
+        if (store != null) {
+            logger.logMessage("Разрезы " + valueName + " получаются из снимка разрезов таблицы " + tableName + ".");
+        }
+        List<String> categoryNames = store != null ? store.getCategoryNames() : dbService.getCategoryNames(tableName);
+        final double minAmount = minSupport <= 0 ? 0 :
+                minSupport * (store != null ? store.getTotalAmount() : dbService.getTotalAmount(tableName, minDate, maxDate));
+        final Set<String> weakCombos = new HashSet<>();
+        return IntStream.rangeClosed(1, maxCategories).boxed()
+                .flatMap(size -> getComboBatches(categoryNames, size))
+                .flatMap(batch -> {
+                    cancellationToken.throwIfCancelled();
+                    List<String[]> queriedCombos = new ArrayList<>();
+                    for (String[] categories : batch) {
+                        String comboName = String.join(",", categories);
+                        if (minAmount > 0 && hasWeakParent(categories, weakCombos)) {
+                            weakCombos.add(comboName);
+                            pruning.prunedCombos++;
+                            pruning.prunedQueries += 1 + maxSlices;
+                        } else if (completedCombos.containsKey(comboName)) {
+                            if (minAmount > 0 && completedCombos.get(comboName) < minAmount) {
+                                weakCombos.add(comboName);
+                            }
+                        } else {
+                            queriedCombos.add(categories);
+                        }
+                    }
+                    Map<String, List<String[]>> plan = queriedCombos.isEmpty() || store != null ? null :
+                            dbService.getLabelCombinationsPlan(tableName, queriedCombos, maxSlices);
+                    return queriedCombos.stream().map(categories -> {
+                        List<String[]> labelCombinations = store != null ? store.getLabelCombinations(categories, maxSlices) :
+                                plan != null ? plan.get(String.join(",", categories)) :
+                                dbService.getLabelCombinations(tableName, categories, maxSlices);
+                        List<Slice> slices = getCategorySlices(tableName, valueName, categories, labelCombinations, minDate, maxDate,
+                                cancellationToken);
+                        long comboAmount = 0;
+                        List<Slice> accumulatedSlices = new ArrayList<>();
+                        for (Slice slice : slices) {
+                            comboAmount += slice.totalAmount;
+                            accumulatedSlices.add(getAccumulation(slice));
+                        }
+                        if (minAmount > 0 && comboAmount < minAmount) {
+                            weakCombos.add(String.join(",", categories));
+                        }
+                        return new ComboSlices(categories, accumulatedSlices, comboAmount);
+                    });
+                });
+    }
+
+    /**
+     * Получает разрезы с накоплением по всем сочетаниям категорий с учетом сохраненных состояний разрезов: для разреза,
+     * у которого есть состояние, из исходной таблицы получаются только точки, начиная с getLookbackStart, и по ним
+     * строится фрагмент разреза (SliceState.append); разрез без состояния получается полностью (также из исходной
+     * таблицы), а его состояние добавляется в карту. Разрезы, в которых нет новых точек, не возвращаются. Пропуск сочетаний с малой долей
+     * операций не используется, так как доли вычисляются по полным разрезам.
+     *
+     * @param tableName         - название таблицы, из которой необходимо получать данные
+     * @param valueName         - название ряда данных
+     * @param maxCategories     - максимальное количество категорий, по которым группируется каждый разрез
+     * @param maxSlices         - максимальное количество разрезов с одной комбинацией ярлыков
+     * @param minDate           - первая дата срезов
+     * @param maxDate           - последняя дата срезов
+     * @param states            - состояния разрезов (ключи - SliceState.getKey), дополняются и обновляются методом
+     * @param lookbackMult      - длина уже обработанной части фрагментов (доля длины временного промежутка разреза)
+     * @param cancellationToken - признак отмены процесса
+     * @return список полных разрезов и фрагментов разрезов с накоплением
+     */
+    public List<Slice> getSliceTailsAccumulated(String tableName, String valueName, int maxCategories, int maxSlices, Date minDate,
+                                                Date maxDate, Map<String, SliceState> states, double lookbackMult,
+                                                CancellationToken cancellationToken) {
+        logger.logMessage("Начинается получение новых точек разрезов...");
         List<String> categoryNames = dbService.getCategoryNames(tableName);
         List<Slice> res = new ArrayList<>();
-        CategoryCombination categoryCombos = new CategoryCombination(categoryNames);
-        for (int i = 0; i < maxCategories; i++) {
-            for (String[] categories : categoryCombos.combos) {
-                res.addAll(getCategorySlicesAccumulated(tableName, valueName, categories, maxSlices, minDate, maxDate));
+        int fullSlices = 0, skippedSlices = 0;
+        for (int size = 1; size <= maxCategories; size++) {
+            Iterator<List<String[]>> batches = getComboBatches(categoryNames, size).iterator();
+            while (batches.hasNext()) {
+                cancellationToken.throwIfCancelled();
+                List<String[]> batch = batches.next();
+                Map<String, List<String[]>> plan = dbService.getLabelCombinationsPlan(tableName, batch, maxSlices);
+                for (String[] categories : batch) {
+                    List<String[]> labelCombinations = plan != null ? plan.get(String.join(",", categories)) :
+                            dbService.getLabelCombinations(tableName, categories, maxSlices);
+                    for (String[] labels : labelCombinations) {
+                        cancellationToken.throwIfCancelled();
+                        SliceState state = states.get(SliceState.getKey(valueName, categories, labels));
+                        if (state == null) {
+                            Slice slice = getAccumulation(dbService.getSourceSlice(tableName, valueName, categories, labels,
+                                    approximationType, minDate, maxDate));
+                            state = SliceState.fromSlice(slice);
+                            if (state != null) {
+                                state.setProcessedTime(maxDate.getTime());
+                                states.put(state.getKey(), state);
+                                res.add(slice);
+                                fullSlices++;
+                            }
+                        } else if (state.getProcessedTime() >= maxDate.getTime()) {
+                            skippedSlices++;
+                        } else {
+                            Slice fragment = getFragment(tableName, state, maxDate, lookbackMult);
+                            if (fragment != null) {
+                                res.add(fragment);
+                            } else {
+                                skippedSlices++;
+                            }
+                        }
+                    }
+                }
             }
-            categoryCombos.addCategory(categoryNames);
         }
+        logger.incrementCounter("slice.incremental_full", fullSlices);
+        logger.incrementCounter("slice.incremental_skipped", skippedSlices);
+        logger.logMessage("Закончилось получение новых точек разрезов: " + (res.size() - fullSlices) + " фрагментов, " +
+                fullSlices + " полных разрезов, " + skippedSlices + " разрезов без новых точек.");
         return res;
     }
 
+    /**
+     * Записывает снимок разрезов таблицы (SliceStore): исходные точки разрезов всех сочетаний не более чем из
+     * maxCategories категорий, по maxSlices наиболее частых сочетаний значений на каждое, за весь промежуток дат
+     * таблицы. Разрезы всех рядов данных с одинаковыми значениями категорий получаются одним запросом.
+     *
+     * @param file          - файл снимка
+     * @param tableName     - название таблицы
+     * @param maxCategories - максимальное количество категорий в сочетании
+     * @param maxSlices     - максимальное количество разрезов сочетания
+     * @throws IOException если файл не удалось записать
+     */
+    public void writeSliceStore(File file, String tableName, int maxCategories, int maxSlices) throws IOException {
+        List<Date> borderDates = dbService.getBorderDates(tableName);
+        if (borderDates.size() < 2 || borderDates.get(0) == null) {
+            logger.logError("Таблица " + tableName + " пуста, снимок разрезов не записан");
+            return;
+        }
+        logger.logMessage("Начинается запись снимка разрезов таблицы " + tableName + " в файл " + file + "...");
+        long startTime = System.nanoTime();
+        List<String> categoryNames = dbService.getCategoryNames(tableName);
+        List<String> valueNames = dbService.getValueNames(tableName);
+        long totalAmount = dbService.getTotalAmount(tableName, borderDates.get(0), borderDates.get(1));
+        long rowCount = dbService.getRowCount(tableName);
+        int slicesWritten = 0;
+        try (SliceStore.Writer writer = new SliceStore.Writer(file, tableName, categoryNames, valueNames, borderDates.get(0),
+                borderDates.get(1), totalAmount, rowCount, maxCategories, maxSlices)) {
+            for (int size = 1; size <= maxCategories; size++) {
+                Iterator<List<String[]>> batches = getComboBatches(categoryNames, size).iterator();
+                while (batches.hasNext()) {
+                    List<String[]> batch = batches.next();
+                    Map<String, List<String[]>> plan = dbService.getLabelCombinationsPlan(tableName, batch, maxSlices);
+                    for (String[] categories : batch) {
+                        writer.addCombo(categories);
+                        List<String[]> labelCombinations = plan != null ? plan.get(String.join(",", categories)) :
+                                dbService.getLabelCombinations(tableName, categories, maxSlices);
+                        for (String[] labels : labelCombinations) {
+                            writer.addSlices(categories, labels, dbService.getSourceSlices(tableName, valueNames, categories,
+                                    labels, ApproximationType.EMPTY, borderDates.get(0), borderDates.get(1)));
+                            slicesWritten++;
+                        }
+                    }
+                }
+            }
+        }
+        logger.recordTime("slice.store_write", startTime);
+        logger.logMessage("Закончилась запись снимка разрезов: " + slicesWritten + " разрезов, " + file.length() + " байт.");
+    }
+
+    /**
+     * Получает фрагменты разрезов с накоплением только для указанных состояний (например, при потоковой загрузке, когда
+     * известно, в какие разрезы добавлены новые строки), не перебирая все сочетания категорий. Состояния обновляются
+     * так же, как в getSliceTailsAccumulated.
+     *
+     * @param tableName         - название таблицы
+     * @param states            - состояния разрезов, в которые добавлены новые данные
+     * @param maxDate           - последняя дата таблицы
+     * @param lookbackMult      - доля длины разреза, которая входит во фрагмент до новых точек
+     * @param cancellationToken - признак отмены процесса
+     * @return список фрагментов (разрезы без новых точек пропускаются)
+     */
+    public List<Slice> getSliceFragments(String tableName, Collection<SliceState> states, Date maxDate, double lookbackMult,
+                                         CancellationToken cancellationToken) {
+        List<Slice> res = new ArrayList<>();
+        for (SliceState state : states) {
+            cancellationToken.throwIfCancelled();
+            Slice fragment = getFragment(tableName, state, maxDate, lookbackMult);
+            if (fragment != null) {
+                res.add(fragment);
+            }
+        }
+        logger.incrementCounter("slice.incremental_fragments", res.size());
+        return res;
+    }
+
+    /**
+     * Получает исходные точки разреза с даты getLookbackStart и продолжает по ним состояние разреза.
+     *
+     * @param tableName    - название таблицы
+     * @param state        - состояние разреза
+     * @param maxDate      - последняя дата таблицы
+     * @param lookbackMult - доля длины разреза, которая входит во фрагмент до новых точек
+     * @return фрагмент разреза, либо null, если новых точек нет
+     */
+    private Slice getFragment(String tableName, SliceState state, Date maxDate, double lookbackMult) {
+        Slice tail = dbService.getSourceSlice(tableName, state.valueName, state.colNames, state.labels,
+                ApproximationType.EMPTY, new Timestamp(state.getLookbackStart(lookbackMult).getTime()), maxDate);
+        Slice fragment = state.append(tableName, tail.getPoints(), approximationType);
+        state.setProcessedTime(maxDate.getTime());
+        return fragment;
+    }
+
+    /**
+     * Получает снимок разрезов, если из него можно получить разрезы с указанными параметрами и он соответствует
+     * данным таблицы (проверяется один раз для каждого снимка, если база данных доступна).
+     *
+     * @return снимок разрезов, либо null, если разрезы нужно получать из базы данных
+     */
+    private SliceStore getCoveringStore(String tableName, Date minDate, Date maxDate, int maxCategories, int maxSlices) {
+        SliceStore store = sliceStore;
+        if (store == null || !store.covers(tableName, minDate, maxDate, maxCategories, maxSlices)) {
+            return null;
+        }
+        if (store != verifiedStore && dbService.isConnected()) {
+            if (!store.matches(dbService.getRowCount(tableName), dbService.getTotalAmount(tableName, minDate, maxDate))) {
+                logger.logMessage("Данные таблицы " + tableName + " изменились после создания снимка разрезов, снимок не используется");
+                if (sliceStore == store) {
+                    sliceStore = null;
+                }
+                return null;
+            }
+            verifiedStore = store;
+        }
+        return store;
+    }
+
+    /**
+     * Разбивает поток сочетаний из определенного количества категорий на пакеты, для каждого из которых сочетания
+     * значений получаются одним запросом. Пакет содержит не более planBatchSize сочетаний и не более
+     * maxPlanColumns различных категорий (ограничение функции GROUPING).
+     *
+     * @param categoryNames - список категорий
+     * @param size          - количество категорий в каждом сочетании
+     * @return поток пакетов сочетаний
+     */
+    private Stream<List<String[]>> getComboBatches(List<String> categoryNames, int size) {
+        final Iterator<String[]> combos = CategoryCombination.stream(categoryNames, size).iterator();
+        Iterator<List<String[]>> batches = new Iterator<>() {
+            private String[] pending = null;
+
+            @Override
+            public boolean hasNext() {
+                return pending != null || combos.hasNext();
+            }
+
+            @Override
+            public List<String[]> next() {
+                List<String[]> batch = new ArrayList<>();
+                Set<String> batchColumns = new HashSet<>();
+                while (batch.size() < planBatchSize && (pending != null || combos.hasNext())) {
+                    String[] combo = pending != null ? pending : combos.next();
+                    pending = null;
+                    Set<String> newColumns = new HashSet<>(batchColumns);
+                    newColumns.addAll(Arrays.asList(combo));
+                    if (newColumns.size() > maxPlanColumns && !batch.isEmpty()) {
+                        pending = combo;
+                        break;
+                    }
+                    batchColumns = newColumns;
+                    batch.add(combo);
+                }
+                return batch;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(batches, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private Slice getAccumulation(Slice slice) {
+        long startTime = System.nanoTime();
+        Slice accumulation = slice.getAccumulation();
+        logger.recordTime("slice.accumulate", startTime);
+        return accumulation;
+    }
+
+    /**
+     * Выводит количество сочетаний категорий и запросов, пропущенных при получении разрезов.
+     *
+     * @param pruning - счетчики пропущенных сочетаний, заполненные при чтении потока разрезов
+     */
+    public void logPruning(PruningStats pruning) {
+        logger.incrementCounter("slice.pruned_combos", pruning.prunedCombos);
+        logger.incrementCounter("slice.pruned_queries", pruning.prunedQueries);
+        if (pruning.prunedCombos > 0) {
+            logger.logMessage("Пропущено " + pruning.prunedCombos + " сочетаний категорий с малой долей операций (не более " +
+                    pruning.prunedQueries + " запросов).");
+        }
+    }
+
+    /**
+     * Проверяет, есть ли среди родительских сочетаний (сочетаний без одной из категорий) данного сочетания сочетание с
+     * малой долей операций.
+     *
+     * @param categories - названия категорий
+     * @param weakCombos - сочетания с малой долей операций, в виде названий категорий через запятую
+     * @return true, если такое родительское сочетание есть, иначе false
+     */
+    private boolean hasWeakParent(String[] categories, Set<String> weakCombos) {
+        if (categories.length < 2 || weakCombos.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < categories.length; i++) {
+            StringBuilder parent = new StringBuilder();
+            for (int j = 0; j < categories.length; j++) {
+                if (j == i) {
+                    continue;
+                }
+                if (parent.length() > 0) {
+                    parent.append(",");
+                }
+                parent.append(categories[j]);
+            }
+            if (weakCombos.contains(parent.toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Количество сочетаний категорий и запросов, пропущенных при одном получении разрезов. Счетчики заводятся для
+     * каждого вызова, поэтому одновременные операции (например, задачи JobRunner) не смешивают свои значения.
+     */
+    public static class PruningStats {
+
+        private long prunedCombos, prunedQueries;
+
+        public long getPrunedCombos() {
+            return prunedCombos;
+        }
+
+        public long getPrunedQueries() {
+            return prunedQueries;
+        }
+
+    }
+
+    /**
+     * Разрезы с накоплением одного сочетания категорий.
+     */
+    public static class ComboSlices {
+
+        public final String[] categories;
+        public final List<Slice> slices;
+        public final long totalAmount;
+
+        private ComboSlices(String[] categories, List<Slice> slices, long totalAmount) {
+            this.categories = categories;
+            this.slices = slices;
+            this.totalAmount = totalAmount;
+        }
+
+        /**
+         * Получает название сочетания (названия категорий через запятую).
+         *
+         * @return название сочетания
+         */
+        public String getName() {
+            return String.join(",", categories);
+        }
+
+    }
+
 }
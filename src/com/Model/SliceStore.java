@@ -0,0 +1,484 @@
+package com.Model;
+
+import com.DataObjects.Approximations.ApproximationType;
+import com.DataObjects.Slice;
+import com.DataObjects.SlicePoint;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Локальный снимок разрезов таблицы в двоичном файле, из которого SliceRetriever получает разрезы без запросов к базе
+ * данных (при повторном анализе неизменных данных или если база данных недоступна). Снимок содержит исходные (без
+ * накопления) точки разрезов всех сочетаний категорий, которые получает SliceRetriever, за весь промежуток дат таблицы.
+ * <p>
+ * Формат файла (числа в порядке big-endian; varint - целые числа переменной длины по 7 бит, знаковые значения
+ * предварительно кодируются zigzag):
+ * <pre>
+ * заголовок:   "DESS", версия (int), смещение оглавления (long)
+ * данные:      для каждого разреза столбцы varint - разности дат соседних точек в миллисекундах (для первой точки -
+ *              относительно первой даты снимка), количества и значения каждого ряда данных
+ * оглавление:  словарь строк (количество, затем длина и байты UTF-8 каждой строки), название таблицы, первая и
+ *              последняя даты (long), общее количество операций и количество строк таблицы (long), ограничения на количество категорий в
+ *              сочетании и разрезов сочетания, категории и ряды данных; затем сочетания категорий, для каждого -
+ *              категории и разрезы в порядке убывания количества операций, для каждого разреза - значения категорий,
+ *              количество точек и смещение данных (long)
+ * </pre>
+ * Все строки оглавления записываются номерами в словаре. Файл отображается в память; точки разреза декодируются при
+ * каждом запросе прямо из отображения, без чтения файла в кучу. Размер файла ограничен 2 ГБ.
+ */
+public class SliceStore {
+
+    private static final int magic = 0x44455353;
+    private static final int version = 2;
+    private static final int headerSize = 16;
+
+    public final String tableName;
+    private final ByteBuffer buffer;
+    private final long minTime, maxTime, totalAmount, rowCount;
+    private final int maxCategories, maxSlices;
+    private final List<String> categoryNames, valueNames;
+    private final Map<String, List<Entry>> combos = new LinkedHashMap<>();
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Открывает снимок разрезов и читает его оглавление.
+     *
+     * @param file - файл снимка
+     * @throws IOException если файл не удалось прочитать или он имеет другой формат
+     */
+    public SliceStore(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Файл " + file + " больше 2 ГБ");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < headerSize || buffer.getInt(0) != magic || buffer.getInt(4) != version) {
+            throw new IOException("Файл " + file + " не является снимком разрезов версии " + version);
+        }
+        Cursor cursor = new Cursor(buffer, (int) buffer.getLong(8));
+        String[] dictionary = new String[(int) cursor.readVarint()];
+        for (int i = 0; i < dictionary.length; i++) {
+            byte[] bytes = new byte[(int) cursor.readVarint()];
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = buffer.get(cursor.position++);
+            }
+            dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        tableName = dictionary[(int) cursor.readVarint()];
+        minTime = cursor.readLong();
+        maxTime = cursor.readLong();
+        totalAmount = cursor.readLong();
+        rowCount = cursor.readLong();
+        maxCategories = (int) cursor.readVarint();
+        maxSlices = (int) cursor.readVarint();
+        categoryNames = Arrays.asList(cursor.readStrings(dictionary));
+        valueNames = Arrays.asList(cursor.readStrings(dictionary));
+        long comboCount = cursor.readVarint();
+        for (long i = 0; i < comboCount; i++) {
+            String[] categories = cursor.readStrings(dictionary);
+            int sliceCount = (int) cursor.readVarint();
+            List<Entry> comboEntries = new ArrayList<>(sliceCount);
+            for (int j = 0; j < sliceCount; j++) {
+                String[] labels = new String[categories.length];
+                for (int k = 0; k < labels.length; k++) {
+                    labels[k] = dictionary[(int) cursor.readVarint()];
+                }
+                Entry entry = new Entry(labels, (int) cursor.readVarint(), cursor.readLong());
+                comboEntries.add(entry);
+                entries.put(getKey(categories, labels), entry);
+            }
+            combos.put(String.join(",", categories), comboEntries);
+        }
+    }
+
+    /**
+     * Проверяет, можно ли получить разрезы из снимка: снимок создан для той же таблицы и того же промежутка дат (то
+     * есть данные таблицы не изменились после его создания), а сочетания и разрезы не выходят за его ограничения.
+     *
+     * @param tableName     - название таблицы
+     * @param minDate       - первая дата разрезов
+     * @param maxDate       - последняя дата разрезов
+     * @param maxCategories - максимальное количество категорий в сочетании
+     * @param maxSlices     - максимальное количество разрезов сочетания
+     * @return true, если разрезы можно получить из снимка
+     */
+    public boolean covers(String tableName, Date minDate, Date maxDate, int maxCategories, int maxSlices) {
+        return this.tableName.equals(tableName) && minDate != null && maxDate != null &&
+                minDate.getTime() == minTime && maxDate.getTime() == maxTime &&
+                maxCategories <= this.maxCategories && maxSlices <= this.maxSlices;
+    }
+
+    /**
+     * Проверяет, что данные таблицы не изменились после создания снимка: совпадают количество строк и общее количество
+     * операций (строки могут быть добавлены или изменены и без изменения первой и последней дат).
+     *
+     * @param rowCount    - текущее количество строк таблицы
+     * @param totalAmount - текущее общее количество операций в таблице
+     * @return true, если снимок соответствует данным таблицы
+     */
+    public boolean matches(long rowCount, long totalAmount) {
+        return this.rowCount == rowCount && this.totalAmount == totalAmount;
+    }
+
+    public List<String> getCategoryNames() {
+        return new ArrayList<>(categoryNames);
+    }
+
+    public List<String> getValueNames() {
+        return new ArrayList<>(valueNames);
+    }
+
+    /**
+     * Получает первую и последнюю даты таблицы на момент создания снимка.
+     *
+     * @return список с 2 датами
+     */
+    public List<Date> getBorderDates() {
+        List<Date> dates = new ArrayList<>();
+        dates.add(new Timestamp(minTime));
+        dates.add(new Timestamp(maxTime));
+        return dates;
+    }
+
+    public long getTotalAmount() {
+        return totalAmount;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Получает наиболее частые сочетания значений категорий (в том же порядке, что и getLabelCombinations базы данных).
+     *
+     * @param categories - названия категорий
+     * @param maxCount   - максимальное количество сочетаний значений
+     * @return список значений в строковом виде
+     */
+    public List<String[]> getLabelCombinations(String[] categories, int maxCount) {
+        List<String[]> res = new ArrayList<>();
+        List<Entry> comboEntries = combos.get(String.join(",", categories));
+        if (comboEntries != null) {
+            for (int i = 0; i < comboEntries.size() && i < maxCount; i++) {
+                res.add(comboEntries.get(i).labels);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Получает разрез из снимка, декодируя его точки из отображенного в память файла.
+     *
+     * @param valueName         - название ряда данных
+     * @param categories        - названия категорий
+     * @param labels            - значения категорий в строковом виде
+     * @param approximationType - тип функции приближения
+     * @return разрез (пустой, если его нет в снимке)
+     */
+    public Slice getSlice(String valueName, String[] categories, String[] labels, ApproximationType approximationType) {
+        Entry entry = entries.get(getKey(categories, labels));
+        int valuePos = valueNames.indexOf(valueName);
+        if (entry == null || valuePos < 0) {
+            return new Slice(tableName, valueName, categories, labels);
+        }
+        Cursor cursor = new Cursor(buffer, (int) entry.offset);
+        long[] times = new long[entry.pointCount];
+        long time = minTime;
+        for (int i = 0; i < times.length; i++) {
+            time += cursor.readVarint();
+            times[i] = time;
+        }
+        long[] amounts = new long[entry.pointCount];
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = cursor.readSignedVarint();
+        }
+        for (int i = 0; i < valuePos * entry.pointCount; i++) {
+            cursor.readVarint();
+        }
+        SlicePoint[] points = new SlicePoint[entry.pointCount];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new SlicePoint(cursor.readSignedVarint(), amounts[i], new Timestamp(times[i]));
+        }
+        return new Slice(tableName, valueName, categories, labels, points, approximationType);
+    }
+
+    private static String getKey(String[] categories, String[] labels) {
+        return String.join(",", categories) + "|" + String.join(",", labels);
+    }
+
+    /**
+     * Запись снимка разрезов. Данные разрезов записываются в файл по мере добавления, а оглавление - при закрытии;
+     * файл записывается под временным названием и переименовывается после закрытия, поэтому незаконченный снимок
+     * никогда не открывается.
+     */
+    public static class Writer implements AutoCloseable {
+
+        private final File file, tempFile;
+        private final DataOutputStream output;
+        private final String tableName;
+        private final List<String> categoryNames, valueNames;
+        private final long minTime, maxTime, totalAmount, rowCount;
+        private final int maxCategories, maxSlices;
+        private final Map<String, Integer> dictionary = new LinkedHashMap<>();
+        private final Map<String, String[]> comboCategories = new LinkedHashMap<>();
+        private final Map<String, List<Entry>> combos = new LinkedHashMap<>();
+        private long position = headerSize;
+
+        /**
+         * @param file          - файл снимка
+         * @param tableName     - название таблицы
+         * @param categoryNames - названия категорий таблицы
+         * @param valueNames    - названия рядов данных таблицы
+         * @param minDate       - первая дата таблицы
+         * @param maxDate       - последняя дата таблицы
+         * @param totalAmount   - общее количество операций в таблице
+         * @param rowCount      - количество строк таблицы
+         * @param maxCategories - максимальное количество категорий в сочетании
+         * @param maxSlices     - максимальное количество разрезов сочетания
+         * @throws IOException если файл не удалось создать
+         */
+        public Writer(File file, String tableName, List<String> categoryNames, List<String> valueNames, Date minDate,
+                      Date maxDate, long totalAmount, long rowCount, int maxCategories, int maxSlices) throws IOException {
+            this.file = file;
+            this.tempFile = new File(file.getPath() + ".tmp");
+            this.tableName = tableName;
+            this.categoryNames = categoryNames;
+            this.valueNames = valueNames;
+            this.minTime = minDate.getTime();
+            this.maxTime = maxDate.getTime();
+            this.totalAmount = totalAmount;
+            this.rowCount = rowCount;
+            this.maxCategories = maxCategories;
+            this.maxSlices = maxSlices;
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            output.writeInt(magic);
+            output.writeInt(version);
+            output.writeLong(0);
+        }
+
+        /**
+         * Добавляет сочетание категорий (в том числе без разрезов, чтобы отличать его от сочетания, которого нет в
+         * снимке).
+         *
+         * @param categories - названия категорий
+         */
+        public void addCombo(String[] categories) {
+            String comboName = String.join(",", categories);
+            comboCategories.putIfAbsent(comboName, categories);
+            combos.putIfAbsent(comboName, new ArrayList<>());
+        }
+
+        /**
+         * Добавляет разрез с одним значением категорий. Разрезы сочетания добавляются в порядке убывания количества
+         * операций.
+         *
+         * @param categories  - названия категорий
+         * @param labels      - значения категорий в строковом виде
+         * @param valueSlices - разрезы (без накопления) для каждого ряда данных в порядке valueNames, с одинаковыми
+         *                    датами и количествами точек
+         * @throws IOException если данные не удалось записать
+         */
+        public void addSlices(String[] categories, String[] labels, List<Slice> valueSlices) throws IOException {
+            if (valueSlices.size() != valueNames.size()) {
+                throw new IllegalArgumentException("Количество разрезов не совпадает с количеством рядов данных");
+            }
+            addCombo(categories);
+            Slice firstSlice = valueSlices.get(0);
+            Entry entry = new Entry(labels, firstSlice.size(), position);
+            long time = minTime;
+            for (int i = 0; i < firstSlice.size(); i++) {
+                if (firstSlice.getTime(i) < time) {
+                    throw new IllegalArgumentException("Точки разреза не упорядочены по дате или раньше первой даты снимка");
+                }
+                writeVarint(firstSlice.getTime(i) - time);
+                time = firstSlice.getTime(i);
+            }
+            for (int i = 0; i < firstSlice.size(); i++) {
+                writeSignedVarint(firstSlice.getAmount(i));
+            }
+            for (Slice slice : valueSlices) {
+                if (slice.size() != firstSlice.size()) {
+                    throw new IllegalArgumentException("Разрезы рядов данных имеют разное количество точек");
+                }
+                for (int i = 0; i < slice.size(); i++) {
+                    writeSignedVarint(slice.getValue(i));
+                }
+            }
+            combos.get(String.join(",", categories)).add(entry);
+        }
+
+        @Override
+        public void close() throws IOException {
+            long tocPosition = position;
+            try {
+                for (String name : getStrings()) {
+                    dictionary.putIfAbsent(name, dictionary.size());
+                }
+                writeVarint(dictionary.size());
+                for (String name : dictionary.keySet()) {
+                    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                    writeVarint(bytes.length);
+                    output.write(bytes);
+                    position += bytes.length;
+                }
+                writeVarint(dictionary.get(tableName));
+                writeLong(minTime);
+                writeLong(maxTime);
+                writeLong(totalAmount);
+                writeLong(rowCount);
+                writeVarint(maxCategories);
+                writeVarint(maxSlices);
+                writeStrings(categoryNames.toArray(new String[0]));
+                writeStrings(valueNames.toArray(new String[0]));
+                writeVarint(combos.size());
+                for (Map.Entry<String, List<Entry>> combo : combos.entrySet()) {
+                    writeStrings(comboCategories.get(combo.getKey()));
+                    writeVarint(combo.getValue().size());
+                    for (Entry entry : combo.getValue()) {
+                        for (String label : entry.labels) {
+                            writeVarint(dictionary.get(label));
+                        }
+                        writeVarint(entry.pointCount);
+                        writeLong(entry.offset);
+                    }
+                }
+            } finally {
+                output.close();
+            }
+            if (position > Integer.MAX_VALUE) {
+                Files.deleteIfExists(tempFile.toPath());
+                throw new IOException("Снимок разрезов больше 2 ГБ");
+            }
+            try (RandomAccessFile header = new RandomAccessFile(tempFile, "rw")) {
+                header.seek(8);
+                header.writeLong(tocPosition);
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        private List<String> getStrings() {
+            List<String> strings = new ArrayList<>();
+            strings.add(tableName);
+            strings.addAll(categoryNames);
+            strings.addAll(valueNames);
+            for (Map.Entry<String, List<Entry>> combo : combos.entrySet()) {
+                strings.addAll(Arrays.asList(comboCategories.get(combo.getKey())));
+                for (Entry entry : combo.getValue()) {
+                    strings.addAll(Arrays.asList(entry.labels));
+                }
+            }
+            return strings;
+        }
+
+        private void writeStrings(String[] strings) throws IOException {
+            writeVarint(strings.length);
+            for (String string : strings) {
+                writeVarint(dictionary.get(string));
+            }
+        }
+
+        private void writeLong(long value) throws IOException {
+            output.writeLong(value);
+            position += 8;
+        }
+
+        private void writeSignedVarint(long value) throws IOException {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        private void writeVarint(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                output.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+                position++;
+            }
+            output.write((int) value);
+            position++;
+        }
+
+    }
+
+    /**
+     * Положение разреза в снимке.
+     */
+    private static class Entry {
+
+        private final String[] labels;
+        private final int pointCount;
+        private final long offset;
+
+        private Entry(String[] labels, int pointCount, long offset) {
+            this.labels = labels;
+            this.pointCount = pointCount;
+            this.offset = offset;
+        }
+
+    }
+
+    /**
+     * Чтение чисел из отображенного файла с собственной позицией, чтобы несколько потоков могли читать разрезы
+     * одновременно (абсолютные операции get не меняют состояние буфера).
+     */
+    private static class Cursor {
+
+        private final ByteBuffer buffer;
+        private int position;
+
+        private Cursor(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        private long readLong() {
+            long value = buffer.getLong(position);
+            position += 8;
+            return value;
+        }
+
+        private long readVarint() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(position++);
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        private long readSignedVarint() {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private String[] readStrings(String[] dictionary) {
+            String[] strings = new String[(int) readVarint()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = dictionary[(int) readVarint()];
+            }
+            return strings;
+        }
+
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.SupportClasses;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Признак отмены длительного процесса (загрузки данных, поиска интервалов, получения графиков). Передается через
+ * компоненты программы, которые периодически проверяют его в циклах; запросы к базе данных, выполняющиеся в момент
+ * отмены, прерываются на стороне сервера через Statement.cancel().
+ */
+public class CancellationToken {
+
+    /**
+     * Признак, который никогда не отменяется (используется, когда процесс нельзя прервать).
+     */
+    public static final CancellationToken NONE = new CancellationToken(false);
+
+    private final boolean cancellable;
+    private final Set<Statement> statements = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled = false;
+
+    public CancellationToken() {
+        this(true);
+    }
+
+    private CancellationToken(boolean cancellable) {
+        this.cancellable = cancellable;
+    }
+
+    /**
+     * Отменяет процесс: все выполняющиеся запросы, зарегистрированные через register, прерываются, а последующие
+     * проверки throwIfCancelled выбрасывают исключение.
+     */
+    public void cancel() {
+        if (!cancellable) {
+            return;
+        }
+        cancelled = true;
+        for (Statement statement : statements) {
+            cancelStatement(statement);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Прерывает текущую операцию, если процесс был отменен.
+     *
+     * @throws CancellationException если процесс был отменен
+     */
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Процесс прерван пользователем");
+        }
+    }
+
+    /**
+     * Регистрирует выполняющийся запрос, чтобы прервать его при отмене процесса. Если процесс уже отменен, запрос
+     * прерывается сразу.
+     *
+     * @param statement - запрос
+     */
+    public void register(Statement statement) {
+        if (!cancellable) {
+            return;
+        }
+        statements.add(statement);
+        if (cancelled) {
+            cancelStatement(statement);
+        }
+    }
+
+    /**
+     * Убирает запрос из списка выполняющихся после его завершения.
+     *
+     * @param statement - запрос
+     */
+    public void unregister(Statement statement) {
+        if (!cancellable) {
+            return;
+        }
+        statements.remove(statement);
+    }
+
+    private void cancelStatement(Statement statement) {
+        try {
+            statement.cancel();
+        } catch (SQLException ex) {
+            new ConsoleLogger().logError("Не удалось прервать запрос: " + ex.getMessage());
+        }
+    }
+
+}
@@ -5,7 +5,9 @@ import com.DataObjects.Approximations.ApproximationType;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -20,6 +22,17 @@ public class Config {
         config = getConfig();
     }
 
+    /**
+     * Конструктор, в котором часть параметров задается явно (например, при тестах производительности) и имеет
+     * приоритет над файлом конфигурации.
+     *
+     * @param overrides - карта (ключи - названия параметров, значения - собственно параметры)
+     */
+    public Config(Map<String, String> overrides) {
+        config = getConfig();
+        config.putAll(overrides);
+    }
+
     /**
      * Считывает содержимое файла конфигурации.
      *
@@ -33,7 +46,7 @@ public class Config {
             String line = lineReader.readLine();
             while (line != null) {
                 if (!line.startsWith("//")) {
-                    String[] lineSplit = line.split("=");
+                    String[] lineSplit = line.split("=", 2);
                     if (lineSplit.length == 2) {
                         res.putIfAbsent(lineSplit[0], lineSplit[1]);
                     }
@@ -47,11 +60,25 @@ public class Config {
         res.putIfAbsent("db_name", "evaluatordb");
         res.putIfAbsent("user_name", "evaluator");
         res.putIfAbsent("password", "comparison419");
+        res.putIfAbsent("db_parameters", "none");
         res.putIfAbsent("table_name", "data_v06");
         res.putIfAbsent("max_slices_per_combo", "16");
         res.putIfAbsent("max_categories_per_combo", "3");
         res.putIfAbsent("approximation_type", "linear");
         res.putIfAbsent("viewer_type", "non-simple");
+        res.putIfAbsent("min_combo_support", "0");
+        res.putIfAbsent("partition_interval", "none");
+        res.putIfAbsent("rollup_buckets", "none");
+        res.putIfAbsent("export_threads", "0");
+        res.putIfAbsent("export_renderer", "java2d");
+        res.putIfAbsent("png_compression_level", "6");
+        res.putIfAbsent("metrics_file", "none");
+        res.putIfAbsent("incremental_lookback", "0.25");
+        res.putIfAbsent("stream_batch_rows", "1000");
+        res.putIfAbsent("stream_batch_millis", "2000");
+        res.putIfAbsent("stream_poll_millis", "500");
+        res.putIfAbsent("slice_store", "none");
+        res.putIfAbsent("slice_arena_chunk_mb", "0");
         return res;
     }
 
@@ -71,6 +98,16 @@ public class Config {
         return config.get("password");
     }
 
+    /**
+     * Получает дополнительные параметры подключения к базе данных в формате адреса JDBC.
+     *
+     * @return параметры вида ключ=значение через &amp;, либо пустая строка, если они не заданы
+     */
+    public String getDbParameters() {
+        String dbParameters = config.get("db_parameters");
+        return dbParameters.equals("none") ? "" : dbParameters;
+    }
+
     public String getTableName() {
         return config.get("table_name");
     }
@@ -91,6 +128,152 @@ public class Config {
         }
     }
 
+    public int getExportThreads() {
+        try {
+            return Integer.parseInt(config.get("export_threads"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public int getPngCompressionLevel() {
+        try {
+            return Integer.parseInt(config.get("png_compression_level"));
+        } catch (NumberFormatException e) {
+            return 6;
+        }
+    }
+
+    public double getMinComboSupport() {
+        try {
+            return Double.parseDouble(config.get("min_combo_support"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Получает длину периода одной секции таблицы исходных данных.
+     *
+     * @return day, week, month или year, либо none, если таблица не секционируется
+     */
+    public String getPartitionInterval() {
+        String partitionInterval = config.get("partition_interval");
+        switch (partitionInterval) {
+            case "day":
+            case "week":
+            case "month":
+            case "year":
+                return partitionInterval;
+            default:
+                return "none";
+        }
+    }
+
+    /**
+     * Получает промежутки времени, для которых при загрузке данных создаются таблицы агрегатов.
+     *
+     * @return список промежутков (minute, hour, day), пустой, если таблицы агрегатов не создаются
+     */
+    public List<String> getRollupBuckets() {
+        List<String> rollupBuckets = new ArrayList<>();
+        for (String bucket : config.get("rollup_buckets").split(",")) {
+            bucket = bucket.trim();
+            if ((bucket.equals("minute") || bucket.equals("hour") || bucket.equals("day")) && !rollupBuckets.contains(bucket)) {
+                rollupBuckets.add(bucket);
+            }
+        }
+        return rollupBuckets;
+    }
+
+    /**
+     * Получает путь к файлу, в который по окончании работы записывается сводка метрик в формате JSON.
+     *
+     * @return путь к файлу, либо null, если сводка записывается только в журнал
+     */
+    public String getMetricsFile() {
+        String metricsFile = config.get("metrics_file");
+        return metricsFile.equals("none") ? null : metricsFile;
+    }
+
+    /**
+     * Получает путь к файлу снимка разрезов, который записывается после загрузки данных и используется вместо запросов
+     * к базе данных, пока данные таблицы не изменились.
+     *
+     * @return путь к файлу, либо null, если снимок не используется
+     */
+    public String getSliceStore() {
+        String sliceStore = config.get("slice_store");
+        return sliceStore.equals("none") ? null : sliceStore;
+    }
+
+    /**
+     * Получает размер блока памяти вне кучи, в котором размещаются точки разрезов с накоплением во время экспорта.
+     *
+     * @return размер блока в мегабайтах, либо 0, если точки размещаются в куче
+     */
+    public int getSliceArenaChunkMb() {
+        try {
+            return Math.max(0, Math.min(Integer.parseInt(config.get("slice_arena_chunk_mb")), 1024));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Получает длину уже обработанной части разреза, которая пересматривается при поиске интервалов только по новым
+     * данным (доля длины временного промежутка разреза, от 0 до 1).
+     *
+     * @return доля длины разреза
+     */
+    public double getIncrementalLookback() {
+        try {
+            return Double.parseDouble(config.get("incremental_lookback"));
+        } catch (NumberFormatException e) {
+            return 0.25;
+        }
+    }
+
+    /**
+     * Получает наибольшее количество строк в одном пакете потоковой загрузки данных.
+     *
+     * @return количество строк
+     */
+    public int getStreamBatchRows() {
+        try {
+            return Integer.parseInt(config.get("stream_batch_rows"));
+        } catch (NumberFormatException e) {
+            return 1000;
+        }
+    }
+
+    /**
+     * Получает наибольшее время ожидания новых строк для пакета потоковой загрузки: по его истечении пакет
+     * записывается, даже если он не заполнен.
+     *
+     * @return время в миллисекундах
+     */
+    public long getStreamBatchMillis() {
+        try {
+            return Long.parseLong(config.get("stream_batch_millis"));
+        } catch (NumberFormatException e) {
+            return 2000;
+        }
+    }
+
+    /**
+     * Получает период проверки каталога с новыми файлами при потоковой загрузке данных.
+     *
+     * @return период в миллисекундах
+     */
+    public long getStreamPollMillis() {
+        try {
+            return Long.parseLong(config.get("stream_poll_millis"));
+        } catch (NumberFormatException e) {
+            return 500;
+        }
+    }
+
     public ApproximationType getApproximationType() {
         String approximationTypeStr = config.get("approximation_type");
         switch (approximationTypeStr) {
@@ -105,6 +288,10 @@ public class Config {
         }
     }
 
+    public boolean getDirectRendering() {
+        return config.get("export_renderer").equals("java2d");
+    }
+
     public boolean getViewerType() {
         return config.get("viewer_type").equals("simple");
     }
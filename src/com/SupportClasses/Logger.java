@@ -19,4 +19,52 @@ public interface Logger {
      */
     void logError(String message);
 
+    /**
+     * Увеличивает счетчик в общем реестре метрик.
+     *
+     * @param name  - название счетчика
+     * @param delta - величина увеличения
+     */
+    default void incrementCounter(String name, long delta) {
+        MetricsRegistry.getInstance().incrementCounter(name, delta);
+    }
+
+    default void incrementCounter(String name) {
+        incrementCounter(name, 1);
+    }
+
+    /**
+     * Записывает длительность операции в общий реестр метрик.
+     *
+     * @param name      - название таймера
+     * @param startTime - время начала операции, полученное через System.nanoTime()
+     */
+    default void recordTime(String name, long startTime) {
+        MetricsRegistry.getInstance().recordTime(name, System.nanoTime() - startTime);
+    }
+
+    /**
+     * Записывает величину (например, количество строк) в гистограмму общего реестра метрик.
+     *
+     * @param name  - название гистограммы
+     * @param value - величина
+     */
+    default void recordValue(String name, long value) {
+        MetricsRegistry.getInstance().recordValue(name, value);
+    }
+
+    /**
+     * Выводит сводку метрик, накопленных в общем реестре.
+     */
+    default void logMetrics() {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        if (metrics.isEmpty()) {
+            return;
+        }
+        logMessage("Сводка метрик:");
+        for (String line : metrics.getSummary()) {
+            logMessage("    " + line);
+        }
+    }
+
 }
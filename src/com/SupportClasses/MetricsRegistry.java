@@ -0,0 +1,264 @@
+package com.SupportClasses;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Реестр метрик работы программы: счетчики, таймеры (длительности в наносекундах) и гистограммы (произвольные
+ * неотрицательные величины, например количество строк). Один общий реестр доступен через getInstance и заполняется
+ * из разных потоков; по окончании работы из него формируется сводка.
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry instance = new MetricsRegistry();
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> timers = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    public MetricsRegistry() {
+    }
+
+    public static MetricsRegistry getInstance() {
+        return instance;
+    }
+
+    public void incrementCounter(String name, long delta) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * Записывает длительность операции.
+     *
+     * @param name  - название таймера
+     * @param nanos - длительность в наносекундах
+     */
+    public void recordTime(String name, long nanos) {
+        timers.computeIfAbsent(name, key -> new Histogram()).record(nanos);
+    }
+
+    public void recordValue(String name, long value) {
+        histograms.computeIfAbsent(name, key -> new Histogram()).record(value);
+    }
+
+    public long getCounter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public Histogram getTimer(String name) {
+        return timers.get(name);
+    }
+
+    public Histogram getHistogram(String name) {
+        return histograms.get(name);
+    }
+
+    /**
+     * Получает общее количество записей во всех таймерах, названия которых начинаются с префикса (например,
+     * количество выполненных запросов по префиксу "db.").
+     *
+     * @param prefix - префикс названий таймеров
+     * @return количество записей
+     */
+    public long getTimerCount(String prefix) {
+        long res = 0;
+        for (Map.Entry<String, Histogram> timer : timers.entrySet()) {
+            if (timer.getKey().startsWith(prefix)) {
+                res += timer.getValue().getCount();
+            }
+        }
+        return res;
+    }
+
+    public boolean isEmpty() {
+        return counters.isEmpty() && timers.isEmpty() && histograms.isEmpty();
+    }
+
+    /**
+     * Удаляет все накопленные метрики (например, перед началом нового запуска).
+     */
+    public void reset() {
+        counters.clear();
+        timers.clear();
+        histograms.clear();
+    }
+
+    /**
+     * Формирует сводку метрик в виде строк, отсортированных по названию; длительности выводятся в миллисекундах.
+     *
+     * @return список строк сводки
+     */
+    public List<String> getSummary() {
+        List<String> res = new ArrayList<>();
+        for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+            res.add(counter.getKey() + ": " + counter.getValue());
+        }
+        for (Map.Entry<String, Histogram> timer : new TreeMap<>(timers).entrySet()) {
+            Histogram h = timer.getValue();
+            res.add(String.format(Locale.US, "%s: count=%d, total=%.1f ms, mean=%.3f ms, p50=%.3f ms, p95=%.3f ms, p99=%.3f ms, max=%.3f ms",
+                    timer.getKey(), h.getCount(), h.getSum() / 1e6, h.getMean() / 1e6, h.getPercentile(0.5) / 1e6,
+                    h.getPercentile(0.95) / 1e6, h.getPercentile(0.99) / 1e6, h.getMax() / 1e6));
+        }
+        for (Map.Entry<String, Histogram> histogram : new TreeMap<>(histograms).entrySet()) {
+            Histogram h = histogram.getValue();
+            res.add(String.format(Locale.US, "%s: count=%d, total=%d, mean=%.1f, p50=%d, p95=%d, p99=%d, max=%d",
+                    histogram.getKey(), h.getCount(), h.getSum(), h.getMean(), h.getPercentile(0.5),
+                    h.getPercentile(0.95), h.getPercentile(0.99), h.getMax()));
+        }
+        return res;
+    }
+
+    /**
+     * Формирует сводку метрик в формате JSON (длительности в миллисекундах).
+     *
+     * @return строка JSON
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\n  \"counters\": {");
+        boolean first = true;
+        for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+            json.append(first ? "\n" : ",\n").append("    ").append(quote(counter.getKey())).append(": ").append(counter.getValue());
+            first = false;
+        }
+        json.append(first ? "},\n" : "\n  },\n");
+        json.append("  \"timers\": ");
+        appendHistograms(json, timers, 1e6);
+        json.append(",\n  \"histograms\": ");
+        appendHistograms(json, histograms, 1);
+        json.append("\n}\n");
+        return json.toString();
+    }
+
+    /**
+     * Записывает сводку метрик в формате JSON в файл.
+     *
+     * @param fileName - путь к файлу
+     * @throws IOException если не удалось записать файл
+     */
+    public void writeJson(String fileName) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8)) {
+            writer.write(toJson());
+        }
+    }
+
+    private Map<String, Long> getCounters() {
+        Map<String, Long> res = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            res.put(counter.getKey(), counter.getValue().sum());
+        }
+        return res;
+    }
+
+    private void appendHistograms(StringBuilder json, Map<String, Histogram> histogramMap, double divisor) {
+        json.append("{");
+        boolean first = true;
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histogramMap).entrySet()) {
+            Histogram h = entry.getValue();
+            json.append(first ? "\n" : ",\n").append("    ").append(quote(entry.getKey())).append(": {");
+            json.append("\"count\": ").append(h.getCount());
+            json.append(String.format(Locale.US, ", \"total\": %.3f, \"mean\": %.3f, \"p50\": %.3f, \"p95\": %.3f, \"p99\": %.3f, \"max\": %.3f}",
+                    h.getSum() / divisor, h.getMean() / divisor, h.getPercentile(0.5) / divisor,
+                    h.getPercentile(0.95) / divisor, h.getPercentile(0.99) / divisor, h.getMax() / divisor));
+            first = false;
+        }
+        json.append(first ? "}" : "\n  }");
+    }
+
+    private String quote(String str) {
+        return "\"" + str.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * Гистограмма неотрицательных величин с логарифмическими корзинами: каждая степень двойки делится на 8 корзин,
+     * поэтому процентили вычисляются с относительной погрешностью не более 12,5% при постоянном объеме памяти.
+     */
+    public static class Histogram {
+
+        private static final int subBuckets = 8, subBucketBits = 3;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(64 * subBuckets);
+        private final AtomicLong count = new AtomicLong(), sum = new AtomicLong(), max = new AtomicLong();
+
+        public void record(long value) {
+            value = Math.max(value, 0);
+            buckets.incrementAndGet(getBucket(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            max.accumulateAndGet(value, Math::max);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getSum() {
+            return sum.get();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public double getMean() {
+            long n = count.get();
+            return n == 0 ? 0 : (double) sum.get() / n;
+        }
+
+        /**
+         * Получает приближенное значение процентиля (верхнюю границу корзины, в которую он попадает, но не больше
+         * наибольшего записанного значения).
+         *
+         * @param quantile - доля от 0 до 1
+         * @return значение процентиля
+         */
+        public long getPercentile(double quantile) {
+            long n = count.get();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = Math.max((long) Math.ceil(quantile * n), 1);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(getBucketUpperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        private static int getBucket(long value) {
+            if (value < subBuckets) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - subBucketBits)) & (subBuckets - 1);
+            return (exponent - subBucketBits + 1) * subBuckets + subBucket;
+        }
+
+        private static long getBucketUpperBound(int bucket) {
+            if (bucket < subBuckets) {
+                return bucket;
+            }
+            int exponent = bucket / subBuckets + subBucketBits - 1;
+            long subBucket = bucket % subBuckets;
+            long lowerBound = (1L << exponent) + (subBucket << (exponent - subBucketBits));
+            return lowerBound + (1L << (exponent - subBucketBits)) - 1;
+        }
+
+    }
+
+}
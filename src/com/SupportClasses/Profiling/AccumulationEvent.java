@@ -0,0 +1,35 @@
+package com.SupportClasses.Profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Событие Java Flight Recorder: построение накопления разреза.
+ */
+@Name("com.DataEvaluator.Accumulation")
+@Label("Slice Accumulation")
+@Category({"DataEvaluator", "Slices"})
+@Description("Построение накопления разреза вместе с его приближением")
+public class AccumulationEvent extends Event {
+
+    @Label("Table")
+    public String tableName;
+
+    @Label("Labels")
+    public String labels;
+
+    @Label("Points")
+    public int points;
+
+    @Label("Accumulated Points")
+    @Description("Количество точек после объединения точек с одинаковой датой")
+    public int accumulatedPoints;
+
+    public void setLabels(String[] colNames, String[] labels) {
+        this.labels = SliceFetchEvent.joinLabels(colNames, labels);
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.SupportClasses.Profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Событие Java Flight Recorder: один проход поиска интервалов по списку разрезов.
+ */
+@Name("com.DataEvaluator.IntervalFinder")
+@Label("Interval Search")
+@Category({"DataEvaluator", "Intervals"})
+@Description("Поиск интервалов с уменьшением или отсутствием роста на списке разрезов")
+public class IntervalFinderEvent extends Event {
+
+    @Label("Finder")
+    public String finder;
+
+    @Label("Interval Type")
+    @Description("decreases или constants")
+    public String intervalType;
+
+    @Label("Slices")
+    public int slices;
+
+    @Label("Points")
+    @Description("Общее количество точек в разрезах")
+    public long points;
+
+    @Label("Candidates Evaluated")
+    @Description("Количество проверенных пар начала и конца интервала")
+    public long candidates;
+
+    @Label("Intervals Found")
+    public int intervals;
+
+}
@@ -0,0 +1,37 @@
+package com.SupportClasses.Profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Событие Java Flight Recorder: экспорт одного графика в файл PNG (рисование и кодирование).
+ */
+@Name("com.DataEvaluator.PngExport")
+@Label("PNG Export")
+@Category({"DataEvaluator", "Export"})
+@Description("Рисование графика и запись его в файл PNG")
+public class PngExportEvent extends Event {
+
+    @Label("File")
+    public String fileName;
+
+    @Label("Renderer")
+    @Description("java2d или jfreechart")
+    public String renderer;
+
+    @Label("Points")
+    public int points;
+
+    @Label("Render Time")
+    @Description("Время рисования графика в наносекундах")
+    public long renderNanos;
+
+    @Label("File Size")
+    @DataAmount
+    public long bytes;
+
+}
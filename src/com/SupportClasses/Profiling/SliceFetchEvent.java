@@ -0,0 +1,62 @@
+package com.SupportClasses.Profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Событие Java Flight Recorder: получение разреза из базы данных (запрос и построение точек разреза).
+ */
+@Name("com.DataEvaluator.SliceFetch")
+@Label("Slice Fetch")
+@Category({"DataEvaluator", "Database"})
+@Description("Получение разреза из базы данных")
+public class SliceFetchEvent extends Event {
+
+    @Label("Table")
+    public String tableName;
+
+    @Label("Source Table")
+    @Description("Таблица, из которой получен разрез (исходная таблица или таблица агрегатов)")
+    public String sourceTableName;
+
+    @Label("Value")
+    public String valueName;
+
+    @Label("Labels")
+    @Description("Значения категорий разреза в виде столбец=значение")
+    public String labels;
+
+    @Label("Rows")
+    public int rows;
+
+    @Label("Bytes")
+    @Description("Оценка объема полученных данных")
+    @DataAmount
+    public long bytes;
+
+    /**
+     * Задает значения категорий разреза.
+     *
+     * @param colNames - названия столбцов
+     * @param labels   - значения столбцов
+     */
+    public void setLabels(String[] colNames, String[] labels) {
+        this.labels = joinLabels(colNames, labels);
+    }
+
+    static String joinLabels(String[] colNames, String[] labels) {
+        StringBuilder res = new StringBuilder();
+        for (int i = 0; i < colNames.length && i < labels.length; i++) {
+            if (i > 0) {
+                res.append(", ");
+            }
+            res.append(colNames[i]).append("=").append(labels[i]);
+        }
+        return res.toString();
+    }
+
+}
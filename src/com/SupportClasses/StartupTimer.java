@@ -0,0 +1,34 @@
+package com.SupportClasses;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Измерение времени запуска программы: для каждого этапа (создание контроллера, подключение к базе данных, первый
+ * запрос) записывается время от запуска JVM до первого достижения этого этапа. Значения выводятся в журнал сразу и
+ * попадают в сводку метрик как таймеры startup.*.
+ */
+public class StartupTimer {
+
+    private static final Set<String> reachedStages = ConcurrentHashMap.newKeySet();
+
+    private StartupTimer() {
+    }
+
+    /**
+     * Отмечает достижение этапа запуска; повторные вызовы для того же этапа ничего не делают.
+     *
+     * @param stage  - название этапа
+     * @param logger - журнал, в который выводится время этапа
+     */
+    public static void mark(String stage, Logger logger) {
+        if (!reachedStages.add(stage)) {
+            return;
+        }
+        long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        MetricsRegistry.getInstance().recordTime("startup." + stage, uptime * 1_000_000);
+        logger.logMessage("Этап запуска " + stage + ": " + uptime + " мс после запуска JVM");
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.View;
+
+import com.DataObjects.Slice;
+
+/**
+ * Вспомогательный класс, который выбирает точки разреза для отображения на графике ограниченной ширины.
+ */
+public class Downsampler {
+
+    private Downsampler() {
+    }
+
+    /**
+     * Выбирает точки отрезка разреза методом наибольших треугольников (Largest-Triangle-Three-Buckets): отрезок
+     * делится на группы по числу выбираемых точек, и из каждой группы берется точка, образующая треугольник
+     * наибольшей площади с предыдущей выбранной точкой и средней точкой следующей группы. В отличие от выбора каждой
+     * n-й точки, сохраняет резкие выбросы. Первая и последняя точки отрезка выбираются всегда.
+     *
+     * @param slice     - разрез данных
+     * @param from      - номер первой точки отрезка
+     * @param to        - номер последней точки отрезка
+     * @param threshold - количество выбираемых точек (обычно равно ширине графика в пикселях)
+     * @return возрастающий список номеров выбранных точек
+     */
+    public static int[] getLargestTriangleIndices(Slice slice, int from, int to, int threshold) {
+        int length = to - from + 1;
+        if (length <= 0) {
+            return new int[0];
+        }
+        if (threshold >= length || length <= 2) {
+            return getAllIndices(from, to);
+        }
+        if (threshold < 3) {
+            return new int[]{from, to};
+        }
+        int[] indices = new int[threshold];
+        final double bucketLength = (double) (length - 2) / (threshold - 2);
+        final long firstTime = slice.getTime(from);
+        int selected = from;
+        indices[0] = from;
+        for (int i = 0; i < threshold - 2; i++) {
+            int averageStart = from + (int) ((i + 1) * bucketLength) + 1;
+            int averageEnd = Math.min(from + (int) ((i + 2) * bucketLength) + 1, to + 1);
+            double averageTime = 0, averageValue = 0;
+            for (int j = averageStart; j < averageEnd; j++) {
+                averageTime += slice.getTime(j) - firstTime;
+                averageValue += slice.getValue(j);
+            }
+            averageTime /= averageEnd - averageStart;
+            averageValue /= averageEnd - averageStart;
+
+            int bucketStart = from + (int) (i * bucketLength) + 1;
+            int bucketEnd = from + (int) ((i + 1) * bucketLength) + 1;
+            double selectedTime = slice.getTime(selected) - firstTime;
+            double selectedValue = slice.getValue(selected);
+            double maxArea = -1;
+            int next = bucketStart;
+            for (int j = bucketStart; j < bucketEnd; j++) {
+                double area = Math.abs((selectedTime - averageTime) * (slice.getValue(j) - selectedValue) -
+                        (selectedTime - (slice.getTime(j) - firstTime)) * (averageValue - selectedValue));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+            indices[i + 1] = next;
+            selected = next;
+        }
+        indices[threshold - 1] = to;
+        return indices;
+    }
+
+    /**
+     * Выбирает равномерно расположенные точки отрезка разреза (подходит для гладких линий, например функций
+     * приближения). Первая и последняя точки отрезка выбираются всегда.
+     *
+     * @param from      - номер первой точки отрезка
+     * @param to        - номер последней точки отрезка
+     * @param threshold - количество выбираемых точек
+     * @return возрастающий список номеров выбранных точек
+     */
+    public static int[] getUniformIndices(int from, int to, int threshold) {
+        int length = to - from + 1;
+        if (length <= 0) {
+            return new int[0];
+        }
+        if (threshold >= length || length <= 2) {
+            return getAllIndices(from, to);
+        }
+        threshold = Math.max(threshold, 2);
+        int[] indices = new int[threshold];
+        for (int i = 0; i < threshold; i++) {
+            indices[i] = from + (int) ((long) i * (length - 1) / (threshold - 1));
+        }
+        return indices;
+    }
+
+    private static int[] getAllIndices(int from, int to) {
+        int[] indices = new int[to - from + 1];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = from + i;
+        }
+        return indices;
+    }
+
+}
@@ -3,8 +3,10 @@ package com.View;
 import com.DataObjects.Slice;
 import com.DataObjects.SlicePoint;
 import com.DataObjects.SuspiciousInterval;
+import com.SupportClasses.ConsoleLogger;
+import com.SupportClasses.Logger;
+import com.SupportClasses.Profiling.PngExportEvent;
 import org.jfree.chart.ChartFactory;
-import org.jfree.chart.ChartUtils;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.data.time.Millisecond;
@@ -13,11 +15,22 @@ import org.jfree.data.time.TimeSeriesCollection;
 import org.jfree.data.time.TimeSeriesDataItem;
 
 import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
 
 /**
  * Класс, который экспортирует разрезы данных и интервалы в виде изображений на диске.
@@ -25,9 +38,67 @@ import java.util.Date;
 public class GraphExporter {
 
     private final Date currentDate;
+    private final Logger logger;
+    private final int threads;
+    private final int graphWidth = 800, graphHeight = 600;
+    private final SliceImageRenderer imageRenderer;
+    private final ThreadLocal<BufferedImage> imageBuffer;
+    private final ThreadLocal<PngEncoder> pngEncoder;
 
     public GraphExporter() {
+        this(1, false, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param threads          - количество потоков, в которых одновременно создаются изображения при экспорте списка
+     *                         графиков (0 - по количеству ядер процессора)
+     * @param directRendering  - true, если изображения рисуются напрямую (SliceImageRenderer), false, если через
+     *                         JFreeChart
+     * @param compressionLevel - уровень сжатия изображений PNG от 0 (без сжатия) до 9
+     */
+    public GraphExporter(int threads, boolean directRendering, int compressionLevel) {
         currentDate = new Date();
+        logger = new ConsoleLogger();
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        imageRenderer = directRendering ? new SliceImageRenderer(graphWidth, graphHeight) : null;
+        imageBuffer = ThreadLocal.withInitial(() -> new BufferedImage(graphWidth, graphHeight, BufferedImage.TYPE_INT_RGB));
+        pngEncoder = ThreadLocal.withInitial(() -> new PngEncoder(compressionLevel));
+    }
+
+    /**
+     * Генерирует графы из всех разрезов потока и сохраняет их в виде изображений .png. Разрезы читаются из потока в
+     * текущем потоке выполнения, а графы создаются и сохраняются параллельно; результат совпадает с поочередным
+     * вызовом exportGraphToPng.
+     *
+     * @param slices - поток разрезов данных
+     * @return количество сохраненных изображений
+     */
+    public int exportGraphsToPng(Stream<Slice> slices) {
+        ExportQueue queue = new ExportQueue();
+        try {
+            slices.forEachOrdered(slice -> queue.submit(() -> exportGraphToPng(slice)));
+        } catch (RuntimeException ex) {
+            queue.cancel();
+            throw ex;
+        }
+        return queue.await();
+    }
+
+    /**
+     * Генерирует графы из разрезов, на которых расположены интервалы, и сохраняет их в виде изображений .png под
+     * номерами интервалов в списке. Графы создаются и сохраняются параллельно.
+     *
+     * @param intervals    - список интервалов
+     * @param subdirectory - название директории (обычно decrease или constant)
+     * @return количество сохраненных изображений
+     */
+    public int exportDecreaseGraphsToPng(List<SuspiciousInterval> intervals, String subdirectory) {
+        ExportQueue queue = new ExportQueue();
+        for (int i = 0; i < intervals.size(); i++) {
+            final int intervalId = i;
+            queue.submit(() -> exportDecreaseGraphToPng(intervals.get(intervalId), subdirectory, intervalId));
+        }
+        return queue.await();
     }
 
     /**
@@ -38,7 +109,7 @@ public class GraphExporter {
      * @return true, если экспорт прошел успешно, иначе false
      */
     public boolean exportGraphToPng(Slice slice) {
-        if (slice.points.length < 2) {
+        if (slice.size() < 2) {
             return false;
         }
         StringBuilder directoryName = new StringBuilder("graphs/" + currentDate.getTime() + "/" + slice.tableName + "/accumulated_" + slice.valueName + "/");
@@ -57,15 +128,29 @@ public class GraphExporter {
             }
         }
         imageName.append(".png");
-        JFreeChart chart = getGraph(slice);
         File path = new File(directoryName.toString());
         path.mkdirs();
         try {
-            OutputStream out = new FileOutputStream(imageName.toString());
-            ChartUtils.writeChartAsPNG(out,
-                    chart,
-                    800,
-                    600);
+            PngExportEvent event = new PngExportEvent();
+            event.begin();
+            BufferedImage image = imageBuffer.get();
+            long startTime = System.nanoTime();
+            if (imageRenderer != null) {
+                imageRenderer.renderSlice(slice, getChartTitle(slice), image);
+            } else {
+                drawChart(getGraph(slice), image);
+            }
+            logger.recordTime("export.render", startTime);
+            long renderNanos = System.nanoTime() - startTime;
+            long bytes = writePng(image, imageName.toString());
+            if (event.shouldCommit()) {
+                event.fileName = imageName.toString();
+                event.renderer = imageRenderer != null ? "java2d" : "jfreechart";
+                event.points = slice.size();
+                event.renderNanos = renderNanos;
+                event.bytes = bytes;
+                event.commit();
+            }
         } catch (IOException ex) {
             ex.printStackTrace();
             return false;
@@ -84,7 +169,7 @@ public class GraphExporter {
      */
     public boolean exportDecreaseGraphToPng(SuspiciousInterval interval, String subdirectory, int intervalId) {
         Slice slice = interval.slice;
-        if (slice.points.length < 2) {
+        if (slice.size() < 2) {
             return false;
         }
         StringBuilder chartTitle = new StringBuilder();
@@ -100,15 +185,29 @@ public class GraphExporter {
             }
         }
         imageName.append(".png");
-        JFreeChart chart = getDecreaseChart(interval);
         File path = new File(directoryName.toString());
         path.mkdirs();
         try {
-            OutputStream out = new FileOutputStream(imageName.toString());
-            ChartUtils.writeChartAsPNG(out,
-                    chart,
-                    800,
-                    600);
+            PngExportEvent event = new PngExportEvent();
+            event.begin();
+            BufferedImage image = imageBuffer.get();
+            long startTime = System.nanoTime();
+            if (imageRenderer != null) {
+                imageRenderer.renderInterval(interval, getChartTitle(slice), image);
+            } else {
+                drawChart(getDecreaseChart(interval), image);
+            }
+            logger.recordTime("export.render", startTime);
+            long renderNanos = System.nanoTime() - startTime;
+            long bytes = writePng(image, imageName.toString());
+            if (event.shouldCommit()) {
+                event.fileName = imageName.toString();
+                event.renderer = imageRenderer != null ? "java2d" : "jfreechart";
+                event.points = slice.size();
+                event.renderNanos = renderNanos;
+                event.bytes = bytes;
+                event.commit();
+            }
         } catch (IOException ex) {
             ex.printStackTrace();
             return false;
@@ -116,6 +215,37 @@ public class GraphExporter {
         return true;
     }
 
+    /**
+     * Рисует граф JFreeChart на изображении размером с экспортируемый график.
+     *
+     * @param chart - граф
+     * @param image - изображение
+     */
+    private void drawChart(JFreeChart chart, BufferedImage image) {
+        Graphics2D graphics = image.createGraphics();
+        chart.draw(graphics, new Rectangle2D.Double(0, 0, graphWidth, graphHeight));
+        graphics.dispose();
+    }
+
+    /**
+     * Кодирует изображение в формат PNG и записывает его в файл, используя кодировщик текущего потока.
+     *
+     * @param image     - изображение
+     * @param imageName - путь к файлу
+     * @return размер записанного файла в байтах
+     * @throws IOException при ошибке записи
+     */
+    private long writePng(BufferedImage image, String imageName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(imageName), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long startTime = System.nanoTime();
+            pngEncoder.get().write(image, channel);
+            logger.recordTime("export.png", startTime);
+            logger.recordValue("export.png_bytes", channel.position());
+            return channel.position();
+        }
+    }
+
     /**
      * Генерирует граф из заданного разреза.
      *
@@ -125,10 +255,7 @@ public class GraphExporter {
     public JFreeChart getGraph(Slice slice) {
         String chartTitle = getChartTitle(slice);
         TimeSeries series = new TimeSeries("Значение");
-        final int chunkLength = Integer.max(slice.points.length / 4096, 1);
-        for (int i = 0; i < slice.points.length; i += chunkLength) {
-            series.add(new Millisecond(slice.points[i].date), slice.points[i].value);
-        }
+        addPoints(slice, series, 0, slice.size() - 1, graphWidth);
         TimeSeriesCollection dataset = new TimeSeriesCollection();
         dataset.addSeries(series);
         addApproximation(slice, dataset);
@@ -152,18 +279,12 @@ public class GraphExporter {
         Slice slice = interval.slice;
         String chartTitle = getChartTitle(slice);
         TimeSeries mainSeries = new TimeSeries("Значение");
-        final int chunkLength = Integer.max(slice.points.length / 4096, 1);
-        for (int i = 0; i <= interval.pos1; i += chunkLength) {
-            mainSeries.add(new Millisecond(slice.points[i].date), slice.points[i].value);
-        }
+        addPoints(slice, mainSeries, 0, interval.pos1, getSegmentWidth(slice, 0, interval.pos1));
         TimeSeries decreaseSeries = new TimeSeries("Интервал с уменьшением");
-        for (int i = interval.pos1; i <= interval.pos2; i += chunkLength) {
-            decreaseSeries.add(new Millisecond(slice.points[i].date), slice.points[i].value);
-        }
+        addPoints(slice, decreaseSeries, interval.pos1, interval.pos2, getSegmentWidth(slice, interval.pos1, interval.pos2));
         TimeSeries mainSeries2 = new TimeSeries("Значение");
-        for (int i = interval.pos2; i < slice.points.length; i += chunkLength) {
-            mainSeries2.add(new Millisecond(slice.points[i].date), slice.points[i].value);
-        }
+        addPoints(slice, mainSeries2, interval.pos2, slice.size() - 1,
+                getSegmentWidth(slice, interval.pos2, slice.size() - 1));
         TimeSeriesCollection dataset = new TimeSeriesCollection();
         dataset.addSeries(mainSeries);
         dataset.addSeries(decreaseSeries);
@@ -192,6 +313,37 @@ public class GraphExporter {
         return chart;
     }
 
+    /**
+     * Добавляет в ряд графика точки отрезка разреза, выбранные методом наибольших треугольников, чтобы количество
+     * точек не превышало ширину графика в пикселях.
+     *
+     * @param slice     - разрез данных
+     * @param series    - ряд графика
+     * @param from      - номер первой точки отрезка
+     * @param to        - номер последней точки отрезка
+     * @param threshold - максимальное количество точек
+     */
+    private void addPoints(Slice slice, TimeSeries series, int from, int to, int threshold) {
+        for (int i : Downsampler.getLargestTriangleIndices(slice, from, to, threshold)) {
+            series.add(new Millisecond(new Date(slice.getTime(i))), slice.getValue(i));
+        }
+    }
+
+    /**
+     * Вычисляет ширину части графика (в пикселях), которую занимает отрезок разреза.
+     *
+     * @param slice - разрез данных
+     * @param from  - номер первой точки отрезка
+     * @param to    - номер последней точки отрезка
+     * @return ширина отрезка, не менее 3 пикселей
+     */
+    private int getSegmentWidth(Slice slice, int from, int to) {
+        if (slice.dateRange <= 0) {
+            return graphWidth;
+        }
+        return Math.max(3, (int) (graphWidth * slice.getDateDistance(from, to) / slice.dateRange));
+    }
+
     /**
      * Добавляет на график линию функции регрессии и две линии, расположенные на sigma выше и на sigma ниже.
      *
@@ -201,11 +353,10 @@ public class GraphExporter {
     private void addApproximation(Slice slice, TimeSeriesCollection dataset) {
         TimeSeries approximationLower = new TimeSeries("Приближение");
         TimeSeries approximationUpper = new TimeSeries("Приближение");
-        final int chunkLength = Integer.max(slice.points.length / 4096, 1);
-        for (int i = 0; i < slice.points.length; i += chunkLength) {
-            approximationLower.add(new TimeSeriesDataItem(new Millisecond(slice.points[i].date),
+        for (int i : Downsampler.getUniformIndices(0, slice.size() - 1, graphWidth)) {
+            approximationLower.add(new TimeSeriesDataItem(new Millisecond(new Date(slice.getTime(i))),
                     slice.getApproximate(i) - slice.getSigma()));
-            approximationUpper.add(new TimeSeriesDataItem(new Millisecond(slice.points[i].date),
+            approximationUpper.add(new TimeSeriesDataItem(new Millisecond(new Date(slice.getTime(i))),
                     slice.getApproximate(i) + slice.getSigma()));
         }
         dataset.addSeries(approximationLower);
@@ -222,17 +373,76 @@ public class GraphExporter {
     private void addPartialApproximation(SuspiciousInterval interval, TimeSeriesCollection dataset) {
         TimeSeries approximationLower = new TimeSeries("Частичное приближение");
         TimeSeries approximationUpper = new TimeSeries("Частичное приближение");
-        final int chunkLength = Integer.max(interval.slice.points.length / 4096, 1);
-        for (int i = 0; i < interval.slice.points.length; i += chunkLength) {
-            approximationLower.add(new TimeSeriesDataItem(new Millisecond(interval.slice.points[i].date),
+        for (int i : Downsampler.getUniformIndices(0, interval.slice.size() - 1, graphWidth)) {
+            approximationLower.add(new TimeSeriesDataItem(new Millisecond(new Date(interval.slice.getTime(i))),
                     interval.getPartialApproximate(i) - interval.getPartialSigma()));
-            approximationUpper.add(new TimeSeriesDataItem(new Millisecond(interval.slice.points[i].date),
+            approximationUpper.add(new TimeSeriesDataItem(new Millisecond(new Date(interval.slice.getTime(i))),
                     interval.getPartialApproximate(i) + interval.getPartialSigma()));
         }
         dataset.addSeries(approximationLower);
         dataset.addSeries(approximationUpper);
     }
 
+    /**
+     * Очередь задач экспорта изображений. Если задано больше одного потока, задачи выполняются в пуле потоков; когда
+     * очередь пула заполнена, задача выполняется в потоке, который ее добавляет, чтобы не накапливать в памяти
+     * неотрисованные разрезы.
+     */
+    private class ExportQueue {
+
+        private final ThreadPoolExecutor executor;
+        private final AtomicInteger graphsExported = new AtomicInteger();
+
+        ExportQueue() {
+            if (threads > 1) {
+                executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+            } else {
+                executor = null;
+            }
+        }
+
+        void submit(Callable<Boolean> task) {
+            Runnable runnable = () -> {
+                try {
+                    if (task.call() && graphsExported.incrementAndGet() % 100 == 0) {
+                        logger.logMessage("Экспортировано " + graphsExported.get() + " графиков");
+                    }
+                } catch (Exception ex) {
+                    logger.logError("Не удалось экспортировать график: " + ex);
+                }
+            };
+            if (executor != null) {
+                executor.execute(runnable);
+            } else {
+                runnable.run();
+            }
+        }
+
+        int await() {
+            if (executor != null) {
+                executor.shutdown();
+                try {
+                    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    executor.shutdownNow();
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return graphsExported.get();
+        }
+
+        /**
+         * Прекращает экспорт, если получение разрезов было прервано: задачи в очереди отменяются.
+         */
+        void cancel() {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+
+    }
+
     private String getChartTitle(Slice slice) {
         StringBuilder chartTitle = new StringBuilder();
         for (int i = 0; i < slice.colNames.length; i++) {
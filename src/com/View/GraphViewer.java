@@ -2,13 +2,13 @@ package com.View;
 
 import com.DataObjects.Approximations.ApproximationType;
 import com.Model.CategoryCombination;
+import com.SupportClasses.CancellationToken;
 import com.SupportClasses.Config;
 import com.DataObjects.SuspiciousInterval;
 import com.Model.DatabaseService;
-import com.Model.Intervals.IntervalFinder;
-import com.Model.Intervals.SimpleIntervalFinder;
 import com.SupportClasses.ConsoleLogger;
 import com.SupportClasses.Logger;
+import org.jfree.chart.JFreeChart;
 import org.jfree.chart.swing.ChartPanel;
 
 import javax.swing.*;
@@ -18,7 +18,15 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Класс, который отображает окно, способное получать и отображать графики разрезов и интервалов.
@@ -27,11 +35,11 @@ public class GraphViewer {
 
     private final String labelAbsent = "-";
     private final String labelAll = "все значения";
+    private final int graphWidth = 600, graphHeight = 400;
     private boolean simpleMode;
 
     private final Config config;
     private final Logger logger;
-    private final IntervalFinder intervalFinder;
     private final GraphExporter graphExporter;
     private final DatabaseService dbService;
 
@@ -71,13 +79,19 @@ public class GraphViewer {
 
     private final List<JPanel> simpleModePanels, regularModePanels;
 
+    private final int graphCacheSize = 16, prefetchDistance = 3;
+    private final ExecutorService graphPrefetcher;
+    private final Set<Integer> prefetchedGraphs;
+
     private String tableName;
     private ApproximationType approximationType;
     private List<SuspiciousInterval> decreaseIntervals;
-    private List<ChartPanel> currentGraphs;
+    private Map<Integer, ChartPanel> currentGraphs;
     private int currentInterval;
+    private volatile int graphsGeneration;
 
-    private SwingWorker<Void, Void> intervalRetrievalWorker;
+    private SwingWorker<Void, SuspiciousInterval> intervalRetrievalWorker;
+    private CancellationToken cancellationToken = CancellationToken.NONE;
 
     /**
      * Создает окно, получающее интервалы из определенной таблицы.
@@ -88,9 +102,17 @@ public class GraphViewer {
         tableName = config.getTableName();
         simpleMode = config.getViewerType();
         approximationType = config.getApproximationType();
-        dbService = new DatabaseService(config.getDbAddress(), config.getDbName(), config.getUserName(), config.getPassword());
-        intervalFinder = new SimpleIntervalFinder();
+        dbService = new DatabaseService(config.getDbAddress(), config.getDbName(), config.getUserName(), config.getPassword(),
+                config.getDbParameters());
+        dbService.setRollupTargetPoints(graphWidth);
         graphExporter = new GraphExporter();
+        graphPrefetcher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "graph-prefetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        prefetchedGraphs = new HashSet<>();
+        currentGraphs = createGraphCache();
 
         mainFrame = new JFrame();
         buttonsPanel = new JPanel();
@@ -366,29 +388,41 @@ public class GraphViewer {
         startCalculationButton.setAlignmentX(Component.CENTER_ALIGNMENT);
         startCalculationButton.addActionListener(e -> {
             lockInterface();
+            decreaseIntervals = new ArrayList<>();
+            currentGraphs = createGraphCache();
+            prefetchedGraphs.clear();
+            graphsGeneration++;
+            currentInterval = 0;
+            graphPanel.removeAll();
+            graphPanel.revalidate();
+            graphPanel.repaint();
+            final GraphParameters parameters = readGraphParameters();
+            final CancellationToken token = new CancellationToken();
+            cancellationToken = token;
+            dbService.setCancellationToken(token);
             intervalRetrievalWorker = new SwingWorker<>() {
-                boolean intervalsRetrieved = false;
 
                 @Override
                 protected Void doInBackground() {
-                    getIntervals();
-                    intervalsRetrieved = true;
+                    try {
+                        getIntervals(parameters, this::publish);
+                    } finally {
+                        dbService.resetCancellationToken(token);
+                    }
                     return null;
                 }
 
+                @Override
+                protected void process(List<SuspiciousInterval> intervals) {
+                    for (SuspiciousInterval interval : intervals) {
+                        addInterval(interval, parameters.maxGraphs);
+                    }
+                }
+
                 @Override
                 public void done() {
-                    if(intervalsRetrieved) {
-                        if(decreaseIntervals != null) {
-                            if (decreaseIntervals.size() > 0) {
-                                currentGraphs.add(new ChartPanel(graphExporter.getDecreaseChart(decreaseIntervals.get(0))));
-                                drawGraph();
-                            } else {
-                                displayLackOfGraphs();
-                            }
-                        } else {
-                            displayLackOfGraphs();
-                        }
+                    if (decreaseIntervals.isEmpty()) {
+                        displayLackOfGraphs();
                     }
                     unlockInterface();
                 }
@@ -402,6 +436,7 @@ public class GraphViewer {
         stopCalculationButton.addActionListener(e -> {
             if(intervalRetrievalWorker != null) {
                 if(!intervalRetrievalWorker.isDone()) {
+                    cancellationToken.cancel();
                     intervalRetrievalWorker.cancel(true);
                     logger.logMessage("Получение интервалов прервано пользователем.");
                 }
@@ -475,115 +510,129 @@ public class GraphViewer {
     }
 
     /**
-     * Получает интервалы с уменьшением, сгруппированные по всем сочетаниям значений из выбранных категорий, и
-     * отображает наиболее значимый из них на графике.
+     * Считывает значения всех элементов выбора параметров. Вызывается в потоке обработки событий до запуска получения
+     * интервалов, так как фоновый поток не должен обращаться к элементам интерфейса.
+     *
+     * @return выбранные параметры интервалов
      */
-    private void getIntervals() {
-        if (simpleMode) {
-            if (!getGraphsSimple()) {
-                return;
-            }
-        } else {
-            getGraphsRegular();
-        }
-        intervalFinder.removeIntersectingIntervals(decreaseIntervals);
-        if (decreaseIntervals.size() > maxGraphsSlider.getValue()) {
-            decreaseIntervals = decreaseIntervals.subList(0, maxGraphsSlider.getValue());
-        }
-        currentGraphs = new ArrayList<>();
-        currentInterval = 0;
-        unlockInterface();
-    }
-
-    private boolean getGraphsSimple() {
+    private GraphParameters readGraphParameters() {
         List<String> colNames = new ArrayList<>();
-        List<String[]> labels = new ArrayList<>();
-        String colName = (String) colNameBoxes[0].getSelectedItem();
-        String label = (String) labelBoxes[0].getSelectedItem();
-        if (!colName.equals(labelAbsent) && !label.equals(labelAbsent)) {
-            colNames.add(colName);
+        List<List<String>> labelOptions = new ArrayList<>();
+        for (int i = 0; i < colNameBoxes.length; i++) {
+            String colName = (String) colNameBoxes[i].getSelectedItem();
+            String label = (String) labelBoxes[i].getSelectedItem();
+            if (colName == null || label == null || colName.equals(labelAbsent) || label.equals(labelAbsent)) {
+                continue;
+            }
+            List<String> options = new ArrayList<>();
             if (!label.equals(labelAll)) {
-                String[] labelsComboNew = new String[1];
-                labelsComboNew[0] = "'" + label + "'";
-                labels.add(labelsComboNew);
+                options.add("'" + label + "'");
             } else {
-                for (int j = 2; j < labelBoxes[0].getItemCount(); j++) {
-                    String[] labelsComboNew = new String[1];
-                    labelsComboNew[0] = "'" + labelBoxes[0].getItemAt(j) + "'";
-                    labels.add(labelsComboNew);
+                for (int j = 2; j < labelBoxes[i].getItemCount(); j++) {
+                    options.add("'" + labelBoxes[i].getItemAt(j) + "'");
                 }
             }
+            colNames.add(colName);
+            labelOptions.add(options);
         }
-        for (int i = 1; i < colNameBoxes.length; i++) {
-            colName = (String) colNameBoxes[i].getSelectedItem();
-            label = (String) labelBoxes[i].getSelectedItem();
-            List<String[]> labelsNew = new ArrayList<>();
-            if (!colName.equals(labelAbsent) && !label.equals(labelAbsent)) {
-                colNames.add(colName);
-                if (!label.equals(labelAll)) {
-                    for (String[] labelsCombo : labels) {
-                        String[] labelsComboNew = Arrays.copyOf(labelsCombo, labelsCombo.length + 1);
-                        labelsComboNew[labelsComboNew.length - 1] = "'" + label + "'";
-                        labelsNew.add(labelsComboNew);
-                    }
-                } else {
-                    for (String[] labelsCombo : labels) {
-                        for (int j = 2; j < labelBoxes[i].getItemCount(); j++) {
-                            String[] labelsComboNew = Arrays.copyOf(labelsCombo, labelsCombo.length + 1);
-                            labelsComboNew[labelsComboNew.length - 1] = "'" + labelBoxes[i].getItemAt(j) + "'";
-                            labelsNew.add(labelsComboNew);
-                        }
-                    }
-                }
-                labels = labelsNew;
+        return new GraphParameters(tableName, simpleMode, graphTypeBox.getSelectedIndex(),
+                (String) valueBox.getSelectedItem(), colNames.toArray(new String[0]), labelOptions,
+                maxCategoriesSlider.getValue(), maxGraphsSlider.getValue(), getMinInterval(), getThreshold());
+    }
+
+    /**
+     * Получает интервалы с уменьшением, сгруппированные по всем сочетаниям значений из выбранных категорий, и передает
+     * каждый из них получателю, как только получен разрез интервала.
+     *
+     * @param parameters       - параметры интервалов, считанные из интерфейса
+     * @param intervalConsumer - получатель интервалов
+     */
+    private void getIntervals(GraphParameters parameters, Consumer<SuspiciousInterval> intervalConsumer) {
+        if (parameters.simpleMode) {
+            getGraphsSimple(parameters, intervalConsumer);
+        } else {
+            getGraphsRegular(parameters, intervalConsumer);
+        }
+    }
+
+    /**
+     * Добавляет полученный интервал в список отображаемых, если он не пересекается с уже добавленными и список еще не
+     * заполнен. Первый добавленный интервал сразу отображается на графике.
+     *
+     * @param interval  - интервал
+     * @param maxGraphs - наибольшее количество отображаемых интервалов
+     */
+    private void addInterval(SuspiciousInterval interval, int maxGraphs) {
+        if (decreaseIntervals.size() >= maxGraphs) {
+            return;
+        }
+        for (SuspiciousInterval addedInterval : decreaseIntervals) {
+            if (addedInterval.intersects(interval)) {
+                return;
             }
         }
-        if (colNames.size() <= 0) {
+        decreaseIntervals.add(interval);
+        if (decreaseIntervals.size() == 1) {
+            drawGraph();
+        } else {
+            updateGraphNavigation();
+            prefetchGraphs();
+        }
+    }
+
+    private boolean getGraphsSimple(GraphParameters parameters, Consumer<SuspiciousInterval> intervalConsumer) {
+        if (parameters.colNames.length <= 0) {
             return false;
         }
-        decreaseIntervals = new ArrayList<>();
-        String valueName = (String) valueBox.getSelectedItem();
-        for (String[] labelsCombo : labels) {
-            switch (graphTypeBox.getSelectedIndex()) {
-                case 0:
-                    logger.logMessage("Начинается получение графиков уменьшения...");
-                    decreaseIntervals.addAll(dbService.getDecreasesSimple(tableName, valueName, colNames.toArray(new String[0]),
-                            labelsCombo, approximationType, getMinInterval(), getThreshold(), maxGraphsSlider.getValue()));
-                    logger.logMessage("Закончено получение графиков уменьшения.");
-                    break;
-                case 1:
-                    logger.logMessage("Начинается получение графиков отсутствия роста...");
-                    decreaseIntervals.addAll(dbService.getConstantsSimple(tableName, valueName, colNames.toArray(new String[0]),
-                            labelsCombo, approximationType, getMinInterval(), getThreshold(), maxGraphsSlider.getValue()));
-                    logger.logMessage("Закончено получение графиков отсутствия роста.");
-                    break;
+        List<String[]> labels = new ArrayList<>();
+        labels.add(new String[0]);
+        for (List<String> options : parameters.labelOptions) {
+            List<String[]> labelsNew = new ArrayList<>();
+            for (String[] labelsCombo : labels) {
+                for (String option : options) {
+                    String[] labelsComboNew = Arrays.copyOf(labelsCombo, labelsCombo.length + 1);
+                    labelsComboNew[labelsComboNew.length - 1] = option;
+                    labelsNew.add(labelsComboNew);
+                }
             }
+            labels = labelsNew;
+        }
+        switch (parameters.graphType) {
+            case 0:
+                logger.logMessage("Начинается получение графиков уменьшения...");
+                dbService.getDecreasesSimple(parameters.tableName, parameters.valueName, parameters.colNames, labels,
+                        approximationType, parameters.minInterval, parameters.threshold, parameters.maxGraphs,
+                        intervalConsumer);
+                logger.logMessage("Закончено получение графиков уменьшения.");
+                break;
+            case 1:
+                logger.logMessage("Начинается получение графиков отсутствия роста...");
+                dbService.getConstantsSimple(parameters.tableName, parameters.valueName, parameters.colNames, labels,
+                        approximationType, parameters.minInterval, parameters.threshold, parameters.maxGraphs,
+                        intervalConsumer);
+                logger.logMessage("Закончено получение графиков отсутствия роста.");
+                break;
         }
         return true;
     }
 
-    private void getGraphsRegular() {
-        List<String> categoryNames = dbService.getCategoryNames(tableName);
-        List<String[]> categoryCombosFinal = new ArrayList<>();
-        CategoryCombination categoryCombos = new CategoryCombination(categoryNames);
-        for (int i = 1; i <= maxCategoriesSlider.getValue(); i++) {
-            categoryCombosFinal.addAll(categoryCombos.combos);
-            if (i < maxCategoriesSlider.getValue()) {
-                categoryCombos.addCategory(categoryNames);
-            }
-        }
-        String valueName = (String) valueBox.getSelectedItem();
-        switch (graphTypeBox.getSelectedIndex()) {
+    private void getGraphsRegular(GraphParameters parameters, Consumer<SuspiciousInterval> intervalConsumer) {
+        List<String> categoryNames = dbService.getCategoryNames(parameters.tableName);
+        List<String[]> categoryCombosFinal = CategoryCombination.streamUpTo(categoryNames, parameters.maxCategories)
+                .collect(Collectors.toList());
+        switch (parameters.graphType) {
             case 0:
                 logger.logMessage("Начинается получение графиков уменьшения...");
-                decreaseIntervals = dbService.getDecreases(tableName, valueName, categoryCombosFinal, approximationType,
-                        getMinInterval(), getThreshold(), maxGraphsSlider.getValue());
+                dbService.getDecreases(parameters.tableName, parameters.valueName, categoryCombosFinal,
+                        approximationType, parameters.minInterval, parameters.threshold, parameters.maxGraphs,
+                        intervalConsumer);
                 logger.logMessage("Закончено получение графиков уменьшения.");
                 break;
             case 1:
                 logger.logMessage("Начинается получение графиков отсутствия роста...");
-                decreaseIntervals = dbService.getConstants(tableName, valueName, categoryCombosFinal, approximationType,
-                        getMinInterval(), getThreshold(), maxGraphsSlider.getValue());
+                dbService.getConstants(parameters.tableName, parameters.valueName, categoryCombosFinal,
+                        approximationType, parameters.minInterval, parameters.threshold, parameters.maxGraphs,
+                        intervalConsumer);
                 logger.logMessage("Закончено получение графиков отсутствия роста.");
                 break;
         }
@@ -631,25 +680,77 @@ public class GraphViewer {
      * Отображает график под текущим выбранным номером.
      */
     private void drawGraph() {
-        ChartPanel chartPanel;
-        if (currentInterval >= currentGraphs.size()) {
-            currentGraphs.add(new ChartPanel(graphExporter.getDecreaseChart(decreaseIntervals.get(currentInterval))));
+        ChartPanel chartPanel = currentGraphs.get(currentInterval);
+        if (chartPanel == null) {
+            chartPanel = new ChartPanel(graphExporter.getDecreaseChart(decreaseIntervals.get(currentInterval)));
+            currentGraphs.put(currentInterval, chartPanel);
         }
-        chartPanel = currentGraphs.get(currentInterval);
+        prefetchGraphs();
         fillGraphSummary();
-        setSize(chartPanel, 600, 400);
+        setSize(chartPanel, graphWidth, graphHeight);
         graphPanel.removeAll();
         graphPanel.add(chartPanel);
         graphPanel.add(graphSummaryText);
         graphPanel.add(leftRightButtonsPanel);
-        graphLeftButton.setVisible(currentInterval > 0);
-        graphRightButton.setVisible(currentInterval < decreaseIntervals.size() - 1);
-        currentGraphNumber.setText((currentInterval + 1) + "/" + decreaseIntervals.size());
+        updateGraphNavigation();
         graphPanel.revalidate();
         mainFrame.revalidate();
         mainFrame.repaint();
     }
 
+    /**
+     * Обновляет номер текущего графика и видимость кнопок перехода к соседним графикам.
+     */
+    private void updateGraphNavigation() {
+        graphLeftButton.setVisible(currentInterval > 0);
+        graphRightButton.setVisible(currentInterval < decreaseIntervals.size() - 1);
+        currentGraphNumber.setText((currentInterval + 1) + "/" + decreaseIntervals.size());
+    }
+
+    /**
+     * Создает в фоновом потоке графики для нескольких интервалов до и после текущего, если их еще нет в кэше. Готовые
+     * графики добавляются в кэш в потоке интерфейса; графики, созданные для предыдущего списка интервалов,
+     * отбрасываются.
+     */
+    private void prefetchGraphs() {
+        final int generation = graphsGeneration;
+        for (int distance = 1; distance <= prefetchDistance; distance++) {
+            for (int graphId : new int[]{currentInterval + distance, currentInterval - distance}) {
+                if (graphId < 0 || graphId >= decreaseIntervals.size() || currentGraphs.containsKey(graphId) ||
+                        !prefetchedGraphs.add(graphId)) {
+                    continue;
+                }
+                final SuspiciousInterval interval = decreaseIntervals.get(graphId);
+                graphPrefetcher.execute(() -> {
+                    if (generation != graphsGeneration) {
+                        return;
+                    }
+                    JFreeChart chart = graphExporter.getDecreaseChart(interval);
+                    SwingUtilities.invokeLater(() -> {
+                        if (generation == graphsGeneration) {
+                            prefetchedGraphs.remove(graphId);
+                            currentGraphs.putIfAbsent(graphId, new ChartPanel(chart));
+                        }
+                    });
+                });
+            }
+        }
+    }
+
+    /**
+     * Создает кэш графиков, который хранит не более graphCacheSize последних использованных графиков.
+     *
+     * @return пустой кэш (ключи - номера интервалов)
+     */
+    private Map<Integer, ChartPanel> createGraphCache() {
+        return new LinkedHashMap<>(graphCacheSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ChartPanel> eldest) {
+                return size() > graphCacheSize;
+            }
+        };
+    }
+
     private void fillGraphSummary() {
         SuspiciousInterval interval = decreaseIntervals.get(currentInterval);
         StringBuilder graphSummary = new StringBuilder();
@@ -722,4 +823,37 @@ public class GraphViewer {
         component.setMaximumSize(new Dimension(x, y));
     }
 
+    /**
+     * Значения элементов выбора, считанные в потоке обработки событий перед получением интервалов.
+     */
+    private static class GraphParameters {
+
+        private final String tableName;
+        private final boolean simpleMode;
+        private final int graphType;
+        private final String valueName;
+        private final String[] colNames;
+        private final List<List<String>> labelOptions;
+        private final int maxCategories;
+        private final int maxGraphs;
+        private final double minInterval;
+        private final double threshold;
+
+        private GraphParameters(String tableName, boolean simpleMode, int graphType, String valueName,
+                                String[] colNames, List<List<String>> labelOptions, int maxCategories, int maxGraphs,
+                                double minInterval, double threshold) {
+            this.tableName = tableName;
+            this.simpleMode = simpleMode;
+            this.graphType = graphType;
+            this.valueName = valueName;
+            this.colNames = colNames;
+            this.labelOptions = labelOptions;
+            this.maxCategories = maxCategories;
+            this.maxGraphs = maxGraphs;
+            this.minInterval = minInterval;
+            this.threshold = threshold;
+        }
+
+    }
+
 }
@@ -2,6 +2,7 @@ package com.View;
 
 import com.Controler.DataController;
 import com.Model.DatabaseService;
+import com.SupportClasses.CancellationToken;
 import com.SupportClasses.Config;
 import com.SupportClasses.ConsoleLogger;
 import com.SupportClasses.Logger;
@@ -44,6 +45,7 @@ public class IntervalFindingView {
 
     private SwingWorker<Void, Void> csvParsingWorker;
     private SwingWorker<Void, Void> intervalFindingWorker;
+    private CancellationToken cancellationToken = CancellationToken.NONE;
 
     public IntervalFindingView(DataController dataController) {
         this.dataController = dataController;
@@ -195,16 +197,21 @@ public class IntervalFindingView {
         startCsvParsingButton.setAlignmentX(Component.CENTER_ALIGNMENT);
         startCsvParsingButton.addActionListener(e -> {
             lockInterface();
+            final CancellationToken token = startCancellableProcess();
             csvParsingWorker = new SwingWorker<>() {
                 @Override
                 protected Void doInBackground() {
-                    dataController.setTableName(csvFileBox.getText());
-                    File csvFile = new File(csvFileBox.getText() + ".csv");
-                    if (csvFile.exists() && csvFile.isFile()) {
-                        dataController.parseCsv();
-                    }
-                    if (csvFileBox.getText().equals(tableName)) {
-                        getFirstLastDate();
+                    try {
+                        dataController.setTableName(csvFileBox.getText());
+                        File csvFile = new File(csvFileBox.getText() + ".csv");
+                        if (csvFile.exists() && csvFile.isFile()) {
+                            dataController.parseCsv();
+                        }
+                        if (csvFileBox.getText().equals(tableName)) {
+                            getFirstLastDate();
+                        }
+                    } finally {
+                        dataController.resetCancellationToken(token);
                     }
                     return null;
                 }
@@ -223,6 +230,7 @@ public class IntervalFindingView {
         stopCsvParsingButton.addActionListener(e -> {
             if(csvParsingWorker != null) {
                 if(!csvParsingWorker.isDone()) {
+                    cancellationToken.cancel();
                     csvParsingWorker.cancel(true);
                     logger.logMessage("Загрузка данных прервана пользователем.");
                 }
@@ -241,16 +249,21 @@ public class IntervalFindingView {
         startIntervalRetrievalButton.setAlignmentX(Component.CENTER_ALIGNMENT);
         startIntervalRetrievalButton.addActionListener(e -> {
             lockInterface();
+            final CancellationToken token = startCancellableProcess();
             intervalFindingWorker = new SwingWorker<>() {
                 @Override
                 protected Void doInBackground() {
-                    dataController.setTableName(tableName);
-                    dataController.createDecreasesTable();
-                    dataController.exportDecreasesToDB(0.05, 0.5, Integer.MAX_VALUE,
-                            getMinDate(), getMaxDate());
-                    dataController.createConstantsTable();
-                    dataController.exportConstantsToDB(0.05, 1, Integer.MAX_VALUE,
-                            getMinDate(), getMaxDate());
+                    try {
+                        dataController.setTableName(tableName);
+                        dataController.createDecreasesTable();
+                        dataController.exportDecreasesToDB(0.05, 0.5, Integer.MAX_VALUE,
+                                getMinDate(), getMaxDate());
+                        dataController.createConstantsTable();
+                        dataController.exportConstantsToDB(0.05, 1, Integer.MAX_VALUE,
+                                getMinDate(), getMaxDate());
+                    } finally {
+                        dataController.resetCancellationToken(token);
+                    }
                     return null;
                 }
 
@@ -268,6 +281,7 @@ public class IntervalFindingView {
         stopIntervalRetrievalButton.addActionListener(e -> {
             if(intervalFindingWorker != null) {
                 if(!intervalFindingWorker.isDone()) {
+                    cancellationToken.cancel();
                     intervalFindingWorker.cancel(true);
                     logger.logMessage("Поиск интервалов прерван пользователем.");
                 }
@@ -282,6 +296,18 @@ public class IntervalFindingView {
         intervalsFindingPanel.add(intervalRetrievalButtonPanel, constraints);
     }
 
+    /**
+     * Создает признак отмены для нового процесса и передает его контроллеру; кнопки "Прервать процесс" отменяют его,
+     * чтобы выполняющиеся запросы прерывались сразу, а не по завершении.
+     *
+     * @return признак отмены процесса
+     */
+    private CancellationToken startCancellableProcess() {
+        cancellationToken = new CancellationToken();
+        dataController.setCancellationToken(cancellationToken);
+        return cancellationToken;
+    }
+
     private void lockInterface() {
         csvFileBox.setEnabled(false);
         tableBox.setEnabled(false);
@@ -0,0 +1,122 @@
+package com.View;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Класс, который кодирует изображения в формат PNG (8 бит на канал, RGB) и записывает их в канал. Буферы и
+ * упаковщик переиспользуются между изображениями, поэтому один объект нельзя использовать из нескольких потоков
+ * одновременно.
+ */
+public class PngEncoder {
+
+    private final byte[] signature = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private final int bufferSize = 64 * 1024;
+
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer outputBuffer = ByteBuffer.allocate(bufferSize);
+    private final byte[] deflateBuffer = new byte[bufferSize / 2];
+    private byte[] row = new byte[0], previousRow = new byte[0];
+
+    /**
+     * @param compressionLevel - уровень сжатия от 0 (без сжатия, быстрее всего) до 9 (наибольшее сжатие)
+     */
+    public PngEncoder(int compressionLevel) {
+        deflater = new Deflater(Math.max(Deflater.NO_COMPRESSION, Math.min(compressionLevel, Deflater.BEST_COMPRESSION)));
+    }
+
+    /**
+     * Кодирует изображение и записывает его в канал. Строки изображения кодируются с фильтром Up (разность с
+     * предыдущей строкой), который хорошо сжимает графики с большими однотонными областями.
+     *
+     * @param image   - изображение типа TYPE_INT_RGB или TYPE_INT_ARGB (альфа-канал не сохраняется)
+     * @param channel - канал, в который записывается изображение (не закрывается)
+     * @throws IOException при ошибке записи
+     */
+    public void write(BufferedImage image, WritableByteChannel channel) throws IOException {
+        final int width = image.getWidth(), height = image.getHeight();
+        outputBuffer.clear();
+        outputBuffer.put(signature);
+
+        ByteBuffer header = ByteBuffer.allocate(13);
+        header.putInt(width).putInt(height);
+        header.put((byte) 8).put((byte) 2).put((byte) 0).put((byte) 0).put((byte) 0);
+        writeChunk(channel, "IHDR", header.array(), header.position());
+
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int rowLength = width * 3 + 1;
+        if (row.length != rowLength) {
+            row = new byte[rowLength];
+            previousRow = new byte[rowLength];
+        } else {
+            Arrays.fill(previousRow, (byte) 0);
+        }
+        deflater.reset();
+        for (int y = 0; y < height; y++) {
+            row[0] = 2;
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int pixel = pixels[offset + x];
+                int pos = x * 3 + 1;
+                byte r = (byte) (pixel >> 16), g = (byte) (pixel >> 8), b = (byte) pixel;
+                row[pos] = (byte) (r - previousRow[pos]);
+                row[pos + 1] = (byte) (g - previousRow[pos + 1]);
+                row[pos + 2] = (byte) (b - previousRow[pos + 2]);
+                previousRow[pos] = r;
+                previousRow[pos + 1] = g;
+                previousRow[pos + 2] = b;
+            }
+            deflater.setInput(row);
+            while (!deflater.needsInput()) {
+                writeDeflated(channel);
+            }
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            writeDeflated(channel);
+        }
+        writeChunk(channel, "IEND", new byte[0], 0);
+        flush(channel);
+    }
+
+    /**
+     * Записывает очередную порцию сжатых данных в виде отдельного фрагмента IDAT.
+     */
+    private void writeDeflated(WritableByteChannel channel) throws IOException {
+        int length = deflater.deflate(deflateBuffer);
+        if (length > 0) {
+            writeChunk(channel, "IDAT", deflateBuffer, length);
+        }
+    }
+
+    private void writeChunk(WritableByteChannel channel, String type, byte[] data, int length) throws IOException {
+        if (outputBuffer.remaining() < length + 12) {
+            flush(channel);
+        }
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        crc.reset();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        outputBuffer.putInt(length);
+        outputBuffer.put(typeBytes);
+        outputBuffer.put(data, 0, length);
+        outputBuffer.putInt((int) crc.getValue());
+    }
+
+    private void flush(WritableByteChannel channel) throws IOException {
+        outputBuffer.flip();
+        while (outputBuffer.hasRemaining()) {
+            channel.write(outputBuffer);
+        }
+        outputBuffer.clear();
+    }
+
+}
@@ -0,0 +1,271 @@
+package com.View;
+
+import com.DataObjects.Slice;
+import com.DataObjects.SuspiciousInterval;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Класс, который рисует графики разрезов и интервалов напрямую на изображении, без создания наборов данных
+ * JFreeChart. Используется при массовом экспорте графиков; внешний вид повторяет графики GraphExporter (те же цвета
+ * рядов и линий приближения), но без интерактивных возможностей.
+ */
+public class SliceImageRenderer {
+
+    private final int width, height;
+    private final int leftMargin = 80, rightMargin = 50, topMargin = 40, bottomMargin = 60;
+    private final int valueTicks = 6, dateTicks = 5;
+
+    private final Color valueColor = new Color(0, 0, 192);
+    private final Color intervalColor = new Color(255, 0, 0);
+    private final Color approximationColor = new Color(128, 255, 192);
+    private final Color intervalApproximationColor = new Color(64, 192, 192);
+    private final Color partialApproximationColor = new Color(32, 192, 64);
+    private final Color gridColor = new Color(192, 192, 192);
+
+    /**
+     * @param width  - ширина изображения в пикселях
+     * @param height - высота изображения в пикселях
+     */
+    public SliceImageRenderer(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Рисует график разреза с линией приближения и линиями на sigma выше и ниже нее.
+     *
+     * @param slice - разрез данных (не менее 2 точек)
+     * @param title - заголовок графика
+     * @return изображение графика
+     */
+    public BufferedImage renderSlice(Slice slice, String title) {
+        return renderSlice(slice, title, new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+    }
+
+    /**
+     * Рисует график разреза с линией приближения на существующем изображении (его содержимое полностью заменяется).
+     *
+     * @param slice - разрез данных (не менее 2 точек)
+     * @param title - заголовок графика
+     * @param image - изображение размером с график
+     * @return то же изображение
+     */
+    public BufferedImage renderSlice(Slice slice, String title, BufferedImage image) {
+        final int last = slice.size() - 1;
+        int[] indices = Downsampler.getLargestTriangleIndices(slice, 0, last, getPlotWidth());
+        int[] approximationIndices = Downsampler.getUniformIndices(0, last, getPlotWidth());
+        IntToDoubleFunction values = i -> slice.getValue(i);
+        IntToDoubleFunction approximationLower = i -> slice.getApproximate(i) - slice.getSigma();
+        IntToDoubleFunction approximationUpper = i -> slice.getApproximate(i) + slice.getSigma();
+
+        double[] valueBounds = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        extendBounds(valueBounds, indices, values);
+        extendBounds(valueBounds, approximationIndices, approximationLower);
+        extendBounds(valueBounds, approximationIndices, approximationUpper);
+
+        Graphics2D graphics = image.createGraphics();
+        drawFrame(graphics, slice, title, valueBounds);
+        drawSeries(graphics, slice, valueBounds, approximationIndices, approximationLower, approximationColor);
+        drawSeries(graphics, slice, valueBounds, approximationIndices, approximationUpper, approximationColor);
+        drawSeries(graphics, slice, valueBounds, indices, values, valueColor);
+        drawLegend(graphics, new String[]{"Значение", "Приближение"}, new Color[]{valueColor, approximationColor});
+        graphics.dispose();
+        return image;
+    }
+
+    /**
+     * Рисует график разреза, на котором расположен интервал (сам интервал выделяется цветом), с линиями общего и
+     * частичного приближения.
+     *
+     * @param interval - интервал (разрез интервала содержит не менее 2 точек)
+     * @param title    - заголовок графика
+     * @return изображение графика
+     */
+    public BufferedImage renderInterval(SuspiciousInterval interval, String title) {
+        return renderInterval(interval, title, new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+    }
+
+    /**
+     * Рисует график разреза, на котором расположен интервал, на существующем изображении (его содержимое полностью
+     * заменяется).
+     *
+     * @param interval - интервал (разрез интервала содержит не менее 2 точек)
+     * @param title    - заголовок графика
+     * @param image    - изображение размером с график
+     * @return то же изображение
+     */
+    public BufferedImage renderInterval(SuspiciousInterval interval, String title, BufferedImage image) {
+        Slice slice = interval.slice;
+        final int last = slice.size() - 1;
+        int[] firstIndices = Downsampler.getLargestTriangleIndices(slice, 0, interval.pos1, getSegmentWidth(slice, 0, interval.pos1));
+        int[] intervalIndices = Downsampler.getLargestTriangleIndices(slice, interval.pos1, interval.pos2,
+                getSegmentWidth(slice, interval.pos1, interval.pos2));
+        int[] lastIndices = Downsampler.getLargestTriangleIndices(slice, interval.pos2, last, getSegmentWidth(slice, interval.pos2, last));
+        int[] approximationIndices = Downsampler.getUniformIndices(0, last, getPlotWidth());
+        IntToDoubleFunction values = i -> slice.getValue(i);
+        IntToDoubleFunction approximationLower = i -> slice.getApproximate(i) - slice.getSigma();
+        IntToDoubleFunction approximationUpper = i -> slice.getApproximate(i) + slice.getSigma();
+        IntToDoubleFunction partialLower = i -> interval.getPartialApproximate(i) - interval.getPartialSigma();
+        IntToDoubleFunction partialUpper = i -> interval.getPartialApproximate(i) + interval.getPartialSigma();
+
+        double[] valueBounds = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        extendBounds(valueBounds, firstIndices, values);
+        extendBounds(valueBounds, intervalIndices, values);
+        extendBounds(valueBounds, lastIndices, values);
+        extendBounds(valueBounds, approximationIndices, approximationLower);
+        extendBounds(valueBounds, approximationIndices, approximationUpper);
+        valueBounds[1] = valueBounds[0] + slice.valueRange * 1.5;
+
+        Graphics2D graphics = image.createGraphics();
+        drawFrame(graphics, slice, title, valueBounds);
+        graphics.setClip(leftMargin, topMargin, getPlotWidth() + 1, getPlotHeight() + 1);
+        drawSeries(graphics, slice, valueBounds, approximationIndices, approximationLower, intervalApproximationColor);
+        drawSeries(graphics, slice, valueBounds, approximationIndices, approximationUpper, intervalApproximationColor);
+        if (interval.hasPartialApproximation()) {
+            drawSeries(graphics, slice, valueBounds, approximationIndices, partialLower, partialApproximationColor);
+            drawSeries(graphics, slice, valueBounds, approximationIndices, partialUpper, partialApproximationColor);
+        }
+        drawSeries(graphics, slice, valueBounds, firstIndices, values, valueColor);
+        drawSeries(graphics, slice, valueBounds, lastIndices, values, valueColor);
+        drawSeries(graphics, slice, valueBounds, intervalIndices, values, intervalColor);
+        graphics.setClip(null);
+        if (interval.hasPartialApproximation()) {
+            drawLegend(graphics, new String[]{"Значение", "Интервал с уменьшением", "Приближение", "Частичное приближение"},
+                    new Color[]{valueColor, intervalColor, intervalApproximationColor, partialApproximationColor});
+        } else {
+            drawLegend(graphics, new String[]{"Значение", "Интервал с уменьшением", "Приближение"},
+                    new Color[]{valueColor, intervalColor, intervalApproximationColor});
+        }
+        graphics.dispose();
+        return image;
+    }
+
+    /**
+     * Заливает фон, рисует заголовок, оси, сетку и подписи делений.
+     *
+     * @param graphics    - контекст рисования
+     * @param slice       - разрез данных
+     * @param title       - заголовок графика
+     * @param valueBounds - наименьшее и наибольшее значение на графике
+     */
+    private void drawFrame(Graphics2D graphics, Slice slice, String title, double[] valueBounds) {
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+
+        graphics.setColor(Color.BLACK);
+        graphics.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 16));
+        FontMetrics titleMetrics = graphics.getFontMetrics();
+        graphics.drawString(title, (width - titleMetrics.stringWidth(title)) / 2, topMargin - 14);
+
+        graphics.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 10));
+        FontMetrics metrics = graphics.getFontMetrics();
+        for (int i = 0; i < valueTicks; i++) {
+            double value = valueBounds[0] + (valueBounds[1] - valueBounds[0]) * i / (valueTicks - 1);
+            int y = getY(value, valueBounds);
+            graphics.setColor(gridColor);
+            graphics.drawLine(leftMargin, y, leftMargin + getPlotWidth(), y);
+            graphics.setColor(Color.BLACK);
+            String label = String.format("%,.0f", value);
+            graphics.drawString(label, leftMargin - 6 - metrics.stringWidth(label), y + metrics.getAscent() / 2);
+        }
+        SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yy HH:mm");
+        final long firstTime = slice.getTime(0);
+        for (int i = 0; i < dateTicks; i++) {
+            long time = firstTime + slice.dateRange * i / (dateTicks - 1);
+            int x = getX(time, slice);
+            graphics.setColor(gridColor);
+            graphics.drawLine(x, topMargin, x, topMargin + getPlotHeight());
+            graphics.setColor(Color.BLACK);
+            String label = dateFormat.format(new Date(time));
+            graphics.drawString(label, x - metrics.stringWidth(label) / 2, topMargin + getPlotHeight() + metrics.getHeight() + 2);
+        }
+        graphics.drawRect(leftMargin, topMargin, getPlotWidth(), getPlotHeight());
+        graphics.drawString("Date", leftMargin + (getPlotWidth() - metrics.stringWidth("Date")) / 2,
+                topMargin + getPlotHeight() + metrics.getHeight() * 2 + 4);
+    }
+
+    /**
+     * Рисует ломаную линию по выбранным точкам разреза.
+     *
+     * @param graphics    - контекст рисования
+     * @param slice       - разрез данных
+     * @param valueBounds - наименьшее и наибольшее значение на графике
+     * @param indices     - номера точек разреза
+     * @param values      - значения линии в точках разреза
+     * @param color       - цвет линии
+     */
+    private void drawSeries(Graphics2D graphics, Slice slice, double[] valueBounds, int[] indices,
+                            IntToDoubleFunction values, Color color) {
+        int[] xPoints = new int[indices.length];
+        int[] yPoints = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            xPoints[i] = getX(slice.getTime(indices[i]), slice);
+            yPoints[i] = getY(values.applyAsDouble(indices[i]), valueBounds);
+        }
+        graphics.setColor(color);
+        graphics.drawPolyline(xPoints, yPoints, indices.length);
+    }
+
+    private void drawLegend(Graphics2D graphics, String[] names, Color[] colors) {
+        graphics.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 11));
+        FontMetrics metrics = graphics.getFontMetrics();
+        int legendWidth = 0;
+        for (String name : names) {
+            legendWidth += metrics.stringWidth(name) + 24;
+        }
+        int x = (width - legendWidth) / 2;
+        int y = height - 10;
+        for (int i = 0; i < names.length; i++) {
+            graphics.setColor(colors[i]);
+            graphics.fillRect(x, y - metrics.getAscent() + 2, 10, 8);
+            graphics.setColor(Color.BLACK);
+            graphics.drawString(names[i], x + 14, y);
+            x += metrics.stringWidth(names[i]) + 24;
+        }
+    }
+
+    private void extendBounds(double[] valueBounds, int[] indices, IntToDoubleFunction values) {
+        for (int i : indices) {
+            double value = values.applyAsDouble(i);
+            valueBounds[0] = Math.min(valueBounds[0], value);
+            valueBounds[1] = Math.max(valueBounds[1], value);
+        }
+    }
+
+    private int getX(long time, Slice slice) {
+        if (slice.dateRange <= 0) {
+            return leftMargin + getPlotWidth() / 2;
+        }
+        return leftMargin + (int) ((double) (time - slice.getTime(0)) * getPlotWidth() / slice.dateRange);
+    }
+
+    private int getY(double value, double[] valueBounds) {
+        if (valueBounds[1] <= valueBounds[0]) {
+            return topMargin + getPlotHeight() / 2;
+        }
+        return topMargin + getPlotHeight() - (int) ((value - valueBounds[0]) * getPlotHeight() / (valueBounds[1] - valueBounds[0]));
+    }
+
+    private int getSegmentWidth(Slice slice, int from, int to) {
+        if (slice.dateRange <= 0) {
+            return getPlotWidth();
+        }
+        return Math.max(3, (int) (getPlotWidth() * slice.getDateDistance(from, to) / slice.dateRange));
+    }
+
+    private int getPlotWidth() {
+        return width - leftMargin - rightMargin;
+    }
+
+    private int getPlotHeight() {
+        return height - topMargin - bottomMargin;
+    }
+
+}
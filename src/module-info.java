@@ -2,4 +2,6 @@ module DataEvaluatorJava {
     requires java.sql;
     requires org.jfree.chart;
     requires java.desktop;
+    requires jdk.jfr;
+    requires java.management;
 }
\ No newline at end of file
@@ -0,0 +1,91 @@
+package com.Controler;
+
+import com.SupportClasses.ConsoleLogger;
+import com.SupportClasses.Logger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class JobRunnerTest {
+
+    private Logger logger;
+
+    @BeforeAll
+    void setUp() {
+        logger = new ConsoleLogger();
+        logger.logMessage("Начинается тест выполнения задач...");
+    }
+
+    @AfterAll
+    void tearDown() {
+        logger.logMessage("Закончился тест выполнения задач.");
+    }
+
+    @Test
+    void dependencies() {
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        Runnable concurrentJob = () -> {
+            bothStarted.countDown();
+            try {
+                assertTrue(bothStarted.await(5, TimeUnit.SECONDS), "независимые задачи не выполнялись одновременно");
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        };
+        JobRunner jobRunner = new JobRunner();
+        jobRunner.addJob("parse", () -> order.add("parse"));
+        jobRunner.addJob("decreases", () -> {
+            concurrentJob.run();
+            order.add("decreases");
+        }, "parse");
+        jobRunner.addJob("constants", () -> {
+            concurrentJob.run();
+            order.add("constants");
+        }, "parse");
+        jobRunner.addJob("report", () -> order.add("report"), "decreases", "constants");
+
+        assertEquals(Collections.emptyList(), jobRunner.run(2));
+        assertEquals(4, order.size());
+        assertEquals("parse", order.get(0));
+        assertEquals("report", order.get(3));
+    }
+
+    @Test
+    void failure() {
+        List<String> order = new CopyOnWriteArrayList<>();
+        JobRunner jobRunner = new JobRunner();
+        jobRunner.addJob("parse", () -> {
+            throw new IllegalStateException("нет файла");
+        });
+        jobRunner.addJob("decreases", () -> order.add("decreases"), "parse");
+        jobRunner.addJob("graphs", () -> order.add("graphs"));
+
+        assertEquals(Arrays.asList("parse", "decreases"), jobRunner.run(1));
+        assertEquals(Collections.singletonList("graphs"), order);
+    }
+
+    @Test
+    void invalidJobs() {
+        JobRunner jobRunner = new JobRunner();
+        jobRunner.addJob("parse", () -> {
+        });
+        assertTrue(jobRunner.hasJob("parse"));
+        assertThrows(IllegalArgumentException.class, () -> jobRunner.addJob("parse", () -> {
+        }));
+        assertThrows(IllegalArgumentException.class, () -> jobRunner.addJob("decreases", () -> {
+        }, "constants"));
+    }
+
+}
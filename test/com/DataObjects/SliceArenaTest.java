@@ -0,0 +1,94 @@
+package com.DataObjects;
+
+import com.DataObjects.Approximations.ApproximationType;
+import com.SupportClasses.ConsoleLogger;
+import com.SupportClasses.Logger;
+import org.junit.jupiter.api.*;
+
+import java.util.Date;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SliceArenaTest {
+
+    private final String tableName = "data_test";
+    private final String valueName = "value_1";
+    private final String[] colNames = {"category_1"};
+    private final String[] labels = {"'type_1'"};
+    private final int chunkBytes = 4096;
+    private Slice slice;
+    private Logger logger;
+
+    @BeforeAll
+    void setUp() {
+        logger = new ConsoleLogger();
+        logger.logMessage("Начинается тест области памяти разрезов...");
+        Random random = new Random(23);
+        SlicePoint[] points = new SlicePoint[1000];
+        long time = 100000;
+        for (int i = 0; i < points.length; i++) {
+            if (random.nextInt(5) > 0) {
+                time += 1 + random.nextInt(60000);
+            }
+            points[i] = new SlicePoint(random.nextInt(1000) - 300, 1 + random.nextInt(3), new Date(time));
+        }
+        slice = new Slice(tableName, valueName, colNames, labels, points, ApproximationType.LINEAR);
+    }
+
+    @AfterAll
+    void tearDown() {
+        logger.logMessage("Закончился тест области памяти разрезов.");
+    }
+
+    @Test
+    void accumulationInArena() {
+        Slice expected = slice.getAccumulation();
+        try (SliceArena arena = SliceArena.open(chunkBytes)) {
+            Slice actual = slice.getAccumulation();
+            assertEquals(expected, actual);
+            assertEquals(expected.size() * 24L, arena.getUsedBytes());
+            assertEquals(expected.valueRange, actual.valueRange);
+            assertEquals(expected.dateRange, actual.dateRange);
+            assertEquals(expected.totalAmount, actual.totalAmount);
+            assertEquals(expected.getSigma(), actual.getSigma(), 1e-6);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.getPoint(i), actual.getPoint(i));
+                assertEquals(expected.getApproximate(i), actual.getApproximate(i));
+            }
+        }
+    }
+
+    @Test
+    void resetReleasesSlices() {
+        try (SliceArena arena = SliceArena.open(chunkBytes)) {
+            Slice first = slice.getAccumulation();
+            long reservedBytes = arena.getReservedBytes();
+            arena.reset();
+            assertThrows(IllegalStateException.class, () -> first.getValue(0));
+            Slice second = slice.getAccumulation();
+            assertEquals(reservedBytes, arena.getReservedBytes());
+            assertEquals(first.size(), second.size());
+            arena.close();
+            assertThrows(IllegalStateException.class, () -> second.getValue(0));
+        }
+        assertNull(SliceArena.current());
+        Slice heapSlice = slice.getAccumulation();
+        assertEquals(heapSlice.getValue(0), slice.getValue(0));
+    }
+
+    @Test
+    void nestedArenas() {
+        try (SliceArena outer = SliceArena.open(chunkBytes)) {
+            try (SliceArena inner = SliceArena.open(chunkBytes)) {
+                assertEquals(inner, SliceArena.current());
+                slice.getAccumulation();
+                assertEquals(0, outer.getUsedBytes());
+            }
+            assertEquals(outer, SliceArena.current());
+        }
+        assertNull(SliceArena.current());
+    }
+
+}
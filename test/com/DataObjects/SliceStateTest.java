@@ -0,0 +1,141 @@
+package com.DataObjects;
+
+import com.DataObjects.Approximations.ApproximationType;
+import com.SupportClasses.ConsoleLogger;
+import com.SupportClasses.Logger;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SliceStateTest {
+
+    private final String tableName = "data_test";
+    private final String valueName = "value_1";
+    private final String[] colNames = {"category_1"};
+    private final String[] labels = {"'type_1'"};
+    private SlicePoint[] points;
+    private Logger logger;
+
+    @BeforeAll
+    void setUp() {
+        logger = new ConsoleLogger();
+        logger.logMessage("Начинается тест состояния среза...");
+        Random random = new Random(17);
+        points = new SlicePoint[1000];
+        long time = 100000;
+        for (int i = 0; i < points.length; i++) {
+            if (random.nextInt(10) > 0) {
+                time += 1 + random.nextInt(60000);
+            }
+            points[i] = new SlicePoint(random.nextInt(1000) - 300, 1, new Date(time));
+        }
+    }
+
+    @AfterAll
+    void tearDown() {
+        logger.logMessage("Закончился тест состояния среза.");
+    }
+
+    @Test
+    void appendLinear() {
+        Slice full = new Slice(tableName, valueName, colNames, labels, points, ApproximationType.LINEAR).getAccumulation();
+        long watermark = points[700].date.getTime();
+        SliceState state = SliceState.fromSlice(new Slice(tableName, valueName, colNames, labels,
+                getPoints(Long.MIN_VALUE, watermark), ApproximationType.LINEAR).getAccumulation());
+        assertNotNull(state);
+        Date lookbackStart = state.getLookbackStart(0.25);
+
+        Slice fragment = state.append(tableName, getPoints(lookbackStart.getTime(), Long.MAX_VALUE), ApproximationType.LINEAR);
+        assertNotNull(fragment);
+        assertEquals(watermark, state.getTailStartTime());
+        assertEquals(full.getLastPoint().date.getTime(), state.getLastTime());
+        assertEquals(full.size(), state.getPointCount());
+        assertEquals(full.size(), fragment.firstPosition + fragment.size());
+        assertEquals(full.valueRange, fragment.valueRange);
+        assertEquals(full.dateRange, fragment.dateRange);
+        assertEquals(full.getSigma(), fragment.getSigma(), 1);
+        assertEquals(full.getApproximationAngle(), fragment.getApproximationAngle(), Math.abs(full.getApproximationAngle()) * 1e-6);
+        for (int i = 0; i < fragment.size(); i++) {
+            assertEquals(full.getPoint(fragment.firstPosition + i), fragment.getPoint(i));
+            assertEquals(full.getApproximate(fragment.firstPosition + i), fragment.getApproximate(i), 1);
+        }
+
+        assertNull(state.append(tableName, getPoints(lookbackStart.getTime(), Long.MAX_VALUE), ApproximationType.LINEAR));
+    }
+
+    @Test
+    void savedState() {
+        Slice full = new Slice(tableName, valueName, colNames, labels, points, ApproximationType.LINEAR).getAccumulation();
+        SliceState state = SliceState.fromSlice(full);
+        assertNotNull(state);
+        SliceState savedState = new SliceState(valueName, colNames, labels, state.firstTime, state.getLastTime(),
+                state.getProcessedTime(), state.getLastValue(), state.getLastTimeSum(), state.getPointCount(),
+                state.getPreviousMinValue(), state.getPreviousMaxValue(), state.getSums());
+        assertEquals(state.getKey(), savedState.getKey());
+        assertEquals(full.valueRange, savedState.getMaxValue() - savedState.getMinValue());
+        assertEquals(full.getLastPoint().value - full.getPoint(full.size() - 2).value, savedState.getLastTimeSum());
+        assertEquals(state.getLastTime(), savedState.getTailStartTime());
+        assertTrue(Arrays.equals(state.getSums(), savedState.getSums()));
+        assertNull(SliceState.fromSlice(new Slice(tableName, valueName, colNames, labels)));
+    }
+
+    @Test
+    void appendSplitTimestamp() {
+        Slice full = new Slice(tableName, valueName, colNames, labels, points, ApproximationType.LINEAR).getAccumulation();
+        int splitPosition = 700;
+        while (points[splitPosition - 1].date.getTime() != points[splitPosition].date.getTime()) {
+            splitPosition++;
+        }
+        long splitTime = points[splitPosition].date.getTime();
+        SliceState state = SliceState.fromSlice(new Slice(tableName, valueName, colNames, labels,
+                Arrays.copyOfRange(points, 0, splitPosition), ApproximationType.LINEAR).getAccumulation());
+        assertNotNull(state);
+        assertEquals(splitTime, state.getLastTime());
+
+        Date lookbackStart = state.getLookbackStart(0.25);
+        SlicePoint[] fragmentPoints = getPoints(lookbackStart.getTime(), Long.MAX_VALUE);
+        Slice fragment = state.append(tableName, fragmentPoints, ApproximationType.LINEAR);
+        assertNotNull(fragment);
+        assertEquals(splitTime - 1, state.getTailStartTime());
+        assertEquals(full.size(), state.getPointCount());
+        assertEquals(full.getLastPoint().value, state.getLastValue());
+        assertEquals(full.size(), fragment.firstPosition + fragment.size());
+        assertEquals(full.valueRange, fragment.valueRange);
+        assertEquals(full.getSigma(), fragment.getSigma(), 1);
+        assertEquals(full.getApproximationAngle(), fragment.getApproximationAngle(), Math.abs(full.getApproximationAngle()) * 1e-6);
+        for (int i = 0; i < fragment.size(); i++) {
+            assertEquals(full.getPoint(fragment.firstPosition + i), fragment.getPoint(i));
+        }
+
+        SliceState lastTimeState = SliceState.fromSlice(new Slice(tableName, valueName, colNames, labels,
+                Arrays.copyOfRange(points, 0, splitPosition), ApproximationType.LINEAR).getAccumulation());
+        SlicePoint[] lastTimePoints = getPoints(lookbackStart.getTime(), splitTime);
+        Slice lastTimeFragment = lastTimeState.append(tableName, lastTimePoints, ApproximationType.LINEAR);
+        assertNotNull(lastTimeFragment);
+        int lastTimePosition = 0;
+        while (full.getTime(lastTimePosition) != splitTime) {
+            lastTimePosition++;
+        }
+        assertEquals(full.getPoint(lastTimePosition), lastTimeFragment.getLastPoint());
+        assertEquals(lastTimePosition + 1, lastTimeState.getPointCount());
+        assertNull(lastTimeState.append(tableName, lastTimePoints, ApproximationType.LINEAR));
+    }
+
+    private SlicePoint[] getPoints(long minTime, long maxTime) {
+        List<SlicePoint> res = new ArrayList<>();
+        for (SlicePoint point : points) {
+            if (point.date.getTime() >= minTime && point.date.getTime() <= maxTime) {
+                res.add(point);
+            }
+        }
+        return res.toArray(new SlicePoint[0]);
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.Model;
+
+import com.SupportClasses.ConsoleLogger;
+import com.SupportClasses.Logger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class CategoryCombinationTest {
+
+    private List<String> categoryNames;
+    private Logger logger;
+
+    @BeforeAll
+    void setUp() {
+        logger = new ConsoleLogger();
+        logger.logMessage("Начинается тест сочетаний категорий...");
+        categoryNames = Arrays.asList("category_1", "category_2", "category_3", "category_4", "category_5", "category_6");
+    }
+
+    @AfterAll
+    void tearDown() {
+        logger.logMessage("Закончился тест сочетаний категорий.");
+    }
+
+    @Test
+    void streamMatchesAddCategory() {
+        CategoryCombination categoryCombos = new CategoryCombination(categoryNames);
+        for (int size = 1; size <= 4; size++) {
+            List<String[]> streamed = CategoryCombination.stream(categoryNames, size).collect(Collectors.toList());
+            assertArrayEquals(categoryCombos.combos.toArray(new String[0][]), streamed.toArray(new String[0][]));
+            categoryCombos.addCategory(categoryNames);
+        }
+    }
+
+    @Test
+    void streamUpTo() {
+        assertEquals(6 + 15 + 20, CategoryCombination.streamUpTo(categoryNames, 3).count());
+        assertEquals(0, CategoryCombination.stream(categoryNames, 7).count());
+    }
+
+    @Test
+    void binomial() {
+        assertEquals(20, CategoryCombination.binomial(6, 3));
+        assertEquals(1, CategoryCombination.binomial(6, 0));
+        assertEquals(155117520, CategoryCombination.binomial(30, 15));
+    }
+
+    @Test
+    void trySplit() {
+        Spliterator<String[]> first = CategoryCombination.stream(categoryNames, 3).spliterator();
+        Spliterator<String[]> second = first.trySplit();
+        assertNotNull(second);
+        assertEquals(20, first.estimateSize() + second.estimateSize());
+        List<String[]> combos = new ArrayList<>();
+        second.forEachRemaining(combos::add);
+        first.forEachRemaining(combos::add);
+        List<String[]> expected = CategoryCombination.stream(categoryNames, 3).collect(Collectors.toList());
+        assertArrayEquals(expected.toArray(new String[0][]), combos.toArray(new String[0][]));
+        assertEquals(20, CategoryCombination.stream(categoryNames, 3).parallel().count());
+    }
+
+}
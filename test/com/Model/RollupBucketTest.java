@@ -0,0 +1,58 @@
+package com.Model;
+
+import com.SupportClasses.ConsoleLogger;
+import com.SupportClasses.Logger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class RollupBucketTest {
+
+    private final long minute = 60 * 1000L, hour = 60 * minute, day = 24 * hour;
+    private final int targetPoints = 600;
+    private List<String> buckets;
+    private Logger logger;
+
+    @BeforeAll
+    void setUp() {
+        logger = new ConsoleLogger();
+        logger.logMessage("Начинается тест выбора таблицы агрегатов...");
+        buckets = Arrays.asList("day", "hour", "minute");
+    }
+
+    @AfterAll
+    void tearDown() {
+        logger.logMessage("Закончился тест выбора таблицы агрегатов.");
+    }
+
+    @Test
+    void largestSufficientBucket() {
+        assertEquals("day", DatabaseService.chooseRollupBucket(buckets, 700 * day, targetPoints));
+        assertEquals("hour", DatabaseService.chooseRollupBucket(buckets, 100 * day, targetPoints));
+        assertEquals("minute", DatabaseService.chooseRollupBucket(buckets, 11 * hour, targetPoints));
+        assertEquals("day", DatabaseService.chooseRollupBucket(buckets, targetPoints * day, targetPoints));
+    }
+
+    @Test
+    void sourceTableForShortRange() {
+        assertNull(DatabaseService.chooseRollupBucket(buckets, 9 * hour, targetPoints));
+        assertNull(DatabaseService.chooseRollupBucket(buckets, 0, targetPoints));
+    }
+
+    @Test
+    void onlyExistingBuckets() {
+        assertEquals("minute", DatabaseService.chooseRollupBucket(Arrays.asList("hour", "minute"), 20 * day, targetPoints));
+        assertEquals("hour", DatabaseService.chooseRollupBucket(Arrays.asList("hour", "minute"), 30 * day, targetPoints));
+        assertNull(DatabaseService.chooseRollupBucket(Arrays.asList("day"), 100 * day, targetPoints));
+        assertNull(DatabaseService.chooseRollupBucket(new ArrayList<>(), 700 * day, targetPoints));
+    }
+
+}
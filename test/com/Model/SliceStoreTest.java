@@ -0,0 +1,128 @@
+package com.Model;
+
+import com.DataObjects.Approximations.ApproximationType;
+import com.DataObjects.Slice;
+import com.DataObjects.SlicePoint;
+import com.SupportClasses.ConsoleLogger;
+import com.SupportClasses.Logger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SliceStoreTest {
+
+    private final String tableName = "data_test";
+    private final List<String> categoryNames = Arrays.asList("category_1", "category_2");
+    private final List<String> valueNames = Arrays.asList("value_1", "value_2");
+    private final String[] categories = {"category_1"};
+    private final String[] pairCategories = {"category_1", "category_2"};
+    private final String[][] labels = {{"'type_1'"}, {"'тип 2'"}, {"'type_3'"}};
+    private final Date minDate = new Date(1600000000000L);
+    private final Date maxDate = new Date(1600000000000L + 86400000L);
+    private File file;
+    private List<List<Slice>> slices;
+    private Logger logger;
+
+    @BeforeAll
+    void setUp() throws IOException {
+        logger = new ConsoleLogger();
+        logger.logMessage("Начинается тест снимка разрезов...");
+        Random random = new Random(5);
+        slices = new ArrayList<>();
+        for (int k = 0; k < labels.length; k++) {
+            SlicePoint[][] points = new SlicePoint[valueNames.size()][k == 2 ? 0 : 500 + k * 100];
+            long time = minDate.getTime();
+            for (int i = 0; i < points[0].length; i++) {
+                time += random.nextInt(3) * 1000L;
+                long amount = 1 + random.nextInt(5);
+                points[0][i] = new SlicePoint(random.nextInt(2000) - 1000, amount, new Date(time));
+                points[1][i] = new SlicePoint(random.nextLong(), amount, new Date(time));
+            }
+            List<Slice> valueSlices = new ArrayList<>();
+            for (int v = 0; v < valueNames.size(); v++) {
+                valueSlices.add(new Slice(tableName, valueNames.get(v), categories, labels[k], points[v], ApproximationType.EMPTY));
+            }
+            slices.add(valueSlices);
+        }
+        file = Files.createTempFile("slices", ".dess").toFile();
+        try (SliceStore.Writer writer = new SliceStore.Writer(file, tableName, categoryNames, valueNames, minDate, maxDate,
+                12345, 678, 2, 3)) {
+            for (int k = 0; k < labels.length; k++) {
+                writer.addSlices(categories, labels[k], slices.get(k));
+            }
+            writer.addCombo(pairCategories);
+        }
+    }
+
+    @AfterAll
+    void tearDown() {
+        file.delete();
+        logger.logMessage("Закончился тест снимка разрезов.");
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        SliceStore store = new SliceStore(file);
+        assertEquals(tableName, store.tableName);
+        assertEquals(categoryNames, store.getCategoryNames());
+        assertEquals(valueNames, store.getValueNames());
+        assertEquals(12345, store.getTotalAmount());
+        assertEquals(678, store.getRowCount());
+        assertEquals(minDate.getTime(), store.getBorderDates().get(0).getTime());
+        assertEquals(maxDate.getTime(), store.getBorderDates().get(1).getTime());
+        List<String[]> labelCombinations = store.getLabelCombinations(categories, 10);
+        assertEquals(labels.length, labelCombinations.size());
+        for (int k = 0; k < labels.length; k++) {
+            assertArrayEquals(labels[k], labelCombinations.get(k));
+            for (int v = 0; v < valueNames.size(); v++) {
+                Slice expected = slices.get(k).get(v);
+                Slice actual = store.getSlice(valueNames.get(v), categories, labels[k], ApproximationType.LINEAR);
+                assertEquals(expected.valueName, actual.valueName);
+                assertArrayEquals(expected.labels, actual.labels);
+                assertArrayEquals(expected.getPoints(), actual.getPoints());
+            }
+        }
+        assertEquals(2, store.getLabelCombinations(categories, 2).size());
+        assertTrue(store.getLabelCombinations(pairCategories, 10).isEmpty());
+        assertEquals(0, store.getSlice("value_1", categories, new String[]{"'type_4'"}, ApproximationType.LINEAR).size());
+    }
+
+    @Test
+    void covers() throws IOException {
+        SliceStore store = new SliceStore(file);
+        assertTrue(store.covers(tableName, minDate, maxDate, 2, 3));
+        assertTrue(store.covers(tableName, new Date(minDate.getTime()), new Date(maxDate.getTime()), 1, 1));
+        assertFalse(store.covers(tableName, minDate, new Date(maxDate.getTime() + 1), 2, 3));
+        assertFalse(store.covers("other_table", minDate, maxDate, 2, 3));
+        assertFalse(store.covers(tableName, minDate, maxDate, 3, 3));
+        assertFalse(store.covers(tableName, minDate, maxDate, 2, 4));
+        assertTrue(store.matches(678, 12345));
+        assertFalse(store.matches(679, 12345));
+        assertFalse(store.matches(678, 12346));
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        File other = Files.createTempFile("slices", ".txt").toFile();
+        try {
+            Files.write(other.toPath(), "first_date;value_1;amount\n".getBytes());
+            assertThrows(IOException.class, () -> new SliceStore(other));
+        } finally {
+            other.delete();
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.SupportClasses;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.lang.reflect.Proxy;
+import java.sql.Statement;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class CancellationTokenTest {
+
+    private Logger logger;
+
+    @BeforeAll
+    void setUp() {
+        logger = new ConsoleLogger();
+        logger.logMessage("Начинается тест признака отмены...");
+    }
+
+    @AfterAll
+    void tearDown() {
+        logger.logMessage("Закончился тест признака отмены.");
+    }
+
+    @Test
+    void cancel() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger cancelledStatements = new AtomicInteger();
+        Statement running = createStatement(cancelledStatements);
+        Statement finished = createStatement(cancelledStatements);
+        token.register(running);
+        token.register(finished);
+        token.unregister(finished);
+        assertFalse(token.isCancelled());
+        token.throwIfCancelled();
+
+        token.cancel();
+        assertTrue(token.isCancelled());
+        assertEquals(1, cancelledStatements.get());
+        assertThrows(CancellationException.class, token::throwIfCancelled);
+
+        token.register(createStatement(cancelledStatements));
+        assertEquals(2, cancelledStatements.get());
+    }
+
+    @Test
+    void cancelNone() {
+        AtomicInteger cancelledStatements = new AtomicInteger();
+        CancellationToken.NONE.register(createStatement(cancelledStatements));
+        CancellationToken.NONE.cancel();
+        assertFalse(CancellationToken.NONE.isCancelled());
+        assertEquals(0, cancelledStatements.get());
+        CancellationToken.NONE.throwIfCancelled();
+    }
+
+    private Statement createStatement(AtomicInteger cancelledStatements) {
+        return (Statement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Statement.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("cancel")) {
+                        cancelledStatements.incrementAndGet();
+                    }
+                    if (method.getName().equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    }
+                    if (method.getName().equals("equals")) {
+                        return proxy == args[0];
+                    }
+                    return null;
+                });
+    }
+
+}
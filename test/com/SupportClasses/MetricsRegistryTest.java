@@ -0,0 +1,74 @@
+package com.SupportClasses;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class MetricsRegistryTest {
+
+    private Logger logger;
+
+    @BeforeAll
+    void setUp() {
+        logger = new ConsoleLogger();
+        logger.logMessage("Начинается тест реестра метрик...");
+    }
+
+    @AfterAll
+    void tearDown() {
+        logger.logMessage("Закончился тест реестра метрик.");
+    }
+
+    @Test
+    void histogram() {
+        MetricsRegistry.Histogram histogram = new MetricsRegistry.Histogram();
+        assertEquals(0, histogram.getPercentile(0.5));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500, histogram.getSum());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500.5, histogram.getMean(), 1e-9);
+        long p50 = histogram.getPercentile(0.5);
+        long p99 = histogram.getPercentile(0.99);
+        assertTrue(p50 >= 500 && p50 <= 500 * 1.125, "p50 = " + p50);
+        assertTrue(p99 >= 990 && p99 <= 1000, "p99 = " + p99);
+        assertEquals(1000, histogram.getPercentile(1));
+        assertEquals(1, histogram.getPercentile(0));
+    }
+
+    @Test
+    void summary() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        assertTrue(metrics.isEmpty());
+        metrics.incrementCounter("db.queries", 2);
+        metrics.incrementCounter("db.queries", 3);
+        metrics.recordTime("db.select", 2_000_000);
+        metrics.recordValue("db.rows_read", 7);
+        assertEquals(5, metrics.getCounter("db.queries"));
+        assertEquals(0, metrics.getCounter("export.png"));
+
+        List<String> summary = metrics.getSummary();
+        assertEquals(3, summary.size());
+        assertEquals("db.queries: 5", summary.get(0));
+        assertTrue(summary.get(1).startsWith("db.select: count=1, total=2.0 ms"));
+        assertTrue(summary.get(2).startsWith("db.rows_read: count=1, total=7"));
+
+        String json = metrics.toJson();
+        assertTrue(json.contains("\"db.queries\": 5"));
+        assertTrue(json.contains("\"db.select\": {\"count\": 1, \"total\": 2.000"));
+        assertTrue(json.contains("\"db.rows_read\": {\"count\": 1, \"total\": 7.000"));
+
+        metrics.reset();
+        assertTrue(metrics.isEmpty());
+        assertEquals("{\n  \"counters\": {},\n  \"timers\": {},\n  \"histograms\": {}\n}\n", metrics.toJson());
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.View;
+
+import com.DataObjects.Approximations.ApproximationType;
+import com.DataObjects.Slice;
+import com.DataObjects.SlicePoint;
+import com.SupportClasses.ConsoleLogger;
+import com.SupportClasses.Logger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class DownsamplerTest {
+
+    private Slice spikeSlice;
+    private Logger logger;
+
+    @BeforeAll
+    void setUp() {
+        logger = new ConsoleLogger();
+        logger.logMessage("Начинается тест выбора точек графика...");
+        final SlicePoint[] points = new SlicePoint[10000];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new SlicePoint(i == 4321 ? 100000 : i % 7, 1, new Date(10000 + i * 10L));
+        }
+        spikeSlice = new Slice("data_test", "value_1", new String[]{"category_1"}, new String[]{"type_1"}, points,
+                ApproximationType.EMPTY);
+    }
+
+    @AfterAll
+    void tearDown() {
+        logger.logMessage("Закончился тест выбора точек графика.");
+    }
+
+    @Test
+    void getLargestTriangleIndices() {
+        int[] indices = Downsampler.getLargestTriangleIndices(spikeSlice, 0, 9999, 800);
+        assertEquals(800, indices.length);
+        assertEquals(0, indices[0]);
+        assertEquals(9999, indices[indices.length - 1]);
+        boolean spikeIsPresent = false;
+        for (int i = 0; i < indices.length; i++) {
+            if (i > 0) {
+                assertTrue(indices[i] > indices[i - 1]);
+            }
+            if (indices[i] == 4321) {
+                spikeIsPresent = true;
+            }
+        }
+        assertTrue(spikeIsPresent);
+        assertEquals(11, Downsampler.getLargestTriangleIndices(spikeSlice, 100, 110, 800).length);
+        assertArrayEquals(new int[]{5, 6}, Downsampler.getLargestTriangleIndices(spikeSlice, 5, 6, 800));
+    }
+
+    @Test
+    void getUniformIndices() {
+        assertArrayEquals(new int[]{0, 5, 10}, Downsampler.getUniformIndices(0, 10, 3));
+        assertEquals(800, Downsampler.getUniformIndices(0, 9999, 800).length);
+        assertEquals(0, Downsampler.getUniformIndices(5, 4, 800).length);
+    }
+
+}